@@ -0,0 +1,98 @@
+
+package resist.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import jam.space.Site;
+
+import org.openjdk.jmh.annotations.*;
+
+import resist.agent.AgentRegistry;
+import resist.agent.AgentType;
+import resist.agent.SiteAgent;
+import resist.system.ResistParam;
+
+/**
+ * Measures the cost of looking up agents that have already been
+ * interned, from one thread and from as many threads as there are
+ * processors: by site and by dense site index in the {@link
+ * AgentRegistry} used by the simulation, and through the unscoped
+ * {@code SiteAgent.instance} for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AgentLookupBench {
+    @Param({ "SQUARE; 1.0; 100, 100" })
+    public String lattice;
+
+    private Site[] sites;
+    private AgentType[] types;
+    private AgentRegistry registry;
+
+    @Setup(Level.Trial) public void setUp() {
+        BenchProperties.define(lattice);
+
+        registry = AgentRegistry.instance(ResistParam.global().getSpace());
+
+        List<Site> siteList = new ArrayList<>(registry.viewSites());
+        sites = siteList.toArray(new Site[0]);
+        types = new AgentType[AgentType.COUNT];
+
+        for (int index = 0; index < AgentType.COUNT; ++index)
+            types[index] = AgentType.valueOf(index);
+
+        // Intern every agent before measurement begins.
+        for (Site site : sites)
+            for (AgentType type : types) {
+                registry.instance(site, type);
+                SiteAgent.instance(site, type);
+            }
+    }
+
+    @TearDown(Level.Trial) public void tearDown() {
+        AgentRegistry.release(registry.getSpace());
+    }
+
+    private SiteAgent lookupSite() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return registry.instance(sites[random.nextInt(sites.length)], types[random.nextInt(types.length)]);
+    }
+
+    private SiteAgent lookupIndex() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return registry.instance(random.nextInt(sites.length), types[random.nextInt(types.length)]);
+    }
+
+    private SiteAgent lookupUnscoped() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return SiteAgent.instance(sites[random.nextInt(sites.length)], types[random.nextInt(types.length)]);
+    }
+
+    @Benchmark @Threads(1) public SiteAgent siteSingleThread() {
+        return lookupSite();
+    }
+
+    @Benchmark @Threads(Threads.MAX) public SiteAgent siteAllThreads() {
+        return lookupSite();
+    }
+
+    @Benchmark @Threads(1) public SiteAgent indexSingleThread() {
+        return lookupIndex();
+    }
+
+    @Benchmark @Threads(Threads.MAX) public SiteAgent indexAllThreads() {
+        return lookupIndex();
+    }
+
+    @Benchmark @Threads(1) public SiteAgent unscopedSingleThread() {
+        return lookupUnscoped();
+    }
+
+    @Benchmark @Threads(Threads.MAX) public SiteAgent unscopedAllThreads() {
+        return lookupUnscoped();
+    }
+}
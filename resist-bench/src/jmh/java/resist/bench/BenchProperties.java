@@ -0,0 +1,50 @@
+
+package resist.bench;
+
+import resist.system.ResistParam;
+
+/**
+ * Defines the simulation parameters shared by the benchmarks.
+ *
+ * <p>{@code ResistParam.global()} reads the system properties once
+ * per JVM, and JMH runs each benchmark and parameter combination in a
+ * fresh fork, so each benchmark calls {@link #define(String)} in its
+ * trial setup before the first call to {@code ResistParam.global()}.
+ * The lattice is always that of the benchmark parameter; the other
+ * properties may be set on the command line, which takes precedence.
+ */
+final class BenchProperties {
+    private BenchProperties() {}
+
+    /**
+     * Defines the benchmark lattice and any other parameters that are
+     * not already defined.
+     *
+     * @param lattice the lattice specification.
+     */
+    static void define(String lattice) {
+        //
+        // The lattice is swept by the benchmarks, so it always comes
+        // from their @Param value (overridden with -p lattice=...).
+        //
+        System.setProperty(ResistParam.LATTICE_PROPERTY, lattice);
+
+        setDefault(ResistParam.SITE_CAPACITY_PROPERTY, "100");
+        setDefault(ResistParam.INITIAL_CELL_COUNT_PROPERTY, "1000");
+        setDefault(ResistParam.INITIAL_DRUG_COUNT_PROPERTY, "1000");
+        setDefault(ResistParam.DRUG_DECAY_RATE_PROPERTY, "0.01");
+        setDefault(ResistParam.DRUG_UPTAKE_RATE_PROPERTY, "0.01");
+        setDefault(ResistParam.RESISTANT_BIRTH_RATE_PROPERTY, "1.05");
+        setDefault(ResistParam.RESISTANT_DEATH_RATE_PROPERTY, "1.0");
+        setDefault(ResistParam.NON_RESISTANT_BIRTH_RATE_PROPERTY, "1.1");
+        setDefault(ResistParam.NON_RESISTANT_DEATH_RATE_PROPERTY, "1.0");
+        setDefault(ResistParam.CELL_MIGRATION_RATE_PROPERTY, "0.1");
+        setDefault(ResistParam.DRUG_DIFFUSION_RATE_PROPERTY, "0.1");
+        setDefault(ResistParam.RESISTANCE_MUTATION_RATE_PROPERTY, "0.001");
+    }
+
+    private static void setDefault(String name, String value) {
+        if (System.getProperty(name) == null)
+            System.setProperty(name, value);
+    }
+}
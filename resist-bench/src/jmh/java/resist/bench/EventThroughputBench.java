@@ -0,0 +1,67 @@
+
+package resist.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import resist.agent.CellType;
+import resist.agent.DrugType;
+import resist.engine.EngineType;
+import resist.system.PopulationStore;
+import resist.system.ResistParam;
+import resist.system.ResistSystem;
+
+/**
+ * Measures the steady-state event throughput of the simulation loop.
+ *
+ * <p>Each invocation executes {@link #EVENTS} events (at least, for
+ * the tau-leap engine) and is reported as that many operations, so
+ * the throughput is in events per second and the {@code
+ * gc.alloc.rate.norm} metric of the GC profiler is the allocation in
+ * bytes per event.
+ * The lattice starts half full and is allowed to reach its
+ * birth-death equilibrium during the warmup iterations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventThroughputBench {
+    @Param({ "SQUARE; 1.0; 100, 100" })
+    public String lattice;
+
+    @Param({ "DIRECT", "NEXT_REACTION", "COMPOSITION_REJECTION", "TAU_LEAP" })
+    public EngineType engineType;
+
+    private ResistSystem system;
+
+    private static final int EVENTS = 1000;
+
+    @Setup(Level.Trial) public void setUp() {
+        BenchProperties.define(lattice);
+
+        ResistParam param = ResistParam.global();
+        SplittableRandom random = new SplittableRandom(20201015L);
+
+        system = ResistSystem.create(random::nextDouble, param, engineType);
+        PopulationStore population = system.getPopulation();
+
+        for (int site = 0; site < system.countSites(); ++site) {
+            population.setCount(site, CellType.NON_RESISTANT.index(), param.getSiteCapacity() / 2);
+            population.setCount(site, DrugType.A.index(), 10);
+            population.setCount(site, DrugType.B.index(), 10);
+        }
+
+        system.refresh();
+    }
+
+    @Benchmark @OperationsPerInvocation(EVENTS) public long advance() {
+        long target = system.getEventCount() + EVENTS;
+
+        while (system.getEventCount() < target)
+            system.advance(Double.POSITIVE_INFINITY);
+
+        return system.getEventCount();
+    }
+}
@@ -0,0 +1,48 @@
+
+package resist.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import resist.system.ResistParam;
+import resist.system.ResistSystem;
+
+/**
+ * Measures the cost of {@code ResistSystem.create} on one-, two-, and
+ * three-dimensional lattices of increasing size.
+ *
+ * <p>The agent registry for the lattice is retained across
+ * invocations (as it is when many replicates share one space), so the
+ * measurement covers the population store, neighbor map, reaction
+ * model, and engine construction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SystemCreateBench {
+    @Param({
+            "LINEAR; 1.0; 1000",
+            "LINEAR; 1.0; 100000",
+            "SQUARE; 1.0; 32, 32",
+            "SQUARE; 1.0; 316, 316",
+            "SIMPLE_CUBIC; 1.0; 10, 10, 10",
+            "SIMPLE_CUBIC; 1.0; 46, 46, 46"
+        })
+    public String lattice;
+
+    private ResistParam param;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial) public void setUp() {
+        BenchProperties.define(lattice);
+
+        param = ResistParam.global();
+        random = new SplittableRandom(20201015L);
+    }
+
+    @Benchmark public ResistSystem create() {
+        return ResistSystem.create(random::nextDouble, param);
+    }
+}
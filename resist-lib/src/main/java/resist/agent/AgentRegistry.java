@@ -0,0 +1,331 @@
+
+package resist.agent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jam.bravais.UnitIndex;
+import jam.space.Site;
+import jam.space.Space;
+
+/**
+ * Interns the stochastic agents that occupy the sites of a single
+ * spatial structure.
+ *
+ * <p>Each site in the space is assigned a dense integer index (its
+ * position in {@code space.viewSites()}), and the agents are stored
+ * in arrays indexed by the site index and the dense {@link
+ * AgentType#index()} of the agent type.  The arrays are allocated in
+ * fixed-size blocks as sites are first visited, and both blocks and
+ * agents are published with compare-and-set operations: lookups never
+ * acquire a lock, and two threads that race to create the same agent
+ * always receive the same instance.
+ *
+ * <p>Registries are scoped to a space: {@link AgentRegistry#release}
+ * discards the registry for a space (and all agents interned by it)
+ * when the simulations running in that space have finished.  Agents
+ * interned by a registry are distinct from the unscoped agents
+ * returned by {@link SiteAgent#instance(Site, AgentType)}.
+ */
+public final class AgentRegistry {
+    private final Space space;
+    private final List<Site> sites;
+    private final AtomicReferenceArray<AtomicReferenceArray<SiteAgent>> blocks;
+
+    // Sites that fill a box of unit cells in row-major order (every
+    // lattice space) are indexed by arithmetic on their coordinates;
+    // other spaces use an open-addressing table of sites.  Neither
+    // boxes the indexes.  The fields are assigned only while the
+    // registry is constructed.
+    private int[] lower;
+    private int[] extent;
+
+    private Site[] tableSites;
+    private int[] tableIndexes;
+
+    private static final int BLOCK_SITES = 1024;
+    private static final int BLOCK_SLOTS = BLOCK_SITES * AgentType.COUNT;
+
+    private static final ConcurrentMap<Space, AgentRegistry> registries =
+        new ConcurrentHashMap<Space, AgentRegistry>();
+
+    private AgentRegistry(Space space) {
+        this.space = space;
+        this.sites = Collections.unmodifiableList(new ArrayList<Site>(space.viewSites()));
+        this.blocks = new AtomicReferenceArray<AtomicReferenceArray<SiteAgent>>(blockCount(sites.size()));
+
+        if (!mapBox())
+            mapTable();
+    }
+
+    private boolean mapBox() {
+        if (sites.isEmpty())
+            return false;
+
+        int dimension = sites.get(0).getIndex().dimensionality();
+
+        int[] lower = new int[dimension];
+        int[] upper = new int[dimension];
+
+        Arrays.fill(lower, Integer.MAX_VALUE);
+        Arrays.fill(upper, Integer.MIN_VALUE);
+
+        for (Site site : sites) {
+            UnitIndex index = site.getIndex();
+
+            if (index.dimensionality() != dimension)
+                return false;
+
+            for (int k = 0; k < dimension; ++k) {
+                lower[k] = Math.min(lower[k], index.coord(k));
+                upper[k] = Math.max(upper[k], index.coord(k));
+            }
+        }
+
+        int[] extent = new int[dimension];
+        long volume = 1L;
+
+        for (int k = 0; k < dimension; ++k) {
+            extent[k] = upper[k] - lower[k] + 1;
+            volume *= extent[k];
+
+            if (volume > sites.size())
+                return false;
+        }
+
+        if (volume != sites.size())
+            return false;
+
+        this.lower = lower;
+        this.extent = extent;
+
+        for (int index = 0; index < sites.size(); ++index) {
+            if (boxIndex(sites.get(index).getIndex()) != index) {
+                this.lower = null;
+                this.extent = null;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int boxIndex(UnitIndex index) {
+        if (index.dimensionality() != extent.length)
+            return -1;
+
+        int result = 0;
+
+        for (int k = 0; k < extent.length; ++k) {
+            int offset = index.coord(k) - lower[k];
+
+            if (offset < 0 || offset >= extent[k])
+                return -1;
+
+            result = result * extent[k] + offset;
+        }
+
+        return result;
+    }
+
+    private void mapTable() {
+        int capacity = Integer.highestOneBit(Math.max(2, 2 * sites.size() - 1)) << 1;
+
+        tableSites = new Site[capacity];
+        tableIndexes = new int[capacity];
+
+        for (int index = 0; index < sites.size(); ++index) {
+            int slot = findSlot(sites.get(index));
+
+            tableSites[slot] = sites.get(index);
+            tableIndexes[slot] = index;
+        }
+    }
+
+    private int findSlot(Site site) {
+        int mask = tableSites.length - 1;
+        int slot = mix(site.hashCode()) & mask;
+
+        while (tableSites[slot] != null && !tableSites[slot].equals(site))
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int blockCount(int siteCount) {
+        return (siteCount + BLOCK_SITES - 1) / BLOCK_SITES;
+    }
+
+    /**
+     * Returns the registry for a given spatial structure, creating
+     * it on the first request.
+     *
+     * @param space the spatial structure of interest.
+     *
+     * @return the registry for the specified spatial structure.
+     */
+    public static AgentRegistry instance(Space space) {
+        AgentRegistry registry = registries.get(space);
+
+        if (registry != null)
+            return registry;
+        else
+            return registries.computeIfAbsent(space, AgentRegistry::new);
+    }
+
+    /**
+     * Releases the registry for a given spatial structure.
+     *
+     * <p>Clients holding a reference to the released registry may
+     * continue to use it; subsequent calls to {@link
+     * AgentRegistry#instance(Space)} create a new registry.
+     *
+     * @param space the spatial structure of interest.
+     *
+     * @return {@code true} iff a registry had been created for the
+     * specified spatial structure.
+     */
+    public static boolean release(Space space) {
+        return registries.remove(space) != null;
+    }
+
+    /**
+     * Returns the interned agent with a specific location and type.
+     *
+     * @param site the location of the agent.
+     *
+     * @param type the enumerated type of the agent.
+     *
+     * @return the interned agent with the specified location and
+     * type.
+     *
+     * @throws IllegalArgumentException unless the site belongs to the
+     * space of this registry.
+     */
+    public SiteAgent instance(Site site, AgentType type) {
+        return instance(indexOf(site), type);
+    }
+
+    /**
+     * Returns the interned agent with a specific location and type.
+     *
+     * @param siteIndex the dense index of the agent location.
+     *
+     * @param type the enumerated type of the agent.
+     *
+     * @return the interned agent with the specified location and
+     * type.
+     *
+     * @throws IndexOutOfBoundsException unless the site index is
+     * valid for this registry.
+     */
+    public SiteAgent instance(int siteIndex, AgentType type) {
+        AtomicReferenceArray<SiteAgent> block = block(siteIndex / BLOCK_SITES);
+
+        int slot = (siteIndex % BLOCK_SITES) * AgentType.COUNT + type.index();
+        SiteAgent agent = block.get(slot);
+
+        if (agent != null)
+            return agent;
+
+        agent = SiteAgent.create(sites.get(siteIndex), type);
+
+        if (block.compareAndSet(slot, null, agent))
+            return agent;
+        else
+            return block.get(slot);
+    }
+
+    private AtomicReferenceArray<SiteAgent> block(int blockIndex) {
+        AtomicReferenceArray<SiteAgent> block = blocks.get(blockIndex);
+
+        if (block != null)
+            return block;
+
+        block = new AtomicReferenceArray<SiteAgent>(BLOCK_SLOTS);
+
+        if (blocks.compareAndSet(blockIndex, null, block))
+            return block;
+        else
+            return blocks.get(blockIndex);
+    }
+
+    /**
+     * Returns the dense index of a site in this registry.
+     *
+     * @param site a site in the space of this registry.
+     *
+     * @return the dense index of the specified site.
+     *
+     * @throws IllegalArgumentException unless the site belongs to the
+     * space of this registry.
+     */
+    public int indexOf(Site site) {
+        int index;
+
+        if (extent != null) {
+            index = boxIndex(site.getIndex());
+        }
+        else {
+            int slot = findSlot(site);
+            index = (tableSites[slot] != null) ? tableIndexes[slot] : -1;
+        }
+
+        if (index < 0)
+            throw new IllegalArgumentException(String.format("Site [%s] is not in the registry space.", site));
+
+        return index;
+    }
+
+    /**
+     * Returns the site with a given dense index.
+     *
+     * @param siteIndex the dense index of the site.
+     *
+     * @return the site with the specified dense index.
+     *
+     * @throws IndexOutOfBoundsException unless the site index is
+     * valid for this registry.
+     */
+    public Site getSite(int siteIndex) {
+        return sites.get(siteIndex);
+    }
+
+    /**
+     * Returns the spatial structure served by this registry.
+     *
+     * @return the spatial structure served by this registry.
+     */
+    public Space getSpace() {
+        return space;
+    }
+
+    /**
+     * Returns the number of sites in the space of this registry.
+     *
+     * @return the number of sites in the space of this registry.
+     */
+    public int countSites() {
+        return sites.size();
+    }
+
+    /**
+     * Returns a read-only view of the sites in this registry, in
+     * order of their dense index.
+     *
+     * @return a read-only view of the sites in this registry.
+     */
+    public List<Site> viewSites() {
+        return sites;
+    }
+}
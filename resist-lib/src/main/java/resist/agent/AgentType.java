@@ -5,6 +5,38 @@ package resist.agent;
  * Distinguishes between cellular agents and therapeutic agents.
  */
 public interface AgentType {
+    /**
+     * The total number of enumerated agent types (cell types plus
+     * drug types).
+     */
+    public static final int COUNT = CellType.COUNT + DrugType.COUNT;
+
+    /**
+     * Returns the agent type with a given dense index.
+     *
+     * @param index the dense index of the agent type.
+     *
+     * @return the agent type with the specified dense index.
+     *
+     * @throws IndexOutOfBoundsException unless the index is in the
+     * range {@code [0, COUNT)}.
+     */
+    public static AgentType valueOf(int index) {
+        if (index < CellType.COUNT)
+            return CellType.valueOf(index);
+        else
+            return DrugType.valueOf(index - CellType.COUNT);
+    }
+
+    /**
+     * Returns the dense index of this agent type: cell types occupy
+     * indexes {@code [0, CellType.COUNT)} and drug types follow, so
+     * that per-type data may be stored in flat arrays.
+     *
+     * @return the dense index of this agent type.
+     */
+    public abstract int index();
+
     /**
      * Identifies cellular agents.
      *
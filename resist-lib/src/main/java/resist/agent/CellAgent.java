@@ -2,8 +2,9 @@
 package resist.agent;
 
 import java.util.EnumMap;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import jam.space.Site;
 
@@ -11,16 +12,20 @@ import jam.space.Site;
  * Represents a tumor cell at a specific spatial location.
  */
 public final class CellAgent extends SiteAgent {
-    private static final Map<CellType, Map<Site, CellAgent>> instances;
+    // Unscoped instances, for agents that do not belong to a
+    // registry.  The enum map is never modified after the static
+    // initializer runs, and the concurrent per-type maps never block
+    // readers.
+    private static final Map<CellType, ConcurrentMap<Site, CellAgent>> instances;
 
     static {
-        instances = new EnumMap<CellType, Map<Site, CellAgent>>(CellType.class);
+        instances = new EnumMap<CellType, ConcurrentMap<Site, CellAgent>>(CellType.class);
 
         for (CellType type : CellType.values())
-            instances.put(type, new HashMap<Site, CellAgent>());
+            instances.put(type, new ConcurrentHashMap<Site, CellAgent>());
     }
 
-    private CellAgent(Site site, CellType type) {
+    CellAgent(Site site, CellType type) {
         super(site, type);
     }
 
@@ -28,6 +33,11 @@ public final class CellAgent extends SiteAgent {
      * Returns the cellular agent for a specific location and
      * resistance phenotype.
      *
+     * <p>The agents returned by this method are shared by every
+     * caller in the virtual machine; simulations should obtain their
+     * agents from the {@link AgentRegistry} for their space instead,
+     * so that the agents may be released when the simulation ends.
+     *
      * @param site the location of the cellular agent.
      *
      * @param type the resistance phenotype of the agent.
@@ -35,15 +45,14 @@ public final class CellAgent extends SiteAgent {
      * @return the cellular agent with the specific location and
      * phenotype.
      */
-    public static synchronized CellAgent instance(Site site, CellType type) {
-        CellAgent agent = instances.get(type).get(site);
-
-        if (agent == null) {
-            agent = new CellAgent(site, type);
-            instances.get(type).put(site, agent);
-        }
+    public static CellAgent instance(Site site, CellType type) {
+        ConcurrentMap<Site, CellAgent> typeMap = instances.get(type);
+        CellAgent agent = typeMap.get(site);
 
-        return agent;
+        if (agent != null)
+            return agent;
+        else
+            return typeMap.computeIfAbsent(site, key -> new CellAgent(key, type));
     }
 
     /**
@@ -29,10 +29,32 @@ public enum CellType implements AgentType {
 
     private final Set<DrugType> resistant;
 
+    private static final CellType[] VALUES = values();
+
+    /**
+     * The number of enumerated cell types.
+     */
+    public static final int COUNT = VALUES.length;
+
     private CellType(Set<DrugType> resistant) {
         this.resistant = resistant;
     }
 
+    /**
+     * Returns the cell type with a given ordinal value (without
+     * allocating a new array of values).
+     *
+     * @param ordinal the ordinal value of the cell type.
+     *
+     * @return the cell type with the specified ordinal value.
+     *
+     * @throws IndexOutOfBoundsException unless the ordinal is in the
+     * range {@code [0, COUNT)}.
+     */
+    public static CellType valueOf(int ordinal) {
+        return VALUES[ordinal];
+    }
+
     /**
      * Identifies drugs to which this cell type is resistant.
      *
@@ -56,6 +78,10 @@ public enum CellType implements AgentType {
         return resistant;
     }
 
+    @Override public int index() {
+        return ordinal();
+    }
+
     @Override public boolean isCell() {
         return true;
     }
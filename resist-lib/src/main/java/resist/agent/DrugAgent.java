@@ -2,8 +2,9 @@
 package resist.agent;
 
 import java.util.EnumMap;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import jam.space.Site;
 
@@ -11,16 +12,17 @@ import jam.space.Site;
  * Represents a therapeutic agent at a specific spatial location.
  */
 public final class DrugAgent extends SiteAgent {
-    private static final Map<DrugType, Map<Site, DrugAgent>> instances;
+    // Unscoped instances; see the notes in CellAgent.
+    private static final Map<DrugType, ConcurrentMap<Site, DrugAgent>> instances;
 
     static {
-        instances = new EnumMap<DrugType, Map<Site, DrugAgent>>(DrugType.class);
+        instances = new EnumMap<DrugType, ConcurrentMap<Site, DrugAgent>>(DrugType.class);
 
         for (DrugType type : DrugType.values())
-            instances.put(type, new HashMap<Site, DrugAgent>());
+            instances.put(type, new ConcurrentHashMap<Site, DrugAgent>());
     }
 
-    private DrugAgent(Site site, DrugType type) {
+    DrugAgent(Site site, DrugType type) {
         super(site, type);
     }
 
@@ -28,6 +30,10 @@ public final class DrugAgent extends SiteAgent {
      * Returns the therapeutic agent for a specific location and drug
      * type.
      *
+     * <p>Like {@link CellAgent#instance(Site, CellType)}, this method
+     * returns unscoped agents that are never released; see {@link
+     * AgentRegistry} for the scoped alternative.
+     *
      * @param site the location of the drug.
      *
      * @param type the enumerated drug type.
@@ -35,15 +41,14 @@ public final class DrugAgent extends SiteAgent {
      * @return the therapeutic agent with the specific location and
      * type.
      */
-    public static synchronized DrugAgent instance(Site site, DrugType type) {
-        DrugAgent agent = instances.get(type).get(site);
-
-        if (agent == null) {
-            agent = new DrugAgent(site, type);
-            instances.get(type).put(site, agent);
-        }
-
-        return agent;
+    public static DrugAgent instance(Site site, DrugType type) {
+        ConcurrentMap<Site, DrugAgent> typeMap = instances.get(type);
+        DrugAgent agent = typeMap.get(site);
+
+        if (agent != null)
+            return agent;
+        else
+            return typeMap.computeIfAbsent(site, key -> new DrugAgent(key, type));
     }
 
     /**
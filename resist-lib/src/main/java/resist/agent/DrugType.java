@@ -7,6 +7,32 @@ package resist.agent;
 public enum DrugType implements AgentType {
     A, B;
 
+    private static final DrugType[] VALUES = values();
+
+    /**
+     * The number of enumerated drug types.
+     */
+    public static final int COUNT = VALUES.length;
+
+    /**
+     * Returns the drug type with a given ordinal value (without
+     * allocating a new array of values).
+     *
+     * @param ordinal the ordinal value of the drug type.
+     *
+     * @return the drug type with the specified ordinal value.
+     *
+     * @throws IndexOutOfBoundsException unless the ordinal is in the
+     * range {@code [0, COUNT)}.
+     */
+    public static DrugType valueOf(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    @Override public int index() {
+        return CellType.COUNT + ordinal();
+    }
+
     @Override public boolean isCell() {
         return false;
     }
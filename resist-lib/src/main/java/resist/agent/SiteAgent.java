@@ -47,6 +47,17 @@ public abstract class SiteAgent extends StochAgent {
             return DrugAgent.instance(site, (DrugType) type);
     }
 
+    /**
+     * Creates a new (uninterned) agent with a specific type and
+     * location; used by registries to populate their slots.
+     */
+    static SiteAgent create(Site site, AgentType type) {
+        if (type.isCell())
+            return new CellAgent(site, (CellType) type);
+        else
+            return new DrugAgent(site, (DrugType) type);
+    }
+
     /**
      * Returns the site where this agent is located.
      *
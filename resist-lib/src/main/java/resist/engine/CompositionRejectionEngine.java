@@ -0,0 +1,258 @@
+
+package resist.engine;
+
+import java.util.Arrays;
+
+import resist.random.RandomSource;
+import resist.system.ReactionModel;
+
+/**
+ * Implements the composition-rejection variant of the stochastic
+ * simulation algorithm (Slepoy, Thompson, and Plimpton).
+ *
+ * <p>Active channels are partitioned into groups by the binary
+ * exponent of their propensity: group {@code g} holds the channels
+ * with propensities in {@code [2^g, 2^(g+1))}.  An event is selected
+ * by first choosing a group with probability proportional to its
+ * total propensity (a linear search over the few non-empty groups)
+ * and then choosing a member of the group uniformly at random and
+ * accepting it with probability {@code propensity / 2^(g+1)}, which
+ * succeeds at least half of the time.  Moving a channel between
+ * groups takes constant time, so the cost of each event is
+ * independent of the number of lattice sites.
+ *
+ * <p>The member array of a group is allocated when the group is first
+ * occupied and doubled when full, but never released, so the event
+ * loop stops allocating once the range of propensities reached by the
+ * simulation has been visited.
+ */
+public final class CompositionRejectionEngine extends ResistEngine {
+    private final PropensityStore propensities;
+
+    // The group holding each channel (or -1 for inactive channels)
+    // and the position of each channel within its group.
+    private int[] channelGroups;
+    private int[] channelSlots;
+
+    private final int[][] groupMembers = new int[GROUP_COUNT][];
+    private final int[] groupSizes = new int[GROUP_COUNT];
+    private final double[] groupSums = new double[GROUP_COUNT];
+
+    private int minGroup = GROUP_COUNT;
+    private int maxGroup = -1;
+
+    private double totalPropensity;
+    private int updateCount;
+
+    // Recompute the group sums from scratch after this many
+    // incremental updates; scaling the interval with the lattice size
+    // keeps the amortized cost per event constant.
+    private final int resumInterval;
+
+    // Group zero holds the subnormal propensities.
+    private static final int MIN_EXPONENT = Double.MIN_EXPONENT - 1;
+    private static final int GROUP_COUNT = Double.MAX_EXPONENT - MIN_EXPONENT + 1;
+
+    private static final int INITIAL_GROUP_SIZE = 16;
+    private static final int MIN_RESUM_INTERVAL = 1 << 20;
+
+    CompositionRejectionEngine(ReactionModel model, RandomSource random) {
+        super(model, random);
+
+        this.propensities = PropensityStore.create(channelCount, model.getParam().getStateBackend());
+        this.channelGroups = new int[channelCount];
+        this.channelSlots = new int[channelCount];
+
+        this.resumInterval = Math.max(MIN_RESUM_INTERVAL, channelCount);
+        Arrays.fill(channelGroups, -1);
+    }
+
+    private static int groupOf(double propensity) {
+        return Math.getExponent(propensity) - MIN_EXPONENT;
+    }
+
+    private static double groupCeiling(int group) {
+        return Math.scalb(1.0, group + MIN_EXPONENT + 1);
+    }
+
+    @Override protected void grow(int channelCount) {
+        int capacity = channelGroups.length;
+
+        if (channelCount > capacity) {
+            capacity = Math.max(channelCount, 2 * capacity);
+
+            channelGroups = Arrays.copyOf(channelGroups, capacity);
+            channelSlots = Arrays.copyOf(channelSlots, capacity);
+
+            Arrays.fill(channelGroups, this.channelCount, capacity, -1);
+        }
+
+        propensities.grow(channelCount);
+        super.grow(channelCount);
+    }
+
+    @Override public boolean advance(double maxTime) {
+        startSelection();
+
+        if (totalPropensity <= 0.0) {
+            time = maxTime;
+            return false;
+        }
+
+        double nextTime = time + random.nextExponential(totalPropensity);
+
+        if (nextTime > maxTime) {
+            time = maxTime;
+            return false;
+        }
+
+        int group = selectGroup(random.nextDouble() * totalPropensity);
+
+        if (group < 0) {
+            //
+            // No channel is active: the positive total propensity is
+            // only accumulated round-off error.
+            //
+            resum();
+            return advance(maxTime);
+        }
+
+        int channel = selectMember(group);
+
+        time = nextTime;
+        fire(channel, propensities.get(channel));
+
+        return true;
+    }
+
+    private int selectGroup(double target) {
+        int selected = -1;
+
+        for (int group = maxGroup; group >= minGroup; --group) {
+            if (groupSizes[group] > 0) {
+                selected = group;
+                target -= groupSums[group];
+
+                if (target < 0.0)
+                    return group;
+            }
+        }
+
+        return selected;
+    }
+
+    private int selectMember(int group) {
+        int[] members = groupMembers[group];
+        int size = groupSizes[group];
+        double ceiling = groupCeiling(group);
+
+        while (true) {
+            int channel = members[random.nextInt(size)];
+
+            if (random.nextDouble() * ceiling < propensities.get(channel))
+                return channel;
+        }
+    }
+
+    @Override public void refresh() {
+        Arrays.fill(channelGroups, -1);
+        Arrays.fill(groupSizes, 0);
+
+        minGroup = GROUP_COUNT;
+        maxGroup = -1;
+
+        for (int channel = 0; channel < channelCount; ++channel) {
+            double propensity = model.sitePropensity(channel);
+            propensities.set(channel, propensity);
+
+            if (propensity > 0.0)
+                addMember(channel, groupOf(propensity));
+        }
+
+        resum();
+    }
+
+    @Override double getChannelPropensity(int channel) {
+        return propensities.get(channel);
+    }
+
+    @Override protected void update(int channel, boolean fired) {
+        double oldPropensity = propensities.get(channel);
+        double newPropensity = model.sitePropensity(channel);
+
+        if (newPropensity == oldPropensity)
+            return;
+
+        int oldGroup = channelGroups[channel];
+        int newGroup = newPropensity > 0.0 ? groupOf(newPropensity) : -1;
+
+        propensities.set(channel, newPropensity);
+        totalPropensity += newPropensity - oldPropensity;
+
+        if (oldGroup == newGroup) {
+            groupSums[oldGroup] += newPropensity - oldPropensity;
+        }
+        else {
+            if (oldGroup >= 0) {
+                removeMember(channel);
+                groupSums[oldGroup] -= oldPropensity;
+            }
+
+            if (newGroup >= 0) {
+                addMember(channel, newGroup);
+                groupSums[newGroup] += newPropensity;
+            }
+        }
+
+        if (++updateCount >= resumInterval)
+            resum();
+    }
+
+    private void addMember(int channel, int group) {
+        int[] members = groupMembers[group];
+        int size = groupSizes[group];
+
+        if (members == null)
+            members = groupMembers[group] = new int[INITIAL_GROUP_SIZE];
+        else if (size == members.length)
+            members = groupMembers[group] = Arrays.copyOf(members, 2 * size);
+
+        members[size] = channel;
+        groupSizes[group] = size + 1;
+
+        channelGroups[channel] = group;
+        channelSlots[channel] = size;
+
+        minGroup = Math.min(minGroup, group);
+        maxGroup = Math.max(maxGroup, group);
+    }
+
+    private void removeMember(int channel) {
+        int group = channelGroups[channel];
+        int slot = channelSlots[channel];
+
+        int[] members = groupMembers[group];
+        int last = members[--groupSizes[group]];
+
+        members[slot] = last;
+        channelSlots[last] = slot;
+
+        channelGroups[channel] = -1;
+    }
+
+    private void resum() {
+        Arrays.fill(groupSums, 0.0);
+
+        totalPropensity = 0.0;
+        updateCount = 0;
+
+        for (int group = minGroup; group <= maxGroup; ++group) {
+            int[] members = groupMembers[group];
+
+            for (int slot = 0; slot < groupSizes[group]; ++slot)
+                groupSums[group] += propensities.get(members[slot]);
+
+            totalPropensity += groupSums[group];
+        }
+    }
+}
@@ -0,0 +1,113 @@
+
+package resist.engine;
+
+import resist.random.RandomSource;
+import resist.system.ReactionModel;
+
+/**
+ * Implements the direct method of Gillespie: the waiting time to the
+ * next event is drawn from the total propensity, and the channel that
+ * fires is found by a linear search over the channel propensities.
+ *
+ * <p>The cost of each event is proportional to the number of lattice
+ * sites; this engine serves as the reference implementation against
+ * which the faster engines are cross-checked.
+ */
+public final class DirectEngine extends ResistEngine {
+    private final PropensityStore propensities;
+    private double totalPropensity;
+    private int updateCount;
+
+    // Recompute the total propensity from scratch after this many
+    // incremental updates to bound the accumulated round-off error.
+    private static final int RESUM_INTERVAL = 1 << 20;
+
+    DirectEngine(ReactionModel model, RandomSource random) {
+        super(model, random);
+        this.propensities = PropensityStore.create(channelCount, model.getParam().getStateBackend());
+    }
+
+    @Override protected void grow(int channelCount) {
+        propensities.grow(channelCount);
+        super.grow(channelCount);
+    }
+
+    @Override public boolean advance(double maxTime) {
+        startSelection();
+
+        if (totalPropensity <= 0.0) {
+            time = maxTime;
+            return false;
+        }
+
+        double nextTime = time + random.nextExponential(totalPropensity);
+
+        if (nextTime > maxTime) {
+            time = maxTime;
+            return false;
+        }
+
+        int channel = select(random.nextDouble() * totalPropensity);
+
+        if (channel < 0) {
+            //
+            // No channel is active: the positive total propensity is
+            // only accumulated round-off error.
+            //
+            resum();
+            return advance(maxTime);
+        }
+
+        time = nextTime;
+        fire(channel, propensities.get(channel));
+
+        return true;
+    }
+
+    private int select(double target) {
+        int selected = -1;
+
+        for (int channel = 0; channel < channelCount; ++channel) {
+            double propensity = propensities.get(channel);
+
+            if (propensity > 0.0) {
+                selected = channel;
+                target -= propensity;
+
+                if (target < 0.0)
+                    return channel;
+            }
+        }
+
+        return selected;
+    }
+
+    private void resum() {
+        totalPropensity = 0.0;
+        updateCount = 0;
+
+        for (int channel = 0; channel < channelCount; ++channel)
+            totalPropensity += propensities.get(channel);
+    }
+
+    @Override public void refresh() {
+        for (int channel = 0; channel < channelCount; ++channel)
+            propensities.set(channel, model.sitePropensity(channel));
+
+        resum();
+    }
+
+    @Override double getChannelPropensity(int channel) {
+        return propensities.get(channel);
+    }
+
+    @Override protected void update(int channel, boolean fired) {
+        double propensity = model.sitePropensity(channel);
+
+        totalPropensity += propensity - propensities.get(channel);
+        propensities.set(channel, propensity);
+
+        if (++updateCount >= RESUM_INTERVAL)
+            resum();
+    }
+}
@@ -0,0 +1,423 @@
+
+package resist.engine;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+
+import resist.agent.AgentType;
+import resist.random.RandomSource;
+import resist.system.ArrayPopulationStore;
+import resist.system.OccupancyIndex;
+import resist.system.PopulationStore;
+import resist.system.ReactionModel;
+import resist.system.SiteGraph;
+
+/**
+ * Simulates a large lattice in parallel by spatial domain
+ * decomposition.
+ *
+ * <p>The lattice sites are partitioned into contiguous blocks of
+ * dense site indexes (slabs, for lattices enumerated in row-major
+ * order).  Each sub-domain holds its own population store, covering
+ * its owned sites and a ghost layer (the neighbors of owned sites
+ * that are owned by other sub-domains), its own event engine, and its
+ * own random number stream split from the stream of this engine.
+ *
+ * <p>The sub-domains advance independently and concurrently through
+ * a fixed synchronization window, as tasks on the common fork-join
+ * pool; each sub-domain has one task that is reused for every window,
+ * so that advancing a window allocates nothing.  Cells and drug molecules that
+ * migrate or diffuse into a ghost site accumulate there; at the end
+ * of the window they are transferred to the owning sub-domain, the
+ * global population store is updated, and the ghost layers are
+ * refreshed from their owners.  Within a window, each sub-domain
+ * sees the ghost populations as of the last synchronization, so the
+ * coupling error across sub-domain boundaries is proportional to the
+ * window length.  Capacity checks for migration into a ghost site use
+ * the stale ghost population, so a boundary site may briefly exceed
+ * its capacity after synchronization (further births and immigration
+ * are blocked until it falls below capacity again); no cell is ever
+ * lost or duplicated.
+ *
+ * <p>All synchronization takes place on the thread that calls {@link
+ * #advance(double)}, in a fixed order, so the trajectory depends only
+ * on the initial random stream and not on thread scheduling.
+ */
+public final class DomainEngine extends ResistEngine {
+    private final PopulationStore population;
+    private final Domain[] domains;
+    private final DomainTask[] tasks;
+    private final double window;
+
+    // The end of the window being simulated by the sub-domain tasks.
+    private double windowEnd;
+
+    // The sub-domain that owns each site and the local index of the
+    // site within that sub-domain.
+    private final int[] owners;
+    private final int[] localIndexes;
+
+    private DomainEngine(EngineType type, ReactionModel model, RandomSource random, int domainCount, double window) {
+        super(model, random);
+
+        this.population = model.getPopulation();
+        this.window = window;
+        this.owners = new int[channelCount];
+        this.localIndexes = new int[channelCount];
+
+        domainCount = Math.max(1, Math.min(domainCount, channelCount));
+        this.domains = new Domain[domainCount];
+        this.tasks = new DomainTask[domainCount];
+
+        SplittableRandom root = new SplittableRandom(random.nextLong());
+
+        int[] bounds = new int[domainCount + 1];
+
+        for (int index = 0; index <= domainCount; ++index)
+            bounds[index] = (int) ((long) channelCount * index / domainCount);
+
+        for (int index = 0; index < domainCount; ++index) {
+            for (int site = bounds[index]; site < bounds[index + 1]; ++site) {
+                owners[site] = index;
+                localIndexes[site] = site - bounds[index];
+            }
+        }
+
+        // The local index of each ghost site of the sub-domain being
+        // created, or -1 for sites outside its ghost layer.
+        int[] ghostIndexes = new int[channelCount];
+        Arrays.fill(ghostIndexes, -1);
+
+        for (int index = 0; index < domainCount; ++index) {
+            domains[index] = new Domain(type, index, bounds[index], bounds[index + 1], root.split(), ghostIndexes);
+            tasks[index] = new DomainTask(domains[index]);
+        }
+    }
+
+    /**
+     * Creates a new domain-decomposition engine; the channel
+     * propensities are computed from the current site populations.
+     *
+     * @param type the type of engine that simulates each sub-domain.
+     *
+     * @param model the reaction model for the entire lattice.
+     *
+     * @param random the source of randomness from which the streams
+     * for the sub-domains are split.
+     *
+     * @param domainCount the number of sub-domains (reduced to the
+     * number of sites if necessary).
+     *
+     * @param window the time window between synchronizations.
+     *
+     * @return a new domain-decomposition engine.
+     *
+     * @throws IllegalArgumentException if the model is coupled to a
+     * continuous drug field, the domain count is not positive, or the
+     * window is not positive.
+     */
+    public static DomainEngine create(EngineType type, ReactionModel model, RandomSource random, int domainCount, double window) {
+        if (model.getDrugField() != null)
+            throw new IllegalArgumentException("Domain decomposition requires discrete drug populations.");
+
+        if (domainCount < 1)
+            throw new IllegalArgumentException("Domain count must be positive.");
+
+        if (window <= 0.0)
+            throw new IllegalArgumentException("Synchronization window must be positive.");
+
+        DomainEngine engine = new DomainEngine(type, model, random, domainCount, window);
+        engine.refresh();
+
+        return engine;
+    }
+
+    @Override public boolean advance(double maxTime) {
+        if (time >= maxTime)
+            return false;
+
+        windowEnd = Math.min(time + window, maxTime);
+        long startCount = countDomainEvents();
+
+        runDomains();
+
+        if (recorder != null)
+            recorder.mark();
+
+        synchronize();
+
+        if (recorder != null)
+            recorder.lap(EnginePhase.SYNCHRONIZATION);
+
+        time = windowEnd;
+        eventCount += countDomainEvents() - startCount;
+
+        return time < maxTime;
+    }
+
+    private void runDomains() {
+        //
+        // The calling thread runs the first sub-domain itself while
+        // the pool runs the others.
+        //
+        for (int index = 1; index < tasks.length; ++index) {
+            tasks[index].reinitialize();
+            tasks[index].fork();
+        }
+
+        try {
+            domains[0].run(windowEnd);
+        }
+        finally {
+            for (int index = 1; index < tasks.length; ++index)
+                tasks[index].join();
+        }
+    }
+
+    private long countDomainEvents() {
+        long count = 0L;
+
+        for (Domain domain : domains)
+            count += domain.engine.getEventCount();
+
+        return count;
+    }
+
+    private void synchronize() {
+        for (Domain domain : domains)
+            domain.exportOwned();
+
+        for (Domain domain : domains)
+            domain.exportGhosts();
+
+        for (Domain domain : domains)
+            domain.importGhosts();
+    }
+
+    @Override public void setMetrics(EngineMetrics metrics) {
+        super.setMetrics(metrics);
+
+        for (Domain domain : domains)
+            domain.engine.setMetrics(metrics);
+    }
+
+    @Override public void refresh() {
+        for (Domain domain : domains)
+            domain.load();
+    }
+
+    @Override protected void update(int channel, boolean fired) {
+        //
+        // Events are fired by the sub-domain engines.
+        //
+    }
+
+    /**
+     * Returns the number of sub-domains.
+     *
+     * @return the number of sub-domains.
+     */
+    public int countDomains() {
+        return domains.length;
+    }
+
+    private final class DomainTask extends RecursiveAction {
+        private final Domain domain;
+
+        DomainTask(Domain domain) {
+            this.domain = domain;
+        }
+
+        @Override protected void compute() {
+            domain.run(windowEnd);
+        }
+    }
+
+    private final class Domain {
+        // Global indexes of the owned sites followed by the ghosts.
+        private final int[] sites;
+        private final int ownedCount;
+
+        private final PopulationStore local;
+        private final OccupancyIndex occupancy;
+        private final SiteGraph reverse;
+        private final ResistEngine engine;
+
+        // Ghost populations as of the last synchronization.
+        private final int[][] baseline;
+
+        // Owned sites whose populations differ from the global store
+        // at the end of a window.
+        private int[] changed;
+        private int changedCount;
+
+        Domain(EngineType type, int index, int lower, int upper, SplittableRandom stream, int[] ghostIndexes) {
+            this.ownedCount = upper - lower;
+            this.sites = mapSites(index, lower, upper, ghostIndexes);
+            this.local = ArrayPopulationStore.create(sites.length);
+            this.baseline = new int[sites.length - ownedCount][AgentType.COUNT];
+            this.changed = new int[Math.min(ownedCount, 64)];
+
+            SiteGraph neighbors = mapNeighbors(index, ghostIndexes);
+
+            // Clears the ghost layer for the next sub-domain.
+            for (int k = ownedCount; k < sites.length; ++k)
+                ghostIndexes[sites[k]] = -1;
+
+            ReactionModel localModel =
+                ReactionModel.create(model.getParam(), local, neighbors, ownedCount);
+
+            this.occupancy = localModel.getOccupancy();
+            this.reverse = localModel.getReverseNeighborGraph();
+            this.engine = createExact(type, localModel, stream::nextDouble);
+        }
+
+        private int[] mapSites(int index, int lower, int upper, int[] ghostIndexes) {
+            int[] mapped = new int[upper - lower];
+            int count = 0;
+
+            for (int site = lower; site < upper; ++site)
+                mapped[count++] = site;
+
+            SiteGraph neighbors = model.getNeighborGraph();
+
+            for (int site = lower; site < upper; ++site) {
+                for (int edge = neighbors.offset(site); edge < neighbors.offset(site + 1); ++edge) {
+                    int neighbor = neighbors.target(edge);
+
+                    if (owners[neighbor] != index && ghostIndexes[neighbor] < 0) {
+                        if (count == mapped.length)
+                            mapped = Arrays.copyOf(mapped, 2 * count);
+
+                        ghostIndexes[neighbor] = count;
+                        mapped[count++] = neighbor;
+                    }
+                }
+            }
+
+            return Arrays.copyOf(mapped, count);
+        }
+
+        private SiteGraph mapNeighbors(int index, int[] ghostIndexes) {
+            SiteGraph global = model.getNeighborGraph();
+
+            // Ghost sites never react, so they need no neighbors.
+            int[] offsets = new int[sites.length + 1];
+
+            for (int k = 0; k < ownedCount; ++k)
+                offsets[k + 1] = offsets[k] + global.degree(sites[k]);
+
+            Arrays.fill(offsets, ownedCount + 1, offsets.length, offsets[ownedCount]);
+
+            int[] targets = new int[offsets[ownedCount]];
+            int edge = 0;
+
+            for (int k = 0; k < ownedCount; ++k) {
+                for (int j = global.offset(sites[k]); j < global.offset(sites[k] + 1); ++j) {
+                    int neighbor = global.target(j);
+
+                    if (owners[neighbor] == index)
+                        targets[edge++] = localIndexes[neighbor];
+                    else
+                        targets[edge++] = ghostIndexes[neighbor];
+                }
+            }
+
+            return SiteGraph.create(offsets, targets);
+        }
+
+        void load() {
+            for (int k = 0; k < sites.length; ++k)
+                for (int type = 0; type < AgentType.COUNT; ++type)
+                    local.setCount(k, type, population.getCount(sites[k], type));
+
+            recordBaseline();
+
+            engine.time = time;
+            engine.refresh();
+        }
+
+        void run(double windowEnd) {
+            engine.run(windowEnd);
+
+            // The global store is not written until every sub-domain
+            // has finished the window, so it may be read concurrently.
+            changedCount = 0;
+
+            for (int k = 0; k < ownedCount; ++k) {
+                for (int type = 0; type < AgentType.COUNT; ++type) {
+                    if (local.getCount(k, type) != population.getCount(sites[k], type)) {
+                        if (changedCount == changed.length)
+                            changed = Arrays.copyOf(changed, Math.max(1, 2 * changedCount));
+
+                        changed[changedCount++] = k;
+                        break;
+                    }
+                }
+            }
+        }
+
+        void exportOwned() {
+            for (int j = 0; j < changedCount; ++j) {
+                int k = changed[j];
+
+                for (int type = 0; type < AgentType.COUNT; ++type)
+                    population.setCount(sites[k], type, local.getCount(k, type));
+            }
+        }
+
+        void exportGhosts() {
+            for (int k = ownedCount; k < sites.length; ++k) {
+                int site = sites[k];
+                Domain owner = domains[owners[site]];
+
+                for (int type = 0; type < AgentType.COUNT; ++type) {
+                    int delta = local.getCount(k, type) - baseline[k - ownedCount][type];
+
+                    if (delta != 0) {
+                        int index = localIndexes[site];
+                        boolean wasFull = owner.occupancy.isFull(index);
+
+                        population.addCount(site, type, delta);
+                        owner.local.addCount(index, type, delta);
+                        owner.engine.update(index, false);
+                        owner.updateFilled(index, wasFull);
+                    }
+                }
+            }
+        }
+
+        void importGhosts() {
+            for (int k = ownedCount; k < sites.length; ++k) {
+                boolean wasFull = occupancy.isFull(k);
+
+                for (int type = 0; type < AgentType.COUNT; ++type)
+                    local.setCount(k, type, population.getCount(sites[k], type));
+
+                updateFilled(k, wasFull);
+            }
+
+            recordBaseline();
+        }
+
+        private void updateFilled(int k, boolean wasFull) {
+            //
+            // The migration propensities of the owned sites next to a
+            // site that has filled or freed room have changed.
+            //
+            if (occupancy.isFull(k) == wasFull)
+                return;
+
+            for (int edge = reverse.offset(k); edge < reverse.offset(k + 1); ++edge)
+                if (reverse.target(edge) < ownedCount)
+                    engine.update(reverse.target(edge), false);
+        }
+
+        private void recordBaseline() {
+            for (int k = ownedCount; k < sites.length; ++k)
+                for (int type = 0; type < AgentType.COUNT; ++type)
+                    baseline[k - ownedCount][type] = local.getCount(k, type);
+        }
+    }
+}
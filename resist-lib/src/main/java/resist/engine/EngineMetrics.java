@@ -0,0 +1,71 @@
+
+package resist.engine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import resist.system.ProcType;
+
+/**
+ * Collects performance metrics from the event loop of a simulation:
+ * the number of events of each process type, the mean number of
+ * channel updates per event (the dependency fan-out), and the
+ * wall-clock time spent in each {@link EnginePhase}.
+ *
+ * <p>Metrics are collected only while attached to an engine (see
+ * {@link ResistEngine#setMetrics(EngineMetrics)}); a detached engine
+ * pays one null test per event.  Each engine thread writes its own
+ * recorder, so collection requires no locking, and {@link
+ * #snapshot()} may be called at any time from any thread (from a
+ * monitoring thread, for example).  The times of the per-event phases
+ * are estimated from a sample of the events.
+ */
+public final class EngineMetrics {
+    private final long startNanos = System.nanoTime();
+    private final List<MetricsRecorder> recorders = new CopyOnWriteArrayList<MetricsRecorder>();
+
+    private EngineMetrics() {
+    }
+
+    /**
+     * Creates a new, empty metrics collector.
+     *
+     * @return a new, empty metrics collector.
+     */
+    public static EngineMetrics create() {
+        return new EngineMetrics();
+    }
+
+    MetricsRecorder createRecorder() {
+        MetricsRecorder recorder = new MetricsRecorder();
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * Captures the metrics collected so far.
+     *
+     * @return an immutable snapshot of the metrics collected since
+     * this collector was created.
+     */
+    public MetricsSnapshot snapshot() {
+        long[] processEvents = new long[ProcType.values().length];
+        long[] phaseNanos = new long[EnginePhase.COUNT];
+
+        long firedEvents = 0L;
+        long channelUpdates = 0L;
+
+        for (MetricsRecorder recorder : recorders) {
+            for (int index = 0; index < processEvents.length; ++index)
+                processEvents[index] += recorder.getProcessEvents(index);
+
+            for (int index = 0; index < phaseNanos.length; ++index)
+                phaseNanos[index] += recorder.getPhaseNanos(index);
+
+            firedEvents += recorder.getFiredEvents();
+            channelUpdates += recorder.getChannelUpdates();
+        }
+
+        return new MetricsSnapshot(System.nanoTime() - startNanos, processEvents, phaseNanos, firedEvents, channelUpdates);
+    }
+}
@@ -0,0 +1,48 @@
+
+package resist.engine;
+
+/**
+ * Enumerates the phases of the event loop whose wall-clock time is
+ * measured by {@link EngineMetrics}.
+ */
+public enum EnginePhase {
+    /**
+     * The selection of the next event channel and event time.
+     */
+    SELECTION,
+
+    /**
+     * The execution of a selected event (the change to the site
+     * populations).
+     */
+    EXECUTION,
+
+    /**
+     * The recomputation of the channel propensities changed by an
+     * event or leap.
+     */
+    UPDATE,
+
+    /**
+     * The selection of a leap and the drawing, validation, and
+     * application of its events (tau-leaping only).
+     */
+    LEAP,
+
+    /**
+     * The integration of a continuous drug field (hybrid engines
+     * only).
+     */
+    FIELD,
+
+    /**
+     * The exchange of boundary populations between sub-domains
+     * (domain-decomposition engines only).
+     */
+    SYNCHRONIZATION;
+
+    /**
+     * The number of enumerated phases.
+     */
+    public static final int COUNT = values().length;
+}
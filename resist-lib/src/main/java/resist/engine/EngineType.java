@@ -0,0 +1,33 @@
+
+package resist.engine;
+
+/**
+ * Enumerates the event engines available to drive a simulation.
+ */
+public enum EngineType {
+    /**
+     * The direct method of Gillespie: each event is selected by a
+     * linear search over the site propensities.
+     */
+    DIRECT,
+
+    /**
+     * The next-reaction method of Gibson and Bruck: putative firing
+     * times for the active sites are kept in an indexed priority
+     * queue.
+     */
+    NEXT_REACTION,
+
+    /**
+     * The composition-rejection method: active channels are grouped
+     * by the binary exponent of their propensity, and the channel to
+     * fire is selected by rejection sampling within a group.
+     */
+    COMPOSITION_REJECTION,
+
+    /**
+     * Approximate tau-leaping: batches of Poisson-distributed events
+     * fire in each leap, with exact steps for critical channels.
+     */
+    TAU_LEAP;
+}
@@ -0,0 +1,28 @@
+
+package resist.engine;
+
+import java.util.Arrays;
+
+/**
+ * Stores channel propensities in a primitive array on the Java heap.
+ */
+final class HeapPropensityStore implements PropensityStore {
+    private double[] propensities;
+
+    HeapPropensityStore(int channelCount) {
+        this.propensities = new double[channelCount];
+    }
+
+    @Override public double get(int channel) {
+        return propensities[channel];
+    }
+
+    @Override public void set(int channel, double propensity) {
+        propensities[channel] = propensity;
+    }
+
+    @Override public void grow(int channelCount) {
+        if (channelCount > propensities.length)
+            propensities = Arrays.copyOf(propensities, Math.max(channelCount, 2 * propensities.length));
+    }
+}
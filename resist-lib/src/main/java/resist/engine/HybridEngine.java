@@ -0,0 +1,137 @@
+
+package resist.engine;
+
+import resist.agent.CellType;
+import resist.random.RandomSource;
+import resist.system.DrugField;
+import resist.system.PopulationStore;
+import resist.system.ReactionModel;
+
+/**
+ * Couples a deterministic drug field to a stochastic engine for the
+ * cellular processes by Strang operator splitting.
+ *
+ * <p>Each splitting step of length {@code h} advances the drug field
+ * by {@code h/2} with the cell populations held fixed, runs the
+ * stochastic engine for time {@code h} with the drug concentrations
+ * held fixed, and then advances the drug field by another {@code
+ * h/2}.  Drug diffusion, decay, and uptake therefore never appear as
+ * discrete events; only cell birth, death, migration, mutation, and
+ * drug-induced cell death remain in the event queue.
+ *
+ * <p>Each call to {@link #advance(double)} runs whole splitting steps
+ * until at least one cellular event has fired (or the maximum time is
+ * reached), so it may execute many events.
+ *
+ * <p>The splitting error is second order in the step length but is
+ * proportional to the rate at which the drug kills cells, so the step
+ * should be short compared with the lifetime of a cell at the peak
+ * drug concentration.
+ */
+public final class HybridEngine extends ResistEngine {
+    private final ResistEngine cellEngine;
+    private final DrugField drugField;
+    private final PopulationStore population;
+    private final double splitStep;
+
+    HybridEngine(ReactionModel model, RandomSource random, ResistEngine cellEngine) {
+        super(model, random);
+
+        this.cellEngine = cellEngine;
+        this.drugField = model.getDrugField();
+        this.population = model.getPopulation();
+        this.splitStep = model.getParam().getSplitStep();
+    }
+
+    @Override public boolean advance(double maxTime) {
+        //
+        // Splitting steps in which no cellular event fires are
+        // repeated, so that each call executes at least one event or
+        // reaches the maximum time.  Without cells no event can ever
+        // fire, so an unbounded run ends at once.
+        //
+        long startCount = cellEngine.getEventCount();
+
+        while (time < maxTime) {
+            if (maxTime == Double.POSITIVE_INFINITY && countCells() == 0L) {
+                time = maxTime;
+                break;
+            }
+
+            step(Math.min(splitStep, maxTime - time));
+
+            if (cellEngine.getEventCount() > startCount)
+                return true;
+        }
+
+        return false;
+    }
+
+    private void step(double step) {
+        long startCount = cellEngine.getEventCount();
+
+        startField();
+        drugField.advance(0.5 * step, population);
+        endField();
+
+        cellEngine.time = time;
+        cellEngine.refresh();
+        cellEngine.run(time + step);
+
+        startField();
+        drugField.advance(0.5 * step, population);
+        drugField.publish(population);
+        endField();
+
+        time += step;
+        eventCount += cellEngine.getEventCount() - startCount;
+    }
+
+    private long countCells() {
+        long count = 0L;
+
+        for (int type = 0; type < CellType.COUNT; ++type)
+            count += population.getTotal(type);
+
+        return count;
+    }
+
+    private void startField() {
+        if (recorder != null)
+            recorder.mark();
+    }
+
+    private void endField() {
+        if (recorder != null)
+            recorder.lap(EnginePhase.FIELD);
+    }
+
+    @Override public void setMetrics(EngineMetrics metrics) {
+        super.setMetrics(metrics);
+        cellEngine.setMetrics(metrics);
+    }
+
+    @Override public void refresh() {
+        //
+        // The drug field must be loaded from the population store
+        // before the cellular engine computes its propensities.
+        //
+        drugField.load(population);
+        cellEngine.refresh();
+    }
+
+    @Override protected void update(int channel, boolean fired) {
+        //
+        // Events are fired by the cellular engine.
+        //
+    }
+
+    /**
+     * Returns the stochastic engine for the cellular processes.
+     *
+     * @return the stochastic engine for the cellular processes.
+     */
+    public ResistEngine getCellEngine() {
+        return cellEngine;
+    }
+}
@@ -0,0 +1,251 @@
+
+package resist.engine;
+
+import java.util.Arrays;
+
+/**
+ * Maintains a priority queue of integer items keyed by real values,
+ * supporting constant-time lookup of the minimum and logarithmic-time
+ * insertion, removal, and key updates for arbitrary items.
+ *
+ * <p>The queue is a 4-ary heap: shallower than a binary heap, with
+ * the children of each node adjacent in memory.  Items must lie in
+ * the range {@code [0, capacity)}, which may be extended by {@link
+ * #grow(int)}; the heap itself grows with
+ * the number of items actually present, so the per-item cost of
+ * absent items is one {@code int} and one {@code double}.
+ */
+public final class IndexedHeap {
+    private int[] positions;
+    private double[] keys;
+
+    private int[] heap;
+    private int size;
+
+    private static final int ARITY = 4;
+    private static final int INITIAL_HEAP = 64;
+
+    private IndexedHeap(int capacity) {
+        this.positions = new int[capacity];
+        this.keys = new double[capacity];
+        this.heap = new int[Math.min(capacity, INITIAL_HEAP)];
+        this.size = 0;
+
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Creates a new empty heap.
+     *
+     * @param capacity the number of distinct items that may be
+     * stored in the heap.
+     *
+     * @return a new empty heap for items in the range {@code [0,
+     * capacity)}.
+     */
+    public static IndexedHeap create(int capacity) {
+        return new IndexedHeap(capacity);
+    }
+
+    /**
+     * Extends the range of items that may be stored in this heap.
+     *
+     * @param capacity the new number of distinct items (no fewer
+     * than the current number).
+     */
+    public void grow(int capacity) {
+        int oldCapacity = positions.length;
+
+        if (capacity <= oldCapacity)
+            return;
+
+        positions = Arrays.copyOf(positions, Math.max(capacity, 2 * oldCapacity));
+        keys = Arrays.copyOf(keys, positions.length);
+
+        Arrays.fill(positions, oldCapacity, positions.length, -1);
+
+        if (heap.length == 0)
+            heap = new int[Math.min(capacity, INITIAL_HEAP)];
+    }
+
+    /**
+     * Removes all items from this heap.
+     */
+    public void clear() {
+        for (int k = 0; k < size; ++k)
+            positions[heap[k]] = -1;
+
+        size = 0;
+    }
+
+    /**
+     * Identifies items in this heap.
+     *
+     * @param item the item of interest.
+     *
+     * @return {@code true} iff this heap contains the specified item.
+     */
+    public boolean contains(int item) {
+        return positions[item] >= 0;
+    }
+
+    /**
+     * Returns the key of an item in this heap.
+     *
+     * @param item an item in this heap.
+     *
+     * @return the key of the specified item (undefined if the item is
+     * not in this heap).
+     */
+    public double getKey(int item) {
+        return keys[item];
+    }
+
+    /**
+     * Identifies empty heaps.
+     *
+     * @return {@code true} iff this heap contains no items.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the item with the minimum key.
+     *
+     * @return the item with the minimum key.
+     *
+     * @throws IllegalStateException if this heap is empty.
+     */
+    public int peekItem() {
+        if (size == 0)
+            throw new IllegalStateException("Empty heap.");
+
+        return heap[0];
+    }
+
+    /**
+     * Returns the minimum key in this heap.
+     *
+     * @return the minimum key in this heap.
+     *
+     * @throws IllegalStateException if this heap is empty.
+     */
+    public double peekKey() {
+        return keys[peekItem()];
+    }
+
+    /**
+     * Adds an item to this heap or changes the key of an item that is
+     * already present.
+     *
+     * @param item the item to add or update.
+     *
+     * @param key the new key for the item.
+     */
+    public void put(int item, double key) {
+        int pos = positions[item];
+
+        if (pos < 0) {
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, Math.min(positions.length, 2 * heap.length));
+
+            keys[item] = key;
+            siftUp(size++, item);
+        }
+        else {
+            double prev = keys[item];
+            keys[item] = key;
+
+            if (key < prev)
+                siftUp(pos, item);
+            else
+                siftDown(pos, item);
+        }
+    }
+
+    /**
+     * Removes an item from this heap (if it is present).
+     *
+     * @param item the item to remove.
+     *
+     * @return {@code true} iff the item was present.
+     */
+    public boolean remove(int item) {
+        int pos = positions[item];
+
+        if (pos < 0)
+            return false;
+
+        positions[item] = -1;
+        --size;
+
+        if (pos < size) {
+            int last = heap[size];
+
+            if (keys[last] < keys[item])
+                siftUp(pos, last);
+            else
+                siftDown(pos, last);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of items in this heap.
+     *
+     * @return the number of items in this heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void siftUp(int pos, int item) {
+        double key = keys[item];
+
+        while (pos > 0) {
+            int parentPos = (pos - 1) / ARITY;
+            int parent = heap[parentPos];
+
+            if (keys[parent] <= key)
+                break;
+
+            place(pos, parent);
+            pos = parentPos;
+        }
+
+        place(pos, item);
+    }
+
+    private void siftDown(int pos, int item) {
+        double key = keys[item];
+
+        while (true) {
+            int first = ARITY * pos + 1;
+
+            if (first >= size)
+                break;
+
+            int last = Math.min(first + ARITY, size);
+            int minPos = first;
+
+            for (int child = first + 1; child < last; ++child)
+                if (keys[heap[child]] < keys[heap[minPos]])
+                    minPos = child;
+
+            if (keys[heap[minPos]] >= key)
+                break;
+
+            place(pos, heap[minPos]);
+            pos = minPos;
+        }
+
+        place(pos, item);
+    }
+
+    private void place(int pos, int item) {
+        heap[pos] = item;
+        positions[item] = pos;
+    }
+}
@@ -0,0 +1,158 @@
+
+package resist.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import resist.system.ProcType;
+
+/**
+ * Accumulates the metrics of one engine; each recorder is written by
+ * a single thread and read by {@link EngineMetrics#snapshot()}.
+ *
+ * <p>The counters are written and read in opaque mode: a concurrent
+ * snapshot may lag the engine slightly, but it never sees a torn
+ * value, and it eventually sees every update, without the cost of a
+ * fence on every event.
+ *
+ * <p>The phases of the per-event loop (selection, execution, and
+ * update) are timed on one event in every {@link
+ * #TIMING_INTERVAL} and the measured times scaled up by that factor,
+ * so the clock is read at most four times per interval rather than
+ * four times per event; the coarser phases (leaps, field steps, and
+ * synchronization) are timed in full.
+ */
+final class MetricsRecorder {
+    private final long[] processEvents = new long[ProcType.values().length];
+    private final long[] phaseNanos = new long[EnginePhase.COUNT];
+
+    // The number of events fired one at a time and the number of
+    // channel updates that they triggered.
+    private long firedEvents = 0L;
+    private long channelUpdates = 0L;
+
+    // The start of the phase currently being timed.
+    private long mark = 0L;
+
+    // The number of events until the next timed event, and whether
+    // the current event is timed.
+    private int countdown = 1;
+    private boolean timing = false;
+
+    /**
+     * The number of events per timed event.
+     */
+    static final int TIMING_INTERVAL = 16;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle FIRED_EVENTS;
+    private static final VarHandle CHANNEL_UPDATES;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            FIRED_EVENTS = lookup.findVarHandle(MetricsRecorder.class, "firedEvents", long.class);
+            CHANNEL_UPDATES = lookup.findVarHandle(MetricsRecorder.class, "channelUpdates", long.class);
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private static void add(long[] array, int index, long delta) {
+        //
+        // Only the owning thread writes, so a plain read of its own
+        // value followed by an opaque write cannot lose an update.
+        //
+        LONGS.setOpaque(array, index, array[index] + delta);
+    }
+
+    /**
+     * Starts timing a coarse phase.
+     */
+    void mark() {
+        mark = System.nanoTime();
+    }
+
+    /**
+     * Ends the coarse phase currently being timed and starts the next
+     * one.
+     *
+     * @param phase the phase that has just ended.
+     */
+    void lap(EnginePhase phase) {
+        long now = System.nanoTime();
+        add(phaseNanos, phase.ordinal(), now - mark);
+        mark = now;
+    }
+
+    /**
+     * Starts the selection phase of an event, which is timed if it is
+     * the sampled event of its interval.
+     */
+    void startEvent() {
+        timing = --countdown == 0;
+
+        if (timing) {
+            countdown = TIMING_INTERVAL;
+            mark = System.nanoTime();
+        }
+    }
+
+    /**
+     * Ends a phase of the current event and starts the next one, if
+     * the event is being timed.
+     *
+     * @param phase the phase that has just ended.
+     */
+    void lapEvent(EnginePhase phase) {
+        if (!timing)
+            return;
+
+        long now = System.nanoTime();
+        add(phaseNanos, phase.ordinal(), TIMING_INTERVAL * (now - mark));
+        mark = now;
+    }
+
+    /**
+     * Records one event fired on its own.
+     *
+     * @param procType the process type of the event.
+     *
+     * @param updates the number of channels updated after the event.
+     */
+    void recordFired(ProcType procType, int updates) {
+        add(processEvents, procType.ordinal(), 1L);
+        FIRED_EVENTS.setOpaque(this, firedEvents + 1L);
+        CHANNEL_UPDATES.setOpaque(this, channelUpdates + updates);
+    }
+
+    /**
+     * Records a batch of events of one process type (executed in a
+     * leap).
+     *
+     * @param procType the process type of the events.
+     *
+     * @param events the number of events.
+     */
+    void recordBatch(ProcType procType, long events) {
+        add(processEvents, procType.ordinal(), events);
+    }
+
+    long getProcessEvents(int index) {
+        return (long) LONGS.getOpaque(processEvents, index);
+    }
+
+    long getPhaseNanos(int index) {
+        return (long) LONGS.getOpaque(phaseNanos, index);
+    }
+
+    long getFiredEvents() {
+        return (long) FIRED_EVENTS.getOpaque(this);
+    }
+
+    long getChannelUpdates() {
+        return (long) CHANNEL_UPDATES.getOpaque(this);
+    }
+}
@@ -0,0 +1,127 @@
+
+package resist.engine;
+
+import java.util.Arrays;
+
+import resist.system.ProcType;
+
+/**
+ * Records the metrics collected by an {@link EngineMetrics} instance
+ * at one moment.
+ */
+public final class MetricsSnapshot {
+    private final long elapsedNanos;
+    private final long[] processEvents;
+    private final long[] phaseNanos;
+    private final long firedEvents;
+    private final long channelUpdates;
+    private final long eventCount;
+
+    MetricsSnapshot(long elapsedNanos, long[] processEvents, long[] phaseNanos, long firedEvents, long channelUpdates) {
+        this.elapsedNanos = elapsedNanos;
+        this.processEvents = processEvents;
+        this.phaseNanos = phaseNanos;
+        this.firedEvents = firedEvents;
+        this.channelUpdates = channelUpdates;
+        this.eventCount = Arrays.stream(processEvents).sum();
+    }
+
+    /**
+     * Returns the wall-clock time elapsed between the creation of the
+     * metrics collector and this snapshot.
+     *
+     * @return the elapsed wall-clock time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the total number of events executed.
+     *
+     * @return the total number of events executed.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the number of events of one process type executed.
+     *
+     * @param procType the process type of interest.
+     *
+     * @return the number of events of the specified type executed.
+     */
+    public long getEventCount(ProcType procType) {
+        return processEvents[procType.ordinal()];
+    }
+
+    /**
+     * Returns the mean number of events executed per second of
+     * wall-clock time.
+     *
+     * @return the mean event rate since the metrics collector was
+     * created.
+     */
+    public double getEventRate() {
+        return rate(eventCount, elapsedNanos);
+    }
+
+    /**
+     * Returns the mean number of events executed per second of
+     * wall-clock time between an earlier snapshot and this one (for
+     * a monitor that polls at regular intervals).
+     *
+     * @param earlier an earlier snapshot of the same collector.
+     *
+     * @return the mean event rate between the two snapshots.
+     */
+    public double getEventRate(MetricsSnapshot earlier) {
+        return rate(eventCount - earlier.eventCount, elapsedNanos - earlier.elapsedNanos);
+    }
+
+    private static double rate(long events, long nanos) {
+        return nanos > 0L ? 1.0E+09 * events / nanos : 0.0;
+    }
+
+    /**
+     * Returns the mean number of channels updated after each event
+     * fired on its own (events executed in a leap are excluded).
+     *
+     * @return the mean dependency fan-out, or zero if no events have
+     * been fired.
+     */
+    public double getMeanFanOut() {
+        return firedEvents > 0L ? (double) channelUpdates / firedEvents : 0.0;
+    }
+
+    /**
+     * Returns the wall-clock time spent in one phase of the event
+     * loop, summed over all engine threads.  The times of the
+     * selection, execution, and update phases of events fired one at
+     * a time are estimated from a sample of the events.
+     *
+     * @param phase the phase of interest.
+     *
+     * @return the time spent in the specified phase in nanoseconds.
+     */
+    public long getPhaseNanos(EnginePhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    @Override public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(String.format("MetricsSnapshot(events = %d, rate = %.1f/s, fanOut = %.2f",
+                                     eventCount, getEventRate(), getMeanFanOut()));
+
+        for (ProcType procType : ProcType.values())
+            builder.append(String.format(", %s = %d", procType, getEventCount(procType)));
+
+        for (EnginePhase phase : EnginePhase.values())
+            builder.append(String.format(", %s = %.3fs", phase, 1.0E-09 * getPhaseNanos(phase)));
+
+        builder.append(")");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,82 @@
+
+package resist.engine;
+
+import resist.random.RandomSource;
+import resist.system.ReactionModel;
+
+/**
+ * Implements the next-reaction method of Gibson and Bruck, with the
+ * lattice sites as event channels (the next-subvolume method).
+ *
+ * <p>Each active channel holds a putative firing time in an {@link
+ * IndexedHeap}; the channel with the earliest time fires next.  After
+ * an event, only the channels for the sites changed by the event are
+ * updated: the channel that fired draws a new exponential waiting
+ * time, and the remaining waiting times of the other changed channels
+ * are rescaled by the ratio of their old and new propensities, so
+ * that each event consumes a single exponential deviate and costs
+ * {@code O(log n)} time in the number {@code n} of active channels.
+ */
+public final class NextReactionEngine extends ResistEngine {
+    private final PropensityStore propensities;
+    private final IndexedHeap queue;
+
+    NextReactionEngine(ReactionModel model, RandomSource random) {
+        super(model, random);
+
+        this.propensities = PropensityStore.create(channelCount, model.getParam().getStateBackend());
+        this.queue = IndexedHeap.create(channelCount);
+    }
+
+    @Override protected void grow(int channelCount) {
+        propensities.grow(channelCount);
+        queue.grow(channelCount);
+        super.grow(channelCount);
+    }
+
+    @Override public boolean advance(double maxTime) {
+        startSelection();
+
+        if (queue.isEmpty() || queue.peekKey() > maxTime) {
+            time = maxTime;
+            return false;
+        }
+
+        int channel = queue.peekItem();
+
+        time = queue.peekKey();
+        fire(channel, propensities.get(channel));
+
+        return true;
+    }
+
+    @Override public void refresh() {
+        queue.clear();
+
+        for (int channel = 0; channel < channelCount; ++channel) {
+            double propensity = model.sitePropensity(channel);
+            propensities.set(channel, propensity);
+
+            if (propensity > 0.0)
+                queue.put(channel, time + random.nextExponential(propensity));
+        }
+    }
+
+    @Override double getChannelPropensity(int channel) {
+        return propensities.get(channel);
+    }
+
+    @Override protected void update(int channel, boolean fired) {
+        double oldPropensity = propensities.get(channel);
+        double newPropensity = model.sitePropensity(channel);
+
+        propensities.set(channel, newPropensity);
+
+        if (newPropensity <= 0.0)
+            queue.remove(channel);
+        else if (fired || oldPropensity <= 0.0)
+            queue.put(channel, time + random.nextExponential(newPropensity));
+        else if (newPropensity != oldPropensity)
+            queue.put(channel, time + (oldPropensity / newPropensity) * (queue.getKey(channel) - time));
+    }
+}
@@ -0,0 +1,37 @@
+
+package resist.engine;
+
+import resist.system.OffHeapMemory;
+
+/**
+ * Stores channel propensities in direct memory outside the Java heap.
+ */
+final class OffHeapPropensityStore implements PropensityStore {
+    private OffHeapMemory propensities;
+
+    OffHeapPropensityStore(int channelCount) {
+        this.propensities = OffHeapMemory.allocate((long) Double.BYTES * channelCount);
+    }
+
+    @Override public double get(int channel) {
+        return propensities.getDouble(channel);
+    }
+
+    @Override public void set(int channel, double propensity) {
+        propensities.setDouble(channel, propensity);
+    }
+
+    @Override public void grow(int channelCount) {
+        long capacity = propensities.byteSize() / Double.BYTES;
+
+        if (channelCount <= capacity)
+            return;
+
+        OffHeapMemory grown = OffHeapMemory.allocate((long) Double.BYTES * Math.max(channelCount, 2 * capacity));
+
+        for (long channel = 0; channel < capacity; ++channel)
+            grown.setDouble(channel, propensities.getDouble(channel));
+
+        propensities = grown;
+    }
+}
@@ -0,0 +1,63 @@
+
+package resist.engine;
+
+import resist.system.StateBackend;
+
+/**
+ * Stores the current propensity of each event channel.
+ */
+interface PropensityStore {
+    /**
+     * Returns the propensity of a channel.
+     *
+     * @param channel the index of the channel.
+     *
+     * @return the propensity of the specified channel.
+     */
+    public abstract double get(int channel);
+
+    /**
+     * Assigns the propensity of a channel.
+     *
+     * @param channel the index of the channel.
+     *
+     * @param propensity the new propensity of the channel.
+     */
+    public abstract void set(int channel, double propensity);
+
+    /**
+     * Extends this store over additional channels with zero
+     * propensity.
+     *
+     * @param channelCount the new number of channels (no fewer than
+     * the current number).
+     */
+    public abstract void grow(int channelCount);
+
+    /**
+     * Creates a new store with zero propensity in every channel.
+     *
+     * @param channelCount the number of channels.
+     *
+     * @param backend the storage backend for the propensities.
+     *
+     * @return a new store for the specified number of channels.
+     */
+    public static PropensityStore create(int channelCount, StateBackend backend) {
+        switch (backend) {
+        case HEAP:
+            return new HeapPropensityStore(channelCount);
+
+        case DIRECT:
+        case MAPPED:
+            //
+            // Propensities are recomputed from the population counts
+            // when a system is restored, so they are never mapped.
+            //
+            return new OffHeapPropensityStore(channelCount);
+
+        default:
+            throw new IllegalStateException("Unknown state backend.");
+        }
+    }
+}
@@ -0,0 +1,317 @@
+
+package resist.engine;
+
+import resist.random.RandomSource;
+import resist.system.ProcType;
+import resist.system.ReactionModel;
+import resist.system.ResistParam;
+import resist.system.SiteReaction;
+
+/**
+ * Selects and executes the reaction events of a stochastic simulation
+ * and advances the simulation clock.
+ *
+ * <p>Engines treat each lattice site as one event channel whose
+ * propensity is given by {@link ReactionModel#sitePropensity(int)}.
+ * Subclasses implement the channel selection strategy; this base
+ * class fires the selected event and dispatches the channel updates
+ * for the sites changed by the event.
+ */
+public abstract class ResistEngine {
+    /**
+     * The reaction model that defines the channel propensities.
+     */
+    protected final ReactionModel model;
+
+    /**
+     * The source of randomness for event selection.
+     */
+    protected final RandomSource random;
+
+    /**
+     * The number of event channels (lattice sites), which grows with
+     * a sparse lattice.
+     */
+    protected int channelCount;
+
+    /**
+     * The current simulation time.
+     */
+    protected double time = 0.0;
+
+    /**
+     * The number of events executed (including rejected events).
+     */
+    protected long eventCount = 0L;
+
+    private final int[] touched;
+
+    // The recorder for the performance metrics of this engine, or
+    // null if metrics are not being collected.
+    MetricsRecorder recorder = null;
+
+    private static final ProcType[] procTypes = mapProcTypes();
+
+    private static ProcType[] mapProcTypes() {
+        ProcType[] procTypes = new ProcType[SiteReaction.COUNT];
+
+        for (SiteReaction reaction : SiteReaction.viewAll())
+            procTypes[reaction.getIndex()] = reaction.getProcType();
+
+        return procTypes;
+    }
+
+    /**
+     * Creates a new engine for a given reaction model.
+     *
+     * @param model the reaction model that defines the channel
+     * propensities.
+     *
+     * @param random the source of randomness for event selection.
+     */
+    protected ResistEngine(ReactionModel model, RandomSource random) {
+        this.model = model;
+        this.random = random;
+        this.channelCount = model.countChannels();
+        this.touched = new int[model.getMaxTouched()];
+    }
+
+    /**
+     * Creates a new engine of a given type; the channel propensities
+     * are computed from the current site populations.  If the model
+     * is coupled to a continuous drug field, the engine of the given
+     * type simulates the cellular processes within a {@link
+     * HybridEngine}; if the parameters specify more than one
+     * sub-domain, engines of the given type simulate the sub-domains
+     * within a {@link DomainEngine}.
+     *
+     * @param type the enumerated engine type.
+     *
+     * @param model the reaction model that defines the channel
+     * propensities.
+     *
+     * @param random the source of randomness for event selection.
+     *
+     * @return a new engine of the specified type.
+     */
+    public static ResistEngine create(EngineType type, ReactionModel model, RandomSource random) {
+        ResistParam param = model.getParam();
+
+        if (model.getLattice() != null && (type == EngineType.TAU_LEAP || param.getDomainCount() > 1))
+            throw new IllegalArgumentException("Sparse lattices require an exact, single-domain engine.");
+
+        if (param.getDomainCount() > 1)
+            return DomainEngine.create(type, model, random, param.getDomainCount(), param.getSyncWindow());
+
+        ResistEngine engine = createExact(type, model, random);
+
+        if (model.getDrugField() != null)
+            engine = new HybridEngine(model, random, engine);
+
+        engine.refresh();
+        return engine;
+    }
+
+    static ResistEngine createExact(EngineType type, ReactionModel model, RandomSource random) {
+        ResistEngine engine;
+
+        switch (type) {
+        case DIRECT:
+            engine = new DirectEngine(model, random);
+            break;
+
+        case NEXT_REACTION:
+            engine = new NextReactionEngine(model, random);
+            break;
+
+        case COMPOSITION_REJECTION:
+            engine = new CompositionRejectionEngine(model, random);
+            break;
+
+        case TAU_LEAP:
+            engine = new TauLeapEngine(model, random);
+            break;
+
+        default:
+            throw new IllegalArgumentException("Unknown engine type.");
+        }
+
+        return engine;
+    }
+
+    /**
+     * Executes the next event if it occurs no later than a given
+     * time; otherwise advances the simulation clock to that time.
+     *
+     * @param maxTime the latest time at which an event may occur.
+     *
+     * @return {@code true} if an event was executed, {@code false} if
+     * the clock was advanced to {@code maxTime} instead.
+     */
+    public abstract boolean advance(double maxTime);
+
+    /**
+     * Recomputes the propensities of all channels from the current
+     * site populations; must be called after the populations have
+     * been changed outside of the event loop.
+     */
+    public abstract void refresh();
+
+    /**
+     * Moves the simulation clock and event count to a given point
+     * (when resuming a simulation from a checkpoint) and recomputes
+     * the propensities of all channels from the current site
+     * populations.  All pending event times are redrawn, which leaves
+     * the distribution of the future trajectory unchanged because the
+     * event processes are memoryless.
+     *
+     * @param time the simulation time at which to resume.
+     *
+     * @param eventCount the number of events executed before that
+     * time.
+     */
+    public void resume(double time, long eventCount) {
+        this.time = time;
+        this.eventCount = eventCount;
+
+        refresh();
+    }
+
+    /**
+     * Starts or stops collecting performance metrics.  Engines that
+     * delegate to other engines attach the delegates as well.
+     *
+     * @param metrics the collector of the metrics, or {@code null} to
+     * stop collecting metrics.
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.recorder = (metrics != null) ? metrics.createRecorder() : null;
+    }
+
+    /**
+     * Marks the start of the selection phase of an event (when
+     * collecting metrics); engines that fire events by {@link
+     * #fire(int, double)} call this at the start of {@link
+     * #advance(double)}.
+     */
+    protected final void startSelection() {
+        if (recorder != null)
+            recorder.startEvent();
+    }
+
+    /**
+     * Extends this engine over the channels appended to the model by
+     * a growing lattice; the new channels are empty, so they have zero
+     * propensity.  Subclasses that keep per-channel state must extend
+     * it and then call this method.
+     *
+     * @param channelCount the new number of channels.
+     */
+    protected void grow(int channelCount) {
+        this.channelCount = channelCount;
+    }
+
+    /**
+     * Returns the propensity that this engine holds for one channel,
+     * so that tests can compare it with the propensity computed afresh
+     * by the model.
+     *
+     * @param channel the index of the channel.
+     *
+     * @return the stored propensity of the channel ({@code NaN} for
+     * engines that do not keep per-channel propensities).
+     */
+    double getChannelPropensity(int channel) {
+        return Double.NaN;
+    }
+
+    /**
+     * Recomputes the propensity of one channel after an event.
+     *
+     * @param channel the index of the channel to update.
+     *
+     * @param fired {@code true} if the channel has just fired.
+     */
+    protected abstract void update(int channel, boolean fired);
+
+    /**
+     * Executes events until the simulation clock reaches a given
+     * time.
+     *
+     * @param maxTime the time at which to stop the simulation.
+     */
+    public void run(double maxTime) {
+        while (advance(maxTime))
+            ;
+    }
+
+    /**
+     * Fires one event in a selected channel and updates the channels
+     * whose propensities were changed by the event.
+     *
+     * @param channel the index of the selected channel.
+     *
+     * @param propensity the propensity of the selected channel.
+     */
+    protected void fire(int channel, double propensity) {
+        MetricsRecorder recorder = this.recorder;
+
+        if (recorder != null)
+            recorder.lapEvent(EnginePhase.SELECTION);
+
+        int reaction = model.selectReaction(channel, propensity * random.nextDouble());
+        int touchedCount = model.fire(channel, reaction, random, touched);
+
+        ++eventCount;
+
+        if (model.countChannels() != channelCount)
+            grow(model.countChannels());
+
+        if (recorder != null)
+            recorder.lapEvent(EnginePhase.EXECUTION);
+
+        int updateCount = 1;
+        update(channel, true);
+
+        // Ghost sites (owned by another sub-domain) are not channels.
+        for (int index = 0; index < touchedCount; ++index) {
+            if (touched[index] != channel && touched[index] < channelCount) {
+                update(touched[index], false);
+                ++updateCount;
+            }
+        }
+
+        if (recorder != null) {
+            recorder.lapEvent(EnginePhase.UPDATE);
+            recorder.recordFired(procTypes[reaction], updateCount);
+        }
+    }
+
+    /**
+     * Returns the number of events executed by this engine.
+     *
+     * @return the number of events executed by this engine
+     * (including rejected events).
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the reaction model driven by this engine.
+     *
+     * @return the reaction model driven by this engine.
+     */
+    public ReactionModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the current simulation time.
+     *
+     * @return the current simulation time.
+     */
+    public double getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,719 @@
+
+package resist.engine;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import jdk.jfr.EventType;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.random.CounterRandom;
+import resist.random.CounterStream;
+import resist.random.DiscreteDeviates;
+import resist.random.RandomSource;
+import resist.system.OccupancyIndex;
+import resist.system.PopulationStore;
+import resist.system.ProcType;
+import resist.system.ReactionModel;
+import resist.system.ResistParam;
+import resist.system.SiteGraph;
+import resist.system.SiteReaction;
+
+/**
+ * Implements approximate simulation by adaptive tau-leaping with
+ * exact treatment of critical reactions (Cao, Gillespie, and Petzold,
+ * J. Chem. Phys. 124, 044109, 2006).
+ *
+ * <p>Each leap fires a Poisson-distributed number of events for every
+ * non-critical (site, reaction) channel.  The leap size is chosen so
+ * that the expected relative change in every site population is
+ * bounded by {@code epsilon}.  A channel is critical if its reactant
+ * (or, for lethal uptake, its cellular partner) has fewer than {@code
+ * criticalCount} units, and all resistance mutations are critical so
+ * that resistance always emerges through exact events; at most one
+ * critical event fires per leap.  When the leap would be shorter than
+ * a few exact steps, the engine takes a batch of exact steps instead.
+ *
+ * <p>A leap that would drive any population negative is discarded and
+ * retried with half the leap size.  Births and immigration are limited
+ * by the capacity remaining at the start of the leap; migrants that
+ * are turned away remain at their source site.  As in the exact
+ * model, migrants move only to neighbors that are not full at the
+ * start of the leap.
+ *
+ * <p>When the source of randomness is a {@link CounterStream}, the
+ * Poisson deviates and transport shares for each site are drawn from
+ * streams keyed by the site index and the leap counter, so they do
+ * not depend on the order in which the sites are visited.  The
+ * Poisson deviates may then be drawn in parallel (see {@link
+ * ResistParam#isTauLeapParallel()}) with results identical to serial
+ * draws, bit for bit, for any number of threads.
+ */
+public final class TauLeapEngine extends ResistEngine {
+    private final double epsilon;
+    private final int criticalCount;
+    private final int siteCapacity;
+    private final PopulationStore population;
+    private final SiteGraph neighbors;
+    private final OccupancyIndex occupancy;
+    private final NextReactionEngine exactEngine;
+
+    // The number of sites, including any ghost sites beyond the
+    // channels, which receive transport events but never react.
+    private final int siteCount;
+
+    // Drug consumption is integrated by the continuous drug field,
+    // when one is coupled to the model.
+    private final boolean fieldCoupled;
+
+    private final ProcType[] procTypes = new ProcType[SiteReaction.COUNT];
+    private final int[] reactants = new int[SiteReaction.COUNT];
+    private final int[] partners = new int[SiteReaction.COUNT];
+    private final int[] products = new int[SiteReaction.COUNT];
+    private final boolean[] lethal = new boolean[SiteReaction.COUNT];
+
+    // Indexed by (site * SiteReaction.COUNT + reaction).
+    private final double[] propensities;
+    private final boolean[] critical;
+
+    // Indexed by (site * AgentType.COUNT + type), over all sites.
+    private final double[] drift;
+    private final double[] spread;
+    private final long[] decrements;
+    private final long[] increments;
+    private final long[] births;
+
+    // Remaining cell capacity at each site during a leap.
+    private final long[] room;
+
+    // Pending migrations (source, target, cell type, count), resolved
+    // against the target capacity after the leap has been validated.
+    private int[] migrationSources = new int[64];
+    private int[] migrationTargets = new int[64];
+    private int[] migrationTypes = new int[64];
+    private long[] migrationCounts = new long[64];
+    private int migrationCount;
+
+    private final int[] touched = new int[model.getMaxTouched()];
+
+    // The family of keyed streams (null unless the source of
+    // randomness is a counter stream), the events drawn for each
+    // channel, and the stream used for the transport shares.
+    private final CounterRandom counterRandom;
+    private final boolean parallel;
+    private final long[] channelEvents;
+    private final CounterStream transportStream;
+    private final CounterStream leapStream;
+
+    // The number of leaps attempted, which keys the leap streams.
+    private long leapCount = 0L;
+
+    // The number of events of each process type in the current leap
+    // (counted only when collecting metrics).
+    private final long[] procEvents = new long[ProcType.values().length];
+
+    private double totalPropensity;
+    private double criticalPropensity;
+
+    // Take exact steps when the leap would cover fewer than this many
+    // expected events.
+    private static final double EXACT_THRESHOLD = 10.0;
+
+    // The number of exact steps in each batch.
+    private static final int EXACT_STEPS = 100;
+
+    // The number of sites in each block of parallel leap draws.
+    private static final int LEAP_BLOCK = 1024;
+
+    // Leap events are allocated only while a recording enables them,
+    // so that leaping allocates nothing otherwise.
+    private static final EventType LEAP_EVENT_TYPE = EventType.getEventType(TauLeapEvent.class);
+
+    TauLeapEngine(ReactionModel model, RandomSource random) {
+        super(model, random);
+
+        ResistParam param = model.getParam();
+
+        this.epsilon = param.getTauLeapEpsilon();
+        this.criticalCount = param.getTauLeapCriticalCount();
+        this.siteCapacity = param.getSiteCapacity();
+        this.population = model.getPopulation();
+        this.neighbors = model.getNeighborGraph();
+        this.occupancy = model.getOccupancy();
+        this.exactEngine = new NextReactionEngine(model, random);
+        this.fieldCoupled = model.getDrugField() != null;
+        this.siteCount = model.countSites();
+
+        for (SiteReaction reaction : SiteReaction.viewAll()) {
+            int index = reaction.getIndex();
+
+            procTypes[index] = reaction.getProcType();
+            reactants[index] = reaction.getReactant().index();
+            partners[index] = reaction.getPartner() != null ? reaction.getPartner().index() : -1;
+            products[index] = reaction.getProduct() != null ? reaction.getProduct().index() : -1;
+            lethal[index] = reaction.isLethal();
+        }
+
+        this.propensities = new double[channelCount * SiteReaction.COUNT];
+        this.critical = new boolean[channelCount * SiteReaction.COUNT];
+
+        this.drift = new double[siteCount * AgentType.COUNT];
+        this.spread = new double[siteCount * AgentType.COUNT];
+        this.decrements = new long[siteCount * AgentType.COUNT];
+        this.increments = new long[siteCount * AgentType.COUNT];
+        this.births = new long[siteCount * AgentType.COUNT];
+
+        this.room = new long[siteCount];
+
+        this.parallel = param.isTauLeapParallel();
+
+        if (random instanceof CounterStream) {
+            this.counterRandom = ((CounterStream) random).getFamily();
+            this.channelEvents = new long[channelCount * SiteReaction.COUNT];
+            this.transportStream = counterRandom.stream();
+            this.leapStream = counterRandom.stream();
+        }
+        else if (parallel) {
+            throw new IllegalArgumentException("Parallel tau-leaping requires a counter-based random source.");
+        }
+        else {
+            this.counterRandom = null;
+            this.channelEvents = null;
+            this.transportStream = null;
+            this.leapStream = null;
+        }
+    }
+
+    @Override public boolean advance(double maxTime) {
+        if (recorder != null)
+            recorder.mark();
+
+        computePropensities();
+
+        if (recorder != null)
+            recorder.lap(EnginePhase.UPDATE);
+
+        if (totalPropensity <= 0.0) {
+            time = maxTime;
+            return false;
+        }
+
+        double leapTau = selectTau();
+
+        if (leapTau < EXACT_THRESHOLD / totalPropensity)
+            return exactSteps(maxTime);
+
+        double criticalTau =
+            criticalPropensity > 0.0 ? random.nextExponential(criticalPropensity) : Double.POSITIVE_INFINITY;
+
+        TauLeapEvent event = null;
+        int rejections = 0;
+
+        if (LEAP_EVENT_TYPE.isEnabled()) {
+            event = new TauLeapEvent();
+            event.begin();
+        }
+
+        while (true) {
+            boolean fireCritical = criticalTau <= leapTau;
+            double tau = Math.min(leapTau, criticalTau);
+
+            if (time + tau >= maxTime) {
+                tau = maxTime - time;
+                fireCritical = false;
+            }
+
+            long startCount = eventCount;
+
+            if (leap(tau)) {
+                if (fireCritical)
+                    fireCritical();
+
+                if (recorder != null)
+                    recordLeap();
+
+                if (event != null && event.shouldCommit()) {
+                    event.startTime = time;
+                    event.tau = tau;
+                    event.events = eventCount - startCount;
+                    event.rejections = rejections;
+                    event.commit();
+                }
+
+                time += tau;
+                return time < maxTime;
+            }
+
+            ++rejections;
+            leapTau = 0.5 * tau;
+
+            if (leapTau < EXACT_THRESHOLD / totalPropensity)
+                return exactSteps(maxTime);
+        }
+    }
+
+    private void recordLeap() {
+        for (ProcType procType : ProcType.values())
+            recorder.recordBatch(procType, procEvents[procType.ordinal()]);
+
+        recorder.lap(EnginePhase.LEAP);
+    }
+
+    private void computePropensities() {
+        totalPropensity = 0.0;
+        criticalPropensity = 0.0;
+
+        for (int site = 0; site < channelCount; ++site) {
+            int base = site * SiteReaction.COUNT;
+
+            for (int reaction = 0; reaction < SiteReaction.COUNT; ++reaction) {
+                double propensity = model.propensity(site, reaction);
+
+                propensities[base + reaction] = propensity;
+                critical[base + reaction] = propensity > 0.0 && isCritical(site, reaction);
+
+                totalPropensity += propensity;
+
+                if (critical[base + reaction])
+                    criticalPropensity += propensity;
+            }
+        }
+    }
+
+    private boolean isCritical(int site, int reaction) {
+        if (procTypes[reaction] == ProcType.RESISTANCE_MUTATION)
+            return true;
+
+        if (population.getCount(site, reactants[reaction]) < criticalCount)
+            return true;
+
+        return lethal[reaction] && population.getCount(site, partners[reaction]) < criticalCount;
+    }
+
+    private double selectTau() {
+        Arrays.fill(drift, 0.0);
+        Arrays.fill(spread, 0.0);
+
+        for (int site = 0; site < channelCount; ++site) {
+            int base = site * SiteReaction.COUNT;
+
+            for (int reaction = 0; reaction < SiteReaction.COUNT; ++reaction) {
+                int channel = base + reaction;
+                double propensity = propensities[channel];
+
+                if (propensity > 0.0 && !critical[channel])
+                    accumulateMoments(site, reaction, propensity);
+            }
+        }
+
+        double tau = Double.POSITIVE_INFINITY;
+
+        for (int site = 0; site < siteCount; ++site) {
+            for (int type = 0; type < AgentType.COUNT; ++type) {
+                int index = site * AgentType.COUNT + type;
+
+                if (spread[index] <= 0.0)
+                    continue;
+
+                // The highest order of reaction for every species is
+                // two (drug uptake), so the relative bound is epsilon
+                // divided by two.
+                double bound = Math.max(0.5 * epsilon * population.getCount(site, type), 1.0);
+
+                if (drift[index] != 0.0)
+                    tau = Math.min(tau, bound / Math.abs(drift[index]));
+
+                tau = Math.min(tau, bound * bound / spread[index]);
+            }
+        }
+
+        return tau;
+    }
+
+    private void accumulateMoments(int site, int reaction, double propensity) {
+        int reactant = reactants[reaction];
+
+        switch (procTypes[reaction]) {
+        case CELL_BIRTH:
+            accumulateMoment(site, reactant, 1.0, propensity);
+            break;
+
+        case CELL_DEATH:
+        case DRUG_DECAY:
+            accumulateMoment(site, reactant, -1.0, propensity);
+            break;
+
+        case RESISTANCE_MUTATION:
+            accumulateMoment(site, reactant, -1.0, propensity);
+            accumulateMoment(site, products[reaction], 1.0, propensity);
+            break;
+
+        case DRUG_UPTAKE:
+            if (!fieldCoupled)
+                accumulateMoment(site, reactant, -1.0, propensity);
+
+            if (lethal[reaction])
+                accumulateMoment(site, partners[reaction], -1.0, propensity);
+            break;
+
+        case CELL_MIGRATION:
+        case DRUG_DIFFUSION:
+            boolean migration = procTypes[reaction] == ProcType.CELL_MIGRATION;
+
+            int offset = neighbors.offset(site);
+            int degree = neighbors.degree(site);
+            double share = propensity / countDestinations(site, migration);
+
+            accumulateMoment(site, reactant, -1.0, propensity);
+
+            for (int edge = offset; edge < offset + degree; ++edge) {
+                int target = neighbors.target(edge);
+
+                if (!migration || !occupancy.isFull(target))
+                    accumulateMoment(target, reactant, 1.0, share);
+            }
+            break;
+
+        default:
+            throw new IllegalStateException("Unknown process type.");
+        }
+    }
+
+    private void accumulateMoment(int site, int type, double change, double propensity) {
+        int index = site * AgentType.COUNT + type;
+
+        drift[index] += change * propensity;
+        spread[index] += propensity;
+    }
+
+    private boolean leap(double tau) {
+        Arrays.fill(decrements, 0L);
+        Arrays.fill(increments, 0L);
+        Arrays.fill(births, 0L);
+
+        migrationCount = 0;
+
+        if (recorder != null)
+            Arrays.fill(procEvents, 0L);
+
+        long leapEvents = (counterRandom != null) ? drawKeyedLeap(tau) : drawLeap(tau);
+
+        if (!validateLeap())
+            return false;
+
+        applyLeap();
+        eventCount += leapEvents;
+
+        return true;
+    }
+
+    private long drawLeap(double tau) {
+        long leapEvents = 0L;
+
+        for (int site = 0; site < channelCount; ++site) {
+            int base = site * SiteReaction.COUNT;
+
+            for (int reaction = 0; reaction < SiteReaction.COUNT; ++reaction) {
+                int channel = base + reaction;
+
+                if (propensities[channel] <= 0.0 || critical[channel])
+                    continue;
+
+                long events = DiscreteDeviates.poisson(random, propensities[channel] * tau);
+
+                if (events > 0L) {
+                    drawEvents(site, reaction, events, random);
+                    leapEvents += events;
+                }
+            }
+        }
+
+        return leapEvents;
+    }
+
+    private long drawKeyedLeap(double tau) {
+        //
+        // Every attempt (including retries with a shorter leap) has
+        // its own counter: the even counter keys the Poisson deviates
+        // and the odd counter keys the transport shares.
+        //
+        long counter = 2L * leapCount++;
+        int blockCount = (channelCount + LEAP_BLOCK - 1) / LEAP_BLOCK;
+
+        if (parallel) {
+            IntStream.range(0, blockCount).parallel().forEach(block -> drawBlock(counterRandom.stream(), block, tau, counter));
+        }
+        else {
+            for (int block = 0; block < blockCount; ++block)
+                drawBlock(leapStream, block, tau, counter);
+        }
+
+        // The shared tallies are accumulated serially, in site order.
+        long leapEvents = 0L;
+
+        for (int site = 0; site < channelCount; ++site) {
+            int base = site * SiteReaction.COUNT;
+            transportStream.seek(site, counter + 1L);
+
+            for (int reaction = 0; reaction < SiteReaction.COUNT; ++reaction) {
+                long events = channelEvents[base + reaction];
+
+                if (events > 0L) {
+                    drawEvents(site, reaction, events, transportStream);
+                    leapEvents += events;
+                }
+            }
+        }
+
+        return leapEvents;
+    }
+
+    private void drawBlock(CounterStream stream, int block, double tau, long counter) {
+        int upper = Math.min(channelCount, (block + 1) * LEAP_BLOCK);
+
+        for (int site = block * LEAP_BLOCK; site < upper; ++site) {
+            int base = site * SiteReaction.COUNT;
+            stream.seek(site, counter);
+
+            for (int reaction = 0; reaction < SiteReaction.COUNT; ++reaction) {
+                int channel = base + reaction;
+
+                if (propensities[channel] <= 0.0 || critical[channel])
+                    channelEvents[channel] = 0L;
+                else
+                    channelEvents[channel] = DiscreteDeviates.poisson(stream, propensities[channel] * tau);
+            }
+        }
+    }
+
+    private void drawEvents(int site, int reaction, long events, RandomSource shares) {
+        if (recorder != null)
+            procEvents[procTypes[reaction].ordinal()] += events;
+
+        int reactant = reactants[reaction];
+        int index = site * AgentType.COUNT + reactant;
+
+        switch (procTypes[reaction]) {
+        case CELL_BIRTH:
+            births[index] += events;
+            break;
+
+        case CELL_DEATH:
+        case DRUG_DECAY:
+            decrements[index] += events;
+            break;
+
+        case RESISTANCE_MUTATION:
+            decrements[index] += events;
+            increments[site * AgentType.COUNT + products[reaction]] += events;
+            break;
+
+        case DRUG_UPTAKE:
+            if (!fieldCoupled)
+                decrements[index] += events;
+
+            if (lethal[reaction])
+                decrements[site * AgentType.COUNT + partners[reaction]] += events;
+            break;
+
+        case CELL_MIGRATION:
+        case DRUG_DIFFUSION:
+            decrements[index] += events;
+            distributeTransport(site, reactant, events, procTypes[reaction] == ProcType.CELL_MIGRATION, shares);
+            break;
+
+        default:
+            throw new IllegalStateException("Unknown process type.");
+        }
+    }
+
+    private int countDestinations(int site, boolean migration) {
+        //
+        // Migrants move only to the neighbors that had room at the
+        // start of the leap.
+        //
+        if (migration)
+            return neighbors.degree(site) - occupancy.countFullNeighbors(site);
+        else
+            return neighbors.degree(site);
+    }
+
+    private void distributeTransport(int site, int type, long events, boolean migration, RandomSource shares) {
+        int offset = neighbors.offset(site);
+        int degree = neighbors.degree(site);
+        int destinations = countDestinations(site, migration);
+        long remaining = events;
+
+        for (int edge = offset; edge < offset + degree && remaining > 0; ++edge) {
+            int neighbor = neighbors.target(edge);
+
+            if (migration && occupancy.isFull(neighbor))
+                continue;
+
+            long share;
+
+            if (destinations == 1)
+                share = remaining;
+            else
+                share = DiscreteDeviates.binomial(shares, remaining, 1.0 / destinations);
+
+            --destinations;
+
+            if (share == 0)
+                continue;
+
+            if (migration)
+                addMigration(site, neighbor, type, share);
+            else
+                increments[neighbor * AgentType.COUNT + type] += share;
+
+            remaining -= share;
+        }
+    }
+
+    private void addMigration(int source, int target, int type, long count) {
+        if (migrationCount == migrationSources.length) {
+            int capacity = 2 * migrationCount;
+
+            migrationSources = Arrays.copyOf(migrationSources, capacity);
+            migrationTargets = Arrays.copyOf(migrationTargets, capacity);
+            migrationTypes = Arrays.copyOf(migrationTypes, capacity);
+            migrationCounts = Arrays.copyOf(migrationCounts, capacity);
+        }
+
+        migrationSources[migrationCount] = source;
+        migrationTargets[migrationCount] = target;
+        migrationTypes[migrationCount] = type;
+        migrationCounts[migrationCount] = count;
+
+        ++migrationCount;
+    }
+
+    private boolean validateLeap() {
+        for (int site = 0; site < siteCount; ++site)
+            for (int type = 0; type < AgentType.COUNT; ++type)
+                if (decrements[site * AgentType.COUNT + type] > population.getCount(site, type))
+                    return false;
+
+        return true;
+    }
+
+    private void applyLeap() {
+        for (int site = 0; site < siteCount; ++site) {
+            room[site] = Math.max(0, siteCapacity - occupancy.countCells(site));
+            limitBirths(site);
+        }
+
+        for (int k = 0; k < migrationCount; ++k) {
+            int source = migrationSources[k];
+            int target = migrationTargets[k];
+            int type = migrationTypes[k];
+
+            long accepted = Math.min(migrationCounts[k], room[target]);
+            room[target] -= accepted;
+
+            increments[target * AgentType.COUNT + type] += accepted;
+            increments[source * AgentType.COUNT + type] += migrationCounts[k] - accepted;
+        }
+
+        for (int site = 0; site < siteCount; ++site) {
+            for (int type = 0; type < AgentType.COUNT; ++type) {
+                int index = site * AgentType.COUNT + type;
+                long change = increments[index] + births[index] - decrements[index];
+
+                if (change != 0L)
+                    population.addCount(site, type, Math.toIntExact(change));
+            }
+        }
+    }
+
+    private void limitBirths(int site) {
+        int base = site * AgentType.COUNT;
+        long total = 0L;
+
+        for (int type = 0; type < CellType.COUNT; ++type)
+            total += births[base + type];
+
+        if (total <= room[site]) {
+            room[site] -= total;
+            return;
+        }
+
+        // Accept a uniform random subset of the births that fits the
+        // remaining capacity; births into a full site are rejected in
+        // the exact model.
+        for (int type = 0; type < CellType.COUNT; ++type) {
+            long requested = births[base + type];
+            long accepted = DiscreteDeviates.hypergeometric(random, total, requested, room[site]);
+
+            births[base + type] = accepted;
+            room[site] -= accepted;
+            total -= requested;
+        }
+    }
+
+    private void fireCritical() {
+        double target = random.nextDouble() * criticalPropensity;
+        int selected = -1;
+
+        for (int channel = 0; channel < critical.length; ++channel) {
+            if (critical[channel]) {
+                selected = channel;
+                target -= propensities[channel];
+
+                if (target < 0.0)
+                    break;
+            }
+        }
+
+        int site = selected / SiteReaction.COUNT;
+        int reaction = selected % SiteReaction.COUNT;
+
+        // The populations have changed during the leap, so the
+        // critical reaction may no longer be possible.
+        if (model.propensity(site, reaction) > 0.0)
+            model.fire(site, reaction, random, touched);
+
+        ++eventCount;
+
+        if (recorder != null)
+            ++procEvents[procTypes[reaction].ordinal()];
+    }
+
+    private boolean exactSteps(double maxTime) {
+        if (recorder != null)
+            recorder.lap(EnginePhase.LEAP);
+
+        long startCount = exactEngine.getEventCount();
+
+        exactEngine.time = time;
+        exactEngine.refresh();
+
+        for (int step = 0; step < EXACT_STEPS; ++step)
+            if (!exactEngine.advance(maxTime))
+                break;
+
+        time = exactEngine.getTime();
+        eventCount += exactEngine.getEventCount() - startCount;
+
+        return time < maxTime;
+    }
+
+    @Override public void setMetrics(EngineMetrics metrics) {
+        super.setMetrics(metrics);
+        exactEngine.setMetrics(metrics);
+    }
+
+    @Override public void refresh() {
+        //
+        // Propensities are recomputed at the start of every leap.
+        //
+    }
+
+    @Override protected void update(int channel, boolean fired) {
+        //
+        // Leaps never fire events through the base class.
+        //
+    }
+}
@@ -0,0 +1,34 @@
+
+package resist.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Records one accepted leap of a {@link TauLeapEngine} in a Java
+ * Flight Recording; enabled with the {@code resist.TauLeap} event
+ * setting.
+ */
+@Name("resist.TauLeap")
+@Label("Tau Leap")
+@Category({ "Resist", "Engine" })
+@Description("An accepted leap of the tau-leaping engine")
+final class TauLeapEvent extends jdk.jfr.Event {
+    @Label("Start Time")
+    @Description("The simulation time at the start of the leap")
+    double startTime;
+
+    @Label("Leap Length")
+    @Description("The simulated time covered by the leap")
+    double tau;
+
+    @Label("Events")
+    @Description("The number of events executed in the leap")
+    long events;
+
+    @Label("Rejections")
+    @Description("The number of leaps rejected (and halved) before this one was accepted")
+    int rejections;
+}
@@ -0,0 +1,215 @@
+
+package resist.ensemble;
+
+import resist.agent.CellType;
+import resist.system.PopulationAggregates;
+import resist.system.ResistSystem;
+
+/**
+ * Summarizes the outcomes of an {@link AdaptiveEstimator} run: the
+ * probabilities of extinction and of resistance, the time to
+ * resistance, and the final composition of the surviving tumors, each
+ * with the statistics for its confidence interval.
+ *
+ * <p>The accumulators returned by the accessors are those of the
+ * estimate itself; callers must not add observations to them.
+ */
+public final class AdaptiveEstimate {
+    private final RunningMean extinction = RunningMean.create();
+    private final RunningMean resistance = RunningMean.create();
+    private final RunningMean resistanceTime = RunningMean.create();
+    private final RunningMean[] composition = new RunningMean[CellType.COUNT];
+
+    private int waveCount = 0;
+    private long eventCount = 0L;
+    private Termination termination = null;
+
+    /**
+     * Describes why an adaptive ensemble stopped.
+     */
+    public enum Termination {
+        /**
+         * Every confidence interval reached its target width.
+         */
+        CONVERGED,
+
+        /**
+         * The maximum number of replicates was reached.
+         */
+        REPLICATE_BUDGET,
+
+        /**
+         * The maximum number of events was reached.
+         */
+        EVENT_BUDGET,
+
+        /**
+         * The wall-clock budget was exhausted.
+         */
+        WALL_CLOCK;
+    }
+
+    AdaptiveEstimate() {
+        for (int k = 0; k < CellType.COUNT; ++k)
+            composition[k] = RunningMean.create();
+    }
+
+    void addWave(Outcome[] outcomes) {
+        for (Outcome outcome : outcomes)
+            add(outcome);
+
+        ++waveCount;
+    }
+
+    private void add(Outcome outcome) {
+        extinction.add(outcome.extinct ? 1.0 : 0.0);
+        resistance.add(Double.isNaN(outcome.resistanceTime) ? 0.0 : 1.0);
+
+        if (!Double.isNaN(outcome.resistanceTime))
+            resistanceTime.add(outcome.resistanceTime);
+
+        if (!outcome.extinct)
+            for (int k = 0; k < CellType.COUNT; ++k)
+                composition[k].add(outcome.fractions[k]);
+
+        eventCount += outcome.eventCount;
+    }
+
+    void terminate(Termination termination) {
+        this.termination = termination;
+    }
+
+    /**
+     * Returns the indicator of extinction (one for replicates in which
+     * the tumor was eradicated, zero otherwise), whose mean is the
+     * extinction probability.
+     *
+     * @return the extinction statistics over all replicates.
+     */
+    public RunningMean getExtinction() {
+        return extinction;
+    }
+
+    /**
+     * Returns the indicator of resistance (one for replicates in which
+     * a cell resistant to any drug appeared, zero otherwise), whose
+     * mean is the probability of resistance within the time horizon.
+     *
+     * @return the resistance statistics over all replicates.
+     */
+    public RunningMean getResistance() {
+        return resistance;
+    }
+
+    /**
+     * Returns the time at which the first resistant cell appeared,
+     * in the replicates in which one did.
+     *
+     * @return the time-to-resistance statistics over the replicates
+     * that developed resistance.
+     */
+    public RunningMean getResistanceTime() {
+        return resistanceTime;
+    }
+
+    /**
+     * Returns the fraction of cells of one type at the end of the
+     * replicates in which the tumor survived.
+     *
+     * @param type the cell type of interest.
+     *
+     * @return the final-fraction statistics over the surviving
+     * replicates.
+     */
+    public RunningMean getComposition(CellType type) {
+        return composition[type.index()];
+    }
+
+    /**
+     * Returns the number of replicates run.
+     *
+     * @return the number of replicates run.
+     */
+    public long countReplicates() {
+        return extinction.count();
+    }
+
+    /**
+     * Returns the number of waves run.
+     *
+     * @return the number of waves run.
+     */
+    public int countWaves() {
+        return waveCount;
+    }
+
+    /**
+     * Returns the total number of events executed in every replicate.
+     *
+     * @return the total number of events executed in every replicate.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the reason that the ensemble stopped.
+     *
+     * @return the reason that the ensemble stopped ({@code null} for
+     * the intermediate estimates delivered after each wave).
+     */
+    public Termination getTermination() {
+        return termination;
+    }
+
+    /**
+     * Identifies estimates whose confidence intervals all reached
+     * their target widths.
+     *
+     * @return {@code true} iff the ensemble stopped because it
+     * converged.
+     */
+    public boolean isConverged() {
+        return termination == Termination.CONVERGED;
+    }
+
+    @Override public String toString() {
+        return String.format("AdaptiveEstimate(replicates = %d, waves = %d, extinction = %g, resistance = %g, resistanceTime = %g, termination = %s)",
+                             countReplicates(), waveCount, extinction.mean(), resistance.mean(), resistanceTime.mean(), termination);
+    }
+
+    // The outcome of one replicate, captured on its worker thread.
+    static final class Outcome {
+        private final boolean extinct;
+        private final double resistanceTime;
+        private final double[] fractions;
+        private final long eventCount;
+
+        Outcome(ResistSystem system) {
+            PopulationAggregates aggregates = system.getAggregates();
+            long cellCount = aggregates.countCells();
+
+            this.extinct = cellCount == 0L;
+            this.resistanceTime = resistanceTime(aggregates);
+            this.fractions = new double[CellType.COUNT];
+            this.eventCount = system.getEventCount();
+
+            if (cellCount > 0L)
+                for (CellType type : CellType.values())
+                    fractions[type.index()] = (double) aggregates.getTotal(type) / cellCount;
+        }
+
+        // The first appearance of any resistant type (NaN if none has
+        // appeared).
+        private static double resistanceTime(PopulationAggregates aggregates) {
+            double time = Double.NaN;
+
+            for (CellType type : CellType.values())
+                if (!type.viewResistant().isEmpty() && aggregates.hasAppeared(type))
+                    if (Double.isNaN(time) || aggregates.getFirstHittingTime(type) < time)
+                        time = aggregates.getFirstHittingTime(type);
+
+            return time;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+
+package resist.ensemble;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import resist.agent.CellType;
+
+/**
+ * Sizes an ensemble by its convergence: replicates are run in waves,
+ * the outcome statistics are updated after each wave, and the
+ * ensemble stops as soon as every confidence interval is narrow
+ * enough or a compute budget runs out.
+ *
+ * <p>The tracked outcomes are the probabilities of extinction and of
+ * resistance, the time to resistance, and the final fraction of each
+ * cell type in the surviving tumors (see {@link AdaptiveEstimate}).
+ * The probabilities converge when the half-width of their confidence
+ * intervals falls to a target; the intervals are those of Agresti and
+ * Coull, which do not collapse to zero width when every replicate so
+ * far has the same outcome.  The cell-type fractions converge at the
+ * same absolute half-width, and the time to resistance at a half-width
+ * relative to its mean.  The conditional outcomes (the composition of
+ * surviving tumors, the time to resistance) impose no condition until
+ * they have been observed in at least two replicates; until then the
+ * probability intervals bound how rarely they occur.
+ *
+ * <p>Wave {@code k} runs the next block of replicate indexes of the
+ * underlying {@link EnsembleRunner}, and the outcomes of each wave
+ * are added in index order, so the estimate and the number of waves
+ * are reproducible from the master seed (unless the wall-clock budget
+ * intervenes).  Waves of a few times the thread count keep every
+ * worker busy while limiting the replicates run past convergence.
+ */
+public final class AdaptiveEstimator {
+    private final EnsembleRunner runner;
+    private final double maxTime;
+    private final double halfWidth;
+    private final double timeHalfWidth;
+    private final double z;
+    private final int waveSize;
+    private final int maxReplicates;
+    private final long maxEvents;
+    private final Duration wallClock;
+
+    // Default settings: 95 percent confidence, time to resistance
+    // within five percent, and waves of eight replicates per thread.
+    private static final double DEFAULT_Z = 1.96;
+    private static final double DEFAULT_TIME_HALF_WIDTH = 0.05;
+    private static final int DEFAULT_WAVE_PER_THREAD = 8;
+    private static final int DEFAULT_MAX_REPLICATES = 100000;
+
+    private AdaptiveEstimator(EnsembleRunner runner,
+                              double maxTime,
+                              double halfWidth,
+                              double timeHalfWidth,
+                              double z,
+                              int waveSize,
+                              int maxReplicates,
+                              long maxEvents,
+                              Duration wallClock) {
+        this.runner = runner;
+        this.maxTime = maxTime;
+        this.halfWidth = halfWidth;
+        this.timeHalfWidth = timeHalfWidth;
+        this.z = z;
+        this.waveSize = waveSize;
+        this.maxReplicates = maxReplicates;
+        this.maxEvents = maxEvents;
+        this.wallClock = wallClock;
+    }
+
+    /**
+     * Creates a new adaptive estimator with the default confidence
+     * level (95 percent), relative half-width for the time to
+     * resistance (0.05), wave size (eight replicates per thread), and
+     * budget (100,000 replicates, with no event or wall-clock limit).
+     *
+     * @param runner the runner for the replicates; its stopping rules
+     * end replicates before the time horizon.
+     *
+     * @param maxTime the time horizon of every replicate.
+     *
+     * @param halfWidth the target half-width of the confidence
+     * intervals for the probabilities and cell-type fractions.
+     *
+     * @return a new adaptive estimator.
+     *
+     * @throws IllegalArgumentException unless the time horizon and the
+     * half-width are positive.
+     */
+    public static AdaptiveEstimator create(EnsembleRunner runner, double maxTime, double halfWidth) {
+        if (!(maxTime > 0.0))
+            throw new IllegalArgumentException("Time horizon must be positive.");
+
+        validateHalfWidth(halfWidth);
+
+        return new AdaptiveEstimator(runner,
+                                     maxTime,
+                                     halfWidth,
+                                     DEFAULT_TIME_HALF_WIDTH,
+                                     DEFAULT_Z,
+                                     DEFAULT_WAVE_PER_THREAD * runner.getThreadCount(),
+                                     DEFAULT_MAX_REPLICATES,
+                                     Long.MAX_VALUE,
+                                     null);
+    }
+
+    private static void validateHalfWidth(double halfWidth) {
+        if (!(halfWidth > 0.0))
+            throw new IllegalArgumentException("Confidence interval half-width must be positive.");
+    }
+
+    /**
+     * Creates an estimator with a different confidence level.
+     *
+     * @param z the standard normal quantile for the confidence level
+     * (for example, {@code 1.96} for 95 percent).
+     *
+     * @return a new estimator that is identical to this estimator
+     * except for the confidence level.
+     *
+     * @throws IllegalArgumentException unless the quantile is positive.
+     */
+    public AdaptiveEstimator withConfidence(double z) {
+        if (!(z > 0.0))
+            throw new IllegalArgumentException("Normal quantile must be positive.");
+
+        return new AdaptiveEstimator(runner, maxTime, halfWidth, timeHalfWidth, z, waveSize, maxReplicates, maxEvents, wallClock);
+    }
+
+    /**
+     * Creates an estimator with a different target for the time to
+     * resistance.
+     *
+     * @param timeHalfWidth the target half-width of the confidence
+     * interval for the mean time to resistance, relative to the mean.
+     *
+     * @return a new estimator that is identical to this estimator
+     * except for the target for the time to resistance.
+     *
+     * @throws IllegalArgumentException unless the half-width is
+     * positive.
+     */
+    public AdaptiveEstimator withTimeHalfWidth(double timeHalfWidth) {
+        validateHalfWidth(timeHalfWidth);
+        return new AdaptiveEstimator(runner, maxTime, halfWidth, timeHalfWidth, z, waveSize, maxReplicates, maxEvents, wallClock);
+    }
+
+    /**
+     * Creates an estimator with a different wave size.
+     *
+     * @param waveSize the number of replicates run between
+     * convergence checks (also the minimum ensemble size).
+     *
+     * @return a new estimator that is identical to this estimator
+     * except for the wave size.
+     *
+     * @throws IllegalArgumentException unless the wave size is at
+     * least two.
+     */
+    public AdaptiveEstimator withWaveSize(int waveSize) {
+        if (waveSize < 2)
+            throw new IllegalArgumentException("Wave size must be at least two.");
+
+        return new AdaptiveEstimator(runner, maxTime, halfWidth, timeHalfWidth, z, waveSize, maxReplicates, maxEvents, wallClock);
+    }
+
+    /**
+     * Creates an estimator with a different replicate budget.
+     *
+     * @param maxReplicates the maximum number of replicates to run.
+     *
+     * @return a new estimator that is identical to this estimator
+     * except for the replicate budget.
+     *
+     * @throws IllegalArgumentException unless the budget is positive.
+     */
+    public AdaptiveEstimator withMaxReplicates(int maxReplicates) {
+        if (maxReplicates < 1)
+            throw new IllegalArgumentException("Replicate budget must be positive.");
+
+        return new AdaptiveEstimator(runner, maxTime, halfWidth, timeHalfWidth, z, waveSize, maxReplicates, maxEvents, wallClock);
+    }
+
+    /**
+     * Creates an estimator with an event budget, a measure of compute
+     * that does not depend on the machine.  The budget is checked
+     * after each wave, so the last wave may overrun it.
+     *
+     * @param maxEvents the maximum total number of events to execute.
+     *
+     * @return a new estimator that is identical to this estimator
+     * except for the event budget.
+     *
+     * @throws IllegalArgumentException unless the budget is positive.
+     */
+    public AdaptiveEstimator withMaxEvents(long maxEvents) {
+        if (maxEvents < 1L)
+            throw new IllegalArgumentException("Event budget must be positive.");
+
+        return new AdaptiveEstimator(runner, maxTime, halfWidth, timeHalfWidth, z, waveSize, maxReplicates, maxEvents, wallClock);
+    }
+
+    /**
+     * Creates an estimator with a wall-clock budget.  The budget is
+     * checked after each wave, so the last wave may overrun it; to
+     * bound the time spent in a single replicate, attach a {@link
+     * resist.system.StoppingRule#wallClock} rule to the runner.
+     *
+     * @param wallClock the maximum elapsed time.
+     *
+     * @return a new estimator that is identical to this estimator
+     * except for the wall-clock budget.
+     *
+     * @throws IllegalArgumentException unless the budget is positive.
+     */
+    public AdaptiveEstimator withWallClock(Duration wallClock) {
+        if (wallClock.isNegative() || wallClock.isZero())
+            throw new IllegalArgumentException("Wall-clock budget must be positive.");
+
+        return new AdaptiveEstimator(runner, maxTime, halfWidth, timeHalfWidth, z, waveSize, maxReplicates, maxEvents, wallClock);
+    }
+
+    /**
+     * Runs waves of replicates until the outcome statistics converge
+     * or the budget runs out.
+     *
+     * @return the outcome statistics and the reason for stopping.
+     *
+     * @throws IllegalStateException if any replicate fails or the
+     * calling thread is interrupted.
+     */
+    public AdaptiveEstimate estimate() {
+        return estimate(estimate -> {});
+    }
+
+    /**
+     * Runs waves of replicates until the outcome statistics converge
+     * or the budget runs out, reporting progress after each wave.
+     *
+     * @param listener the recipient of the estimate after each wave
+     * (including the last, after the reason for stopping is recorded),
+     * called on the calling thread.
+     *
+     * @return the outcome statistics and the reason for stopping.
+     *
+     * @throws IllegalStateException if any replicate fails or the
+     * calling thread is interrupted.
+     */
+    public AdaptiveEstimate estimate(Consumer<? super AdaptiveEstimate> listener) {
+        AdaptiveEstimate estimate = new AdaptiveEstimate();
+        long startNanos = System.nanoTime();
+
+        while (true) {
+            int firstIndex = (int) estimate.countReplicates();
+            int count = Math.min(waveSize, maxReplicates - firstIndex);
+
+            AdaptiveEstimate.Outcome[] outcomes = new AdaptiveEstimate.Outcome[count];
+
+            runner.run(firstIndex, count, (index, system) -> {
+                    system.run(maxTime);
+                    return new AdaptiveEstimate.Outcome(system);
+                }, (outcome, index) -> outcomes[index - firstIndex] = outcome);
+
+            estimate.addWave(outcomes);
+
+            AdaptiveEstimate.Termination termination = terminate(estimate, startNanos);
+            estimate.terminate(termination);
+
+            listener.accept(estimate);
+
+            if (termination != null)
+                return estimate;
+        }
+    }
+
+    private AdaptiveEstimate.Termination terminate(AdaptiveEstimate estimate, long startNanos) {
+        if (isConverged(estimate))
+            return AdaptiveEstimate.Termination.CONVERGED;
+
+        if (estimate.countReplicates() >= maxReplicates)
+            return AdaptiveEstimate.Termination.REPLICATE_BUDGET;
+
+        if (estimate.getEventCount() >= maxEvents)
+            return AdaptiveEstimate.Termination.EVENT_BUDGET;
+
+        if (wallClock != null && System.nanoTime() - startNanos >= wallClock.toNanos())
+            return AdaptiveEstimate.Termination.WALL_CLOCK;
+
+        return null;
+    }
+
+    private boolean isConverged(AdaptiveEstimate estimate) {
+        if (proportionHalfWidth(estimate.getExtinction()) > halfWidth)
+            return false;
+
+        if (proportionHalfWidth(estimate.getResistance()) > halfWidth)
+            return false;
+
+        RunningMean time = estimate.getResistanceTime();
+
+        if (time.count() > 1 && time.halfWidth(z) > timeHalfWidth * Math.abs(time.mean()))
+            return false;
+
+        for (CellType type : CellType.values()) {
+            RunningMean fraction = estimate.getComposition(type);
+
+            if (fraction.count() > 1 && fraction.halfWidth(z) > halfWidth)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the half-width of the Agresti-Coull confidence interval
+     * for a proportion, which adds {@code z * z / 2} successes and
+     * failures to the observations before applying the normal
+     * approximation.
+     *
+     * @param indicator the statistics of the zero-one indicators.
+     *
+     * @return the half-width of the confidence interval for the
+     * proportion of ones.
+     */
+    public double proportionHalfWidth(RunningMean indicator) {
+        double zz = z * z;
+        double adjustedCount = indicator.count() + zz;
+        double successCount = indicator.count() > 0L ? indicator.count() * indicator.mean() : 0.0;
+        double adjustedProportion = (successCount + 0.5 * zz) / adjustedCount;
+
+        return z * Math.sqrt(adjustedProportion * (1.0 - adjustedProportion) / adjustedCount);
+    }
+
+    /**
+     * Returns the runner for the replicates.
+     *
+     * @return the runner for the replicates.
+     */
+    public EnsembleRunner getRunner() {
+        return runner;
+    }
+
+    /**
+     * Returns the time horizon of every replicate.
+     *
+     * @return the time horizon of every replicate.
+     */
+    public double getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * Returns the number of replicates run between convergence checks.
+     *
+     * @return the number of replicates run between convergence checks.
+     */
+    public int getWaveSize() {
+        return waveSize;
+    }
+}
@@ -0,0 +1,282 @@
+
+package resist.ensemble;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ObjIntConsumer;
+
+import resist.random.RandomStreams;
+import resist.system.ResistParam;
+import resist.system.ResistSystem;
+import resist.system.StoppingRule;
+
+/**
+ * Runs independent replicates of one simulation on a bounded pool of
+ * worker threads.
+ *
+ * <p>Replicate {@code k} is driven by stream {@code k} of a {@link
+ * RandomStreams} factory, so every replicate is reproducible from
+ * the master seed and its index alone, independent of the number of
+ * threads and the order in which replicates complete.
+ *
+ * <p>Replicate summaries are delivered to a consumer on the calling
+ * thread in order of completion (not in index order), as soon as each
+ * replicate finishes; the consumer therefore needs no synchronization.
+ * At most a small multiple of the thread count of replicates are in
+ * flight (running or finished but not yet consumed) at any time, so
+ * memory use is independent of the ensemble size.
+ *
+ * <p>Stopping rules registered with the runner are attached to every
+ * replicate system before its task runs, so replicates that go
+ * extinct, reach a detection threshold, or exhaust their wall-clock
+ * budget release their worker thread early; tasks can tell why a
+ * replicate ended from {@link ResistSystem#getStoppingRule()}.
+ *
+ * <p>Every replicate system also carries {@link
+ * StoppingRule#interrupted()}, so when one replicate fails (or the
+ * calling thread is interrupted) the replicates still running stop at
+ * their next stopping-rule check rather than running to completion.
+ * Tasks that run their system repeatedly should check the return
+ * value of {@link ResistSystem#run(double)} and return promptly once
+ * it reports that a rule ended the run.
+ *
+ * <p>Replicates with the {@code MAPPED} state backend map their counts
+ * to distinct files ({@link ResistParam#withStateFileIndex(int)}),
+ * which are deleted when the task returns; a task that needs the
+ * final counts must copy them before returning.
+ */
+public final class EnsembleRunner {
+    private final ResistParam param;
+    private final RandomStreams streams;
+    private final int threadCount;
+    private final StoppingRule[] stoppingRules;
+
+    // The maximum number of submitted but unconsumed replicates per
+    // worker thread.
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+
+    // Ends running replicates when the pool is shut down.
+    private static final StoppingRule INTERRUPTED = StoppingRule.interrupted();
+
+    private EnsembleRunner(ResistParam param, RandomStreams streams, int threadCount, StoppingRule[] stoppingRules) {
+        this.param = param;
+        this.streams = streams;
+        this.threadCount = threadCount;
+        this.stoppingRules = stoppingRules;
+    }
+
+    /**
+     * Creates a new ensemble runner with one worker thread for each
+     * available processor.
+     *
+     * @param param the parameters shared by every replicate.
+     *
+     * @param masterSeed the seed from which the replicate streams are
+     * derived.
+     *
+     * @return a new ensemble runner.
+     */
+    public static EnsembleRunner create(ResistParam param, long masterSeed) {
+        return create(param, masterSeed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new ensemble runner.
+     *
+     * @param param the parameters shared by every replicate.
+     *
+     * @param masterSeed the seed from which the replicate streams are
+     * derived.
+     *
+     * @param threadCount the number of worker threads.
+     *
+     * @return a new ensemble runner.
+     *
+     * @throws IllegalArgumentException unless the thread count is
+     * positive.
+     */
+    public static EnsembleRunner create(ResistParam param, long masterSeed, int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive.");
+
+        return new EnsembleRunner(param, RandomStreams.create(masterSeed), threadCount, new StoppingRule[0]);
+    }
+
+    /**
+     * Creates a runner that attaches stopping rules to every replicate
+     * (in addition to any rules already attached by this runner).
+     * Rules are shared by concurrent replicates, so they must be
+     * thread-safe; the built-in rules are.
+     *
+     * @param rules the rules to attach.
+     *
+     * @return a new runner that is identical to this runner except
+     * for the additional stopping rules.
+     */
+    public EnsembleRunner withStoppingRules(StoppingRule... rules) {
+        StoppingRule[] combined = Arrays.copyOf(stoppingRules, stoppingRules.length + rules.length);
+        System.arraycopy(rules, 0, combined, stoppingRules.length, rules.length);
+
+        return new EnsembleRunner(param, streams, threadCount, combined);
+    }
+
+    /**
+     * Runs an ensemble of replicates and delivers their summaries as
+     * they finish.
+     *
+     * @param <R> the type of the replicate summary.
+     *
+     * @param replicateCount the number of replicates to run.
+     *
+     * @param task the simulation to run for each replicate.
+     *
+     * @param consumer the recipient of each replicate summary and
+     * replicate index, called on the calling thread.
+     *
+     * @throws IllegalStateException if any replicate fails (the
+     * remaining replicates are cancelled) or the calling thread is
+     * interrupted.
+     */
+    public <R> void run(int replicateCount, ReplicateTask<R> task, ObjIntConsumer<? super R> consumer) {
+        run(0, replicateCount, task, consumer);
+    }
+
+    /**
+     * Runs a contiguous block of replicates from a larger ensemble
+     * and delivers their summaries as they finish; successive blocks
+     * of one ensemble (waves of an adaptive ensemble, for example)
+     * reproduce the replicates of a single run of the same total size.
+     *
+     * @param <R> the type of the replicate summary.
+     *
+     * @param firstIndex the index of the first replicate to run.
+     *
+     * @param replicateCount the number of replicates to run.
+     *
+     * @param task the simulation to run for each replicate.
+     *
+     * @param consumer the recipient of each replicate summary and
+     * replicate index, called on the calling thread.
+     *
+     * @throws IllegalArgumentException if the first index is negative.
+     *
+     * @throws IllegalStateException if any replicate fails (the
+     * remaining replicates are cancelled) or the calling thread is
+     * interrupted.
+     */
+    public <R> void run(int firstIndex, int replicateCount, ReplicateTask<R> task, ObjIntConsumer<? super R> consumer) {
+        if (firstIndex < 0)
+            throw new IllegalArgumentException("Replicate indexes must be non-negative.");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CompletionService<Replicate<R>> completion = new ExecutorCompletionService<>(executor);
+
+        try {
+            int maxInFlight = IN_FLIGHT_PER_THREAD * threadCount;
+            int submitted = 0;
+
+            while (submitted < Math.min(replicateCount, maxInFlight))
+                submit(completion, task, firstIndex + submitted++);
+
+            for (int consumed = 0; consumed < replicateCount; ++consumed) {
+                Replicate<R> replicate = take(completion);
+
+                if (submitted < replicateCount)
+                    submit(completion, task, firstIndex + submitted++);
+
+                consumer.accept(replicate.summary, replicate.index);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <R> void submit(CompletionService<Replicate<R>> completion, ReplicateTask<R> task, int index) {
+        completion.submit(() -> {
+                ResistParam replicateParam = param.withStateFileIndex(index);
+
+                try {
+                    ResistSystem system = ResistSystem.create(streams.stream(index), replicateParam);
+
+                    for (StoppingRule rule : stoppingRules)
+                        system.addStoppingRule(rule);
+
+                    system.addStoppingRule(INTERRUPTED);
+
+                    return new Replicate<>(index, task.run(index, system));
+                }
+                finally {
+                    deleteStateFile(replicateParam);
+                }
+            });
+    }
+
+    private static void deleteStateFile(ResistParam param) throws IOException {
+        if (param.getStateFile() != null)
+            Files.deleteIfExists(param.getStateFile());
+    }
+
+    private static <R> Replicate<R> take(CompletionService<Replicate<R>> completion) {
+        try {
+            Future<Replicate<R>> future = completion.take();
+            return future.get();
+        }
+        catch (ExecutionException ex) {
+            throw new IllegalStateException("Replicate failed.", ex.getCause());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ensemble interrupted.", ex);
+        }
+    }
+
+    /**
+     * Returns the parameters shared by every replicate.
+     *
+     * @return the parameters shared by every replicate.
+     */
+    public ResistParam getParam() {
+        return param;
+    }
+
+    /**
+     * Returns the factory for the replicate random streams.
+     *
+     * @return the factory for the replicate random streams.
+     */
+    public RandomStreams getStreams() {
+        return streams;
+    }
+
+    // The rules attached to every replicate, shared rather than copied.
+    StoppingRule[] viewStoppingRules() {
+        return stoppingRules;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of worker threads.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    private static final class Replicate<R> {
+        private final int index;
+        private final R summary;
+
+        Replicate(int index, R summary) {
+            this.index = index;
+            this.summary = summary;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+
+package resist.ensemble;
+
+import resist.system.ResistSystem;
+
+/**
+ * Simulates one replicate of an ensemble and summarizes its outcome.
+ *
+ * <p>Tasks are executed concurrently on the worker threads of an
+ * {@link EnsembleRunner}; each invocation receives its own system,
+ * so a task needs no synchronization unless it shares state of its
+ * own across replicates.
+ *
+ * @param <R> the type of the replicate summary.
+ */
+@FunctionalInterface
+public interface ReplicateTask<R> {
+    /**
+     * Simulates one replicate.
+     *
+     * @param index the index of the replicate within the ensemble.
+     *
+     * @param system a newly created system, driven by the random
+     * stream assigned to the replicate.
+     *
+     * @return the summary of the replicate.
+     */
+    public abstract R run(int index, ResistSystem system);
+}
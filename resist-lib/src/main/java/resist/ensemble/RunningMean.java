@@ -0,0 +1,99 @@
+
+package resist.ensemble;
+
+/**
+ * Accumulates the mean and variance of a sequence of observations in
+ * one pass (Welford's algorithm), for confidence intervals on
+ * ensemble estimates.
+ *
+ * <p>Accumulators are not thread-safe; ensemble runners deliver their
+ * replicate summaries on a single thread.
+ */
+public final class RunningMean {
+    private long count = 0L;
+    private double mean = 0.0;
+    private double sumSquares = 0.0;
+
+    private RunningMean() {
+    }
+
+    /**
+     * Creates a new empty accumulator.
+     *
+     * @return a new empty accumulator.
+     */
+    public static RunningMean create() {
+        return new RunningMean();
+    }
+
+    /**
+     * Adds one observation.
+     *
+     * @param value the observed value.
+     */
+    public void add(double value) {
+        ++count;
+
+        double delta = value - mean;
+        mean += delta / count;
+        sumSquares += delta * (value - mean);
+    }
+
+    /**
+     * Returns the number of observations.
+     *
+     * @return the number of observations.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the sample mean.
+     *
+     * @return the sample mean ({@code NaN} if there are no
+     * observations).
+     */
+    public double mean() {
+        return count > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * Returns the (unbiased) sample variance.
+     *
+     * @return the sample variance ({@code NaN} unless there are at
+     * least two observations).
+     */
+    public double variance() {
+        return count > 1 ? sumSquares / (count - 1) : Double.NaN;
+    }
+
+    /**
+     * Returns the standard error of the sample mean.
+     *
+     * @return the standard error of the sample mean ({@code NaN}
+     * unless there are at least two observations).
+     */
+    public double standardError() {
+        return Math.sqrt(variance() / count);
+    }
+
+    /**
+     * Returns the half-width of a normal-theory confidence interval
+     * for the mean.
+     *
+     * @param z the standard normal quantile for the confidence level
+     * (for example, {@code 1.96} for 95 percent).
+     *
+     * @return the half-width {@code z * standardError()} of the
+     * confidence interval ({@code NaN} unless there are at least two
+     * observations).
+     */
+    public double halfWidth(double z) {
+        return z * standardError();
+    }
+
+    @Override public String toString() {
+        return String.format("RunningMean(count = %d, mean = %g, stderr = %g)", count, mean(), standardError());
+    }
+}
@@ -0,0 +1,142 @@
+
+package resist.ensemble;
+
+/**
+ * Summarizes a {@link SplittingEstimator} run: the estimated
+ * probability of the outcome, its standard error, and the simulation
+ * effort spent on it.
+ */
+public final class SplittingEstimate {
+    private final RunningMean weights = RunningMean.create();
+
+    private long successCount = 0L;
+    private long segmentCount = 0L;
+    private long copyCount = 0L;
+    private long eventCount = 0L;
+
+    SplittingEstimate() {
+    }
+
+    void add(Root root) {
+        weights.add(root.weight);
+
+        successCount += root.successCount;
+        segmentCount += root.segmentCount;
+        copyCount += root.copyCount;
+        eventCount += root.eventCount;
+    }
+
+    /**
+     * Returns the estimated probability of the outcome.
+     *
+     * @return the mean over the root replicates of the total weight
+     * of their successful trajectories.
+     */
+    public double getProbability() {
+        return weights.mean();
+    }
+
+    /**
+     * Returns the standard error of the estimated probability.
+     *
+     * @return the standard error of the estimated probability ({@code
+     * NaN} unless there were at least two root replicates).
+     */
+    public double getStandardError() {
+        return weights.standardError();
+    }
+
+    /**
+     * Returns the half-width of a normal-theory confidence interval
+     * for the probability.
+     *
+     * @param z the standard normal quantile for the confidence level
+     * (for example, {@code 1.96} for 95 percent).
+     *
+     * @return the half-width of the confidence interval.
+     */
+    public double getHalfWidth(double z) {
+        return weights.halfWidth(z);
+    }
+
+    /**
+     * Returns the number of root replicates.
+     *
+     * @return the number of root replicates.
+     */
+    public long countRoots() {
+        return weights.count();
+    }
+
+    /**
+     * Returns the number of trajectories that reached the outcome
+     * (each with its own weight).
+     *
+     * @return the number of successful trajectories.
+     */
+    public long countSuccesses() {
+        return successCount;
+    }
+
+    /**
+     * Returns the number of trajectory segments simulated: one for
+     * each root and each copy.
+     *
+     * @return the number of trajectory segments simulated.
+     */
+    public long countSegments() {
+        return segmentCount;
+    }
+
+    /**
+     * Returns the number of copies made by splitting.
+     *
+     * @return the number of copies made by splitting.
+     */
+    public long countCopies() {
+        return copyCount;
+    }
+
+    /**
+     * Returns the total number of events executed, the measure of
+     * compute against which brute-force replicates are compared.
+     *
+     * @return the total number of events executed in every segment.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    @Override public String toString() {
+        return String.format("SplittingEstimate(probability = %g, stderr = %g, roots = %d, successes = %d, copies = %d, events = %d)",
+                             getProbability(), getStandardError(), countRoots(), successCount, copyCount, eventCount);
+    }
+
+    // The outcome of one root replicate and its branches.
+    static final class Root {
+        private double weight = 0.0;
+
+        private long successCount = 0L;
+        private long segmentCount = 0L;
+        private long copyCount = 0L;
+        private long eventCount = 0L;
+
+        void addSegment(long events) {
+            ++segmentCount;
+            eventCount += events;
+        }
+
+        void addSuccess(double successWeight) {
+            ++successCount;
+            weight += successWeight;
+        }
+
+        void addCopies(int count) {
+            copyCount += count;
+        }
+
+        long countCopies() {
+            return copyCount;
+        }
+    }
+}
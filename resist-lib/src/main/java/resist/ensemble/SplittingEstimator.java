@@ -0,0 +1,255 @@
+
+package resist.ensemble;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.ToDoubleFunction;
+
+import resist.random.RandomStreams;
+import resist.random.SplitMix64;
+import resist.system.ResistSystem;
+import resist.system.StoppingRule;
+
+/**
+ * Estimates the probability of a rare outcome (the emergence of
+ * doubly resistant cells before the tumor is eradicated, for example)
+ * by multilevel splitting with weighted trajectories.
+ *
+ * <p>The progress of a trajectory toward the outcome is measured by
+ * an importance function (the number of singly resistant cells, for
+ * example) and an increasing sequence of levels.  Each root replicate
+ * of an {@link EnsembleRunner} starts with weight one.  When a
+ * trajectory first crosses the next level, it is replaced by {@code
+ * splitFactor} copies ({@link ResistSystem#fork}), each with an equal
+ * share of its weight, which continue independently; a trajectory
+ * ends when the target rule is satisfied (a success), when a stopping
+ * rule of the runner is satisfied (extinction, for example), or when
+ * the clock reaches the time horizon.  The total weight of the
+ * successes of one root is an unbiased estimate of the probability of
+ * the outcome, whatever the levels, because each split preserves the
+ * expected weight; the roots are independent, so their mean and
+ * standard error give the estimate and its confidence interval.
+ * Well-placed levels concentrate the simulation effort on the
+ * trajectories that make progress, so the variance per unit of
+ * compute falls by orders of magnitude when the outcome is rare.
+ *
+ * <p>The branches of each root are simulated depth first on the
+ * worker thread of the root, so at most {@code levels * splitFactor}
+ * copies are pending at once.  The copies are driven by streams
+ * derived from the seed of the root stream in the order in which they
+ * are created, so the estimate is reproducible from the master seed
+ * of the runner, independent of the number of threads.
+ */
+public final class SplittingEstimator {
+    private final EnsembleRunner runner;
+    private final StoppingRule target;
+    private final ToDoubleFunction<ResistSystem> importance;
+    private final double[] levels;
+    private final int splitFactor;
+    private final double maxTime;
+
+    private SplittingEstimator(EnsembleRunner runner,
+                               StoppingRule target,
+                               ToDoubleFunction<ResistSystem> importance,
+                               double[] levels,
+                               int splitFactor,
+                               double maxTime) {
+        this.runner = runner;
+        this.target = target;
+        this.importance = importance;
+        this.levels = levels;
+        this.splitFactor = splitFactor;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Creates a new splitting estimator.
+     *
+     * @param runner the runner for the root replicates; its stopping
+     * rules end every trajectory without success.
+     *
+     * @param target the rule that identifies the outcome of interest
+     * (for example, {@code StoppingRule.totalAtLeast(RESISTANT_AB, 1)}).
+     *
+     * @param importance the measure of progress toward the outcome;
+     * it is evaluated after every event, so it should answer in
+     * constant time.
+     *
+     * @param levels the importance levels at which trajectories are
+     * split, in strictly increasing order (the array is copied).
+     *
+     * @param splitFactor the number of copies that replace a
+     * trajectory at each level.
+     *
+     * @param maxTime the time horizon of every trajectory.
+     *
+     * @return a new splitting estimator.
+     *
+     * @throws IllegalArgumentException unless the levels are strictly
+     * increasing, the split factor is positive, and the time horizon
+     * is positive.
+     */
+    public static SplittingEstimator create(EnsembleRunner runner,
+                                            StoppingRule target,
+                                            ToDoubleFunction<ResistSystem> importance,
+                                            double[] levels,
+                                            int splitFactor,
+                                            double maxTime) {
+        for (int k = 1; k < levels.length; ++k)
+            if (!(levels[k] > levels[k - 1]))
+                throw new IllegalArgumentException("Splitting levels must be strictly increasing.");
+
+        if (splitFactor < 1)
+            throw new IllegalArgumentException("Split factor must be positive.");
+
+        if (!(maxTime > 0.0))
+            throw new IllegalArgumentException("Time horizon must be positive.");
+
+        return new SplittingEstimator(runner, target, importance, levels.clone(), splitFactor, maxTime);
+    }
+
+    /**
+     * Runs the root replicates and their branches and summarizes the
+     * outcome.
+     *
+     * @param rootCount the number of independent root replicates.
+     *
+     * @return the estimated probability of the outcome, with its
+     * standard error and the simulation effort.
+     *
+     * @throws IllegalStateException if any replicate fails or the
+     * calling thread is interrupted.
+     */
+    public SplittingEstimate estimate(int rootCount) {
+        //
+        // The roots finish in any order; they are summarized in index
+        // order so that the estimate does not depend on the schedule
+        // (not even in the last bit of the floating-point sums).
+        //
+        SplittingEstimate.Root[] roots = new SplittingEstimate.Root[rootCount];
+        runner.run(rootCount, this::simulate, (root, index) -> roots[index] = root);
+
+        SplittingEstimate estimate = new SplittingEstimate();
+
+        for (SplittingEstimate.Root root : roots)
+            estimate.add(root);
+
+        return estimate;
+    }
+
+    private SplittingEstimate.Root simulate(int index, ResistSystem system) {
+        //
+        // The copies draw from a factory keyed by the root seed (but
+        // distinct from the root stream itself).
+        //
+        RandomStreams copyStreams = RandomStreams.create(SplitMix64.mix64(~runner.getStreams().seed(index)));
+        SplittingEstimate.Root root = new SplittingEstimate.Root();
+
+        Deque<Branch> pending = new ArrayDeque<>();
+        pending.push(new Branch(system, nextLevel(system, 0), 1.0));
+
+        system.addStoppingRule(target);
+
+        while (!pending.isEmpty()) {
+            Branch branch = pending.pop();
+            ResistSystem branchSystem = branch.system;
+
+            StoppingRule levelRule = levelRule(branch.level);
+
+            if (levelRule != null)
+                branchSystem.addStoppingRule(levelRule);
+
+            long startCount = branchSystem.getEventCount();
+            branchSystem.run(maxTime);
+
+            root.addSegment(branchSystem.getEventCount() - startCount);
+
+            StoppingRule stoppedBy = branchSystem.getStoppingRule();
+
+            if (stoppedBy == target) {
+                root.addSuccess(branch.weight);
+            }
+            else if (stoppedBy != null && stoppedBy == levelRule) {
+                int level = nextLevel(branchSystem, branch.level);
+                double weight = branch.weight / splitFactor;
+
+                for (int k = 0; k < splitFactor; ++k)
+                    pending.push(new Branch(fork(branchSystem, copyStreams.stream(root.countCopies())), level, weight));
+
+                root.addCopies(splitFactor);
+            }
+        }
+
+        return root;
+    }
+
+    private ResistSystem fork(ResistSystem system, SplitMix64 random) {
+        ResistSystem copy = system.fork(random);
+
+        for (StoppingRule rule : runner.viewStoppingRules())
+            copy.addStoppingRule(rule);
+
+        copy.addStoppingRule(target);
+        return copy;
+    }
+
+    // Skips any levels that the trajectory has already crossed (a
+    // single event may cross several).
+    private int nextLevel(ResistSystem system, int level) {
+        double value = importance.applyAsDouble(system);
+
+        while (level < levels.length && value >= levels[level])
+            ++level;
+
+        return level;
+    }
+
+    private StoppingRule levelRule(int level) {
+        if (level >= levels.length)
+            return null;
+
+        double threshold = levels[level];
+        return StoppingRule.named("importance >= " + threshold, system -> importance.applyAsDouble(system) >= threshold);
+    }
+
+    /**
+     * Returns the runner for the root replicates.
+     *
+     * @return the runner for the root replicates.
+     */
+    public EnsembleRunner getRunner() {
+        return runner;
+    }
+
+    /**
+     * Returns the number of copies that replace a trajectory at each
+     * level.
+     *
+     * @return the number of copies that replace a trajectory at each
+     * level.
+     */
+    public int getSplitFactor() {
+        return splitFactor;
+    }
+
+    /**
+     * Returns the time horizon of every trajectory.
+     *
+     * @return the time horizon of every trajectory.
+     */
+    public double getMaxTime() {
+        return maxTime;
+    }
+
+    private static final class Branch {
+        private final ResistSystem system;
+        private final int level;
+        private final double weight;
+
+        Branch(ResistSystem system, int level, double weight) {
+            this.system = system;
+            this.level = level;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+
+package resist.random;
+
+/**
+ * Implements the Philox-4x32-10 counter-based generator (Salmon,
+ * Moraes, Dror, and Shaw, "Parallel random numbers: as easy as 1, 2,
+ * 3", SC11, 2011) as a family of independent random streams.
+ *
+ * <p>A counter-based generator is a keyed bijection applied to a
+ * counter: the random block at a given counter depends only on the
+ * key and the counter, not on any draws made before it.  Here the key
+ * is derived from a seed and a replicate index, and the 128-bit
+ * counter holds a site index, an event counter, and the index of the
+ * block within the stream for that (site, event counter) pair.  Any
+ * thread may therefore draw the deviates for any site and event
+ * without shared state or locking, and the deviates are identical
+ * however the work is divided among threads.
+ *
+ * <p>Instances are immutable and thread-safe; the {@link
+ * CounterStream}s they create are not thread-safe, but are cheap, so
+ * each thread should use its own.
+ */
+public final class CounterRandom {
+    private final int key0;
+    private final int key1;
+
+    /**
+     * The site index reserved for the sequential stream, which drives
+     * the draws that are not attributed to any one site.
+     */
+    public static final int GLOBAL_SITE = -1;
+
+    // Philox multipliers and Weyl key increments.
+    private static final long M0 = 0xD2511F53L;
+    private static final long M1 = 0xCD9E8D57L;
+    private static final int W0 = 0x9E3779B9;
+    private static final int W1 = 0xBB67AE85;
+
+    private static final int ROUNDS = 10;
+
+    private CounterRandom(long key) {
+        this.key0 = (int) key;
+        this.key1 = (int) (key >>> 32);
+    }
+
+    /**
+     * Creates a new stream family for a single simulation.
+     *
+     * @param seed the seed of the family.
+     *
+     * @return a new stream family with the specified seed.
+     */
+    public static CounterRandom create(long seed) {
+        return new CounterRandom(seed);
+    }
+
+    /**
+     * Creates a new stream family for one replicate of an ensemble.
+     * Replicates with the same seed and distinct indexes have
+     * independent keys, derived as for the streams of {@link
+     * RandomStreams}.
+     *
+     * @param seed the master seed of the ensemble.
+     *
+     * @param replicate the index of the replicate.
+     *
+     * @return a new stream family for the specified replicate.
+     */
+    public static CounterRandom create(long seed, long replicate) {
+        return new CounterRandom(RandomStreams.create(seed).seed(replicate));
+    }
+
+    /**
+     * Creates the sequential stream of this family: a single stream
+     * that may serve as the main source of randomness of a simulation
+     * (and that gives engines access to the family for keyed draws).
+     *
+     * @return a new stream positioned at the start of the sequential
+     * stream.
+     */
+    public CounterStream global() {
+        CounterStream stream = stream();
+        stream.seek(GLOBAL_SITE, 0L);
+        return stream;
+    }
+
+    /**
+     * Creates a new stream for this family; the stream must be
+     * positioned by {@link CounterStream#seek(int, long)} before use.
+     *
+     * @return a new stream for this family.
+     */
+    public CounterStream stream() {
+        return new CounterStream(this);
+    }
+
+    /**
+     * Computes one random block: applies the keyed Philox bijection
+     * to a 128-bit counter.
+     *
+     * @param counter the four 32-bit words of the counter (replaced
+     * by the four 32-bit words of the random block).
+     */
+    public void block(int[] counter) {
+        int c0 = counter[0];
+        int c1 = counter[1];
+        int c2 = counter[2];
+        int c3 = counter[3];
+
+        int k0 = key0;
+        int k1 = key1;
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            long p0 = M0 * (c0 & 0xFFFFFFFFL);
+            long p1 = M1 * (c2 & 0xFFFFFFFFL);
+
+            int n0 = (int) (p1 >>> 32) ^ c1 ^ k0;
+            int n2 = (int) (p0 >>> 32) ^ c3 ^ k1;
+
+            c1 = (int) p1;
+            c3 = (int) p0;
+            c0 = n0;
+            c2 = n2;
+
+            k0 += W0;
+            k1 += W1;
+        }
+
+        counter[0] = c0;
+        counter[1] = c1;
+        counter[2] = c2;
+        counter[3] = c3;
+    }
+}
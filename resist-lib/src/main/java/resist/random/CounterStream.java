@@ -0,0 +1,92 @@
+
+package resist.random;
+
+/**
+ * Draws uniform deviates from one stream of a {@link CounterRandom}
+ * family, identified by a site index and an event counter.
+ *
+ * <p>Each 128-bit block yields two deviates.  The counter words hold
+ * the block index (word 0), the event counter (words 1 and 2), and the
+ * site index (word 3).  A stream positioned by {@link #seek(int,
+ * long)} produces the same deviates whenever and on whichever thread
+ * it is read; streams are not thread-safe, but repositioning one costs
+ * nothing, so a single stream may serve many sites in turn.
+ *
+ * <p>When the block index overflows, the stream continues into the
+ * next event counter; only the {@link CounterRandom#GLOBAL_SITE
+ * sequential stream} relies on this.
+ */
+public final class CounterStream implements RandomSource {
+    private final CounterRandom family;
+    private final int[] block = new int[4];
+
+    private int site;
+    private long counter;
+    private int blockIndex;
+
+    // The second deviate of the current block, if not yet used.
+    private long pending;
+    private boolean hasPending;
+
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    CounterStream(CounterRandom family) {
+        this.family = family;
+    }
+
+    /**
+     * Positions this stream at the start of the stream for a given
+     * site and event counter.
+     *
+     * @param site the site index (or {@link
+     * CounterRandom#GLOBAL_SITE}).
+     *
+     * @param counter the event counter.
+     */
+    public void seek(int site, long counter) {
+        this.site = site;
+        this.counter = counter;
+        this.blockIndex = 0;
+        this.hasPending = false;
+    }
+
+    /**
+     * Returns the family to which this stream belongs.
+     *
+     * @return the family to which this stream belongs.
+     */
+    public CounterRandom getFamily() {
+        return family;
+    }
+
+    /**
+     * Returns the next 64 random bits.
+     *
+     * @return the next 64 random bits.
+     */
+    @Override public long nextLong() {
+        if (hasPending) {
+            hasPending = false;
+            return pending;
+        }
+
+        block[0] = blockIndex;
+        block[1] = (int) counter;
+        block[2] = (int) (counter >>> 32);
+        block[3] = site;
+
+        if (++blockIndex == 0)
+            ++counter;
+
+        family.block(block);
+
+        pending = (block[3] & 0xFFFFFFFFL) | ((long) block[2] << 32);
+        hasPending = true;
+
+        return (block[1] & 0xFFFFFFFFL) | ((long) block[0] << 32);
+    }
+
+    @Override public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+}
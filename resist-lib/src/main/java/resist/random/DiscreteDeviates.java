@@ -0,0 +1,283 @@
+
+package resist.random;
+
+/**
+ * Draws deviates from the discrete distributions used by the
+ * approximate and bulk simulation methods.
+ *
+ * <p>The Poisson and binomial samplers run in expected time bounded
+ * independently of their mean (or trial count) for large arguments,
+ * so that batches of many events cost no more than a handful of
+ * uniform deviates.  The hypergeometric sampler searches outward from
+ * the mode, so its expected cost grows with the standard deviation of
+ * the distribution; the tau-leaping engine draws it only to ration
+ * the room left at a site among the births of a leap, where the
+ * number of draws is bounded by the site capacity.
+ */
+public final class DiscreteDeviates {
+    private DiscreteDeviates() {}
+
+    // Below this mean, Poisson deviates are drawn by sequential
+    // inversion; above it, by transformed rejection.
+    private static final double POISSON_INVERSION_LIMIT = 10.0;
+
+    // Below this expected count, binomial deviates are drawn by
+    // sequential inversion; above it, by transformed rejection.
+    private static final double BINOMIAL_INVERSION_LIMIT = 10.0;
+
+    private static final double[] LOG_FACTORIAL_TABLE = createLogFactorialTable(256);
+
+    private static double[] createLogFactorialTable(int size) {
+        double[] table = new double[size];
+
+        for (int k = 1; k < size; ++k)
+            table[k] = table[k - 1] + Math.log(k);
+
+        return table;
+    }
+
+    /**
+     * Computes the natural logarithm of {@code k!}.
+     *
+     * @param k a non-negative integer.
+     *
+     * @return the natural logarithm of {@code k!}.
+     */
+    public static double logFactorial(long k) {
+        if (k < LOG_FACTORIAL_TABLE.length)
+            return LOG_FACTORIAL_TABLE[(int) k];
+
+        // Stirling series with three correction terms, accurate to
+        // double precision for k >= 256.
+        double x = k + 1.0;
+        double y = 1.0 / (x * x);
+
+        return (x - 0.5) * Math.log(x) - x + 0.5 * Math.log(2.0 * Math.PI)
+            + (1.0 / 12.0 - y * (1.0 / 360.0 - y / 1260.0)) / x;
+    }
+
+    /**
+     * Draws a Poisson deviate.
+     *
+     * @param random the source of uniform deviates.
+     *
+     * @param mean the mean of the distribution; must be non-negative.
+     *
+     * @return a Poisson deviate with the specified mean.
+     */
+    public static long poisson(RandomSource random, double mean) {
+        if (mean <= 0.0)
+            return 0L;
+        else if (mean < POISSON_INVERSION_LIMIT)
+            return poissonInversion(random, mean);
+        else
+            return poissonRejection(random, mean);
+    }
+
+    private static long poissonInversion(RandomSource random, double mean) {
+        long k = 0L;
+        double prob = Math.exp(-mean);
+        double cdf = prob;
+        double u = random.nextDouble();
+
+        while (u > cdf) {
+            ++k;
+            prob *= mean / k;
+            cdf += prob;
+
+            // Round-off error has left the CDF just short of one.
+            if (prob < 1.0E-300 && k > mean)
+                break;
+        }
+
+        return k;
+    }
+
+    // The PTRS algorithm of Hormann (1993), transformed rejection
+    // with squeeze.
+    private static long poissonRejection(RandomSource random, double mean) {
+        double smu = Math.sqrt(mean);
+        double logMean = Math.log(mean);
+
+        double b = 0.931 + 2.53 * smu;
+        double a = -0.059 + 0.02483 * b;
+        double invAlpha = 1.1239 + 1.1328 / (b - 3.4);
+        double vr = 0.9277 - 3.6224 / (b - 2.0);
+
+        while (true) {
+            double u = random.nextDouble() - 0.5;
+            double v = random.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            long k = (long) Math.floor((2.0 * a / us + b) * u + mean + 0.43);
+
+            if (us >= 0.07 && v <= vr)
+                return k;
+
+            if (k < 0 || (us < 0.013 && v > us))
+                continue;
+
+            double lhs = Math.log(v * invAlpha / (a / (us * us) + b));
+            double rhs = -mean + k * logMean - logFactorial(k);
+
+            if (lhs <= rhs)
+                return k;
+        }
+    }
+
+    /**
+     * Draws a binomial deviate.
+     *
+     * @param random the source of uniform deviates.
+     *
+     * @param trials the number of trials; must be non-negative.
+     *
+     * @param prob the success probability for each trial.
+     *
+     * @return the number of successes in the specified number of
+     * trials.
+     */
+    public static long binomial(RandomSource random, long trials, double prob) {
+        if (trials <= 0 || prob <= 0.0)
+            return 0L;
+
+        if (prob >= 1.0)
+            return trials;
+
+        if (prob > 0.5)
+            return trials - binomial(random, trials, 1.0 - prob);
+
+        if (trials * prob < BINOMIAL_INVERSION_LIMIT)
+            return binomialInversion(random, trials, prob);
+        else
+            return binomialRejection(random, trials, prob);
+    }
+
+    private static long binomialInversion(RandomSource random, long trials, double prob) {
+        double q = 1.0 - prob;
+        double ratio = prob / q;
+
+        long k = 0L;
+        double pk = Math.pow(q, trials);
+        double cdf = pk;
+        double u = random.nextDouble();
+
+        while (u > cdf && k < trials) {
+            pk *= ratio * (trials - k) / (k + 1);
+            cdf += pk;
+            ++k;
+        }
+
+        return k;
+    }
+
+    // The BTRS algorithm of Hormann (1993), transformed rejection
+    // with squeeze; requires prob <= 0.5 and trials * prob >= 10.
+    private static long binomialRejection(RandomSource random, long trials, double prob) {
+        double q = 1.0 - prob;
+        double spq = Math.sqrt(trials * prob * q);
+
+        double b = 1.15 + 2.53 * spq;
+        double a = -0.0873 + 0.0248 * b + 0.01 * prob;
+        double c = trials * prob + 0.5;
+        double alpha = (2.83 + 5.1 / b) * spq;
+        double vr = 0.92 - 4.2 / b;
+
+        long mode = (long) Math.floor((trials + 1) * prob);
+        double logRatio = Math.log(prob / q);
+        double h = logFactorial(mode) + logFactorial(trials - mode);
+
+        while (true) {
+            double u = random.nextDouble() - 0.5;
+            double v = random.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            long k = (long) Math.floor((2.0 * a / us + b) * u + c);
+
+            if (k < 0 || k > trials)
+                continue;
+
+            if (us >= 0.07 && v <= vr)
+                return k;
+
+            double lhs = Math.log(v * alpha / (a / (us * us) + b));
+            double rhs = h - logFactorial(k) - logFactorial(trials - k) + (k - mode) * logRatio;
+
+            if (lhs <= rhs)
+                return k;
+        }
+    }
+
+    /**
+     * Draws a hypergeometric deviate: the number of marked items in a
+     * sample drawn without replacement.
+     *
+     * <p>The deviate is found by inversion, searching outward from the
+     * mode, so the expected cost is proportional to the standard
+     * deviation of the distribution.
+     *
+     * @param random the source of uniform deviates.
+     *
+     * @param total the number of items in the population.
+     *
+     * @param marked the number of marked items in the population.
+     *
+     * @param draws the number of items drawn.
+     *
+     * @return the number of marked items drawn.
+     *
+     * @throws IllegalArgumentException unless {@code 0 <= marked <=
+     * total} and {@code 0 <= draws <= total}.
+     */
+    public static long hypergeometric(RandomSource random, long total, long marked, long draws) {
+        if (marked < 0 || marked > total || draws < 0 || draws > total)
+            throw new IllegalArgumentException("Invalid hypergeometric parameters.");
+
+        long unmarked = total - marked;
+        long lower = Math.max(0L, draws - unmarked);
+        long upper = Math.min(draws, marked);
+
+        if (lower == upper)
+            return lower;
+
+        long mode = (long) Math.floor((draws + 1.0) * (marked + 1.0) / (total + 2.0));
+        mode = Math.max(lower, Math.min(upper, mode));
+
+        double pmode = Math.exp(logChoose(marked, mode) + logChoose(unmarked, draws - mode) - logChoose(total, draws));
+        double u = random.nextDouble() - pmode;
+
+        if (u <= 0.0)
+            return mode;
+
+        long up = mode;
+        long down = mode;
+        double pup = pmode;
+        double pdown = pmode;
+
+        while (up < upper || down > lower) {
+            if (up < upper) {
+                pup *= ((double) (marked - up) * (draws - up)) / ((up + 1.0) * (unmarked - draws + up + 1.0));
+                ++up;
+                u -= pup;
+
+                if (u <= 0.0)
+                    return up;
+            }
+
+            if (down > lower) {
+                pdown *= ((double) down * (unmarked - draws + down)) / ((marked - down + 1.0) * (draws - down + 1.0));
+                --down;
+                u -= pdown;
+
+                if (u <= 0.0)
+                    return down;
+            }
+        }
+
+        // Round-off error has left the cumulative probability just
+        // short of one.
+        return mode;
+    }
+
+    private static double logChoose(long n, long k) {
+        return logFactorial(n) - logFactorial(k) - logFactorial(n - k);
+    }
+}
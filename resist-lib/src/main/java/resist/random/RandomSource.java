@@ -0,0 +1,76 @@
+
+package resist.random;
+
+import jam.math.JamRandom;
+
+/**
+ * Supplies the uniform random deviates that drive a stochastic
+ * simulation.
+ *
+ * <p>The event engines draw all of their randomness through this
+ * interface, so that a simulation may be driven by the global {@code
+ * JamRandom} generator or by an independent stream created for one
+ * replicate or one thread.
+ */
+@FunctionalInterface
+public interface RandomSource {
+    /**
+     * Returns the next uniform deviate in the half-open interval
+     * {@code [0.0, 1.0)}.
+     *
+     * @return the next uniform deviate in {@code [0.0, 1.0)}.
+     */
+    public abstract double nextDouble();
+
+    /**
+     * Returns a uniformly distributed integer in the half-open range
+     * {@code [0, bound)}.
+     *
+     * @param bound the (exclusive) upper bound; must be positive.
+     *
+     * @return a uniformly distributed integer in {@code [0, bound)}.
+     */
+    public default int nextInt(int bound) {
+        return (int) (bound * nextDouble());
+    }
+
+    /**
+     * Returns a uniformly distributed 64-bit integer (for seeding
+     * other generators).  The default implementation assembles it from
+     * the high 32 bits of two uniform deviates; sources with a native
+     * 64-bit output should override it.
+     *
+     * @return a uniformly distributed 64-bit integer.
+     */
+    public default long nextLong() {
+        long high = (long) (0x1.0p32 * nextDouble());
+        long low = (long) (0x1.0p32 * nextDouble());
+
+        return (high << 32) | low;
+    }
+
+    /**
+     * Returns an exponentially distributed waiting time.
+     *
+     * @param rate the rate of the exponential distribution; must be
+     * positive.
+     *
+     * @return an exponentially distributed waiting time with the
+     * specified rate.
+     */
+    public default double nextExponential(double rate) {
+        return -Math.log(1.0 - nextDouble()) / rate;
+    }
+
+    /**
+     * Adapts a {@code JamRandom} generator to this interface.
+     *
+     * @param rand the generator to adapt.
+     *
+     * @return a random source that draws from the specified
+     * generator.
+     */
+    public static RandomSource wrap(JamRandom rand) {
+        return rand::nextDouble;
+    }
+}
@@ -0,0 +1,69 @@
+
+package resist.random;
+
+/**
+ * Derives independent, reproducible random streams from a single
+ * master seed.
+ *
+ * <p>Each stream is identified by a non-negative index and is fully
+ * determined by the master seed and that index, regardless of the
+ * order in which streams are created or the thread that consumes
+ * them.  The streams are {@link SplitMix64} generators (equivalent to
+ * {@code SplittableRandom}) seeded by the same 64-bit mixing function
+ * that {@code SplittableRandom} applies when it splits, so distinct
+ * indexes yield statistically independent sequences.
+ */
+public final class RandomStreams {
+    private final long masterSeed;
+
+    // The odd increment used by SplittableRandom to space the seeds
+    // of successive generators (the golden ratio in fixed point).
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private RandomStreams(long masterSeed) {
+        this.masterSeed = masterSeed;
+    }
+
+    /**
+     * Creates a new stream factory.
+     *
+     * @param masterSeed the seed that determines every stream.
+     *
+     * @return a new stream factory with the specified master seed.
+     */
+    public static RandomStreams create(long masterSeed) {
+        return new RandomStreams(masterSeed);
+    }
+
+    /**
+     * Returns the seed of one stream.
+     *
+     * @param index the index of the stream.
+     *
+     * @return the seed of the stream with the specified index.
+     */
+    public long seed(long index) {
+        return SplitMix64.mix64(masterSeed + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Creates one stream.
+     *
+     * @param index the index of the stream.
+     *
+     * @return a new random source positioned at the start of the
+     * stream with the specified index.
+     */
+    public SplitMix64 stream(long index) {
+        return SplitMix64.create(seed(index));
+    }
+
+    /**
+     * Returns the master seed.
+     *
+     * @return the master seed.
+     */
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+}
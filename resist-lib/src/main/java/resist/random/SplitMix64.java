@@ -0,0 +1,72 @@
+
+package resist.random;
+
+/**
+ * Implements the SplitMix64 generator with an exposed 64-bit state,
+ * so that a simulation can be checkpointed and resumed mid-stream.
+ *
+ * <p>A generator created with seed {@code s} produces exactly the
+ * same sequence of doubles as {@code new SplittableRandom(s)}.
+ */
+public final class SplitMix64 implements RandomSource {
+    private long state;
+
+    // The odd increment used by SplittableRandom to space successive
+    // states (the golden ratio in fixed point).
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private SplitMix64(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Creates a new generator.
+     *
+     * @param seed the initial state of the generator.
+     *
+     * @return a new generator with the specified initial state.
+     */
+    public static SplitMix64 create(long seed) {
+        return new SplitMix64(seed);
+    }
+
+    /**
+     * Returns the next 64 random bits.
+     *
+     * @return the next 64 random bits.
+     */
+    @Override public long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+    @Override public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Returns the current state of this generator; a generator
+     * created with this state as its seed continues the sequence of
+     * this generator.
+     *
+     * @return the current state of this generator.
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Applies the 64-bit mixing function of {@code SplittableRandom}
+     * (Stafford's Mix13 variant of the MurmurHash3 finalizer).
+     *
+     * @param z the value to mix.
+     *
+     * @return the mixed value.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,135 @@
+
+package resist.system;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import resist.agent.AgentType;
+
+/**
+ * Stores site populations in flat primitive arrays, one array per
+ * agent type (a struct-of-arrays layout).
+ *
+ * <p>The store occupies four bytes per site and agent type, and a
+ * scan over one agent type across the lattice reads a single
+ * contiguous array.  The store may grow (when it holds the sites of
+ * a {@link SparseLattice}); the arrays then keep spare capacity, so
+ * that growth costs amortized constant time per site.
+ */
+public final class ArrayPopulationStore implements PopulationStore {
+    private int siteCount;
+    private final int[][] counts;
+    private final long[] totals;
+
+    private PopulationListener[] listeners = new PopulationListener[0];
+
+    private ArrayPopulationStore(int siteCount) {
+        this.siteCount = siteCount;
+        this.counts = new int[AgentType.COUNT][siteCount];
+        this.totals = new long[AgentType.COUNT];
+    }
+
+    /**
+     * Creates a new empty store.
+     *
+     * @param siteCount the number of sites to cover.
+     *
+     * @return a new empty store covering the specified number of
+     * sites.
+     */
+    public static ArrayPopulationStore create(int siteCount) {
+        return new ArrayPopulationStore(siteCount);
+    }
+
+    /**
+     * Appends empty sites to this store.
+     *
+     * @param siteCount the new number of sites (no fewer than the
+     * current number).
+     */
+    void grow(int siteCount) {
+        if (siteCount > counts[0].length) {
+            int capacity = Math.max(siteCount, 2 * counts[0].length);
+
+            for (int type = 0; type < counts.length; ++type)
+                counts[type] = Arrays.copyOf(counts[type], capacity);
+        }
+
+        this.siteCount = Math.max(this.siteCount, siteCount);
+    }
+
+    @Override public int countSites() {
+        return siteCount;
+    }
+
+    @Override public int getCount(int site, int type) {
+        return counts[type][site];
+    }
+
+    @Override public void setCount(int site, int type, int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("Negative population count.");
+
+        int oldCount = counts[type][site];
+
+        totals[type] += count - oldCount;
+        counts[type][site] = count;
+
+        if (count != oldCount)
+            notifyListeners(site, type, oldCount, count);
+    }
+
+    @Override public int addCount(int site, int type, int delta) {
+        int count = counts[type][site] + delta;
+
+        if (count < 0)
+            throw new IllegalArgumentException("Negative population count.");
+
+        totals[type] += delta;
+        counts[type][site] = count;
+
+        if (delta != 0)
+            notifyListeners(site, type, count - delta, count);
+
+        return count;
+    }
+
+    private void notifyListeners(int site, int type, int oldCount, int newCount) {
+        for (PopulationListener listener : listeners)
+            listener.countChanged(site, type, oldCount, newCount);
+    }
+
+    @Override public void exportCounts(int type, IntBuffer target) {
+        target.put(counts[type], 0, siteCount);
+    }
+
+    @Override public void importCounts(int type, IntBuffer source) {
+        if (listeners.length > 0) {
+            PopulationStore.super.importCounts(type, source);
+            return;
+        }
+
+        int[] typeCounts = counts[type];
+        source.get(typeCounts, 0, siteCount);
+
+        long total = 0L;
+
+        for (int site = 0; site < siteCount; ++site) {
+            if (typeCounts[site] < 0)
+                throw new IllegalArgumentException("Negative population count.");
+
+            total += typeCounts[site];
+        }
+
+        totals[type] = total;
+    }
+
+    @Override public long getTotal(int type) {
+        return totals[type];
+    }
+
+    @Override public void addListener(PopulationListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+}
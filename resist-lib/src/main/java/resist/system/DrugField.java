@@ -0,0 +1,163 @@
+
+package resist.system;
+
+import resist.agent.DrugType;
+
+/**
+ * Represents the therapeutic agents as deterministic concentration
+ * fields over the lattice sites.
+ *
+ * <p>The concentration {@code C} of each drug at site {@code i}
+ * follows the mean-field limit of the discrete drug processes:
+ *
+ * <pre>
+ *     dC[i]/dt = -(D + k + u N[i]) C[i] + D sum_{j ~ i} C[j] / deg(j),
+ * </pre>
+ *
+ * where {@code D} is the drug diffusion rate, {@code k} the decay
+ * rate, {@code u} the uptake rate, {@code N[i]} the number of cells
+ * at site {@code i}, and {@code deg(j)} the number of neighbors of
+ * site {@code j}.  Each substep integrates the local loss to
+ * diffusion and uptake exactly and passes the drug that diffused out
+ * of each site to its neighbors at the end of the substep, then
+ * applies the (uniform) decay exactly.  Diffusion therefore conserves
+ * the total drug, the total decays at exactly the rate {@code k} in
+ * the absence of uptake, and concentrations remain non-negative for
+ * any step size; the step is subdivided so that no site loses more
+ * than a tenth of its drug in a single substep.
+ */
+public final class DrugField {
+    private final int siteCount;
+    private final SiteGraph neighbors;
+    private final double[][] levels;
+    private final double[] outflow;
+
+    private final double diffusionRate;
+    private final double decayRate;
+    private final double uptakeRate;
+
+    private static final double MAX_SUBSTEP_LOSS = 0.1;
+
+    private DrugField(ResistParam param, int siteCount, SiteGraph neighbors) {
+        this.siteCount = siteCount;
+        this.neighbors = neighbors;
+        this.levels = new double[DrugType.COUNT][siteCount];
+        this.outflow = new double[siteCount];
+
+        this.diffusionRate = param.getDrugDiffusionRate();
+        this.decayRate = param.getDrugDecayRate();
+        this.uptakeRate = param.getDrugUptakeRate();
+    }
+
+    /**
+     * Creates a new empty drug field.
+     *
+     * @param param the parameters of the simulation.
+     *
+     * @param neighbors the lattice neighbor graph over the dense
+     * site indexes.
+     *
+     * @return a new drug field with zero concentration everywhere.
+     */
+    public static DrugField create(ResistParam param, SiteGraph neighbors) {
+        return new DrugField(param, neighbors.countNodes(), neighbors);
+    }
+
+    /**
+     * Advances the concentration fields through a given time
+     * interval, holding the cell populations fixed.
+     *
+     * @param interval the length of the time interval.
+     *
+     * @param population the (fixed) cell populations.
+     */
+    public void advance(double interval, PopulationStore population) {
+        double maxRate = 0.0;
+
+        for (int site = 0; site < siteCount; ++site)
+            maxRate = Math.max(maxRate, lossRate(site, population));
+
+        int substeps = Math.max(1, (int) Math.ceil(interval * maxRate / MAX_SUBSTEP_LOSS));
+        double substep = interval / substeps;
+
+        for (int step = 0; step < substeps; ++step)
+            for (int drug = 0; drug < DrugType.COUNT; ++drug)
+                advanceDrug(levels[drug], substep, population);
+    }
+
+    private double lossRate(int site, PopulationStore population) {
+        double rate = decayRate + uptakeRate * population.countCells(site);
+
+        if (neighbors.degree(site) > 0)
+            rate += diffusionRate;
+
+        return rate;
+    }
+
+    private void advanceDrug(double[] level, double substep, PopulationStore population) {
+        for (int site = 0; site < siteCount; ++site) {
+            double diffusion = neighbors.degree(site) > 0 ? diffusionRate : 0.0;
+            double rate = diffusion + uptakeRate * population.countCells(site);
+
+            if (rate <= 0.0) {
+                outflow[site] = 0.0;
+                continue;
+            }
+
+            // The share of the drug lost from the site that diffused
+            // (rather than being taken up) goes to the neighbors.
+            double lost = level[site] * -Math.expm1(-substep * rate);
+
+            outflow[site] = diffusion > 0.0 ? lost * (diffusion / rate) / neighbors.degree(site) : 0.0;
+            level[site] -= lost;
+        }
+
+        for (int site = 0; site < siteCount; ++site)
+            for (int edge = neighbors.offset(site); edge < neighbors.offset(site + 1); ++edge)
+                level[neighbors.target(edge)] += outflow[site];
+
+        double decay = Math.exp(-substep * decayRate);
+
+        for (int site = 0; site < siteCount; ++site)
+            level[site] *= decay;
+    }
+
+    /**
+     * Returns the concentration of a drug at a site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param drug the ordinal value of the drug type.
+     *
+     * @return the concentration of the specified drug at the
+     * specified site.
+     */
+    public double getLevel(int site, int drug) {
+        return levels[drug][site];
+    }
+
+    /**
+     * Initializes the concentration fields from the drug counts in a
+     * population store.
+     *
+     * @param population the source of the drug counts.
+     */
+    public void load(PopulationStore population) {
+        for (int drug = 0; drug < DrugType.COUNT; ++drug)
+            for (int site = 0; site < siteCount; ++site)
+                levels[drug][site] = population.getCount(site, DrugType.valueOf(drug).index());
+    }
+
+    /**
+     * Records the concentration fields (rounded to the nearest
+     * integer) as the drug counts in a population store, so that
+     * observers of the store see the current drug distribution.
+     *
+     * @param population the store to update.
+     */
+    public void publish(PopulationStore population) {
+        for (int drug = 0; drug < DrugType.COUNT; ++drug)
+            for (int site = 0; site < siteCount; ++site)
+                population.setCount(site, DrugType.valueOf(drug).index(), (int) Math.round(levels[drug][site]));
+    }
+}
@@ -0,0 +1,21 @@
+
+package resist.system;
+
+/**
+ * Enumerates the representations of the therapeutic agents in a
+ * simulation.
+ */
+public enum DrugFieldMode {
+    /**
+     * Each drug unit is a discrete particle; diffusion, decay, and
+     * uptake are stochastic events.
+     */
+    DISCRETE,
+
+    /**
+     * Drug concentrations form a deterministic reaction-diffusion
+     * field that is coupled to the stochastic cell dynamics by
+     * operator splitting.
+     */
+    CONTINUOUS;
+}
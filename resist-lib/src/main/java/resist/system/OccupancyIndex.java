@@ -0,0 +1,257 @@
+
+package resist.system;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+import resist.agent.CellType;
+
+/**
+ * Indexes the sites that hold at least one cell (occupied sites) and
+ * the sites that hold cells to their capacity (full sites) in compact
+ * bitsets, and counts the full neighbors of every site, as the
+ * populations change.
+ *
+ * <p>The reaction model reads the index to silence birth at full
+ * sites and to restrict migration to neighbors with room, so that no
+ * event is ever rejected for want of capacity; observers may use it to
+ * visit only the occupied sites.  The index is built by one scan when
+ * it is attached to a population store and then updated by a {@link
+ * PopulationListener}; each update costs a constant number of
+ * operations, plus one operation per neighbor when a site fills or
+ * frees its first unit of room.
+ */
+public final class OccupancyIndex {
+    private final PopulationStore population;
+    private final SiteGraph reverse;
+    private final int siteCapacity;
+
+    // The number of cells at each site and the number of full sites
+    // among the neighbors of each site.
+    private int[] cellCounts;
+    private int[] fullNeighbors;
+
+    private final BitSet occupied;
+    private final BitSet full;
+
+    private int occupiedCount = 0;
+    private int fullCount = 0;
+
+    private OccupancyIndex(PopulationStore population, SiteGraph reverse, int siteCapacity) {
+        if (reverse.countNodes() != population.countSites())
+            throw new IllegalArgumentException("Neighbor graph does not match the population.");
+
+        this.population = population;
+        this.reverse = reverse;
+        this.siteCapacity = siteCapacity;
+
+        int siteCount = population.countSites();
+
+        this.cellCounts = new int[siteCount];
+        this.fullNeighbors = new int[siteCount];
+        this.occupied = new BitSet(siteCount);
+        this.full = new BitSet(siteCount);
+
+        computeIndex();
+        population.addListener(this::countChanged);
+    }
+
+    private void computeIndex() {
+        for (int site = 0; site < population.countSites(); ++site) {
+            cellCounts[site] = population.countCells(site);
+
+            if (cellCounts[site] > 0)
+                setOccupied(site, true);
+
+            if (cellCounts[site] >= siteCapacity)
+                setFull(site, true);
+        }
+    }
+
+    /**
+     * Attaches an index to a population store.
+     *
+     * @param population the store to index.
+     *
+     * @param reverse the reverse of the neighbor graph: the sites that
+     * list each site as a neighbor (see {@link SiteGraph#reverse()}).
+     *
+     * @param siteCapacity the number of cells at a full site.
+     *
+     * @return an index that tracks the specified store from now on.
+     *
+     * @throws IllegalArgumentException unless the graph has one node
+     * for each site in the store.
+     */
+    static OccupancyIndex attach(PopulationStore population, SiteGraph reverse, int siteCapacity) {
+        return new OccupancyIndex(population, reverse, siteCapacity);
+    }
+
+    /**
+     * Extends this index over the sites appended to a growing
+     * lattice, which must be empty.
+     *
+     * @param siteCount the new number of sites.
+     */
+    void grow(int siteCount) {
+        if (siteCount > cellCounts.length) {
+            int capacity = Math.max(siteCount, 2 * cellCounts.length);
+
+            cellCounts = Arrays.copyOf(cellCounts, capacity);
+            fullNeighbors = Arrays.copyOf(fullNeighbors, capacity);
+        }
+    }
+
+    /**
+     * Updates the full-neighbor count of a site after one of its
+     * edges in the neighbor graph has been redirected.
+     *
+     * @param site the source of the redirected edge.
+     *
+     * @param oldTarget the former target of the edge.
+     *
+     * @param newTarget the new target of the edge.
+     */
+    void relinked(int site, int oldTarget, int newTarget) {
+        if (full.get(oldTarget))
+            --fullNeighbors[site];
+
+        if (full.get(newTarget))
+            ++fullNeighbors[site];
+    }
+
+    private void countChanged(int site, int type, int oldCount, int newCount) {
+        if (type >= CellType.COUNT)
+            return;
+
+        int oldCells = cellCounts[site];
+        int newCells = oldCells + newCount - oldCount;
+
+        cellCounts[site] = newCells;
+
+        if ((oldCells > 0) != (newCells > 0))
+            setOccupied(site, newCells > 0);
+
+        if ((oldCells >= siteCapacity) != (newCells >= siteCapacity))
+            setFull(site, newCells >= siteCapacity);
+    }
+
+    private void setOccupied(int site, boolean value) {
+        occupied.set(site, value);
+        occupiedCount += value ? 1 : -1;
+    }
+
+    private void setFull(int site, boolean value) {
+        int delta = value ? 1 : -1;
+
+        full.set(site, value);
+        fullCount += delta;
+
+        for (int edge = reverse.offset(site); edge < reverse.offset(site + 1); ++edge)
+            fullNeighbors[reverse.target(edge)] += delta;
+    }
+
+    /**
+     * Returns the number of cells at one site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return the number of cells at the specified site.
+     */
+    public int countCells(int site) {
+        return cellCounts[site];
+    }
+
+    /**
+     * Identifies occupied sites.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return {@code true} iff the specified site holds at least one
+     * cell.
+     */
+    public boolean isOccupied(int site) {
+        return occupied.get(site);
+    }
+
+    /**
+     * Identifies full sites.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return {@code true} iff the specified site holds cells to its
+     * capacity.
+     */
+    public boolean isFull(int site) {
+        return full.get(site);
+    }
+
+    /**
+     * Returns the number of full sites among the neighbors of one
+     * site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return the number of full sites among the neighbors of the
+     * specified site.
+     */
+    public int countFullNeighbors(int site) {
+        return fullNeighbors[site];
+    }
+
+    /**
+     * Returns the number of occupied sites.
+     *
+     * @return the number of sites that hold at least one cell.
+     */
+    public int countOccupiedSites() {
+        return occupiedCount;
+    }
+
+    /**
+     * Returns the number of full sites.
+     *
+     * @return the number of sites that hold cells to their capacity.
+     */
+    public int countFullSites() {
+        return fullCount;
+    }
+
+    /**
+     * Finds the next occupied site.
+     *
+     * @param from the dense index at which to start the search.
+     *
+     * @return the index of the first occupied site at or after {@code
+     * from}, or {@code -1} if there is none.
+     */
+    public int nextOccupiedSite(int from) {
+        return occupied.nextSetBit(from);
+    }
+
+    /**
+     * Finds the next full site.
+     *
+     * @param from the dense index at which to start the search.
+     *
+     * @return the index of the first full site at or after {@code
+     * from}, or {@code -1} if there is none.
+     */
+    public int nextFullSite(int from) {
+        return full.nextSetBit(from);
+    }
+
+    /**
+     * Visits the occupied sites in increasing order of their dense
+     * indexes; the cost is proportional to the number of occupied
+     * sites (plus one word per 64 sites), not to the lattice size.
+     *
+     * @param action the action to apply to the index of each occupied
+     * site; it must not change the populations.
+     */
+    public void forEachOccupiedSite(IntConsumer action) {
+        for (int site = occupied.nextSetBit(0); site >= 0; site = occupied.nextSetBit(site + 1))
+            action.accept(site);
+    }
+}
@@ -0,0 +1,225 @@
+
+package resist.system;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Provides a contiguous range of memory outside the Java heap,
+ * addressed as an array of {@code int} or {@code double} elements.
+ *
+ * <p>The memory is allocated as a sequence of direct (or memory-mapped)
+ * byte buffers of at most {@code 2^30} bytes each, so a single range
+ * may exceed the two-gigabyte limit of one buffer.  The garbage
+ * collector sees only the small buffer objects, never their contents,
+ * so the size of the range has no effect on collection pauses.
+ *
+ * <p>Every accessor checks its element index against the size of the
+ * range and throws {@code IndexOutOfBoundsException} for an invalid
+ * index.  Instances are not thread-safe, but distinct elements may be
+ * read and written concurrently from different threads.
+ */
+public final class OffHeapMemory {
+    private final long byteSize;
+    private final ByteBuffer[] segments;
+    private final boolean mapped;
+
+    // Segments hold 2^30 bytes, which is a whole number of elements
+    // of every supported type.
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_BYTES - 1L;
+
+    private OffHeapMemory(long byteSize, ByteBuffer[] segments, boolean mapped) {
+        this.byteSize = byteSize;
+        this.segments = segments;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Allocates a new range of zero-filled direct memory.
+     *
+     * @param byteSize the size of the range in bytes.
+     *
+     * @return the new memory range.
+     *
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public static OffHeapMemory allocate(long byteSize) {
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(byteSize)];
+
+        for (int index = 0; index < segments.length; ++index)
+            segments[index] = ByteBuffer.allocateDirect(segmentSize(byteSize, index)).order(ByteOrder.nativeOrder());
+
+        return new OffHeapMemory(byteSize, segments, false);
+    }
+
+    /**
+     * Maps a new zero-filled file into memory, replacing any existing
+     * file.  Changes to the memory are written back to the file by the
+     * operating system (or explicitly by {@link #force()}), so the
+     * range may exceed the available physical memory.
+     *
+     * @param file the file to create and map.
+     *
+     * @param byteSize the size of the range in bytes.
+     *
+     * @return the memory range mapped to the specified file.
+     *
+     * @throws IllegalArgumentException if the size is negative.
+     *
+     * @throws UncheckedIOException if the file cannot be mapped.
+     */
+    public static OffHeapMemory create(Path file, long byteSize) {
+        return map(file, byteSize, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Maps an existing file into memory, retaining its contents and
+     * extending it with zeros as necessary.
+     *
+     * @param file the file to map.
+     *
+     * @param byteSize the size of the range in bytes.
+     *
+     * @return the memory range mapped to the specified file.
+     *
+     * @throws IllegalArgumentException if the size is negative.
+     *
+     * @throws UncheckedIOException if the file cannot be mapped.
+     */
+    public static OffHeapMemory map(Path file, long byteSize) {
+        return map(file, byteSize, StandardOpenOption.CREATE);
+    }
+
+    private static OffHeapMemory map(Path file, long byteSize, OpenOption option) {
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(byteSize)];
+
+        try (FileChannel channel = FileChannel.open(file,
+                                                    option,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            for (int index = 0; index < segments.length; ++index)
+                segments[index] =
+                    channel.map(FileChannel.MapMode.READ_WRITE, index * SEGMENT_BYTES, segmentSize(byteSize, index))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return new OffHeapMemory(byteSize, segments, true);
+    }
+
+    private static int segmentCount(long byteSize) {
+        if (byteSize < 0L)
+            throw new IllegalArgumentException("Negative memory size.");
+
+        return Math.toIntExact((byteSize + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    private static int segmentSize(long byteSize, int index) {
+        return (int) Math.min(SEGMENT_BYTES, byteSize - index * SEGMENT_BYTES);
+    }
+
+    /**
+     * Returns the size of this range in bytes.
+     *
+     * @return the size of this range in bytes.
+     */
+    public long byteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Identifies memory ranges that are mapped to a file.
+     *
+     * @return {@code true} iff this range is mapped to a file.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Returns one {@code int} element of this range.
+     *
+     * @param index the element index (in units of four bytes).
+     *
+     * @return the element at the specified index.
+     *
+     * @throws IndexOutOfBoundsException unless the index is valid.
+     */
+    public int getInt(long index) {
+        long offset = checkOffset(index, Integer.BYTES);
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getInt((int) (offset & SEGMENT_MASK));
+    }
+
+    /**
+     * Assigns one {@code int} element of this range.
+     *
+     * @param index the element index (in units of four bytes).
+     *
+     * @param value the value to assign.
+     *
+     * @throws IndexOutOfBoundsException unless the index is valid.
+     */
+    public void setInt(long index, int value) {
+        long offset = checkOffset(index, Integer.BYTES);
+        segments[(int) (offset >>> SEGMENT_SHIFT)].putInt((int) (offset & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Returns one {@code double} element of this range.
+     *
+     * @param index the element index (in units of eight bytes).
+     *
+     * @return the element at the specified index.
+     *
+     * @throws IndexOutOfBoundsException unless the index is valid.
+     */
+    public double getDouble(long index) {
+        long offset = checkOffset(index, Double.BYTES);
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getDouble((int) (offset & SEGMENT_MASK));
+    }
+
+    /**
+     * Assigns one {@code double} element of this range.
+     *
+     * @param index the element index (in units of eight bytes).
+     *
+     * @param value the value to assign.
+     *
+     * @throws IndexOutOfBoundsException unless the index is valid.
+     */
+    public void setDouble(long index, double value) {
+        long offset = checkOffset(index, Double.BYTES);
+        segments[(int) (offset >>> SEGMENT_SHIFT)].putDouble((int) (offset & SEGMENT_MASK), value);
+    }
+
+    private long checkOffset(long index, int elementBytes) {
+        long offset = index * elementBytes;
+
+        if (index < 0L || offset > byteSize - elementBytes)
+            throw new IndexOutOfBoundsException(String.format("Element index [%d] is out of bounds.", index));
+
+        return offset;
+    }
+
+    /**
+     * Writes any changes to a memory-mapped range back to its file;
+     * has no effect on direct memory.
+     */
+    public void force() {
+        for (ByteBuffer segment : segments)
+            if (segment instanceof MappedByteBuffer)
+                ((MappedByteBuffer) segment).force();
+    }
+}
@@ -0,0 +1,175 @@
+
+package resist.system;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import resist.agent.AgentType;
+
+/**
+ * Stores site populations in {@link OffHeapMemory}, with the same
+ * struct-of-arrays layout as {@link ArrayPopulationStore}: the counts
+ * for agent type {@code t} occupy the contiguous elements {@code
+ * [t * siteCount, (t + 1) * siteCount)}.
+ *
+ * <p>The counts never reside on the Java heap, so they add nothing
+ * to garbage collection, and a store mapped to a file may exceed the
+ * available physical memory.  The rest of the per-site state does not
+ * move with them (see {@link StateBackend} for the resulting limit on
+ * the lattice size).  Site and type indexes are checked on every
+ * access.
+ */
+public final class OffHeapPopulationStore implements PopulationStore {
+    private final int siteCount;
+    private final OffHeapMemory counts;
+    private final long[] totals;
+
+    private PopulationListener[] listeners = new PopulationListener[0];
+
+    private OffHeapPopulationStore(int siteCount, OffHeapMemory counts) {
+        this.siteCount = siteCount;
+        this.counts = counts;
+        this.totals = new long[AgentType.COUNT];
+
+        if (counts.isMapped())
+            computeTotals();
+    }
+
+    private void computeTotals() {
+        for (int type = 0; type < AgentType.COUNT; ++type) {
+            for (int site = 0; site < siteCount; ++site) {
+                int count = getCount(site, type);
+
+                if (count < 0)
+                    throw new IllegalStateException("Negative population count in the mapped file.");
+
+                totals[type] += count;
+            }
+        }
+    }
+
+    /**
+     * Creates a new empty store in direct memory.
+     *
+     * @param siteCount the number of sites to cover.
+     *
+     * @return a new empty store covering the specified number of
+     * sites.
+     */
+    public static OffHeapPopulationStore create(int siteCount) {
+        return new OffHeapPopulationStore(siteCount, OffHeapMemory.allocate(byteSize(siteCount)));
+    }
+
+    /**
+     * Creates a new empty store mapped to a file, replacing any
+     * existing file.
+     *
+     * @param file the file to create and map.
+     *
+     * @param siteCount the number of sites to cover.
+     *
+     * @return a new empty store covering the specified number of
+     * sites, mapped to the specified file.
+     *
+     * @throws java.io.UncheckedIOException if the file cannot be
+     * mapped.
+     */
+    public static OffHeapPopulationStore create(Path file, int siteCount) {
+        return new OffHeapPopulationStore(siteCount, OffHeapMemory.create(file, byteSize(siteCount)));
+    }
+
+    /**
+     * Creates a store mapped to an existing file, holding the counts
+     * last written to that file (the file is extended with zero
+     * counts if it is too short).
+     *
+     * @param file the file to map.
+     *
+     * @param siteCount the number of sites to cover.
+     *
+     * @return a new store covering the specified number of sites,
+     * mapped to the specified file.
+     *
+     * @throws java.io.UncheckedIOException if the file cannot be
+     * mapped.
+     */
+    public static OffHeapPopulationStore map(Path file, int siteCount) {
+        return new OffHeapPopulationStore(siteCount, OffHeapMemory.map(file, byteSize(siteCount)));
+    }
+
+    private static long byteSize(int siteCount) {
+        if (siteCount < 0)
+            throw new IllegalArgumentException("Negative site count.");
+
+        return (long) Integer.BYTES * AgentType.COUNT * siteCount;
+    }
+
+    private long indexOf(int site, int type) {
+        if (site < 0 || site >= siteCount)
+            throw new IndexOutOfBoundsException(String.format("Site index [%d] is out of bounds.", site));
+
+        if (type < 0 || type >= AgentType.COUNT)
+            throw new IndexOutOfBoundsException(String.format("Type index [%d] is out of bounds.", type));
+
+        return (long) type * siteCount + site;
+    }
+
+    /**
+     * Writes the counts back to the mapped file (if any).
+     */
+    public void force() {
+        counts.force();
+    }
+
+    @Override public int countSites() {
+        return siteCount;
+    }
+
+    @Override public int getCount(int site, int type) {
+        return counts.getInt(indexOf(site, type));
+    }
+
+    @Override public void setCount(int site, int type, int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("Negative population count.");
+
+        long index = indexOf(site, type);
+        int oldCount = counts.getInt(index);
+
+        totals[type] += count - oldCount;
+        counts.setInt(index, count);
+
+        if (count != oldCount)
+            notifyListeners(site, type, oldCount, count);
+    }
+
+    @Override public int addCount(int site, int type, int delta) {
+        long index = indexOf(site, type);
+        int count = counts.getInt(index) + delta;
+
+        if (count < 0)
+            throw new IllegalArgumentException("Negative population count.");
+
+        totals[type] += delta;
+        counts.setInt(index, count);
+
+        if (delta != 0)
+            notifyListeners(site, type, count - delta, count);
+
+        return count;
+    }
+
+    private void notifyListeners(int site, int type, int oldCount, int newCount) {
+        for (PopulationListener listener : listeners)
+            listener.countChanged(site, type, oldCount, newCount);
+    }
+
+    @Override public long getTotal(int type) {
+        return totals[type];
+    }
+
+    @Override public void addListener(PopulationListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+}
@@ -0,0 +1,125 @@
+
+package resist.system;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Expands a parameter grid into the parameters for every grid point,
+ * so that a complete sweep may run in one process.
+ *
+ * <p>A grid is defined by one property collection (or file) in the
+ * format of {@link ResistParam#create(Properties)}, except that any
+ * property may list several values separated by a vertical bar:
+ *
+ * <pre>
+ *   resist.drugUptakeRate = 0.01 | 0.02 | 0.05
+ *   resist.resistanceMutationRate = 1.0E-4 | 1.0E-3
+ * </pre>
+ *
+ * <p>The grid is the Cartesian product of the listed values.  Points
+ * are enumerated with the multi-valued properties ordered by name
+ * and the last property varying fastest, so the point index is
+ * reproducible.  Every point is built (and therefore validated) when
+ * the grid is expanded.  Points with the {@code MAPPED} state backend
+ * are given distinct state files (suffixed with the point index), so
+ * that the points may run concurrently.
+ */
+public final class ParamSweep {
+    private static final Pattern SEPARATOR = Pattern.compile("\\|");
+
+    private ParamSweep() {}
+
+    /**
+     * Expands a parameter grid defined in a property file.
+     *
+     * @param file the property file that defines the grid.
+     *
+     * @return the parameters for every grid point, in enumeration
+     * order.
+     *
+     * @throws IllegalArgumentException if any property is
+     * unrecognized or has an invalid value.
+     *
+     * @throws IllegalStateException unless every required parameter
+     * is defined.
+     *
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public static List<ResistParam> load(Path file) {
+        Properties properties = new Properties();
+
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return expand(properties);
+    }
+
+    /**
+     * Expands a parameter grid defined in a property collection.
+     *
+     * @param properties the property collection that defines the
+     * grid.
+     *
+     * @return the parameters for every grid point, in enumeration
+     * order.
+     *
+     * @throws IllegalArgumentException if any property is
+     * unrecognized or has an invalid value.
+     *
+     * @throws IllegalStateException unless every required parameter
+     * is defined.
+     */
+    public static List<ResistParam> expand(Properties properties) {
+        ResistParamBuilder builder = ResistParamBuilder.create();
+
+        List<String> axisNames = new ArrayList<String>();
+        List<String[]> axisValues = new ArrayList<String[]>();
+
+        for (String name : properties.stringPropertyNames())
+            if (name.startsWith(ResistParamBuilder.NAMESPACE) && properties.getProperty(name).indexOf('|') >= 0)
+                axisNames.add(name);
+
+        Collections.sort(axisNames);
+
+        for (String name : properties.stringPropertyNames())
+            if (name.startsWith(ResistParamBuilder.NAMESPACE) && !axisNames.contains(name))
+                builder.set(name, properties.getProperty(name));
+
+        for (String name : axisNames)
+            axisValues.add(SEPARATOR.split(properties.getProperty(name)));
+
+        List<ResistParam> points = new ArrayList<ResistParam>();
+        expand(builder, axisNames, axisValues, 0, points);
+
+        return points;
+    }
+
+    private static void expand(ResistParamBuilder builder,
+                               List<String> axisNames,
+                               List<String[]> axisValues,
+                               int axis,
+                               List<ResistParam> points) {
+        if (axis == axisNames.size()) {
+            points.add(builder.build().withStateFileIndex(points.size()));
+            return;
+        }
+
+        for (String value : axisValues.get(axis)) {
+            builder.set(axisNames.get(axis), value);
+            expand(builder, axisNames, axisValues, axis + 1, points);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+
+package resist.system;
+
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.agent.DrugType;
+
+/**
+ * Maintains global summaries of the site populations (tumor size,
+ * resistant fractions, the number of occupied and full sites, and the
+ * time at which each cell type first appeared) as the populations
+ * change, so that observers and stopping rules may read them in
+ * constant time, without a pass over the lattice.
+ *
+ * <p>The totals are kept by the population store and the site counts
+ * by the {@link OccupancyIndex} of the reaction model; the aggregates
+ * themselves only date the first appearance of each cell type, with a
+ * {@link PopulationListener} that costs a constant number of
+ * operations per change.
+ */
+public final class PopulationAggregates {
+    private final PopulationStore population;
+    private final OccupancyIndex occupancy;
+    private final DoubleSupplier clock;
+
+    private final double[] firstTimes = new double[CellType.COUNT];
+
+    private PopulationAggregates(PopulationStore population, OccupancyIndex occupancy, DoubleSupplier clock) {
+        this.population = population;
+        this.occupancy = occupancy;
+        this.clock = clock;
+
+        computeFirstTimes();
+        population.addListener(this::countChanged);
+    }
+
+    private void computeFirstTimes() {
+        Arrays.fill(firstTimes, Double.NaN);
+        double time = clock.getAsDouble();
+
+        for (int type = 0; type < CellType.COUNT; ++type)
+            if (population.getTotal(type) > 0)
+                firstTimes[type] = time;
+    }
+
+    /**
+     * Attaches aggregates to a population store.
+     *
+     * @param population the store to summarize.
+     *
+     * @param occupancy the occupancy index of the same store.
+     *
+     * @param clock the source of the simulation time, which dates the
+     * first appearance of each cell type.
+     *
+     * @return aggregates that track the specified store from now on.
+     */
+    static PopulationAggregates attach(PopulationStore population, OccupancyIndex occupancy, DoubleSupplier clock) {
+        return new PopulationAggregates(population, occupancy, clock);
+    }
+
+    /**
+     * Copies the first-appearance times from the aggregates of another
+     * system, when this system is a copy of that one.
+     *
+     * @param source the aggregates to copy.
+     */
+    void copyFirstTimes(PopulationAggregates source) {
+        copyFirstTimes(source.firstTimes);
+    }
+
+    /**
+     * Copies recorded first-appearance times, when this system was
+     * restored from a checkpoint.
+     *
+     * @param times the first-appearance time of each cell type, in
+     * order of the cell type index.
+     */
+    void copyFirstTimes(double[] times) {
+        System.arraycopy(times, 0, firstTimes, 0, firstTimes.length);
+    }
+
+    private void countChanged(int site, int type, int oldCount, int newCount) {
+        if (type >= CellType.COUNT)
+            return;
+
+        if (oldCount == 0 && Double.isNaN(firstTimes[type]))
+            firstTimes[type] = clock.getAsDouble();
+    }
+
+    /**
+     * Returns the total number of agents of a given type.
+     *
+     * @param type the agent type of interest.
+     *
+     * @return the total number of agents of the specified type.
+     */
+    public long getTotal(AgentType type) {
+        return population.getTotal(type);
+    }
+
+    /**
+     * Returns the total number of cells of all types (the tumor size).
+     *
+     * @return the total number of cells of all types.
+     */
+    public long countCells() {
+        long total = 0L;
+
+        for (int type = 0; type < CellType.COUNT; ++type)
+            total += population.getTotal(type);
+
+        return total;
+    }
+
+    /**
+     * Returns the fraction of cells that are resistant to a given
+     * drug.
+     *
+     * @param drug the drug of interest.
+     *
+     * @return the fraction of cells that are resistant to the
+     * specified drug ({@code NaN} if there are no cells).
+     */
+    public double getResistantFraction(DrugType drug) {
+        long resistant = 0L;
+        long total = 0L;
+
+        for (int type = 0; type < CellType.COUNT; ++type) {
+            total += population.getTotal(type);
+
+            if (CellType.valueOf(type).isResistant(drug))
+                resistant += population.getTotal(type);
+        }
+
+        return (double) resistant / (double) total;
+    }
+
+    /**
+     * Returns the number of sites that hold at least one cell.
+     *
+     * @return the number of sites that hold at least one cell.
+     */
+    public int countOccupiedSites() {
+        return occupancy.countOccupiedSites();
+    }
+
+    /**
+     * Returns the number of sites that hold cells to their capacity.
+     *
+     * @return the number of sites that hold cells to their capacity.
+     */
+    public int countFullSites() {
+        return occupancy.countFullSites();
+    }
+
+    /**
+     * Identifies cell types that have appeared in the population.
+     *
+     * @param type the cell type of interest.
+     *
+     * @return {@code true} iff at least one cell of the specified
+     * type has existed since these aggregates were attached.
+     */
+    public boolean hasAppeared(CellType type) {
+        return !Double.isNaN(firstTimes[type.index()]);
+    }
+
+    /**
+     * Returns the time at which a cell type first appeared.  Types
+     * present when the aggregates were attached (after the initial
+     * population was assigned) are dated to that time; systems
+     * forked or restored from a checkpoint keep the times of the
+     * original system.
+     *
+     * @param type the cell type of interest.
+     *
+     * @return the simulation time at which the first cell of the
+     * specified type appeared ({@code NaN} if it has not appeared).
+     */
+    public double getFirstHittingTime(CellType type) {
+        return firstTimes[type.index()];
+    }
+}
@@ -0,0 +1,27 @@
+
+package resist.system;
+
+/**
+ * Receives notice of changes to the site populations in a {@link
+ * PopulationStore}.
+ *
+ * <p>Listeners are called synchronously, on the thread that changed
+ * the population, after the change has been recorded; they must not
+ * change the store themselves.
+ */
+@FunctionalInterface
+public interface PopulationListener {
+    /**
+     * Responds to a change in the number of agents of one type at
+     * one site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param type the dense index of the agent type.
+     *
+     * @param oldCount the previous number of agents.
+     *
+     * @param newCount the new number of agents.
+     */
+    public abstract void countChanged(int site, int type, int oldCount, int newCount);
+}
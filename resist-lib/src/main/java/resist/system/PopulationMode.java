@@ -0,0 +1,33 @@
+
+package resist.system;
+
+/**
+ * Enumerates the ways that a {@link ResistSystem} exposes its site
+ * populations to the {@code jam} agent framework.  In every mode the
+ * population counts themselves live in the {@link PopulationStore}.
+ */
+public enum PopulationMode {
+    /**
+     * Every cellular and therapeutic agent is created and mapped into
+     * the underlying agent system when the system is created.
+     */
+    AGENT,
+
+    /**
+     * The agents at a site are created and mapped into the underlying
+     * agent system when the site is first occupied (by the initial
+     * population or by a birth, migration, or diffusion event); sites
+     * that are never occupied are never mapped, so the cost of agent
+     * mapping scales with the region reached by the tumor and drugs
+     * rather than with the lattice.  Mapped agents remain mapped after
+     * their site empties.
+     */
+    LAZY,
+
+    /**
+     * Populations are kept only in the primitive population store;
+     * agents are never mapped and are created on demand as views
+     * when clients request them.
+     */
+    ARRAY;
+}
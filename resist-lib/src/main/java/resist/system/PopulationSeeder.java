@@ -0,0 +1,231 @@
+
+package resist.system;
+
+import java.util.stream.IntStream;
+
+import resist.agent.AgentType;
+import resist.random.DiscreteDeviates;
+import resist.random.RandomSource;
+import resist.random.RandomStreams;
+
+/**
+ * Places a large initial population across the lattice sites in bulk.
+ *
+ * <p>The placement is an exact multinomial draw (with site
+ * probabilities proportional to the {@link SeedLayout} density),
+ * computed as a sequence of conditional binomial draws, so the cost
+ * depends on the number of sites rather than the number of agents.
+ * The sites are divided into fixed blocks: the number of agents in
+ * each block is drawn serially, and the blocks then distribute their
+ * agents over their own sites in parallel, each with its own random
+ * stream, so the result is reproducible regardless of thread count.
+ *
+ * <p>Cells are limited by the site capacity: agents drawn for a full
+ * site overflow and are placed again, in further rounds, among the
+ * sites with room remaining (in proportion to their densities).  The
+ * final layout therefore respects the capacity, but it is only an
+ * approximation to the multinomial conditioned on the capacity
+ * constraints: sites that fill early receive no further agents, so
+ * the layout is flatter than the conditional distribution when most
+ * of the capacity is used.  Drug units have no capacity limit.
+ */
+public final class PopulationSeeder {
+    private final PopulationStore population;
+    private final int siteCapacity;
+    private final int siteCount;
+    private final int blockCount;
+
+    // The number of sites in each parallel block.
+    private static final int BLOCK_SIZE = 4096;
+
+    private PopulationSeeder(PopulationStore population, int siteCapacity) {
+        this.population = population;
+        this.siteCapacity = siteCapacity;
+        this.siteCount = population.countSites();
+        this.blockCount = (siteCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Creates a new seeder for a population store.
+     *
+     * @param population the store to populate.
+     *
+     * @param siteCapacity the maximum number of cells at one site.
+     *
+     * @return a new seeder for the specified store.
+     */
+    public static PopulationSeeder create(PopulationStore population, int siteCapacity) {
+        return new PopulationSeeder(population, siteCapacity);
+    }
+
+    /**
+     * Adds agents of one type to the store.
+     *
+     * @param random the source of randomness for the placement.
+     *
+     * @param layout the relative density of the agents.
+     *
+     * @param type the agent type to seed.
+     *
+     * @param count the number of agents to seed.
+     *
+     * @throws IllegalStateException if the agents are cells and the
+     * sites with positive density do not have room for them all, or
+     * if no site has positive density.
+     */
+    public void seed(RandomSource random, SeedLayout layout, AgentType type, long count) {
+        if (count <= 0L)
+            return;
+
+        double[] densities = new double[siteCount];
+        IntStream.range(0, siteCount).parallel().forEach(site -> densities[site] = checkDensity(layout.density(site)));
+
+        int[] room = type.isCell() ? computeRoom() : null;
+        int[] added = new int[siteCount];
+
+        RandomStreams streams = RandomStreams.create(random.nextLong());
+        long remaining = count;
+
+        for (int round = 0; remaining > 0L; ++round) {
+            double[] blockDensities = new double[blockCount];
+            IntStream.range(0, blockCount).parallel().forEach(block -> blockDensities[block] = blockDensity(block, densities, room));
+
+            long[] blockCounts = multinomial(random, remaining, blockDensities);
+            long[] overflow = new long[blockCount];
+
+            int offset = round * blockCount;
+
+            IntStream.range(0, blockCount).parallel().forEach(block ->
+                overflow[block] = placeBlock(streams.stream(offset + block), block, blockCounts[block], densities, room, added));
+
+            remaining = 0L;
+
+            for (long blockOverflow : overflow)
+                remaining += blockOverflow;
+        }
+
+        // Population listeners are not thread-safe, so the store is
+        // updated serially.
+        for (int site = 0; site < siteCount; ++site)
+            if (added[site] > 0)
+                population.addCount(site, type.index(), added[site]);
+    }
+
+    private static double checkDensity(double density) {
+        if (!(density >= 0.0) || Double.isInfinite(density))
+            throw new IllegalArgumentException("Invalid seed density.");
+
+        return density;
+    }
+
+    private int[] computeRoom() {
+        int[] room = new int[siteCount];
+
+        for (int site = 0; site < siteCount; ++site)
+            room[site] = Math.max(0, siteCapacity - population.countCells(site));
+
+        return room;
+    }
+
+    private static boolean hasRoom(int[] room, int site) {
+        return room == null || room[site] > 0;
+    }
+
+    private int blockLower(int block) {
+        return block * BLOCK_SIZE;
+    }
+
+    private int blockUpper(int block) {
+        return Math.min(siteCount, (block + 1) * BLOCK_SIZE);
+    }
+
+    private double blockDensity(int block, double[] densities, int[] room) {
+        double total = 0.0;
+
+        for (int site = blockLower(block); site < blockUpper(block); ++site)
+            if (hasRoom(room, site))
+                total += densities[site];
+
+        return total;
+    }
+
+    // Draws the number of trials that fall in each category, given
+    // category weights (not necessarily normalized).
+    private static long[] multinomial(RandomSource random, long trials, double[] weights) {
+        double remainingWeight = 0.0;
+
+        for (double weight : weights)
+            remainingWeight += weight;
+
+        if (remainingWeight <= 0.0)
+            throw new IllegalStateException("Insufficient capacity for the initial population.");
+
+        long[] counts = new long[weights.length];
+        long remaining = trials;
+
+        for (int k = 0; k < weights.length && remaining > 0L; ++k) {
+            if (weights[k] <= 0.0)
+                continue;
+
+            if (weights[k] >= remainingWeight)
+                counts[k] = remaining;
+            else
+                counts[k] = DiscreteDeviates.binomial(random, remaining, weights[k] / remainingWeight);
+
+            remaining -= counts[k];
+            remainingWeight -= weights[k];
+        }
+
+        return counts;
+    }
+
+    // Places agents over the sites of one block and returns the
+    // number that could not be placed for lack of room.
+    private long placeBlock(RandomSource random, int block, long count, double[] densities, int[] room, int[] added) {
+        int lower = blockLower(block);
+        int upper = blockUpper(block);
+
+        while (count > 0L) {
+            double remainingWeight = 0.0;
+
+            for (int site = lower; site < upper; ++site)
+                if (hasRoom(room, site))
+                    remainingWeight += densities[site];
+
+            if (remainingWeight <= 0.0)
+                return count;
+
+            long remaining = count;
+            long overflow = 0L;
+
+            for (int site = lower; site < upper && remaining > 0L; ++site) {
+                if (densities[site] <= 0.0 || !hasRoom(room, site))
+                    continue;
+
+                long drawn;
+
+                if (densities[site] >= remainingWeight)
+                    drawn = remaining;
+                else
+                    drawn = DiscreteDeviates.binomial(random, remaining, densities[site] / remainingWeight);
+
+                remaining -= drawn;
+                remainingWeight -= densities[site];
+
+                long accepted = room != null ? Math.min(drawn, room[site]) : drawn;
+
+                added[site] = Math.addExact(added[site], Math.toIntExact(accepted));
+                overflow += drawn - accepted;
+
+                if (room != null)
+                    room[site] -= (int) accepted;
+            }
+
+            // Round-off error may leave a few agents unassigned; they
+            // are placed with the overflow.
+            count = overflow + remaining;
+        }
+
+        return 0L;
+    }
+}
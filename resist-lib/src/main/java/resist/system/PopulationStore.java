@@ -0,0 +1,164 @@
+
+package resist.system;
+
+import java.nio.IntBuffer;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+
+/**
+ * Stores the number of cells and drug units of each type at every
+ * site of a spatial structure.
+ *
+ * <p>Sites are identified by their dense index in the {@link
+ * resist.agent.AgentRegistry} for the space, and agent types by their
+ * dense {@link AgentType#index()}, so that implementations may keep
+ * the counts in flat primitive arrays rather than behind agent
+ * objects.
+ */
+public interface PopulationStore {
+    /**
+     * Returns the number of sites covered by this store.
+     *
+     * @return the number of sites covered by this store.
+     */
+    public abstract int countSites();
+
+    /**
+     * Returns the number of agents of a given type at a given site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param type the dense index of the agent type.
+     *
+     * @return the number of agents of the specified type at the
+     * specified site.
+     */
+    public abstract int getCount(int site, int type);
+
+    /**
+     * Assigns the number of agents of a given type at a given site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param type the dense index of the agent type.
+     *
+     * @param count the new number of agents.
+     *
+     * @throws IllegalArgumentException if the count is negative.
+     */
+    public abstract void setCount(int site, int type, int count);
+
+    /**
+     * Changes the number of agents of a given type at a given site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param type the dense index of the agent type.
+     *
+     * @param delta the change in the number of agents.
+     *
+     * @return the updated number of agents.
+     *
+     * @throws IllegalArgumentException if the update would make the
+     * count negative.
+     */
+    public abstract int addCount(int site, int type, int delta);
+
+    /**
+     * Returns the total number of agents of a given type across all
+     * sites.
+     *
+     * @param type the dense index of the agent type.
+     *
+     * @return the total number of agents of the specified type.
+     */
+    public abstract long getTotal(int type);
+
+    /**
+     * Registers a listener to be notified of every change to the
+     * populations in this store.
+     *
+     * @param listener the listener to register.
+     */
+    public abstract void addListener(PopulationListener listener);
+
+    /**
+     * Returns the number of agents of a given type at a given site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param type the agent type of interest.
+     *
+     * @return the number of agents of the specified type at the
+     * specified site.
+     */
+    public default int getCount(int site, AgentType type) {
+        return getCount(site, type.index());
+    }
+
+    /**
+     * Returns the total number of agents of a given type across all
+     * sites.
+     *
+     * @param type the agent type of interest.
+     *
+     * @return the total number of agents of the specified type.
+     */
+    public default long getTotal(AgentType type) {
+        return getTotal(type.index());
+    }
+
+    /**
+     * Returns the number of cells (of all types) at a given site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return the number of cells at the specified site.
+     */
+    public default int countCells(int site) {
+        int total = 0;
+
+        for (int type = 0; type < CellType.COUNT; ++type)
+            total += getCount(site, type);
+
+        return total;
+    }
+
+    /**
+     * Copies the counts of one agent type at every site into a
+     * buffer, in order of dense site index, starting at the current
+     * position of the buffer.
+     *
+     * @param type the dense index of the agent type.
+     *
+     * @param target the buffer to fill.
+     *
+     * @throws java.nio.BufferOverflowException unless the buffer has
+     * room for {@code countSites()} counts.
+     */
+    public default void exportCounts(int type, IntBuffer target) {
+        for (int site = 0; site < countSites(); ++site)
+            target.put(getCount(site, type));
+    }
+
+    /**
+     * Assigns the counts of one agent type at every site from a
+     * buffer, in order of dense site index, starting at the current
+     * position of the buffer; listeners are notified of every count
+     * that changes.
+     *
+     * @param type the dense index of the agent type.
+     *
+     * @param source the buffer holding the new counts.
+     *
+     * @throws java.nio.BufferUnderflowException unless the buffer
+     * holds {@code countSites()} counts.
+     *
+     * @throws IllegalArgumentException if any count is negative.
+     */
+    public default void importCounts(int type, IntBuffer source) {
+        for (int site = 0; site < countSites(); ++site)
+            setCount(site, type, source.get());
+    }
+}
@@ -0,0 +1,53 @@
+
+package resist.system;
+
+/**
+ * Enumerates the stochastic processes that change site populations.
+ */
+public enum ProcType {
+    /**
+     * A cell divides, adding a cell of the same type to its site.
+     */
+    CELL_BIRTH,
+
+    /**
+     * A cell dies from natural causes.
+     */
+    CELL_DEATH,
+
+    /**
+     * A cell moves to a neighboring site.
+     */
+    CELL_MIGRATION,
+
+    /**
+     * A cell acquires resistance to one additional drug.
+     */
+    RESISTANCE_MUTATION,
+
+    /**
+     * A drug unit moves to a neighboring site.
+     */
+    DRUG_DIFFUSION,
+
+    /**
+     * A drug unit decays.
+     */
+    DRUG_DECAY,
+
+    /**
+     * A cell takes up a drug unit, which kills the cell unless it is
+     * resistant to the drug.
+     */
+    DRUG_UPTAKE;
+
+    /**
+     * Identifies processes that move agents between sites.
+     *
+     * @return {@code true} iff this process moves an agent to a
+     * neighboring site.
+     */
+    public boolean isTransport() {
+        return this == CELL_MIGRATION || this == DRUG_DIFFUSION;
+    }
+}
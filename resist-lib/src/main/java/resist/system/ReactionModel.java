@@ -0,0 +1,531 @@
+
+package resist.system;
+
+import resist.agent.CellType;
+import resist.random.RandomSource;
+
+/**
+ * Computes reaction propensities and applies reaction events to the
+ * site populations of a stochastic simulation.
+ *
+ * <p>The model treats each lattice site as one channel of the event
+ * engine: the channel propensity is the sum of the propensities of
+ * all {@link SiteReaction}s at the site, and the engine selects the
+ * reaction to fire within a site only after it has selected the site.
+ * An event changes the populations of its own site and (for cell
+ * migration and drug diffusion) one neighboring site, so only those
+ * channels need to be updated after the event, together with the
+ * neighbors of any site that the event fills or frees (see below).
+ * {@link #fire} reports exactly those sites, so the engines need no
+ * separate dependency graph; the neighbor graph and its reverse are
+ * precompiled in compressed sparse row form ({@link SiteGraph}) when
+ * the model is created.
+ *
+ * <p>On a {@link SparseLattice}, an event that brings the first agent
+ * to a site at the edge of the allocated region allocates the tiles
+ * beyond it before {@link #fire} returns; the number of channels then
+ * grows, and engines extend themselves over the new (empty) channels.
+ *
+ * <p>A site that holds {@code siteCapacity} cells is full: cells
+ * cannot be born there or migrate into it.  Rather than firing such
+ * events and rejecting them, the model consults an {@link
+ * OccupancyIndex}: birth has zero propensity at a full site, and
+ * migration has propensity proportional to the fraction of neighbors
+ * with room, with the destination chosen uniformly among them.  The
+ * trajectories have the same distribution as under rejection (a
+ * rejected event leaves the populations unchanged), but no time is
+ * spent on rejected events.
+ *
+ * <p>When the model is coupled to a continuous {@link DrugField}, the
+ * drug diffusion, decay, and (non-lethal) uptake reactions are
+ * inactive, because the field integrates them deterministically; a
+ * lethal uptake reaction then has propensity proportional to the
+ * local drug concentration and kills its cellular partner without
+ * consuming a discrete drug unit (the field accounts for uptake by
+ * every cell at the site).
+ */
+public final class ReactionModel {
+    private final ResistParam param;
+    private final PopulationStore population;
+    private final SiteGraph neighbors;
+    private final SiteGraph reverse;
+    private final OccupancyIndex occupancy;
+    private final int maxTouched;
+    private final DrugField drugField;
+    private final SparseLattice lattice;
+
+    // Grows with a sparse lattice.
+    private int channelCount;
+
+    private final ProcType[] procTypes = new ProcType[SiteReaction.COUNT];
+    private final double[] rateConstants = new double[SiteReaction.COUNT];
+    private final int[] reactants = new int[SiteReaction.COUNT];
+    private final int[] partners = new int[SiteReaction.COUNT];
+    private final int[] products = new int[SiteReaction.COUNT];
+    private final boolean[] lethal = new boolean[SiteReaction.COUNT];
+    private final boolean[] drugReaction = new boolean[SiteReaction.COUNT];
+
+    private ReactionModel(ResistParam param,
+                          PopulationStore population,
+                          SiteGraph neighbors,
+                          SiteGraph reverse,
+                          int channelCount,
+                          DrugField drugField,
+                          SparseLattice lattice) {
+        if (channelCount < 0 || channelCount > population.countSites())
+            throw new IllegalArgumentException("Invalid channel count.");
+
+        if (neighbors.countNodes() != population.countSites())
+            throw new IllegalArgumentException("Neighbor graph does not match the population.");
+
+        this.param = param;
+        this.population = population;
+        this.neighbors = neighbors;
+        this.reverse = reverse;
+        this.occupancy = OccupancyIndex.attach(population, reverse, param.getSiteCapacity());
+
+        // The two sites changed by an event and the sites that list
+        // either one as a neighbor.
+        this.maxTouched = 2 + 2 * reverse.maxDegree();
+        this.channelCount = channelCount;
+        this.drugField = drugField;
+        this.lattice = lattice;
+
+        for (SiteReaction reaction : SiteReaction.viewAll()) {
+            int index = reaction.getIndex();
+
+            procTypes[index] = reaction.getProcType();
+            rateConstants[index] = reaction.rateConstant(param);
+            reactants[index] = reaction.getReactant().index();
+            partners[index] = reaction.getPartner() != null ? reaction.getPartner().index() : -1;
+            products[index] = reaction.getProduct() != null ? reaction.getProduct().index() : -1;
+            lethal[index] = reaction.isLethal();
+            drugReaction[index] = reaction.getReactant().isDrug();
+        }
+    }
+
+    /**
+     * Creates a new reaction model.
+     *
+     * @param param the parameters of the simulation.
+     *
+     * @param population the site populations.
+     *
+     * @param neighbors the lattice neighbor graph over the dense
+     * site indexes.
+     *
+     * @return a new reaction model for the specified parameters and
+     * populations.
+     */
+    public static ReactionModel create(ResistParam param, PopulationStore population, SiteGraph neighbors) {
+        return new ReactionModel(param, population, neighbors, neighbors.reverse(), population.countSites(), null, null);
+    }
+
+    /**
+     * Creates a new reaction model for one sub-domain of a
+     * partitioned lattice.  The leading {@code channelCount} sites
+     * are owned by the sub-domain and are the event channels; the
+     * remaining (ghost) sites are copies of sites owned by other
+     * sub-domains, which receive transport events but have no
+     * reactions of their own.
+     *
+     * @param param the parameters of the simulation.
+     *
+     * @param population the populations of the owned and ghost sites.
+     *
+     * @param neighbors the lattice neighbor graph over the local
+     * site indexes.
+     *
+     * @param channelCount the number of owned sites.
+     *
+     * @return a new reaction model for the specified sub-domain.
+     *
+     * @throws IllegalArgumentException unless the channel count lies
+     * in the range {@code [0, population.countSites()]}.
+     */
+    public static ReactionModel create(ResistParam param, PopulationStore population, SiteGraph neighbors, int channelCount) {
+        return new ReactionModel(param, population, neighbors, neighbors.reverse(), channelCount, null, null);
+    }
+
+    /**
+     * Creates a new reaction model coupled to a continuous drug field.
+     *
+     * @param param the parameters of the simulation.
+     *
+     * @param population the site populations.
+     *
+     * @param neighbors the lattice neighbor graph over the dense
+     * site indexes.
+     *
+     * @param drugField the continuous drug concentrations.
+     *
+     * @return a new reaction model for the specified parameters,
+     * populations, and drug field.
+     */
+    public static ReactionModel create(ResistParam param, PopulationStore population, SiteGraph neighbors, DrugField drugField) {
+        return new ReactionModel(param, population, neighbors, neighbors.reverse(), population.countSites(), drugField, null);
+    }
+
+    /**
+     * Creates a new reaction model on a sparse lattice, which grows as
+     * the events carry agents to the edge of the allocated region.
+     *
+     * @param param the parameters of the simulation.
+     *
+     * @param lattice the lattice that holds the site populations and
+     * the neighbor graph.
+     *
+     * @return a new reaction model for the specified parameters and
+     * lattice.
+     */
+    public static ReactionModel create(ResistParam param, SparseLattice lattice) {
+        //
+        // The lattice neighbor graph is symmetric, so it serves as its
+        // own reverse as it grows.
+        //
+        SiteGraph neighbors = lattice.getNeighborGraph();
+        PopulationStore population = lattice.getPopulation();
+
+        return new ReactionModel(param, population, neighbors, neighbors, population.countSites(), null, lattice);
+    }
+
+    /**
+     * Returns the number of event channels in this model: the sites
+     * owned by the model, which occupy the leading dense indexes (all
+     * of the allocated sites of a sparse lattice).
+     *
+     * @return the number of event channels in this model.
+     */
+    public int countChannels() {
+        return channelCount;
+    }
+
+    /**
+     * Returns the maximum number of sites whose propensities may be
+     * changed by a single event: the length required for the {@code
+     * touched} array passed to {@link #fire}.
+     *
+     * @return the maximum number of sites touched by one event.
+     */
+    public int getMaxTouched() {
+        return maxTouched;
+    }
+
+    /**
+     * Returns the number of sites in this model (including any ghost
+     * sites).
+     *
+     * @return the number of sites in this model.
+     */
+    public int countSites() {
+        return population.countSites();
+    }
+
+    /**
+     * Returns the propensity of one reaction at one site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param reaction the index of the reaction.
+     *
+     * @return the propensity of the specified reaction at the
+     * specified site.
+     */
+    public double propensity(int site, int reaction) {
+        if (drugField != null && drugReaction[reaction])
+            return fieldPropensity(site, reaction);
+
+        double count = population.getCount(site, reactants[reaction]);
+
+        if (count == 0.0)
+            return 0.0;
+
+        if (partners[reaction] >= 0)
+            count *= population.getCount(site, partners[reaction]);
+
+        switch (procTypes[reaction]) {
+        case CELL_BIRTH:
+            return occupancy.isFull(site) ? 0.0 : rateConstants[reaction] * count;
+
+        case CELL_MIGRATION:
+            //
+            // Only the neighbors with room accept migrants.
+            //
+            int degree = neighbors.degree(site);
+            int open = degree - occupancy.countFullNeighbors(site);
+
+            return open > 0 ? rateConstants[reaction] * count * open / degree : 0.0;
+
+        case DRUG_DIFFUSION:
+            return neighbors.degree(site) > 0 ? rateConstants[reaction] * count : 0.0;
+
+        default:
+            return rateConstants[reaction] * count;
+        }
+    }
+
+    private double fieldPropensity(int site, int reaction) {
+        if (!lethal[reaction])
+            return 0.0;
+
+        int drug = reactants[reaction] - CellType.COUNT;
+        return rateConstants[reaction] * drugField.getLevel(site, drug) * population.getCount(site, partners[reaction]);
+    }
+
+    /**
+     * Returns the total propensity of all reactions at one site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return the total propensity of all reactions at the specified
+     * site.
+     */
+    public double sitePropensity(int site) {
+        double total = 0.0;
+
+        for (int reaction = 0; reaction < SiteReaction.COUNT; ++reaction)
+            total += propensity(site, reaction);
+
+        return total;
+    }
+
+    /**
+     * Selects the reaction to fire at one site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param target a value uniformly distributed over the interval
+     * {@code [0, sitePropensity(site))}.
+     *
+     * @return the index of the selected reaction.
+     */
+    public int selectReaction(int site, double target) {
+        int selected = -1;
+
+        for (int reaction = 0; reaction < SiteReaction.COUNT; ++reaction) {
+            double propensity = propensity(site, reaction);
+
+            if (propensity > 0.0) {
+                selected = reaction;
+                target -= propensity;
+
+                if (target < 0.0)
+                    return reaction;
+            }
+        }
+
+        if (selected < 0)
+            throw new IllegalStateException("No active reactions at the selected site.");
+
+        // Round-off error has carried the target past the final
+        // active reaction; select that final reaction.
+        return selected;
+    }
+
+    /**
+     * Applies one reaction event to the site populations.
+     *
+     * @param site the dense index of the site where the event occurs.
+     *
+     * @param reaction the index of the reaction to fire.
+     *
+     * @param random the source of randomness for selecting the
+     * destination of transport events.
+     *
+     * @param touched an array of length at least {@link
+     * #getMaxTouched()} to be filled with the indexes of the sites
+     * whose propensities may have changed.
+     *
+     * @return the number of sites whose propensities may have changed
+     * (zero if the event was rejected, which happens only if the
+     * reaction has zero propensity).
+     */
+    public int fire(int site, int reaction, RandomSource random, int[] touched) {
+        int touchedCount = fireReaction(site, reaction, random, touched);
+
+        if (lattice != null)
+            expand();
+
+        return touchedCount;
+    }
+
+    /**
+     * Allocates the tiles of a sparse lattice reached by agents since
+     * the last expansion; called after every event and after the
+     * populations have been assigned outside of the event loop.
+     *
+     * @return {@code true} iff the lattice (and the number of
+     * channels) grew.
+     */
+    boolean expand() {
+        if (lattice == null || !lattice.expand(occupancy))
+            return false;
+
+        channelCount = population.countSites();
+        return true;
+    }
+
+    private int fireReaction(int site, int reaction, RandomSource random, int[] touched) {
+        int reactant = reactants[reaction];
+        boolean siteFull = occupancy.isFull(site);
+
+        switch (procTypes[reaction]) {
+        case CELL_BIRTH:
+            if (siteFull)
+                return 0;
+
+            population.addCount(site, reactant, 1);
+            break;
+
+        case CELL_DEATH:
+        case DRUG_DECAY:
+            population.addCount(site, reactant, -1);
+            break;
+
+        case RESISTANCE_MUTATION:
+            population.addCount(site, reactant, -1);
+            population.addCount(site, products[reaction], 1);
+            break;
+
+        case DRUG_UPTAKE:
+            if (drugField == null)
+                population.addCount(site, reactant, -1);
+
+            if (lethal[reaction])
+                population.addCount(site, partners[reaction], -1);
+            break;
+
+        case CELL_MIGRATION:
+        case DRUG_DIFFUSION:
+            int target = selectTarget(site, reaction, random);
+
+            if (target < 0)
+                return 0;
+
+            boolean targetFull = occupancy.isFull(target);
+
+            population.addCount(site, reactant, -1);
+            population.addCount(target, reactant, 1);
+
+            touched[0] = site;
+            touched[1] = target;
+
+            int touchedCount = touchFilled(site, siteFull, site, target, touched, 2);
+            return touchFilled(target, targetFull, site, target, touched, touchedCount);
+
+        default:
+            throw new IllegalStateException("Unknown process type.");
+        }
+
+        touched[0] = site;
+        return touchFilled(site, siteFull, site, site, touched, 1);
+    }
+
+    private int selectTarget(int site, int reaction, RandomSource random) {
+        int offset = neighbors.offset(site);
+        int degree = neighbors.degree(site);
+
+        if (procTypes[reaction] == ProcType.DRUG_DIFFUSION)
+            return degree > 0 ? neighbors.target(offset + random.nextInt(degree)) : -1;
+
+        int open = degree - occupancy.countFullNeighbors(site);
+
+        if (open <= 0)
+            return -1;
+
+        int k = random.nextInt(open);
+
+        for (int edge = offset; edge < offset + degree; ++edge) {
+            int target = neighbors.target(edge);
+
+            if (!occupancy.isFull(target) && k-- == 0)
+                return target;
+        }
+
+        throw new IllegalStateException("Inconsistent occupancy index.");
+    }
+
+    private int touchFilled(int changed, boolean wasFull, int site, int target, int[] touched, int touchedCount) {
+        //
+        // The migration propensities of the sites that list the
+        // changed site as a neighbor depend on whether it is full.
+        //
+        if (occupancy.isFull(changed) == wasFull)
+            return touchedCount;
+
+        for (int edge = reverse.offset(changed); edge < reverse.offset(changed + 1); ++edge) {
+            int dependent = reverse.target(edge);
+
+            if (dependent != site && dependent != target)
+                touched[touchedCount++] = dependent;
+        }
+
+        return touchedCount;
+    }
+
+    /**
+     * Returns the continuous drug field coupled to this model.
+     *
+     * @return the continuous drug field coupled to this model, or
+     * {@code null} if the drugs are discrete.
+     */
+    public DrugField getDrugField() {
+        return drugField;
+    }
+
+    /**
+     * Returns the sparse lattice underlying this model.
+     *
+     * @return the sparse lattice underlying this model, or {@code
+     * null} if the lattice is fixed.
+     */
+    public SparseLattice getLattice() {
+        return lattice;
+    }
+
+    /**
+     * Returns the parameters of the simulation.
+     *
+     * @return the parameters of the simulation.
+     */
+    public ResistParam getParam() {
+        return param;
+    }
+
+    /**
+     * Returns the site populations.
+     *
+     * @return the site populations.
+     */
+    public PopulationStore getPopulation() {
+        return population;
+    }
+
+    /**
+     * Returns the lattice neighbor graph over the dense site indexes.
+     *
+     * @return the lattice neighbor graph over the dense site indexes.
+     */
+    public SiteGraph getNeighborGraph() {
+        return neighbors;
+    }
+
+    /**
+     * Returns the reverse of the neighbor graph: the sites that list
+     * each site as a neighbor.
+     *
+     * @return the reverse of the neighbor graph.
+     */
+    public SiteGraph getReverseNeighborGraph() {
+        return reverse;
+    }
+
+    /**
+     * Returns the index of occupied and full sites.
+     *
+     * @return the index of occupied and full sites.
+     */
+    public OccupancyIndex getOccupancy() {
+        return occupancy;
+    }
+}
@@ -0,0 +1,424 @@
+
+package resist.system;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.random.RandomSource;
+import resist.random.SplitMix64;
+
+/**
+ * Records the complete state of a {@link ResistSystem} in a compact
+ * binary file, from which the simulation may be resumed or forked.
+ *
+ * <p>A checkpoint file holds (in little-endian byte order) a fixed
+ * header with the simulation time, the event count, the state of the
+ * random source (if it is a {@link SplitMix64} generator), and the
+ * first-hitting time of each cell type, the
+ * {@link ResistParam} values as a property list, and finally the
+ * population counts in the struct-of-arrays layout of the population
+ * stores: the counts of each agent type for every site, in order of
+ * dense site index.
+ *
+ * <p>Checkpoints are written and read through memory-mapped buffers.
+ * Writing copies the counts into the mapped file on the calling
+ * thread (a bulk copy that takes a small fraction of a second even
+ * for millions of sites) and returns at once: that copy is the
+ * snapshot, and the simulation may continue while a background
+ * thread forces it to disk.  Reading maps the counts without copying
+ * them; each {@code restore} call then loads them into a new system,
+ * so a single checkpoint may seed many independent "what-if"
+ * branches, each with its own random stream and its own (treatment)
+ * parameters.  Systems restored without explicit parameters use the
+ * recorded ones, which are built once when the checkpoint is read,
+ * so that every such branch shares one lattice space and one agent
+ * registry.
+ *
+ * <p>Continuous drug fields are restored from the drug counts, which
+ * the hybrid engine publishes as the rounded concentrations after
+ * every splitting step.
+ */
+public final class ResistCheckpoint {
+    private final double time;
+    private final long eventCount;
+    private final int randomKind;
+    private final long randomState;
+    private final int siteCount;
+    private final double[] firstTimes;
+    private final Properties properties;
+    private final ResistParam param;
+    private final IntBuffer[] counts;
+
+    private static final int MAGIC = 0x4b435352; // "RSCK"
+    private static final int VERSION = 2;
+
+    private static final int RANDOM_NONE = 0;
+    private static final int RANDOM_SPLIT_MIX = 1;
+
+    // Byte offset of the first-hitting times, and of the property
+    // list that follows them.
+    private static final int FIRST_TIME_OFFSET = 48;
+    private static final int PROPERTY_OFFSET = FIRST_TIME_OFFSET + Double.BYTES * CellType.COUNT;
+
+    // Forces completed snapshots to disk in the background.
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "resist-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private ResistCheckpoint(double time,
+                             long eventCount,
+                             int randomKind,
+                             long randomState,
+                             int siteCount,
+                             double[] firstTimes,
+                             Properties properties,
+                             IntBuffer[] counts) {
+        this.time = time;
+        this.eventCount = eventCount;
+        this.randomKind = randomKind;
+        this.randomState = randomState;
+        this.siteCount = siteCount;
+        this.firstTimes = firstTimes;
+        this.properties = properties;
+        this.param = ResistParam.create(properties);
+        this.counts = counts;
+    }
+
+    /**
+     * Writes a checkpoint of a system to a file, replacing any
+     * existing file.  The state of the system is captured before this
+     * method returns, so the simulation may continue at once.
+     *
+     * @param system the system to record.
+     *
+     * @param file the file to write.
+     *
+     * @return a future that completes with the file once the
+     * checkpoint has been forced to disk.
+     *
+     * @throws UncheckedIOException if the file cannot be written.
+     *
+     * @throws IllegalStateException if the lattice of the system is
+     * sparse (the checkpoint format records a fixed lattice).
+     */
+    public static CompletableFuture<Path> write(ResistSystem system, Path file) {
+        if (system.getLattice() != null)
+            throw new IllegalStateException("Sparse lattices cannot be checkpointed.");
+
+        PopulationStore population = system.getPopulation();
+        RandomSource random = system.getRandom();
+
+        byte[] propertyBytes = encode(system.getParam().toProperties());
+
+        int headerSize = align(PROPERTY_OFFSET + propertyBytes.length);
+        long typeSize = (long) Integer.BYTES * population.countSites();
+
+        MappedByteBuffer[] buffers = new MappedByteBuffer[AgentType.COUNT + 1];
+
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0L, headerSize);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putDouble(system.getTime());
+            header.putLong(system.getEventCount());
+
+            if (random instanceof SplitMix64) {
+                header.putInt(RANDOM_SPLIT_MIX);
+                header.putInt(population.countSites());
+                header.putLong(((SplitMix64) random).getState());
+            }
+            else {
+                header.putInt(RANDOM_NONE);
+                header.putInt(population.countSites());
+                header.putLong(0L);
+            }
+
+            header.putInt(AgentType.COUNT);
+            header.putInt(propertyBytes.length);
+
+            for (CellType type : CellType.values())
+                header.putDouble(system.getAggregates().getFirstHittingTime(type));
+
+            header.put(propertyBytes);
+
+            buffers[0] = header;
+
+            for (int type = 0; type < AgentType.COUNT; ++type) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, headerSize + type * typeSize, typeSize);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+                population.exportCounts(type, buffer.asIntBuffer());
+                buffers[type + 1] = buffer;
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+                for (MappedByteBuffer buffer : buffers)
+                    buffer.force();
+
+                return file;
+            }, writer);
+    }
+
+    /**
+     * Reads a checkpoint file.  The population counts are mapped into
+     * memory rather than copied.
+     *
+     * @param file the checkpoint file.
+     *
+     * @return the checkpoint recorded in the specified file.
+     *
+     * @throws IllegalArgumentException unless the file is a valid
+     * checkpoint.
+     *
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public static ResistCheckpoint read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < PROPERTY_OFFSET)
+                throw new IllegalArgumentException("Truncated checkpoint file.");
+
+            ByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0L, PROPERTY_OFFSET);
+            fixed.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (fixed.getInt() != MAGIC)
+                throw new IllegalArgumentException("Not a checkpoint file.");
+
+            if (fixed.getInt() != VERSION)
+                throw new IllegalArgumentException("Unsupported checkpoint version.");
+
+            double time = fixed.getDouble();
+            long eventCount = fixed.getLong();
+            int randomKind = fixed.getInt();
+            int siteCount = fixed.getInt();
+            long randomState = fixed.getLong();
+            int typeCount = fixed.getInt();
+            int propertyLength = fixed.getInt();
+
+            double[] firstTimes = new double[CellType.COUNT];
+
+            for (int type = 0; type < firstTimes.length; ++type)
+                firstTimes[type] = fixed.getDouble();
+
+            if (typeCount != AgentType.COUNT || siteCount < 0 || propertyLength < 0)
+                throw new IllegalArgumentException("Invalid checkpoint header.");
+
+            int headerSize = align(PROPERTY_OFFSET + propertyLength);
+            long typeSize = (long) Integer.BYTES * siteCount;
+
+            if (channel.size() < headerSize + typeCount * typeSize)
+                throw new IllegalArgumentException("Truncated checkpoint file.");
+
+            ByteBuffer propertyBuffer = channel.map(FileChannel.MapMode.READ_ONLY, PROPERTY_OFFSET, propertyLength);
+            byte[] propertyBytes = new byte[propertyLength];
+            propertyBuffer.get(propertyBytes);
+
+            IntBuffer[] counts = new IntBuffer[typeCount];
+
+            for (int type = 0; type < typeCount; ++type)
+                counts[type] =
+                    channel.map(FileChannel.MapMode.READ_ONLY, headerSize + type * typeSize, typeSize)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asIntBuffer();
+
+            return new ResistCheckpoint(time, eventCount, randomKind, randomState, siteCount, firstTimes, decode(propertyBytes), counts);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static int align(int size) {
+        return (size + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    private static byte[] encode(Properties properties) {
+        StringWriter writer = new StringWriter();
+
+        try {
+            properties.store(writer, null);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Properties decode(byte[] bytes) {
+        Properties properties = new Properties();
+
+        try {
+            properties.load(new StringReader(new String(bytes, StandardCharsets.UTF_8)));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return properties;
+    }
+
+    /**
+     * Resumes the recorded simulation with the recorded parameters and
+     * random state.
+     *
+     * @return a new system positioned at the recorded state.
+     *
+     * @throws IllegalStateException unless the random state was
+     * recorded.
+     */
+    public ResistSystem restore() {
+        return restore(getParam());
+    }
+
+    /**
+     * Forks a new simulation from the recorded state with the recorded
+     * parameters.
+     *
+     * @param random the source of randomness for the new simulation.
+     *
+     * @return a new system positioned at the recorded state.
+     */
+    public ResistSystem restore(RandomSource random) {
+        return restore(random, getParam());
+    }
+
+    /**
+     * Resumes the recorded simulation with the recorded random state.
+     *
+     * @param param the parameters of the resumed simulation, which
+     * must define the same lattice as the recorded simulation but may
+     * differ in any other respect.
+     *
+     * @return a new system positioned at the recorded state.
+     *
+     * @throws IllegalStateException unless the random state was
+     * recorded.
+     *
+     * @throws IllegalArgumentException unless the parameters define a
+     * lattice with the recorded number of sites.
+     */
+    public ResistSystem restore(ResistParam param) {
+        if (!hasRandomState())
+            throw new IllegalStateException("The checkpoint does not record the random state.");
+
+        return restore(SplitMix64.create(randomState), param);
+    }
+
+    /**
+     * Forks a new simulation from the recorded state.
+     *
+     * @param random the source of randomness for the new simulation.
+     *
+     * @param param the parameters of the new simulation, which must
+     * define the same lattice as the recorded simulation but may
+     * differ in any other respect (for example, in the treatment).
+     *
+     * @return a new system positioned at the recorded state.
+     *
+     * @throws IllegalArgumentException unless the parameters define a
+     * lattice with the recorded number of sites.
+     */
+    public ResistSystem restore(RandomSource random, ResistParam param) {
+        return ResistSystem.restore(this, random, param);
+    }
+
+    void loadCounts(PopulationStore population) {
+        if (population.countSites() != siteCount)
+            throw new IllegalArgumentException("The checkpoint was recorded on a different lattice.");
+
+        for (int type = 0; type < counts.length; ++type)
+            population.importCounts(type, counts[type].duplicate());
+    }
+
+    void loadFirstTimes(PopulationAggregates aggregates) {
+        aggregates.copyFirstTimes(firstTimes);
+    }
+
+    /**
+     * Returns the recorded simulation time.
+     *
+     * @return the recorded simulation time.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the recorded event count.
+     *
+     * @return the recorded event count.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the number of lattice sites in the recorded system.
+     *
+     * @return the number of lattice sites in the recorded system.
+     */
+    public int countSites() {
+        return siteCount;
+    }
+
+    /**
+     * Identifies checkpoints that record the state of the random
+     * source.
+     *
+     * @return {@code true} iff this checkpoint records the state of
+     * the random source.
+     */
+    public boolean hasRandomState() {
+        return randomKind == RANDOM_SPLIT_MIX;
+    }
+
+    /**
+     * Returns the parameters of the recorded simulation.
+     *
+     * @return the parameters with the recorded values (the same
+     * instance on every call).
+     */
+    public ResistParam getParam() {
+        return param;
+    }
+
+    /**
+     * Returns the recorded parameter values.
+     *
+     * @return the recorded parameter values, keyed by the name of the
+     * system property that defines each parameter (a new copy).
+     */
+    public Properties getProperties() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+}
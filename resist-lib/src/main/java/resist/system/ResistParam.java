@@ -1,19 +1,30 @@
 
 package resist.system;
 
+import java.nio.file.Path;
+import java.util.Properties;
+
 import jam.app.JamProperties;
 import jam.bravais.Lattice;
-import jam.math.DoubleRange;
-import jam.math.IntRange;
 import jam.space.LatticeSpace;
 import jam.space.Space;
 
+import resist.engine.EngineType;
+
 /**
  * Assembles all parameters required to define a stochastic
  * simulation.
+ *
+ * <p>Parameters are immutable.  The {@link #global()} instance is
+ * defined by system properties; any number of other instances may be
+ * created with a {@link ResistParamBuilder} (or derived from existing
+ * parameters with {@link #toBuilder()} and {@link #with(String,
+ * String)}) and used by concurrent systems in the same process.
  */
 public final class ResistParam {
+    private final String lattice;
     private final Space space;
+    private final int sparseTileSize;
 
     private final int siteCapacity;
     private final int initialCellCount;
@@ -32,34 +43,109 @@ public final class ResistParam {
     private final double drugDiffusionRate;
     private final double resistanceMutationRate;
 
-    private static ResistParam global = null;
+    private final PopulationMode populationMode;
+    private final EngineType engineType;
+
+    private final double tauLeapEpsilon;
+    private final int tauLeapCriticalCount;
+    private final boolean tauLeapParallel;
+
+    private final DrugFieldMode drugFieldMode;
+    private final double splitStep;
+
+    private final int domainCount;
+    private final double syncWindow;
+
+    private final SeedLayoutType seedLayoutType;
+    private final int seedRadius;
+
+    private final StateBackend stateBackend;
+    private final Path stateFile;
+
+    private static volatile ResistParam global = null;
+
+    ResistParam(ResistParamBuilder builder) {
+        this.lattice = builder.lattice;
+        this.sparseTileSize = builder.sparseTileSize;
+
+        if (sparseTileSize > 0)
+            this.space = null;
+        else
+            this.space = builder.space != null ? builder.space : resolveSpace(lattice);
+
+        this.siteCapacity = builder.siteCapacity;
+        this.initialCellCount = builder.initialCellCount;
+        this.initialDrugCount = builder.initialDrugCount;
 
-    private ResistParam() {
-        this.space = resolveSpace();
+        this.drugDecayRate = builder.drugDecayRate;
+        this.drugUptakeRate = builder.drugUptakeRate;
 
-        this.siteCapacity = resolveSiteCapacity();
-        this.initialCellCount = resolveInitialCellCount();
-        this.initialDrugCount = resolveInitialDrugCount();
+        this.resistantBirthRate = builder.resistantBirthRate;
+        this.resistantDeathRate = builder.resistantDeathRate;
 
-        this.drugDecayRate = resolveDrugDecayRate();
-        this.drugUptakeRate = resolveDrugUptakeRate();
+        this.nonResistantBirthRate = builder.nonResistantBirthRate;
+        this.nonResistantDeathRate = builder.nonResistantDeathRate;
 
-        this.resistantBirthRate = resolveResistantBirthRate();
-        this.resistantDeathRate = resolveResistantDeathRate();
+        this.cellMigrationRate = builder.cellMigrationRate;
+        this.drugDiffusionRate = builder.drugDiffusionRate;
+        this.resistanceMutationRate = builder.resistanceMutationRate;
 
-        this.nonResistantBirthRate = resolveNonResistantBirthRate();
-        this.nonResistantDeathRate = resolveNonResistantDeathRate();
+        this.populationMode = builder.populationMode;
+        this.engineType = builder.engineType;
 
-        this.cellMigrationRate = resolveCellMigrationRate();
-        this.drugDiffusionRate = resolveDrugDiffusionRate();
-        this.resistanceMutationRate = resolveResistanceMutationRate();
+        this.tauLeapEpsilon = builder.tauLeapEpsilon;
+        this.tauLeapCriticalCount = builder.tauLeapCriticalCount;
+        this.tauLeapParallel = builder.tauLeapParallel;
+
+        this.drugFieldMode = builder.drugFieldMode;
+        this.splitStep = builder.splitStep;
+
+        this.domainCount = builder.domainCount;
+        this.syncWindow = builder.syncWindow;
+
+        this.seedLayoutType = builder.seedLayoutType;
+        this.seedRadius = builder.seedRadius;
+
+        this.stateBackend = builder.stateBackend;
+        this.stateFile = stateBackend == StateBackend.MAPPED ? builder.stateFile : null;
+    }
+
+    private static ResistParam resolveGlobal() {
+        //
+        // The builder validates every value, so the system properties
+        // are passed through as strings and checked in one place.
+        //
+        ResistParamBuilder builder = ResistParamBuilder.create();
+
+        for (String property : PROPERTIES) {
+            String value = JamProperties.getOptional(property, null);
+
+            if (value != null)
+                builder.set(property, value);
+        }
+
+        return builder.build();
     }
 
     /**
-     * Name of the system property that specifies the lattice geometry.
+     * Name of the system property that specifies the lattice geometry
+     * (required unless the lattice is sparse).
      */
     public static final String LATTICE_PROPERTY = "resist.lattice";
 
+    /**
+     * Name of the system property that specifies the side length of
+     * the tiles of a sparse, unbounded square lattice (optional, with
+     * default {@code 0}, which selects the fixed lattice given by
+     * {@link #LATTICE_PROPERTY}).  A sparse lattice allocates tiles
+     * only as the cells and drug reach them (see {@link
+     * SparseLattice}); it requires the {@code ARRAY} population mode,
+     * discrete drugs, a single sub-domain, and an exact engine, and
+     * {@link #LATTICE_PROPERTY} must then be {@code SQUARE} or
+     * undefined.
+     */
+    public static final String SPARSE_TILE_SIZE_PROPERTY = "resist.sparseTileSize";
+
     /**
      * Name of the system property that specifies the maximum number
      * of cells at a single lattice site.
@@ -74,7 +160,8 @@ public final class ResistParam {
 
     /**
      * Name of the system property that specifies the initial number
-     * of therapeutic agents (across the entire lattice).
+     * of therapeutic agents (across the entire lattice, summed over
+     * the drug types, which share it equally).
      */
     public static final String INITIAL_DRUG_COUNT_PROPERTY = "resist.initialDrugCount";
 
@@ -135,82 +222,234 @@ public final class ResistParam {
     public static final String RESISTANCE_MUTATION_RATE_PROPERTY = "resist.resistanceMutationRate";
 
     /**
-     * Returns the global parameter instance defined by system properties.
-     *
-     * @return the single parameter instance defined by system properties.
+     * Name of the system property that specifies the population mode
+     * (optional, with default {@code LAZY}).
      */
-    public static ResistParam global() {
-        if (global == null)
-            global = new ResistParam();
+    public static final String POPULATION_MODE_PROPERTY = "resist.populationMode";
 
-        return global;
-    }
+    /**
+     * Name of the system property that specifies the event engine
+     * (optional, with default {@code DIRECT}).
+     */
+    public static final String ENGINE_TYPE_PROPERTY = "resist.engineType";
 
-    private static Space resolveSpace() {
-        return LatticeSpace.create(resolveLattice());
-    }
+    /**
+     * Name of the system property that specifies the bound on the
+     * expected relative change in any site population during one
+     * tau-leap (optional, with default {@code 0.03}).
+     */
+    public static final String TAU_LEAP_EPSILON_PROPERTY = "resist.tauLeapEpsilon";
 
-    private static Lattice resolveLattice() {
-        return Lattice.parse(JamProperties.getRequired(LATTICE_PROPERTY));
-    }
+    /**
+     * Name of the system property that specifies the population below
+     * which a reaction channel is simulated exactly rather than leaped
+     * (optional, with default {@code 10}).
+     */
+    public static final String TAU_LEAP_CRITICAL_COUNT_PROPERTY = "resist.tauLeapCriticalCount";
 
-    private static int resolveSiteCapacity() {
-        return JamProperties.getRequiredInt(SITE_CAPACITY_PROPERTY, IntRange.POSITIVE);
-    }
+    /**
+     * Name of the system property that specifies whether the Poisson
+     * deviates of each tau-leap are drawn in parallel (optional, with
+     * default {@code false}).  Parallel draws require a {@link
+     * resist.random.CounterStream} as the source of randomness, and
+     * give the same trajectory as serial draws from the same stream.
+     */
+    public static final String TAU_LEAP_PARALLEL_PROPERTY = "resist.tauLeapParallel";
 
-    private static int resolveInitialCellCount() {
-        return JamProperties.getRequiredInt(INITIAL_CELL_COUNT_PROPERTY, IntRange.POSITIVE);
-    }
+    /**
+     * Name of the system property that specifies whether the drug
+     * populations are discrete or continuous (optional, with default
+     * {@code DISCRETE}).
+     */
+    public static final String DRUG_FIELD_PROPERTY = "resist.drugField";
 
-    private static int resolveInitialDrugCount() {
-        return JamProperties.getRequiredInt(INITIAL_DRUG_COUNT_PROPERTY, IntRange.POSITIVE);
-    }
+    /**
+     * Name of the system property that specifies the operator
+     * splitting step for a continuous drug field (optional, with
+     * default {@code 0.1}).
+     */
+    public static final String SPLIT_STEP_PROPERTY = "resist.splitStep";
 
-    private static double resolveDrugDecayRate() {
-        return JamProperties.getRequiredDouble(DRUG_DECAY_RATE_PROPERTY, DoubleRange.NON_NEGATIVE);
-    }
+    /**
+     * Name of the system property that specifies the number of
+     * sub-domains simulated in parallel (optional, with default
+     * {@code 1}).
+     */
+    public static final String DOMAIN_COUNT_PROPERTY = "resist.domainCount";
 
-    private static double resolveDrugUptakeRate() {
-        return JamProperties.getRequiredDouble(DRUG_UPTAKE_RATE_PROPERTY, DoubleRange.NON_NEGATIVE);
-    }
+    /**
+     * Name of the system property that specifies the time window
+     * between synchronizations of parallel sub-domains (optional,
+     * with default {@code 0.05}).
+     */
+    public static final String SYNC_WINDOW_PROPERTY = "resist.syncWindow";
 
-    private static double resolveResistantBirthRate() {
-        return JamProperties.getRequiredDouble(RESISTANT_BIRTH_RATE_PROPERTY, DoubleRange.POSITIVE);
-    }
+    /**
+     * Name of the system property that specifies the layout of the
+     * initial cell population (optional, with default {@code
+     * UNIFORM}).
+     */
+    public static final String SEED_LAYOUT_PROPERTY = "resist.seedLayout";
 
-    private static double resolveResistantDeathRate() {
-        return JamProperties.getRequiredDouble(RESISTANT_DEATH_RATE_PROPERTY, DoubleRange.POSITIVE);
-    }
+    /**
+     * Name of the system property that specifies the lattice radius of
+     * a ball-shaped initial cell population (optional, with default
+     * {@code 0}, which selects the smallest ball that can hold the
+     * initial cells).
+     */
+    public static final String SEED_RADIUS_PROPERTY = "resist.seedRadius";
+
+    /**
+     * Name of the system property that specifies the storage backend
+     * for the per-site state (optional, with default {@code HEAP}).
+     */
+    public static final String STATE_BACKEND_PROPERTY = "resist.stateBackend";
+
+    /**
+     * Name of the system property that specifies the file that holds
+     * the population counts for the {@code MAPPED} state backend
+     * (required for that backend, ignored otherwise).  Any existing
+     * file is replaced, so concurrent systems must not share a state
+     * file; ensemble runners and parameter sweeps derive a distinct
+     * file for each replicate and grid point (see {@link
+     * #withStateFileIndex(int)}).
+     */
+    public static final String STATE_FILE_PROPERTY = "resist.stateFile";
+
+    // Every parameter property, in the order of the fields.
+    private static final String[] PROPERTIES = {
+        LATTICE_PROPERTY,
+        SPARSE_TILE_SIZE_PROPERTY,
+        SITE_CAPACITY_PROPERTY,
+        INITIAL_CELL_COUNT_PROPERTY,
+        INITIAL_DRUG_COUNT_PROPERTY,
+        DRUG_DECAY_RATE_PROPERTY,
+        DRUG_UPTAKE_RATE_PROPERTY,
+        RESISTANT_BIRTH_RATE_PROPERTY,
+        RESISTANT_DEATH_RATE_PROPERTY,
+        NON_RESISTANT_BIRTH_RATE_PROPERTY,
+        NON_RESISTANT_DEATH_RATE_PROPERTY,
+        CELL_MIGRATION_RATE_PROPERTY,
+        DRUG_DIFFUSION_RATE_PROPERTY,
+        RESISTANCE_MUTATION_RATE_PROPERTY,
+        POPULATION_MODE_PROPERTY,
+        ENGINE_TYPE_PROPERTY,
+        TAU_LEAP_EPSILON_PROPERTY,
+        TAU_LEAP_CRITICAL_COUNT_PROPERTY,
+        TAU_LEAP_PARALLEL_PROPERTY,
+        DRUG_FIELD_PROPERTY,
+        SPLIT_STEP_PROPERTY,
+        DOMAIN_COUNT_PROPERTY,
+        SYNC_WINDOW_PROPERTY,
+        SEED_LAYOUT_PROPERTY,
+        SEED_RADIUS_PROPERTY,
+        STATE_BACKEND_PROPERTY,
+        STATE_FILE_PROPERTY
+    };
+
+    /**
+     * Returns the global parameter instance defined by system
+     * properties.  The properties are read once, when this method is
+     * first called; concurrent first calls return the same instance.
+     *
+     * @return the single parameter instance defined by system properties.
+     */
+    public static ResistParam global() {
+        ResistParam result = global;
+
+        if (result == null) {
+            synchronized (ResistParam.class) {
+                result = global;
 
-    private static double resolveNonResistantBirthRate() {
-        return JamProperties.getRequiredDouble(NON_RESISTANT_BIRTH_RATE_PROPERTY, DoubleRange.POSITIVE);
+                if (result == null) {
+                    result = resolveGlobal();
+                    global = result;
+                }
+            }
+        }
+
+        return result;
     }
 
-    private static double resolveNonResistantDeathRate() {
-        return JamProperties.getRequiredDouble(NON_RESISTANT_DEATH_RATE_PROPERTY, DoubleRange.POSITIVE);
+    /**
+     * Creates parameters from a property collection, independent of
+     * the system properties and the global instance.
+     *
+     * @param properties the parameter values, keyed by the names of
+     * the system properties that define them.
+     *
+     * @return new parameters with the specified values.
+     *
+     * @throws IllegalArgumentException if any parameter property is
+     * unrecognized or has an invalid value.
+     *
+     * @throws IllegalStateException unless every required parameter
+     * is defined.
+     */
+    public static ResistParam create(Properties properties) {
+        return ResistParamBuilder.create().setAll(properties).build();
     }
 
-    private static double resolveCellMigrationRate() {
-        return JamProperties.getRequiredDouble(CELL_MIGRATION_RATE_PROPERTY, DoubleRange.NON_NEGATIVE);
+    /**
+     * Returns a builder initialized with these parameters, from which
+     * modified copies may be built.
+     *
+     * @return a new builder holding the values of these parameters.
+     */
+    public ResistParamBuilder toBuilder() {
+        return ResistParamBuilder.copyOf(this);
     }
 
-    private static double resolveDrugDiffusionRate() {
-        return JamProperties.getRequiredDouble(DRUG_DIFFUSION_RATE_PROPERTY, DoubleRange.NON_NEGATIVE);
+    /**
+     * Returns a copy of these parameters with one value changed.
+     *
+     * @param property the name of the property that defines the
+     * parameter to change.
+     *
+     * @param value the new property value.
+     *
+     * @return a copy of these parameters with the specified value.
+     *
+     * @throws IllegalArgumentException unless the property name is
+     * recognized and the value is valid.
+     */
+    public ResistParam with(String property, String value) {
+        return toBuilder().set(property, value).build();
     }
 
-    private static double resolveResistanceMutationRate() {
-        return JamProperties.getRequiredDouble(RESISTANCE_MUTATION_RATE_PROPERTY, DoubleRange.POSITIVE);
+    private static Space resolveSpace(String lattice) {
+        return LatticeSpace.create(Lattice.parse(lattice));
     }
 
     /**
      * Returns the spatial structure for the stochastic simulation.
      *
-     * @return the spatial structure for the stochastic simulation.
+     * @return the spatial structure for the stochastic simulation, or
+     * {@code null} if the lattice is sparse.
      */
     public Space getSpace() {
         return space;
     }
 
+    /**
+     * Returns the side length of the tiles of a sparse lattice.
+     *
+     * @return the side length of the tiles of a sparse lattice, or
+     * {@code 0} if the lattice is fixed.
+     */
+    public int getSparseTileSize() {
+        return sparseTileSize;
+    }
+
+    /**
+     * Identifies parameters that define a sparse, unbounded lattice.
+     *
+     * @return {@code true} iff the lattice is sparse.
+     */
+    public boolean isSparse() {
+        return sparseTileSize > 0;
+    }
+
     /**
      * Returns the maximum number of cells at a single lattice site.
      *
@@ -233,7 +472,7 @@ public final class ResistParam {
 
     /**
      * Returns the initial number of therapeutic agents across the
-     * entire lattice.
+     * entire lattice, summed over the drug types.
      *
      * @return the initial number of therapeutic agents across the
      * entire lattice.
@@ -330,4 +569,207 @@ public final class ResistParam {
     public double getResistanceMutationRate() {
         return resistanceMutationRate;
     }
+
+    /**
+     * Returns the mode by which site populations are exposed to the
+     * agent framework.
+     *
+     * @return the mode by which site populations are exposed to the
+     * agent framework.
+     */
+    public PopulationMode getPopulationMode() {
+        return populationMode;
+    }
+
+    /**
+     * Returns the type of event engine that drives the simulation.
+     *
+     * @return the type of event engine that drives the simulation.
+     */
+    public EngineType getEngineType() {
+        return engineType;
+    }
+
+    /**
+     * Returns the bound on the expected relative change in any site
+     * population during one tau-leap.
+     *
+     * @return the bound on the expected relative change in any site
+     * population during one tau-leap.
+     */
+    public double getTauLeapEpsilon() {
+        return tauLeapEpsilon;
+    }
+
+    /**
+     * Returns the population below which a reaction channel is
+     * simulated exactly rather than leaped.
+     *
+     * @return the population below which a reaction channel is
+     * simulated exactly rather than leaped.
+     */
+    public int getTauLeapCriticalCount() {
+        return tauLeapCriticalCount;
+    }
+
+    /**
+     * Identifies simulations that draw the Poisson deviates of each
+     * tau-leap in parallel.
+     *
+     * @return {@code true} iff the deviates of each tau-leap are
+     * drawn in parallel.
+     */
+    public boolean isTauLeapParallel() {
+        return tauLeapParallel;
+    }
+
+    /**
+     * Returns the representation of the drug populations.
+     *
+     * @return the representation of the drug populations.
+     */
+    public DrugFieldMode getDrugFieldMode() {
+        return drugFieldMode;
+    }
+
+    /**
+     * Returns the operator splitting step for a continuous drug
+     * field.
+     *
+     * @return the operator splitting step for a continuous drug
+     * field.
+     */
+    public double getSplitStep() {
+        return splitStep;
+    }
+
+    /**
+     * Returns the number of sub-domains simulated in parallel.
+     *
+     * @return the number of sub-domains simulated in parallel.
+     */
+    public int getDomainCount() {
+        return domainCount;
+    }
+
+    /**
+     * Returns the time window between synchronizations of parallel
+     * sub-domains.
+     *
+     * @return the time window between synchronizations of parallel
+     * sub-domains.
+     */
+    public double getSyncWindow() {
+        return syncWindow;
+    }
+
+    /**
+     * Returns the layout of the initial cell population.
+     *
+     * @return the layout of the initial cell population.
+     */
+    public SeedLayoutType getSeedLayoutType() {
+        return seedLayoutType;
+    }
+
+    /**
+     * Returns the lattice radius of a ball-shaped initial cell
+     * population.
+     *
+     * @return the lattice radius of a ball-shaped initial cell
+     * population ({@code 0} to select the smallest ball that can hold
+     * the initial cells).
+     */
+    public int getSeedRadius() {
+        return seedRadius;
+    }
+
+    /**
+     * Returns the storage backend for the per-site state.
+     *
+     * @return the storage backend for the per-site state.
+     */
+    public StateBackend getStateBackend() {
+        return stateBackend;
+    }
+
+    /**
+     * Returns the file that holds the population counts for the
+     * {@code MAPPED} state backend.
+     *
+     * @return the file that holds the population counts, or {@code
+     * null} unless the state backend is {@code MAPPED}.
+     */
+    public Path getStateFile() {
+        return stateFile;
+    }
+
+    /**
+     * Returns parameters for one of several systems that run at the
+     * same time (the replicates of an ensemble or the points of a
+     * sweep), which must not share a state file.
+     *
+     * @param index the index of the system among those that run
+     * together.
+     *
+     * @return these parameters with the state file {@code
+     * <stateFile>.<index>} if the state backend is {@code MAPPED};
+     * these parameters otherwise.
+     *
+     * @throws IllegalArgumentException if the index is negative.
+     */
+    public ResistParam withStateFileIndex(int index) {
+        if (index < 0)
+            throw new IllegalArgumentException("State file index must be non-negative.");
+
+        if (stateBackend != StateBackend.MAPPED)
+            return this;
+
+        return toBuilder().setStateFile(stateFile.resolveSibling(stateFile.getFileName() + "." + index)).build();
+    }
+
+    /**
+     * Returns the values of these parameters as the system properties
+     * that define them.
+     *
+     * @return a new property collection that maps the name of each
+     * parameter property to its value.
+     */
+    public Properties toProperties() {
+        Properties properties = new Properties();
+
+        if (lattice != null)
+            properties.setProperty(LATTICE_PROPERTY, lattice);
+
+        properties.setProperty(SPARSE_TILE_SIZE_PROPERTY, String.valueOf(sparseTileSize));
+        properties.setProperty(SITE_CAPACITY_PROPERTY, String.valueOf(siteCapacity));
+        properties.setProperty(INITIAL_CELL_COUNT_PROPERTY, String.valueOf(initialCellCount));
+        properties.setProperty(INITIAL_DRUG_COUNT_PROPERTY, String.valueOf(initialDrugCount));
+        properties.setProperty(DRUG_DECAY_RATE_PROPERTY, String.valueOf(drugDecayRate));
+        properties.setProperty(DRUG_UPTAKE_RATE_PROPERTY, String.valueOf(drugUptakeRate));
+        properties.setProperty(RESISTANT_BIRTH_RATE_PROPERTY, String.valueOf(resistantBirthRate));
+        properties.setProperty(RESISTANT_DEATH_RATE_PROPERTY, String.valueOf(resistantDeathRate));
+        properties.setProperty(NON_RESISTANT_BIRTH_RATE_PROPERTY, String.valueOf(nonResistantBirthRate));
+        properties.setProperty(NON_RESISTANT_DEATH_RATE_PROPERTY, String.valueOf(nonResistantDeathRate));
+        properties.setProperty(CELL_MIGRATION_RATE_PROPERTY, String.valueOf(cellMigrationRate));
+        properties.setProperty(DRUG_DIFFUSION_RATE_PROPERTY, String.valueOf(drugDiffusionRate));
+        properties.setProperty(RESISTANCE_MUTATION_RATE_PROPERTY, String.valueOf(resistanceMutationRate));
+        properties.setProperty(POPULATION_MODE_PROPERTY, populationMode.name());
+        properties.setProperty(ENGINE_TYPE_PROPERTY, engineType.name());
+        properties.setProperty(TAU_LEAP_EPSILON_PROPERTY, String.valueOf(tauLeapEpsilon));
+        properties.setProperty(TAU_LEAP_CRITICAL_COUNT_PROPERTY, String.valueOf(tauLeapCriticalCount));
+        properties.setProperty(TAU_LEAP_PARALLEL_PROPERTY, String.valueOf(tauLeapParallel));
+        properties.setProperty(DRUG_FIELD_PROPERTY, drugFieldMode.name());
+        properties.setProperty(SPLIT_STEP_PROPERTY, String.valueOf(splitStep));
+        properties.setProperty(DOMAIN_COUNT_PROPERTY, String.valueOf(domainCount));
+        properties.setProperty(SYNC_WINDOW_PROPERTY, String.valueOf(syncWindow));
+        properties.setProperty(SEED_LAYOUT_PROPERTY, seedLayoutType.name());
+        properties.setProperty(SEED_RADIUS_PROPERTY, String.valueOf(seedRadius));
+        properties.setProperty(STATE_BACKEND_PROPERTY, stateBackend.name());
+
+        if (stateFile != null)
+            properties.setProperty(STATE_FILE_PROPERTY, stateFile.toString());
+
+        return properties;
+    }
 }
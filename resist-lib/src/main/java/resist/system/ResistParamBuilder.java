@@ -0,0 +1,648 @@
+
+package resist.system;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+
+import jam.space.Space;
+
+import resist.engine.EngineType;
+
+/**
+ * Assembles immutable {@link ResistParam} instances without reference
+ * to the system properties, so that many parameter sets (the points
+ * of a parameter sweep, for example) may coexist in one process.
+ *
+ * <p>Each setter validates its argument and throws {@code
+ * IllegalArgumentException} for an invalid value.  Optional
+ * parameters start at the defaults documented with their property
+ * names in {@link ResistParam}; required parameters must be assigned
+ * before {@link #build()} is called.  Builders are not thread-safe,
+ * but the parameters they build are.
+ */
+public final class ResistParamBuilder {
+    String lattice = null;
+    Space space = null;
+    int sparseTileSize = 0;
+
+    int siteCapacity = MISSING_INT;
+    int initialCellCount = MISSING_INT;
+    int initialDrugCount = MISSING_INT;
+
+    double drugDecayRate = Double.NaN;
+    double drugUptakeRate = Double.NaN;
+
+    double resistantBirthRate = Double.NaN;
+    double resistantDeathRate = Double.NaN;
+
+    double nonResistantBirthRate = Double.NaN;
+    double nonResistantDeathRate = Double.NaN;
+
+    double cellMigrationRate = Double.NaN;
+    double drugDiffusionRate = Double.NaN;
+    double resistanceMutationRate = Double.NaN;
+
+    PopulationMode populationMode = PopulationMode.LAZY;
+    EngineType engineType = EngineType.DIRECT;
+
+    double tauLeapEpsilon = 0.03;
+    int tauLeapCriticalCount = 10;
+    boolean tauLeapParallel = false;
+
+    DrugFieldMode drugFieldMode = DrugFieldMode.DISCRETE;
+    double splitStep = 0.1;
+
+    int domainCount = 1;
+    double syncWindow = 0.05;
+
+    SeedLayoutType seedLayoutType = SeedLayoutType.UNIFORM;
+    int seedRadius = 0;
+
+    StateBackend stateBackend = StateBackend.HEAP;
+    Path stateFile = null;
+
+    // Marks required integer parameters that have not been assigned.
+    private static final int MISSING_INT = -1;
+
+    /**
+     * The common prefix of all parameter property names.
+     */
+    public static final String NAMESPACE = "resist.";
+
+    private ResistParamBuilder() {
+    }
+
+    /**
+     * Creates a new builder with no required parameters assigned and
+     * every optional parameter at its default value.
+     *
+     * @return a new builder.
+     */
+    public static ResistParamBuilder create() {
+        return new ResistParamBuilder();
+    }
+
+    /**
+     * Creates a new builder initialized with the values of existing
+     * parameters.
+     *
+     * @param param the parameters to copy.
+     *
+     * @return a new builder holding the values of the specified
+     * parameters.
+     */
+    public static ResistParamBuilder copyOf(ResistParam param) {
+        ResistParamBuilder builder = create().setAll(param.toProperties());
+
+        // Systems built from the copy share the interned space (and
+        // therefore the agent registry) of the original.
+        builder.space = param.getSpace();
+        return builder;
+    }
+
+    /**
+     * Builds the parameters assigned to this builder.  The builder may
+     * be modified and used again afterwards; parameters built by one
+     * builder share a single space until the lattice is changed.
+     *
+     * @return new parameters with the values assigned to this builder.
+     *
+     * @throws IllegalStateException unless every required parameter
+     * has been assigned, or if a sparse lattice is combined with a
+     * fixed lattice that is not square.
+     */
+    public ResistParam build() {
+        require(lattice != null || sparseTileSize > 0, ResistParam.LATTICE_PROPERTY);
+
+        if (sparseTileSize > 0 && lattice != null && !isSquare(lattice))
+            throw new IllegalStateException(String.format("Parameter [%s] must be SQUARE for a sparse lattice.", ResistParam.LATTICE_PROPERTY));
+
+        require(siteCapacity != MISSING_INT, ResistParam.SITE_CAPACITY_PROPERTY);
+        require(initialCellCount != MISSING_INT, ResistParam.INITIAL_CELL_COUNT_PROPERTY);
+        require(initialDrugCount != MISSING_INT, ResistParam.INITIAL_DRUG_COUNT_PROPERTY);
+
+        require(!Double.isNaN(drugDecayRate), ResistParam.DRUG_DECAY_RATE_PROPERTY);
+        require(!Double.isNaN(drugUptakeRate), ResistParam.DRUG_UPTAKE_RATE_PROPERTY);
+        require(!Double.isNaN(resistantBirthRate), ResistParam.RESISTANT_BIRTH_RATE_PROPERTY);
+        require(!Double.isNaN(resistantDeathRate), ResistParam.RESISTANT_DEATH_RATE_PROPERTY);
+        require(!Double.isNaN(nonResistantBirthRate), ResistParam.NON_RESISTANT_BIRTH_RATE_PROPERTY);
+        require(!Double.isNaN(nonResistantDeathRate), ResistParam.NON_RESISTANT_DEATH_RATE_PROPERTY);
+        require(!Double.isNaN(cellMigrationRate), ResistParam.CELL_MIGRATION_RATE_PROPERTY);
+        require(!Double.isNaN(drugDiffusionRate), ResistParam.DRUG_DIFFUSION_RATE_PROPERTY);
+        require(!Double.isNaN(resistanceMutationRate), ResistParam.RESISTANCE_MUTATION_RATE_PROPERTY);
+
+        if (stateBackend == StateBackend.MAPPED)
+            require(stateFile != null, ResistParam.STATE_FILE_PROPERTY);
+
+        ResistParam param = new ResistParam(this);
+        space = param.getSpace();
+
+        return param;
+    }
+
+    private static boolean isSquare(String lattice) {
+        //
+        // The lattice type is the first field of the specification.
+        //
+        return lattice.split(";", 2)[0].trim().equals("SQUARE");
+    }
+
+    private static void require(boolean assigned, String property) {
+        if (!assigned)
+            throw new IllegalStateException(String.format("Missing required parameter [%s].", property));
+    }
+
+    /**
+     * Assigns one parameter from the string value of its property.
+     *
+     * @param property the name of the property that defines the
+     * parameter (one of the {@code *_PROPERTY} names in {@link
+     * ResistParam}).
+     *
+     * @param value the property value.
+     *
+     * @return this builder, for chaining.
+     *
+     * @throws IllegalArgumentException unless the property name is
+     * recognized and the value is valid.
+     */
+    public ResistParamBuilder set(String property, String value) {
+        String trimmed = value.trim();
+
+        switch (property) {
+        case ResistParam.LATTICE_PROPERTY:
+            return setLattice(trimmed);
+
+        case ResistParam.SPARSE_TILE_SIZE_PROPERTY:
+            return setSparseTileSize(Integer.parseInt(trimmed));
+
+        case ResistParam.SITE_CAPACITY_PROPERTY:
+            return setSiteCapacity(Integer.parseInt(trimmed));
+
+        case ResistParam.INITIAL_CELL_COUNT_PROPERTY:
+            return setInitialCellCount(Integer.parseInt(trimmed));
+
+        case ResistParam.INITIAL_DRUG_COUNT_PROPERTY:
+            return setInitialDrugCount(Integer.parseInt(trimmed));
+
+        case ResistParam.DRUG_DECAY_RATE_PROPERTY:
+            return setDrugDecayRate(Double.parseDouble(trimmed));
+
+        case ResistParam.DRUG_UPTAKE_RATE_PROPERTY:
+            return setDrugUptakeRate(Double.parseDouble(trimmed));
+
+        case ResistParam.RESISTANT_BIRTH_RATE_PROPERTY:
+            return setResistantBirthRate(Double.parseDouble(trimmed));
+
+        case ResistParam.RESISTANT_DEATH_RATE_PROPERTY:
+            return setResistantDeathRate(Double.parseDouble(trimmed));
+
+        case ResistParam.NON_RESISTANT_BIRTH_RATE_PROPERTY:
+            return setNonResistantBirthRate(Double.parseDouble(trimmed));
+
+        case ResistParam.NON_RESISTANT_DEATH_RATE_PROPERTY:
+            return setNonResistantDeathRate(Double.parseDouble(trimmed));
+
+        case ResistParam.CELL_MIGRATION_RATE_PROPERTY:
+            return setCellMigrationRate(Double.parseDouble(trimmed));
+
+        case ResistParam.DRUG_DIFFUSION_RATE_PROPERTY:
+            return setDrugDiffusionRate(Double.parseDouble(trimmed));
+
+        case ResistParam.RESISTANCE_MUTATION_RATE_PROPERTY:
+            return setResistanceMutationRate(Double.parseDouble(trimmed));
+
+        case ResistParam.POPULATION_MODE_PROPERTY:
+            return setPopulationMode(PopulationMode.valueOf(trimmed));
+
+        case ResistParam.ENGINE_TYPE_PROPERTY:
+            return setEngineType(EngineType.valueOf(trimmed));
+
+        case ResistParam.TAU_LEAP_EPSILON_PROPERTY:
+            return setTauLeapEpsilon(Double.parseDouble(trimmed));
+
+        case ResistParam.TAU_LEAP_CRITICAL_COUNT_PROPERTY:
+            return setTauLeapCriticalCount(Integer.parseInt(trimmed));
+
+        case ResistParam.TAU_LEAP_PARALLEL_PROPERTY:
+            return setTauLeapParallel(Boolean.parseBoolean(trimmed));
+
+        case ResistParam.DRUG_FIELD_PROPERTY:
+            return setDrugFieldMode(DrugFieldMode.valueOf(trimmed));
+
+        case ResistParam.SPLIT_STEP_PROPERTY:
+            return setSplitStep(Double.parseDouble(trimmed));
+
+        case ResistParam.DOMAIN_COUNT_PROPERTY:
+            return setDomainCount(Integer.parseInt(trimmed));
+
+        case ResistParam.SYNC_WINDOW_PROPERTY:
+            return setSyncWindow(Double.parseDouble(trimmed));
+
+        case ResistParam.SEED_LAYOUT_PROPERTY:
+            return setSeedLayoutType(SeedLayoutType.valueOf(trimmed));
+
+        case ResistParam.SEED_RADIUS_PROPERTY:
+            return setSeedRadius(Integer.parseInt(trimmed));
+
+        case ResistParam.STATE_BACKEND_PROPERTY:
+            return setStateBackend(StateBackend.valueOf(trimmed));
+
+        case ResistParam.STATE_FILE_PROPERTY:
+            return setStateFile(Path.of(trimmed));
+
+        default:
+            throw new IllegalArgumentException(String.format("Unknown parameter [%s].", property));
+        }
+    }
+
+    /**
+     * Assigns every parameter defined in a property collection.
+     * Properties outside the {@code resist.} namespace are ignored.
+     *
+     * @param properties the property names and values.
+     *
+     * @return this builder, for chaining.
+     *
+     * @throws IllegalArgumentException if any {@code resist.}
+     * property is unrecognized or has an invalid value.
+     */
+    public ResistParamBuilder setAll(Properties properties) {
+        for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+            String property = entry.getKey().toString();
+
+            if (property.startsWith(NAMESPACE))
+                set(property, entry.getValue().toString());
+        }
+
+        return this;
+    }
+
+    private static int requirePositive(int value, String property) {
+        if (value < 1)
+            throw new IllegalArgumentException(String.format("Parameter [%s] must be positive.", property));
+
+        return value;
+    }
+
+    private static int requireNonNegative(int value, String property) {
+        if (value < 0)
+            throw new IllegalArgumentException(String.format("Parameter [%s] must be non-negative.", property));
+
+        return value;
+    }
+
+    private static double requirePositive(double value, String property) {
+        if (!(value > 0.0) || Double.isInfinite(value))
+            throw new IllegalArgumentException(String.format("Parameter [%s] must be positive.", property));
+
+        return value;
+    }
+
+    private static double requireNonNegative(double value, String property) {
+        if (!(value >= 0.0) || Double.isInfinite(value))
+            throw new IllegalArgumentException(String.format("Parameter [%s] must be non-negative.", property));
+
+        return value;
+    }
+
+    /**
+     * Assigns the lattice geometry.
+     *
+     * @param lattice the lattice specification, in the format of
+     * {@link ResistParam#LATTICE_PROPERTY}.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setLattice(String lattice) {
+        if (!lattice.equals(this.lattice)) {
+            this.lattice = lattice;
+            this.space = null;
+        }
+
+        return this;
+    }
+
+    /**
+     * Assigns the side length of the tiles of a sparse lattice.
+     *
+     * @param sparseTileSize the (non-negative) tile size, or {@code 0}
+     * for the fixed lattice given by {@link #setLattice(String)}.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setSparseTileSize(int sparseTileSize) {
+        this.sparseTileSize = requireNonNegative(sparseTileSize, ResistParam.SPARSE_TILE_SIZE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the maximum number of cells at a single lattice site.
+     *
+     * @param siteCapacity the maximum number of cells at one site.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setSiteCapacity(int siteCapacity) {
+        this.siteCapacity = requirePositive(siteCapacity, ResistParam.SITE_CAPACITY_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the initial number of (non-resistant) cells.
+     *
+     * @param initialCellCount the initial number of cells across the
+     * entire lattice.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setInitialCellCount(int initialCellCount) {
+        this.initialCellCount = requirePositive(initialCellCount, ResistParam.INITIAL_CELL_COUNT_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the initial number of therapeutic agents.
+     *
+     * @param initialDrugCount the initial number of therapeutic
+     * agents across the entire lattice.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setInitialDrugCount(int initialDrugCount) {
+        this.initialDrugCount = requirePositive(initialDrugCount, ResistParam.INITIAL_DRUG_COUNT_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the rate at which the therapeutic agent decays.
+     *
+     * @param drugDecayRate the (non-negative) decay rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setDrugDecayRate(double drugDecayRate) {
+        this.drugDecayRate = requireNonNegative(drugDecayRate, ResistParam.DRUG_DECAY_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the rate at which cells take in the therapeutic agent.
+     *
+     * @param drugUptakeRate the (non-negative) uptake rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setDrugUptakeRate(double drugUptakeRate) {
+        this.drugUptakeRate = requireNonNegative(drugUptakeRate, ResistParam.DRUG_UPTAKE_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the birth rate of resistant cells.
+     *
+     * @param resistantBirthRate the (positive) birth rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setResistantBirthRate(double resistantBirthRate) {
+        this.resistantBirthRate = requirePositive(resistantBirthRate, ResistParam.RESISTANT_BIRTH_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the natural death rate of resistant cells.
+     *
+     * @param resistantDeathRate the (positive) death rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setResistantDeathRate(double resistantDeathRate) {
+        this.resistantDeathRate = requirePositive(resistantDeathRate, ResistParam.RESISTANT_DEATH_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the birth rate of non-resistant cells.
+     *
+     * @param nonResistantBirthRate the (positive) birth rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setNonResistantBirthRate(double nonResistantBirthRate) {
+        this.nonResistantBirthRate = requirePositive(nonResistantBirthRate, ResistParam.NON_RESISTANT_BIRTH_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the natural death rate of non-resistant cells.
+     *
+     * @param nonResistantDeathRate the (positive) death rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setNonResistantDeathRate(double nonResistantDeathRate) {
+        this.nonResistantDeathRate = requirePositive(nonResistantDeathRate, ResistParam.NON_RESISTANT_DEATH_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the rate constant for cell migration.
+     *
+     * @param cellMigrationRate the (non-negative) migration rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setCellMigrationRate(double cellMigrationRate) {
+        this.cellMigrationRate = requireNonNegative(cellMigrationRate, ResistParam.CELL_MIGRATION_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the rate constant for drug diffusion.
+     *
+     * @param drugDiffusionRate the (non-negative) diffusion rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setDrugDiffusionRate(double drugDiffusionRate) {
+        this.drugDiffusionRate = requireNonNegative(drugDiffusionRate, ResistParam.DRUG_DIFFUSION_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the rate at which resistance mutations arise.
+     *
+     * @param resistanceMutationRate the (positive) mutation rate.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setResistanceMutationRate(double resistanceMutationRate) {
+        this.resistanceMutationRate = requirePositive(resistanceMutationRate, ResistParam.RESISTANCE_MUTATION_RATE_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the population mode.
+     *
+     * @param populationMode the population mode.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setPopulationMode(PopulationMode populationMode) {
+        this.populationMode = populationMode;
+        return this;
+    }
+
+    /**
+     * Assigns the event engine.
+     *
+     * @param engineType the event engine.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setEngineType(EngineType engineType) {
+        this.engineType = engineType;
+        return this;
+    }
+
+    /**
+     * Assigns the bound on the expected relative change in any site
+     * population during one tau-leap.
+     *
+     * @param tauLeapEpsilon the (positive) bound.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setTauLeapEpsilon(double tauLeapEpsilon) {
+        this.tauLeapEpsilon = requirePositive(tauLeapEpsilon, ResistParam.TAU_LEAP_EPSILON_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the population below which a channel is simulated
+     * exactly rather than leaped.
+     *
+     * @param tauLeapCriticalCount the (non-negative) critical count.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setTauLeapCriticalCount(int tauLeapCriticalCount) {
+        this.tauLeapCriticalCount = requireNonNegative(tauLeapCriticalCount, ResistParam.TAU_LEAP_CRITICAL_COUNT_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns whether the Poisson deviates of each tau-leap are drawn
+     * in parallel.
+     *
+     * @param tauLeapParallel whether to draw the deviates in parallel.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setTauLeapParallel(boolean tauLeapParallel) {
+        this.tauLeapParallel = tauLeapParallel;
+        return this;
+    }
+
+    /**
+     * Assigns the representation of the drug populations.
+     *
+     * @param drugFieldMode the drug field mode.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setDrugFieldMode(DrugFieldMode drugFieldMode) {
+        this.drugFieldMode = drugFieldMode;
+        return this;
+    }
+
+    /**
+     * Assigns the operator splitting step for a continuous drug field.
+     *
+     * @param splitStep the (positive) splitting step.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setSplitStep(double splitStep) {
+        this.splitStep = requirePositive(splitStep, ResistParam.SPLIT_STEP_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the number of sub-domains simulated in parallel.
+     *
+     * @param domainCount the (positive) number of sub-domains.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setDomainCount(int domainCount) {
+        this.domainCount = requirePositive(domainCount, ResistParam.DOMAIN_COUNT_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the time window between synchronizations of parallel
+     * sub-domains.
+     *
+     * @param syncWindow the (positive) synchronization window.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setSyncWindow(double syncWindow) {
+        this.syncWindow = requirePositive(syncWindow, ResistParam.SYNC_WINDOW_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the layout of the initial cell population.
+     *
+     * @param seedLayoutType the seed layout.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setSeedLayoutType(SeedLayoutType seedLayoutType) {
+        this.seedLayoutType = seedLayoutType;
+        return this;
+    }
+
+    /**
+     * Assigns the lattice radius of a ball-shaped initial population.
+     *
+     * @param seedRadius the (non-negative) radius, or {@code 0} to
+     * select the smallest ball that can hold the initial cells.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setSeedRadius(int seedRadius) {
+        this.seedRadius = requireNonNegative(seedRadius, ResistParam.SEED_RADIUS_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Assigns the storage backend for the per-site state.
+     *
+     * @param stateBackend the state backend.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setStateBackend(StateBackend stateBackend) {
+        this.stateBackend = stateBackend;
+        return this;
+    }
+
+    /**
+     * Assigns the file that holds the population counts for the
+     * {@code MAPPED} state backend.  Concurrent systems must not share
+     * a state file.
+     *
+     * @param stateFile the state file.
+     *
+     * @return this builder, for chaining.
+     */
+    public ResistParamBuilder setStateFile(Path stateFile) {
+        this.stateFile = stateFile;
+        return this;
+    }
+}
@@ -1,9 +1,20 @@
 
 package resist.system;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import jdk.jfr.EventType;
 
 import jam.math.JamRandom;
 import jam.space.Site;
@@ -14,41 +25,978 @@ import jam.stoch.agent.AgentPopulation;
 import jam.stoch.agent.AgentProc;
 import jam.stoch.agent.AgentSystem;
 
-import resist.agent.CellAgent;
+import resist.agent.AgentRegistry;
+import resist.agent.AgentType;
 import resist.agent.CellType;
-import resist.agent.DrugAgent;
 import resist.agent.DrugType;
+import resist.agent.SiteAgent;
+import resist.engine.EngineMetrics;
+import resist.engine.EngineType;
+import resist.engine.ResistEngine;
+import resist.random.RandomSource;
 
 /**
  * Encapsulates the stochastic agents and processes used to simulate
  * the evolution of therapeutic resistance.
+ *
+ * <p>The lattice is either a fixed {@link Space}, resolved from the
+ * lattice parameter, or a {@link SparseLattice} that grows with the
+ * populations.  A sparse lattice has no {@link Site} objects, so the
+ * methods that map sites and agents require a fixed lattice; the
+ * initial cells and drug are seeded over the tiles that cover the
+ * seed ball about the origin.
  */
 public final class ResistSystem extends AgentSystem {
     private final ResistParam param;
 
     private final Space space;
     private final List<Site> sites;
+    private final AgentRegistry registry;
+    private final SparseLattice lattice;
+    private final PopulationStore population;
+    private final ReactionModel model;
+
+    // Sites whose agents have been mapped into the agent system.
+    private final BitSet mappedSites = new BitSet();
+
+    // Observers, their sampling intervals, the time of their first
+    // sample, and the number of samples taken so far.
+    private SystemObserver[] observers = new SystemObserver[0];
+    private double[] observerIntervals = new double[0];
+    private double[] observerStarts = new double[0];
+    private long[] observerSamples = new long[0];
+
+    // Rules that end a run early, the number of events between
+    // checks, and the rule that stopped the simulation (if any).
+    private StoppingRule[] stoppingRules = new StoppingRule[0];
+    private int stoppingCheckInterval = 1;
+    private StoppingRule stoppedBy = null;
+
+    // Dates the system for wall-clock stopping rules.
+    private final long creationNanos = System.nanoTime();
+
+    private RandomSource random;
+    private EngineType engineType;
+    private ResistEngine engine;
+    private PopulationAggregates aggregates;
+
+    // The collector of performance metrics, if enabled.
+    private EngineMetrics metrics = null;
+
+    // Run events are allocated only while a recording enables them.
+    private static final EventType RUN_EVENT_TYPE = EventType.getEventType(SimulationRunEvent.class);
 
     private ResistSystem(ResistParam param) {
         this.param = param;
         this.space = param.getSpace();
-        this.sites = new ArrayList<Site>(space.viewSites());
+        this.registry = (space != null) ? AgentRegistry.instance(space) : null;
+        this.sites = (registry != null) ? registry.viewSites() : List.of();
+        this.lattice = createLattice();
+        this.population = createPopulation();
+        this.model = createModel();
+    }
+
+    private SparseLattice createLattice() {
+        if (!param.isSparse())
+            return null;
+
+        if (param.getPopulationMode() != PopulationMode.ARRAY)
+            throw new IllegalArgumentException("Sparse lattices require the ARRAY population mode.");
+
+        if (param.getStateBackend() == StateBackend.MAPPED)
+            throw new IllegalArgumentException("Sparse lattices cannot be mapped to a state file.");
+
+        if (param.getDrugFieldMode() != DrugFieldMode.DISCRETE)
+            throw new IllegalArgumentException("Sparse lattices require discrete drugs.");
+
+        SparseLattice lattice = SparseLattice.create(param.getSparseTileSize());
+        lattice.cover(seedRadius(), null);
+
+        return lattice;
+    }
+
+    private int seedRadius() {
+        //
+        // The smallest ball (in the lattice metric) about the origin
+        // that can hold the initial cells, unless a radius is given.
+        //
+        if (param.getSeedRadius() > 0)
+            return param.getSeedRadius();
+
+        long siteCount = (param.getInitialCellCount() + param.getSiteCapacity() - 1) / param.getSiteCapacity();
+        int radius = 0;
+
+        while (2L * radius * (radius + 1) + 1 < siteCount)
+            ++radius;
+
+        return radius;
+    }
+
+    private PopulationStore createPopulation() {
+        if (lattice != null)
+            return lattice.getPopulation();
+
+        switch (param.getStateBackend()) {
+        case HEAP:
+            return ArrayPopulationStore.create(sites.size());
+
+        case DIRECT:
+            return OffHeapPopulationStore.create(sites.size());
+
+        case MAPPED:
+            return OffHeapPopulationStore.create(param.getStateFile(), sites.size());
+
+        default:
+            throw new IllegalStateException("Unknown state backend.");
+        }
+    }
+
+    private ReactionModel createModel() {
+        if (lattice != null)
+            return ReactionModel.create(param, lattice);
+
+        SiteGraph neighbors = mapNeighbors();
+
+        switch (param.getDrugFieldMode()) {
+        case DISCRETE:
+            return ReactionModel.create(param, population, neighbors);
+
+        case CONTINUOUS:
+            return ReactionModel.create(param, population, neighbors, DrugField.create(param, neighbors));
+
+        default:
+            throw new IllegalStateException("Unknown drug field mode.");
+        }
+    }
+
+    private SiteGraph mapNeighbors() {
+        //
+        // Resolve the neighbors through the space exactly once; the
+        // event loop then works entirely on the compressed graph.
+        // The edge offsets are ints; see StateBackend for the limit
+        // that this places on the lattice size.
+        //
+        int[] offsets = new int[sites.size() + 1];
+        int[] targets = new int[(int) Math.min(4L * sites.size(), Integer.MAX_VALUE - 8)];
+
+        for (int index = 0; index < sites.size(); ++index) {
+            Collection<Site> siteNeighbors = space.viewNeighbors(sites.get(index));
+
+            int edge = offsets[index];
+            long nextOffset = (long) edge + siteNeighbors.size();
+
+            if (nextOffset > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("The lattice has too many edges for an int-indexed neighbor graph.");
+
+            offsets[index + 1] = (int) nextOffset;
+
+            if (offsets[index + 1] > targets.length)
+                targets = Arrays.copyOf(targets, (int) Math.max(offsets[index + 1], Math.min(2L * targets.length, Integer.MAX_VALUE - 8)));
+
+            for (Site neighbor : siteNeighbors)
+                targets[edge++] = registry.indexOf(neighbor);
+        }
+
+        return SiteGraph.create(offsets, Arrays.copyOf(targets, offsets[sites.size()]));
     }
 
     private void createAgents() {
-        for (Site site : sites)
-            createAgents(site);
+        switch (param.getPopulationMode()) {
+        case AGENT:
+            for (int index = 0; index < sites.size(); ++index)
+                createAgents(index);
+            break;
+
+        case LAZY:
+            population.addListener(this::countChanged);
+            break;
+
+        case ARRAY:
+            //
+            // Agents are created only as views on demand.
+            //
+            break;
+
+        default:
+            throw new IllegalStateException("Unknown population mode.");
+        }
+    }
+
+    private void countChanged(int index, int type, int oldCount, int newCount) {
+        if (oldCount == 0 && !mappedSites.get(index))
+            createAgents(index);
     }
 
-    private void createAgents(Site site) {
+    private void createAgents(int index) {
+        Site site = sites.get(index);
+
         for (CellType cellType : CellType.values())
-            mapAgent(CellAgent.instance(site, cellType));
+            mapAgent(registry.instance(site, cellType));
 
         for (DrugType drugType : DrugType.values())
-            mapAgent(DrugAgent.instance(site, drugType));
+            mapAgent(registry.instance(site, drugType));
+
+        mappedSites.set(index);
+    }
+
+    private SeedLayout createLayout() {
+        switch (param.getSeedLayoutType()) {
+        case UNIFORM:
+            return SeedLayout.uniform();
+
+        case BALL:
+            int center = (lattice != null) ? lattice.indexOf(0, 0) : centerSite();
+            int radius = param.getSeedRadius();
+
+            if (radius == 0)
+                radius = SeedLayout.fitBall(model, center, param.getInitialCellCount());
+
+            return SeedLayout.ball(model, center, radius);
+
+        default:
+            throw new IllegalStateException("Unknown seed layout.");
+        }
+    }
+
+    private int centerSite() {
+        //
+        // The site nearest the midpoint of the bounding box of the
+        // site coordinates; the dense enumeration says nothing about
+        // the geometry (its middle is an edge site of a row-major
+        // lattice with an even number of rows).
+        //
+        int dimension = sites.get(0).getIndex().dimensionality();
+
+        int[] lower = new int[dimension];
+        int[] upper = new int[dimension];
+
+        Arrays.fill(lower, Integer.MAX_VALUE);
+        Arrays.fill(upper, Integer.MIN_VALUE);
+
+        for (Site site : sites) {
+            for (int k = 0; k < dimension; ++k) {
+                lower[k] = Math.min(lower[k], site.getIndex().coord(k));
+                upper[k] = Math.max(upper[k], site.getIndex().coord(k));
+            }
+        }
+
+        int center = 0;
+        long minDistance = Long.MAX_VALUE;
+
+        for (int index = 0; index < sites.size(); ++index) {
+            long distance = 0L;
+
+            // Twice the offset from the midpoint, in integers.
+            for (int k = 0; k < dimension; ++k) {
+                long offset = 2L * sites.get(index).getIndex().coord(k) - lower[k] - upper[k];
+                distance += offset * offset;
+            }
+
+            if (distance < minDistance) {
+                center = index;
+                minDistance = distance;
+            }
+        }
+
+        return center;
+    }
+
+    private void assignPopulation(RandomSource random, SeedLayout layout) {
+        PopulationSeeder seeder = PopulationSeeder.create(population, param.getSiteCapacity());
+
+        seeder.seed(random, layout, CellType.NON_RESISTANT, param.getInitialCellCount());
+
+        // The therapeutic agents are administered systemically; the
+        // initial drug count is the total over all drug types, shared
+        // as evenly as possible.
+        DrugType[] drugTypes = DrugType.values();
+
+        for (int k = 0; k < drugTypes.length; ++k) {
+            long drugCount = param.getInitialDrugCount() / drugTypes.length;
+
+            if (k < param.getInitialDrugCount() % drugTypes.length)
+                ++drugCount;
+
+            seeder.seed(random, SeedLayout.uniform(), drugTypes[k], drugCount);
+        }
+    }
+
+    private void expandLattice() {
+        //
+        // Allocate the tiles reached by the initial populations before
+        // the engine sizes its channels.
+        //
+        model.expand();
+    }
+
+    private void createEngine(EngineType engineType, RandomSource random) {
+        this.random = random;
+        this.engineType = engineType;
+        this.engine = ResistEngine.create(engineType, model, random);
+    }
+
+    private void createAggregates() {
+        this.aggregates = PopulationAggregates.attach(population, model.getOccupancy(), engine::getTime);
     }
 
-    private void assignPopulation(JamRandom rand) {
+    /**
+     * Executes the next event if it occurs no later than a given
+     * time; otherwise advances the simulation clock to that time.
+     *
+     * @param maxTime the latest time at which an event may occur.
+     *
+     * @return {@code true} if an event was executed, {@code false} if
+     * the clock was advanced to {@code maxTime} instead.
+     */
+    public boolean advance(double maxTime) {
+        return engine.advance(maxTime);
+    }
+
+    /**
+     * Executes events until the simulation clock reaches a given
+     * time or a stopping rule is satisfied, stopping the clock at
+     * every sampling time of each registered observer that falls
+     * within the run.  Once a stopping rule has been satisfied, this
+     * method returns at once without executing any events.
+     *
+     * @param maxTime the time at which to stop the simulation.
+     *
+     * @return {@code true} if the clock reached {@code maxTime},
+     * {@code false} if a stopping rule ended the run first (see
+     * {@link #getStoppingRule()}).
+     */
+    public boolean run(double maxTime) {
+        if (!RUN_EVENT_TYPE.isEnabled())
+            return runObserved(maxTime);
+
+        SimulationRunEvent event = new SimulationRunEvent();
+
+        double startTime = getTime();
+        long startCount = getEventCount();
+
+        event.begin();
+        boolean finished = runObserved(maxTime);
+
+        if (event.shouldCommit()) {
+            event.startTime = startTime;
+            event.endTime = getTime();
+            event.events = getEventCount() - startCount;
+            event.stoppingRule = (stoppedBy != null) ? stoppedBy.describe() : null;
+            event.commit();
+        }
+
+        return finished;
+    }
+
+    private boolean runObserved(double maxTime) {
+        for (int index = nextObserver(maxTime); index >= 0; index = nextObserver(maxTime)) {
+            if (!runUntil(nextObservation(index)))
+                return false;
+
+            observers[index].observe(this);
+            ++observerSamples[index];
+        }
+
+        return runUntil(maxTime);
+    }
+
+    private boolean runUntil(double maxTime) {
+        if (stoppingRules.length == 0) {
+            engine.run(maxTime);
+            return true;
+        }
+
+        if (checkStoppingRules())
+            return false;
+
+        //
+        // Count events rather than calls to advance: the tau-leap,
+        // hybrid, and domain engines may execute many events per call.
+        //
+        long nextCheck = engine.getEventCount() + stoppingCheckInterval;
+
+        while (engine.advance(maxTime)) {
+            if (engine.getEventCount() >= nextCheck) {
+                if (checkStoppingRules())
+                    return false;
+
+                nextCheck = engine.getEventCount() + stoppingCheckInterval;
+            }
+        }
+
+        return !checkStoppingRules();
+    }
+
+    private boolean checkStoppingRules() {
+        if (stoppedBy != null)
+            return true;
+
+        for (StoppingRule rule : stoppingRules) {
+            if (rule.isSatisfied(this)) {
+                stoppedBy = rule;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private double nextObservation(int index) {
+        //
+        // Multiply rather than accumulate the intervals, so that the
+        // sampling times do not drift over long runs.
+        //
+        return observerStarts[index] + observerSamples[index] * observerIntervals[index];
+    }
+
+    private int nextObserver(double maxTime) {
+        int next = -1;
+        double nextTime = Double.POSITIVE_INFINITY;
+
+        for (int index = 0; index < observers.length; ++index) {
+            double time = nextObservation(index);
+
+            if (time <= maxTime && time < nextTime) {
+                next = index;
+                nextTime = time;
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * Registers an observer to sample this system at regular intervals
+     * of simulated time, starting at the current time.  Observers are
+     * called from {@link #run(double)} (but not from {@link
+     * #advance(double)}); observers with the same sampling time are
+     * called in order of registration.
+     *
+     * @param interval the simulated time between samples.
+     *
+     * @param observer the observer to register.
+     *
+     * @throws IllegalArgumentException unless the interval is
+     * positive.
+     */
+    public void addObserver(double interval, SystemObserver observer) {
+        if (interval <= 0.0)
+            throw new IllegalArgumentException("Sampling interval must be positive.");
+
+        int index = observers.length;
+
+        observers = Arrays.copyOf(observers, index + 1);
+        observerIntervals = Arrays.copyOf(observerIntervals, index + 1);
+        observerStarts = Arrays.copyOf(observerStarts, index + 1);
+        observerSamples = Arrays.copyOf(observerSamples, index + 1);
+
+        observers[index] = observer;
+        observerIntervals[index] = interval;
+        observerStarts[index] = getTime();
+    }
+
+    /**
+     * Unregisters an observer; the remaining observers keep their
+     * sampling schedules.
+     *
+     * @param observer the observer to unregister (compared by
+     * identity).
+     *
+     * @return {@code true} iff the observer was registered.
+     */
+    public boolean removeObserver(SystemObserver observer) {
+        for (int index = 0; index < observers.length; ++index) {
+            if (observers[index] == observer) {
+                observers = remove(observers, index);
+                observerIntervals = remove(observerIntervals, index);
+                observerStarts = remove(observerStarts, index);
+                observerSamples = remove(observerSamples, index);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static SystemObserver[] remove(SystemObserver[] array, int index) {
+        SystemObserver[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static double[] remove(double[] array, int index) {
+        double[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static long[] remove(long[] array, int index) {
+        long[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    /**
+     * Registers a rule that ends the simulation early.  Rules are
+     * checked by {@link #run(double)} in order of registration before
+     * the first event, after every {@code stoppingCheckInterval}
+     * events, and at the end of every run.
+     *
+     * @param rule the rule to register.
+     */
+    public void addStoppingRule(StoppingRule rule) {
+        stoppingRules = Arrays.copyOf(stoppingRules, stoppingRules.length + 1);
+        stoppingRules[stoppingRules.length - 1] = rule;
+    }
+
+    /**
+     * Assigns the number of events between checks of the stopping
+     * rules (one by default).  Checking after every event stops the
+     * run at the first event that satisfies a rule; checking less
+     * often amortizes the cost of expensive rules.
+     *
+     * @param interval the number of events between checks.
+     *
+     * @throws IllegalArgumentException unless the interval is
+     * positive.
+     */
+    public void setStoppingCheckInterval(int interval) {
+        if (interval < 1)
+            throw new IllegalArgumentException("Check interval must be positive.");
+
+        this.stoppingCheckInterval = interval;
+    }
+
+    /**
+     * Identifies simulations that were ended by a stopping rule.
+     *
+     * @return {@code true} iff a stopping rule has been satisfied.
+     */
+    public boolean isStopped() {
+        return stoppedBy != null;
+    }
+
+    /**
+     * Returns the stopping rule that ended the simulation.
+     *
+     * @return the stopping rule that ended the simulation, or {@code
+     * null} if no rule has been satisfied.
+     */
+    public StoppingRule getStoppingRule() {
+        return stoppedBy;
+    }
+
+    long getCreationNanos() {
+        return creationNanos;
+    }
+
+    /**
+     * Executes events until the simulation clock reaches a given
+     * time, writing a checkpoint at regular intervals of simulated
+     * time.  Each checkpoint is written to a temporary file alongside
+     * the target file and then moved over the target, so the target
+     * always holds a complete checkpoint; the simulation continues
+     * while each checkpoint is forced to disk.  If a stopping rule
+     * ends the run early, the last checkpoint records the stopped
+     * state.
+     *
+     * @param maxTime the time at which to stop the simulation.
+     *
+     * @param interval the simulated time between checkpoints.
+     *
+     * @param file the file that holds the latest checkpoint.
+     *
+     * @throws IllegalArgumentException unless the interval is
+     * positive.
+     *
+     * @throws java.io.UncheckedIOException if a checkpoint cannot be
+     * written.
+     */
+    public void run(double maxTime, double interval, Path file) {
+        if (interval <= 0.0)
+            throw new IllegalArgumentException("Checkpoint interval must be positive.");
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CompletableFuture<Path> pending = CompletableFuture.completedFuture(file);
+
+        boolean running = true;
+
+        while (running && getTime() < maxTime) {
+            running = run(Math.min(getTime() + interval, maxTime));
+
+            // At most one checkpoint is in flight, so the temporary
+            // file is never overwritten while it is being flushed.
+            await(pending);
+            pending = ResistCheckpoint.write(this, temp).thenApply(written -> replace(written, file));
+        }
+
+        await(pending);
+    }
+
+    private static void await(CompletableFuture<Path> pending) {
+        try {
+            pending.join();
+        }
+        catch (CompletionException ex) {
+            //
+            // Rethrow the failure of the background write as it would
+            // have been thrown by a synchronous write.
+            //
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+
+            if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+
+            throw ex;
+        }
+    }
+
+    private static Path replace(Path source, Path target) {
+        try {
+            return Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes a checkpoint of this system; see {@link ResistCheckpoint}.
+     *
+     * @param file the file to write.
+     *
+     * @return a future that completes with the file once the
+     * checkpoint has been forced to disk.
+     *
+     * @throws java.io.UncheckedIOException if the file cannot be
+     * written.
+     */
+    public CompletableFuture<Path> checkpoint(Path file) {
+        return ResistCheckpoint.write(this, file);
+    }
+
+    /**
+     * Creates an independent copy of this system at its current state,
+     * without the round trip through a file that a checkpoint makes.
+     * The copy has the same parameters, engine type, populations,
+     * clock, event count, and first-appearance times, but its own
+     * random source; observers, stopping rules, and metrics are not
+     * copied.  The cost is one pass over the population counts and
+     * one over the channel propensities.
+     *
+     * <p>The copy of a system whose state is mapped to a file keeps
+     * its state in {@code DIRECT} memory instead, because mapping the
+     * same file would truncate the counts of this system.
+     *
+     * @param random the source of randomness for the copy.
+     *
+     * @return a new system positioned at the current state of this
+     * system.
+     *
+     * @throws IllegalStateException if the lattice is sparse.
+     */
+    public ResistSystem fork(RandomSource random) {
+        if (lattice != null)
+            throw new IllegalStateException("Sparse lattices cannot be forked.");
+
+        ResistSystem copy = new ResistSystem(forkParam());
+        IntBuffer buffer = IntBuffer.allocate(population.countSites());
+
+        copy.createAgents();
+
+        for (int type = 0; type < AgentType.COUNT; ++type) {
+            buffer.clear();
+            population.exportCounts(type, buffer);
+            buffer.flip();
+            copy.population.importCounts(type, buffer);
+        }
+
+        copy.createEngine(engineType, random);
+        copy.engine.resume(getTime(), getEventCount());
+        copy.createAggregates();
+        copy.aggregates.copyFirstTimes(aggregates);
+
+        return copy;
+    }
+
+    private ResistParam forkParam() {
+        if (param.getStateBackend() != StateBackend.MAPPED)
+            return param;
+
+        return param.toBuilder().setStateBackend(StateBackend.DIRECT).build();
+    }
+
+    /**
+     * Recomputes all event propensities; must be called after the
+     * site populations have been modified directly through the
+     * population store.
+     */
+    public void refresh() {
+        model.expand();
+        engine.refresh();
+    }
+
+    /**
+     * Returns the current simulation time.
+     *
+     * @return the current simulation time.
+     */
+    public double getTime() {
+        return engine.getTime();
+    }
+
+    /**
+     * Returns the number of events executed so far.
+     *
+     * @return the number of events executed so far.
+     */
+    public long getEventCount() {
+        return engine.getEventCount();
+    }
+
+    /**
+     * Starts collecting performance metrics from the event loop (the
+     * number of events of each process type, the event rate, the
+     * dependency fan-out, and the time spent in each engine phase).
+     * The returned collector may be polled from any thread; this
+     * method must not be called while the system is running.
+     *
+     * @return the collector of the metrics (the existing collector if
+     * metrics are already being collected).
+     */
+    public EngineMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = EngineMetrics.create();
+            engine.setMetrics(metrics);
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Stops collecting performance metrics; this method must not be
+     * called while the system is running.
+     */
+    public void disableMetrics() {
+        metrics = null;
+        engine.setMetrics(null);
+    }
+
+    /**
+     * Returns the collector of performance metrics.
+     *
+     * @return the collector of performance metrics, or {@code null}
+     * if metrics are not being collected.
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the index of occupied and full sites, which observers
+     * may use to visit only the occupied sites.
+     *
+     * @return the index of occupied and full sites.
+     */
+    public OccupancyIndex getOccupancy() {
+        return model.getOccupancy();
+    }
+
+    /**
+     * Returns the running summaries of the site populations.
+     *
+     * @return the running summaries of the site populations.
+     */
+    public PopulationAggregates getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Returns the event engine driving this system.
+     *
+     * @return the event engine driving this system.
+     */
+    public ResistEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the reaction model for this system.
+     *
+     * @return the reaction model for this system.
+     */
+    public ReactionModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the number of agents of a given type at a given site.
+     *
+     * @param site the site of interest.
+     *
+     * @param type the agent type of interest.
+     *
+     * @return the number of agents of the specified type at the
+     * specified site.
+     *
+     * @throws IllegalArgumentException unless the site belongs to the
+     * space of this system.
+     */
+    public int countAgents(Site site, AgentType type) {
+        return population.getCount(indexOf(site), type);
+    }
+
+    /**
+     * Returns the number of agents at the location and of the type
+     * of a given agent.
+     *
+     * @param agent the agent of interest.
+     *
+     * @return the number of agents at the location and of the type
+     * of the specified agent.
+     */
+    public int countAgents(SiteAgent agent) {
+        if (agent instanceof SiteAgentView)
+            return population.getCount(((SiteAgentView) agent).getSiteIndex(), agent.getType());
+        else
+            return countAgents(agent.getSite(), agent.getType());
+    }
+
+    /**
+     * Returns the number of sites in the space of this system (the
+     * number allocated so far, if the lattice is sparse).
+     *
+     * @return the number of sites in the space of this system.
+     */
+    public int countSites() {
+        return population.countSites();
+    }
+
+    /**
+     * Returns the site with a given dense index.
+     *
+     * @param index the dense index of the site.
+     *
+     * @return the site with the specified dense index.
+     *
+     * @throws IllegalStateException if the lattice is sparse.
+     */
+    public Site getSite(int index) {
+        return registry().getSite(index);
+    }
+
+    /**
+     * Returns the dense index of a site in the space of this system.
+     *
+     * @param site the site of interest.
+     *
+     * @return the dense index of the specified site.
+     *
+     * @throws IllegalArgumentException unless the site belongs to the
+     * space of this system.
+     *
+     * @throws IllegalStateException if the lattice is sparse.
+     */
+    public int indexOf(Site site) {
+        return registry().indexOf(site);
+    }
+
+    private AgentRegistry registry() {
+        if (registry == null)
+            throw new IllegalStateException("Sparse lattices have no site objects.");
+
+        return registry;
+    }
+
+    /**
+     * Returns the parameters that define this system.
+     *
+     * @return the parameters that define this system.
+     */
+    public ResistParam getParam() {
+        return param;
+    }
+
+    /**
+     * Returns the primitive store holding the site populations.
+     *
+     * @return the primitive store holding the site populations.
+     */
+    public PopulationStore getPopulation() {
+        return population;
+    }
+
+    /**
+     * Returns the source of randomness driving this system.
+     *
+     * @return the source of randomness driving this system.
+     */
+    RandomSource getRandom() {
+        return random;
+    }
+
+    /**
+     * Returns the spatial structure of this system.
+     *
+     * @return the spatial structure of this system, or {@code null}
+     * if the lattice is sparse.
+     */
+    public Space getSpace() {
+        return space;
+    }
+
+    /**
+     * Returns the sparse lattice of this system.
+     *
+     * @return the sparse lattice of this system, or {@code null} if
+     * the lattice is fixed.
+     */
+    public SparseLattice getLattice() {
+        return lattice;
+    }
+
+    /**
+     * Identifies sites whose agents have been mapped into the agent
+     * system (every site in {@code AGENT} mode, none in {@code ARRAY}
+     * mode).
+     *
+     * @param index the dense index of the site.
+     *
+     * @return {@code true} iff the agents at the site are mapped.
+     */
+    boolean isMapped(int index) {
+        return param.getPopulationMode() == PopulationMode.AGENT || mappedSites.get(index);
+    }
+
+    /**
+     * Returns the agents with a given location and type as a
+     * lightweight view onto the population store.  The view is created
+     * afresh on each call and is never interned or mapped into the
+     * agent system, so clients of an {@code ARRAY} system may request
+     * views freely without growing the registry.
+     *
+     * @param index the dense index of the agent location.
+     *
+     * @param type the agent type of interest.
+     *
+     * @return a view of the agents with the specified location and
+     * type.
+     *
+     * @throws IllegalStateException if the lattice is sparse.
+     */
+    public SiteAgentView viewAgent(int index, AgentType type) {
+        return SiteAgentView.create(population, index, getSite(index), type);
+    }
+
+    /**
+     * Releases the agents interned for the space of this system, once
+     * the simulation is finished.  This system (and any other system
+     * sharing the same space) may continue to use its own agents.
+     */
+    public void release() {
+        if (space != null)
+            AgentRegistry.release(space);
     }
 
     public static ResistSystem create() {
@@ -56,11 +1004,43 @@ public final class ResistSystem extends AgentSystem {
     }
 
     public static ResistSystem create(JamRandom rand, ResistParam param) {
+        return create(RandomSource.wrap(rand), param);
+    }
+
+    public static ResistSystem create(RandomSource random, ResistParam param) {
+        return create(random, param, param.getEngineType());
+    }
+
+    public static ResistSystem create(RandomSource random, ResistParam param, EngineType engineType) {
+        ResistSystem system = new ResistSystem(param);
+        return system.initialize(random, system.createLayout(), engineType);
+    }
+
+    public static ResistSystem create(RandomSource random, ResistParam param, SeedLayout layout) {
+        ResistSystem system = new ResistSystem(param);
+        return system.initialize(random, layout, param.getEngineType());
+    }
+
+    static ResistSystem restore(ResistCheckpoint checkpoint, RandomSource random, ResistParam param) {
         ResistSystem system = new ResistSystem(param);
 
         system.createAgents();
-        system.assignPopulation(rand);
+        checkpoint.loadCounts(system.population);
+        system.createEngine(param.getEngineType(), random);
+        system.engine.resume(checkpoint.getTime(), checkpoint.getEventCount());
+        system.createAggregates();
+        checkpoint.loadFirstTimes(system.aggregates);
 
         return system;
     }
+
+    private ResistSystem initialize(RandomSource random, SeedLayout layout, EngineType engineType) {
+        createAgents();
+        assignPopulation(random, layout);
+        expandLattice();
+        createEngine(engineType, random);
+        createAggregates();
+
+        return this;
+    }
 }
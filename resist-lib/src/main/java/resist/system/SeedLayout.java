@@ -0,0 +1,126 @@
+
+package resist.system;
+
+import java.util.Arrays;
+
+/**
+ * Defines the relative density of the initial population over the
+ * lattice sites.
+ *
+ * <p>The expected number of agents seeded at a site is proportional
+ * to its density (subject to the site capacity for cells).  Densities
+ * are evaluated concurrently from several threads, so implementations
+ * must be thread-safe; pure functions of the site index are.
+ */
+@FunctionalInterface
+public interface SeedLayout {
+    /**
+     * Returns the relative density at a site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return the non-negative relative density at the specified
+     * site.
+     */
+    public abstract double density(int site);
+
+    /**
+     * Returns a layout with equal density at every site.
+     *
+     * @return a layout with equal density at every site.
+     */
+    public static SeedLayout uniform() {
+        return site -> 1.0;
+    }
+
+    /**
+     * Returns a layout with equal density at every site within a
+     * given lattice distance (the number of nearest-neighbor steps)
+     * of a center site and zero density elsewhere.
+     *
+     * @param model the reaction model that defines the neighbors of
+     * each site.
+     *
+     * @param center the dense index of the center site.
+     *
+     * @param radius the lattice radius of the ball.
+     *
+     * @return the ball-shaped layout with the specified center and
+     * radius.
+     */
+    public static SeedLayout ball(ReactionModel model, int center, int radius) {
+        int[] distances = latticeDistances(model, center, radius);
+        return site -> distances[site] >= 0 ? 1.0 : 0.0;
+    }
+
+    /**
+     * Finds the smallest ball that can hold a given number of cells.
+     *
+     * @param model the reaction model that defines the neighbors and
+     * the capacity of each site.
+     *
+     * @param center the dense index of the center site.
+     *
+     * @param cellCount the number of cells to hold.
+     *
+     * @return the smallest lattice radius of a ball about the center
+     * site whose total capacity is at least the specified cell count
+     * (or the radius that covers every reachable site, if there is no
+     * such ball).
+     */
+    public static int fitBall(ReactionModel model, int center, long cellCount) {
+        int[] distances = latticeDistances(model, center, Integer.MAX_VALUE);
+        long[] shellSizes = new long[Arrays.stream(distances).max().getAsInt() + 1];
+
+        for (int distance : distances)
+            if (distance >= 0)
+                ++shellSizes[distance];
+
+        long capacity = 0L;
+        int radius = 0;
+
+        for (; radius < shellSizes.length - 1; ++radius) {
+            capacity += shellSizes[radius] * model.getParam().getSiteCapacity();
+
+            if (capacity >= cellCount)
+                break;
+        }
+
+        return radius;
+    }
+
+    // Breadth-first search; unreachable sites and sites beyond the
+    // maximum distance are assigned distance -1.
+    private static int[] latticeDistances(ReactionModel model, int center, int maxDistance) {
+        SiteGraph neighbors = model.getNeighborGraph();
+
+        int[] distances = new int[model.countSites()];
+        int[] queue = new int[distances.length];
+
+        Arrays.fill(distances, -1);
+        distances[center] = 0;
+
+        int head = 0;
+        int tail = 0;
+
+        queue[tail++] = center;
+
+        while (head < tail) {
+            int site = queue[head++];
+
+            if (distances[site] == maxDistance)
+                continue;
+
+            for (int edge = neighbors.offset(site); edge < neighbors.offset(site + 1); ++edge) {
+                int neighbor = neighbors.target(edge);
+
+                if (distances[neighbor] < 0) {
+                    distances[neighbor] = distances[site] + 1;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+
+        return distances;
+    }
+}
@@ -0,0 +1,18 @@
+
+package resist.system;
+
+/**
+ * Enumerates the built-in layouts of the initial cell population.
+ */
+public enum SeedLayoutType {
+    /**
+     * Cells are seeded with equal density across the lattice.
+     */
+    UNIFORM,
+
+    /**
+     * Cells are seeded with equal density within a ball of lattice
+     * sites about the center of the lattice.
+     */
+    BALL;
+}
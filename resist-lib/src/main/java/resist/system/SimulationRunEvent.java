@@ -0,0 +1,34 @@
+
+package resist.system;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Records one call to {@link ResistSystem#run(double)} in a Java
+ * Flight Recording; enabled with the {@code resist.SimulationRun}
+ * event setting.
+ */
+@Name("resist.SimulationRun")
+@Label("Simulation Run")
+@Category({ "Resist", "System" })
+@Description("A run of a resistance simulation to a given time")
+final class SimulationRunEvent extends jdk.jfr.Event {
+    @Label("Start Time")
+    @Description("The simulation time at the start of the run")
+    double startTime;
+
+    @Label("End Time")
+    @Description("The simulation time at the end of the run")
+    double endTime;
+
+    @Label("Events")
+    @Description("The number of events executed in the run")
+    long events;
+
+    @Label("Stopping Rule")
+    @Description("The stopping rule that ended the run, if any")
+    String stoppingRule;
+}
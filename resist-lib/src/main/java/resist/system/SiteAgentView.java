@@ -0,0 +1,66 @@
+
+package resist.system;
+
+import jam.space.Site;
+
+import resist.agent.AgentType;
+import resist.agent.SiteAgent;
+
+/**
+ * Presents the agents of one type at one site as a lightweight view
+ * onto a {@link PopulationStore}, for systems whose agents are not
+ * mapped into the agent system.
+ *
+ * <p>Views are not interned: each call to {@link
+ * ResistSystem#viewAgent(int, AgentType)} returns a new view holding
+ * only the store, the dense site index, and references to the shared
+ * site and type, so views may be created and discarded freely.  Two
+ * views are equal if they present the same type at the same site of
+ * the same store; views are never equal to interned agents.
+ */
+public final class SiteAgentView extends SiteAgent {
+    private final PopulationStore population;
+    private final int index;
+
+    private SiteAgentView(PopulationStore population, int index, Site site, AgentType type) {
+        super(site, type);
+
+        this.population = population;
+        this.index = index;
+    }
+
+    static SiteAgentView create(PopulationStore population, int index, Site site, AgentType type) {
+        return new SiteAgentView(population, index, site, type);
+    }
+
+    /**
+     * Returns the dense index of the site presented by this view.
+     *
+     * @return the dense index of the site presented by this view.
+     */
+    public int getSiteIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the current number of agents presented by this view.
+     *
+     * @return the number of agents of the type of this view at its
+     * site.
+     */
+    public int getCount() {
+        return population.getCount(index, type);
+    }
+
+    @Override public boolean equals(Object obj) {
+        if (!(obj instanceof SiteAgentView))
+            return false;
+
+        SiteAgentView that = (SiteAgentView) obj;
+        return this.population == that.population && this.index == that.index && this.type == that.type;
+    }
+
+    @Override public int hashCode() {
+        return 31 * index + type.index();
+    }
+}
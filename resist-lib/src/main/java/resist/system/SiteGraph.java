@@ -0,0 +1,289 @@
+
+package resist.system;
+
+import java.util.Arrays;
+
+/**
+ * Stores a directed graph over dense integer nodes in compressed
+ * sparse row (CSR) form.
+ *
+ * <p>The targets of the edges leaving node {@code n} occupy the
+ * contiguous range {@code [offset(n), offset(n + 1))} of a single
+ * target array, so traversing the graph requires no object traversal
+ * and no hashing.  The simulation uses two such graphs: the lattice
+ * neighbor graph (site to neighboring sites) and its reverse (site to
+ * the sites that list it as a neighbor, whose migration propensities
+ * change when it fills or frees room).
+ *
+ * <p>Graphs are static once created, except for the neighbor graph of
+ * a {@link SparseLattice}, which appends nodes and redirects edges as
+ * the lattice grows; its arrays keep spare capacity so that growth
+ * costs amortized constant time per node.
+ */
+public final class SiteGraph {
+    private int[] offsets;
+    private int[] targets;
+    private int nodeCount;
+
+    private SiteGraph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.nodeCount = offsets.length - 1;
+    }
+
+    /**
+     * Creates a graph from adjacency lists.
+     *
+     * @param adjacency the targets of the edges leaving each node,
+     * indexed by the source node.
+     *
+     * @return the graph with the specified adjacency lists.
+     *
+     * @throws IllegalArgumentException if any target lies outside the
+     * range {@code [0, adjacency.length)}.
+     */
+    public static SiteGraph create(int[][] adjacency) {
+        int[] offsets = new int[adjacency.length + 1];
+
+        for (int node = 0; node < adjacency.length; ++node)
+            offsets[node + 1] = Math.addExact(offsets[node], adjacency[node].length);
+
+        int[] targets = new int[offsets[adjacency.length]];
+
+        for (int node = 0; node < adjacency.length; ++node)
+            System.arraycopy(adjacency[node], 0, targets, offsets[node], adjacency[node].length);
+
+        return create(offsets, targets);
+    }
+
+    /**
+     * Creates a graph from its compressed sparse row arrays.  The
+     * graph takes ownership of the arrays; callers must not modify
+     * them afterwards.
+     *
+     * @param offsets the offsets of the first edge leaving each node,
+     * with one trailing element equal to the total number of edges.
+     *
+     * @param targets the edge targets, grouped by source node.
+     *
+     * @return the graph with the specified arrays.
+     *
+     * @throws IllegalArgumentException unless the offsets are
+     * non-decreasing, start at zero, and end at the number of
+     * targets, and every target is a valid node.
+     */
+    public static SiteGraph create(int[] offsets, int[] targets) {
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != targets.length)
+            throw new IllegalArgumentException("Invalid graph offsets.");
+
+        for (int node = 1; node < offsets.length; ++node)
+            if (offsets[node] < offsets[node - 1])
+                throw new IllegalArgumentException("Invalid graph offsets.");
+
+        int nodeCount = offsets.length - 1;
+
+        for (int target : targets)
+            if (target < 0 || target >= nodeCount)
+                throw new IllegalArgumentException("Invalid graph target.");
+
+        return new SiteGraph(offsets, targets);
+    }
+
+    /**
+     * Creates the reverse of this graph: the graph with every edge
+     * reversed, in which the targets of node {@code n} are the nodes
+     * with an edge to {@code n} (in increasing order).
+     *
+     * @return the reverse of this graph.
+     */
+    public SiteGraph reverse() {
+        int nodeCount = countNodes();
+        int[] revOffsets = new int[nodeCount + 1];
+
+        for (int edge = 0; edge < countEdges(); ++edge)
+            ++revOffsets[targets[edge] + 1];
+
+        for (int node = 0; node < nodeCount; ++node)
+            revOffsets[node + 1] += revOffsets[node];
+
+        int[] revTargets = new int[countEdges()];
+        int[] cursors = Arrays.copyOf(revOffsets, nodeCount);
+
+        for (int node = 0; node < nodeCount; ++node)
+            for (int k = offsets[node]; k < offsets[node + 1]; ++k)
+                revTargets[cursors[targets[k]]++] = node;
+
+        return new SiteGraph(revOffsets, revTargets);
+    }
+
+    /**
+     * Returns the number of nodes in this graph.
+     *
+     * @return the number of nodes in this graph.
+     */
+    public int countNodes() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of edges in this graph.
+     *
+     * @return the number of edges in this graph.
+     */
+    public int countEdges() {
+        return offsets[nodeCount];
+    }
+
+    /**
+     * Appends nodes with a fixed number of edges, each of which is
+     * initially a loop (an edge from the node to itself).
+     *
+     * @param count the number of nodes to append.
+     *
+     * @param degree the number of edges leaving each new node.
+     */
+    void appendNodes(int count, int degree) {
+        int newCount = Math.addExact(nodeCount, count);
+        int newEdges = Math.addExact(countEdges(), Math.multiplyExact(count, degree));
+
+        if (newCount + 1 > offsets.length)
+            offsets = Arrays.copyOf(offsets, Math.max(newCount + 1, 2 * offsets.length));
+
+        if (newEdges > targets.length)
+            targets = Arrays.copyOf(targets, Math.max(newEdges, 2 * targets.length));
+
+        for (int node = nodeCount; node < newCount; ++node) {
+            int edge = offsets[node];
+            offsets[node + 1] = edge + degree;
+
+            for (int k = 0; k < degree; ++k)
+                targets[edge + k] = node;
+        }
+
+        nodeCount = newCount;
+    }
+
+    /**
+     * Redirects one edge leaving a node.
+     *
+     * @param node the index of the source node.
+     *
+     * @param k the ordinal position of the edge among those leaving
+     * the source node.
+     *
+     * @param target the new target node.
+     */
+    void setTarget(int node, int k, int target) {
+        targets[offsets[node] + k] = target;
+    }
+
+    /**
+     * Returns the number of edges leaving a node.
+     *
+     * @param node the index of the node.
+     *
+     * @return the number of edges leaving the specified node.
+     */
+    public int degree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * Returns the index of the first edge leaving a node.
+     *
+     * @param node the index of the node.
+     *
+     * @return the index of the first edge leaving the specified node
+     * (or the index one past the last edge leaving the previous node,
+     * if the node has no edges).
+     */
+    public int offset(int node) {
+        return offsets[node];
+    }
+
+    /**
+     * Returns the target of an edge.
+     *
+     * @param edge the index of the edge.
+     *
+     * @return the target node of the specified edge.
+     */
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * Returns the target of one edge leaving a node.
+     *
+     * @param node the index of the source node.
+     *
+     * @param k the ordinal position of the edge among those leaving
+     * the source node.
+     *
+     * @return the target node of the specified edge.
+     */
+    public int target(int node, int k) {
+        return targets[offsets[node] + k];
+    }
+
+    /**
+     * Returns the smallest node degree.
+     *
+     * @return the smallest node degree (zero for an empty graph).
+     */
+    public int minDegree() {
+        if (countNodes() == 0)
+            return 0;
+
+        int min = Integer.MAX_VALUE;
+
+        for (int node = 0; node < countNodes(); ++node)
+            min = Math.min(min, degree(node));
+
+        return min;
+    }
+
+    /**
+     * Returns the largest node degree.
+     *
+     * @return the largest node degree (zero for an empty graph).
+     */
+    public int maxDegree() {
+        int max = 0;
+
+        for (int node = 0; node < countNodes(); ++node)
+            max = Math.max(max, degree(node));
+
+        return max;
+    }
+
+    /**
+     * Returns the mean node degree.
+     *
+     * @return the mean node degree (zero for an empty graph).
+     */
+    public double meanDegree() {
+        return countNodes() > 0 ? ((double) countEdges()) / countNodes() : 0.0;
+    }
+
+    /**
+     * Returns the distribution of node degrees.
+     *
+     * @return an array whose element {@code d} is the number of nodes
+     * with degree {@code d}, for {@code d} in {@code [0, maxDegree()]}.
+     */
+    public long[] degreeHistogram() {
+        long[] histogram = new long[maxDegree() + 1];
+
+        for (int node = 0; node < countNodes(); ++node)
+            ++histogram[degree(node)];
+
+        return histogram;
+    }
+
+    @Override public String toString() {
+        return String.format("SiteGraph(nodes = %d, edges = %d, degree = [%d, %.3f, %d], histogram = %s)",
+                             countNodes(), countEdges(), minDegree(), meanDegree(), maxDegree(),
+                             Arrays.toString(degreeHistogram()));
+    }
+}
@@ -0,0 +1,213 @@
+
+package resist.system;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.agent.DrugType;
+
+/**
+ * Describes one of the elementary reactions that may occur within a
+ * single lattice site.
+ *
+ * <p>Each reaction consumes one unit of its reactant; an uptake
+ * reaction also involves a cellular partner (which is killed unless
+ * it is resistant to the drug), and a mutation reaction produces one
+ * cell of a more resistant type.  The propensity of a reaction is the
+ * product of its rate constant and the counts of its reactant and
+ * partner at the site (mass action).
+ */
+public final class SiteReaction {
+    private final int index;
+    private final ProcType procType;
+    private final AgentType reactant;
+    private final CellType partner;
+    private final CellType product;
+
+    private static final List<SiteReaction> reactions = createReactions();
+
+    /**
+     * The number of distinct reactions at each site.
+     */
+    public static final int COUNT = reactions.size();
+
+    private SiteReaction(int index, ProcType procType, AgentType reactant, CellType partner, CellType product) {
+        this.index = index;
+        this.procType = procType;
+        this.reactant = reactant;
+        this.partner = partner;
+        this.product = product;
+    }
+
+    private static List<SiteReaction> createReactions() {
+        List<SiteReaction> list = new ArrayList<SiteReaction>();
+
+        for (CellType cellType : CellType.values()) {
+            add(list, ProcType.CELL_BIRTH, cellType, null, null);
+            add(list, ProcType.CELL_DEATH, cellType, null, null);
+            add(list, ProcType.CELL_MIGRATION, cellType, null, null);
+
+            for (DrugType drugType : DrugType.values())
+                if (!cellType.isResistant(drugType))
+                    add(list, ProcType.RESISTANCE_MUTATION, cellType, null, mutant(cellType, drugType));
+        }
+
+        for (DrugType drugType : DrugType.values()) {
+            add(list, ProcType.DRUG_DIFFUSION, drugType, null, null);
+            add(list, ProcType.DRUG_DECAY, drugType, null, null);
+
+            for (CellType cellType : CellType.values())
+                add(list, ProcType.DRUG_UPTAKE, drugType, cellType, null);
+        }
+
+        return Collections.unmodifiableList(list);
+    }
+
+    private static void add(List<SiteReaction> list, ProcType procType, AgentType reactant, CellType partner, CellType product) {
+        list.add(new SiteReaction(list.size(), procType, reactant, partner, product));
+    }
+
+    private static CellType mutant(CellType cellType, DrugType drugType) {
+        Set<DrugType> resistant = EnumSet.of(drugType);
+        resistant.addAll(cellType.viewResistant());
+
+        for (CellType mutant : CellType.values())
+            if (mutant.viewResistant().equals(resistant))
+                return mutant;
+
+        throw new IllegalStateException("No mutant cell type.");
+    }
+
+    /**
+     * Returns the reaction with a given index.
+     *
+     * @param index the index of the reaction.
+     *
+     * @return the reaction with the specified index.
+     *
+     * @throws IndexOutOfBoundsException unless the index is in the
+     * range {@code [0, COUNT)}.
+     */
+    public static SiteReaction valueOf(int index) {
+        return reactions.get(index);
+    }
+
+    /**
+     * Returns a read-only view of all site reactions, in index order.
+     *
+     * @return a read-only view of all site reactions.
+     */
+    public static List<SiteReaction> viewAll() {
+        return reactions;
+    }
+
+    /**
+     * Returns the rate constant for this reaction.
+     *
+     * @param param the parameters of the simulation.
+     *
+     * @return the rate constant for this reaction.
+     */
+    public double rateConstant(ResistParam param) {
+        switch (procType) {
+        case CELL_BIRTH:
+            return isNonResistant() ? param.getNonResistantBirthRate() : param.getResistantBirthRate();
+
+        case CELL_DEATH:
+            return isNonResistant() ? param.getNonResistantDeathRate() : param.getResistantDeathRate();
+
+        case CELL_MIGRATION:
+            return param.getCellMigrationRate();
+
+        case RESISTANCE_MUTATION:
+            return param.getResistanceMutationRate();
+
+        case DRUG_DIFFUSION:
+            return param.getDrugDiffusionRate();
+
+        case DRUG_DECAY:
+            return param.getDrugDecayRate();
+
+        case DRUG_UPTAKE:
+            return param.getDrugUptakeRate();
+
+        default:
+            throw new IllegalStateException("Unknown process type.");
+        }
+    }
+
+    private boolean isNonResistant() {
+        return reactant == CellType.NON_RESISTANT;
+    }
+
+    /**
+     * Identifies uptake reactions that kill the cellular partner.
+     *
+     * @return {@code true} iff this is an uptake reaction whose
+     * cellular partner is not resistant to the drug.
+     */
+    public boolean isLethal() {
+        return partner != null && !partner.isResistant((DrugType) reactant);
+    }
+
+    /**
+     * Returns the index of this reaction.
+     *
+     * @return the index of this reaction.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the process type of this reaction.
+     *
+     * @return the process type of this reaction.
+     */
+    public ProcType getProcType() {
+        return procType;
+    }
+
+    /**
+     * Returns the agent type consumed by this reaction.
+     *
+     * @return the agent type consumed by this reaction.
+     */
+    public AgentType getReactant() {
+        return reactant;
+    }
+
+    /**
+     * Returns the cellular partner of an uptake reaction.
+     *
+     * @return the cellular partner of an uptake reaction ({@code null}
+     * for all other reactions).
+     */
+    public CellType getPartner() {
+        return partner;
+    }
+
+    /**
+     * Returns the cell type produced by a mutation reaction.
+     *
+     * @return the cell type produced by a mutation reaction ({@code
+     * null} for all other reactions).
+     */
+    public CellType getProduct() {
+        return product;
+    }
+
+    @Override public String toString() {
+        if (partner != null)
+            return String.format("%s(%s, %s)", procType, reactant, partner);
+        else if (product != null)
+            return String.format("%s(%s -> %s)", procType, reactant, product);
+        else
+            return String.format("%s(%s)", procType, reactant);
+    }
+}
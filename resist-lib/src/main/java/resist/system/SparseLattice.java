@@ -0,0 +1,365 @@
+
+package resist.system;
+
+import java.util.Arrays;
+
+/**
+ * Represents an unbounded square lattice whose sites are allocated in
+ * square tiles as the populations spread, so that memory and the cost
+ * of every scan over the sites track the footprint of the tumor (and
+ * the drug) rather than the largest domain it might reach.
+ *
+ * <p>Tiles are kept in a hash table keyed by their tile coordinates;
+ * the sites of each tile occupy a contiguous block of dense indexes,
+ * in the order in which the tiles were allocated and in row-major
+ * order within each tile.  Every site has four edges in the neighbor
+ * graph (in the order {@code +x}, {@code -x}, {@code +y}, {@code -y});
+ * an edge that would cross into an unallocated tile is a loop until
+ * that tile is allocated.
+ *
+ * <p>A tile is allocated when a cell or drug unit first arrives at a
+ * site bordering it: the lattice listens to the population store and
+ * queues such sites, and the reaction model allocates the missing
+ * tiles at the end of the event, before any propensity that depends
+ * on them is computed.  Sites with agents therefore always have their
+ * four true neighbors, and the empty sites along the outer edge of
+ * the allocated region (whose loops would otherwise bias migration
+ * and diffusion) have no events.  Sites are never released.
+ */
+public final class SparseLattice {
+    private final int tileSize;
+    private final int tileSites;
+
+    private final ArrayPopulationStore population;
+    private final SiteGraph neighbors;
+
+    // Maps packed tile coordinates to the ordinal of the tile (in an
+    // open-addressing table, at most half full, with -1 in the empty
+    // slots), and each ordinal back to the tile coordinates.
+    private long[] tableKeys = new long[2 * INITIAL_TILES];
+    private int[] tableTiles = emptyTable(2 * INITIAL_TILES);
+    private int[] tileX = new int[INITIAL_TILES];
+    private int[] tileY = new int[INITIAL_TILES];
+    private int tileCount = 0;
+
+    // Sites at the edge of the allocated region that have received
+    // their first agent since the last expansion.
+    private int[] pending = new int[INITIAL_TILES];
+    private int pendingCount = 0;
+
+    /**
+     * The number of neighbors of every site.
+     */
+    public static final int DEGREE = 4;
+
+    private static final int[] DX = { 1, -1, 0, 0 };
+    private static final int[] DY = { 0, 0, 1, -1 };
+
+    private static final int INITIAL_TILES = 16;
+
+    private SparseLattice(int tileSize) {
+        if (tileSize < 1)
+            throw new IllegalArgumentException("Tile size must be positive.");
+
+        this.tileSize = tileSize;
+        this.tileSites = Math.multiplyExact(tileSize, tileSize);
+        this.population = ArrayPopulationStore.create(0);
+        this.neighbors = SiteGraph.create(new int[] { 0 }, new int[0]);
+
+        population.addListener(this::countChanged);
+    }
+
+    /**
+     * Creates a new lattice with no tiles.
+     *
+     * @param tileSize the number of sites along each side of a tile.
+     *
+     * @return a new empty lattice with the specified tile size.
+     *
+     * @throws IllegalArgumentException unless the tile size is
+     * positive.
+     */
+    public static SparseLattice create(int tileSize) {
+        return new SparseLattice(tileSize);
+    }
+
+    private static long tileKey(int tx, int ty) {
+        return ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+    }
+
+    private static int[] emptyTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 32;
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key >>> 32);
+    }
+
+    private int findSlot(long key) {
+        int mask = tableKeys.length - 1;
+        int slot = mix(key) & mask;
+
+        while (tableTiles[slot] >= 0 && tableKeys[slot] != key)
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    // Returns the ordinal of the tile at given tile coordinates, or -1
+    // if it has not been allocated.
+    private int tileOf(int tx, int ty) {
+        return tableTiles[findSlot(tileKey(tx, ty))];
+    }
+
+    private void rehash() {
+        long[] oldKeys = tableKeys;
+        int[] oldTiles = tableTiles;
+
+        tableKeys = new long[2 * oldKeys.length];
+        tableTiles = emptyTable(2 * oldKeys.length);
+
+        for (int slot = 0; slot < oldKeys.length; ++slot) {
+            if (oldTiles[slot] >= 0) {
+                int newSlot = findSlot(oldKeys[slot]);
+
+                tableKeys[newSlot] = oldKeys[slot];
+                tableTiles[newSlot] = oldTiles[slot];
+            }
+        }
+    }
+
+    private void countChanged(int site, int type, int oldCount, int newCount) {
+        if (oldCount == 0 && isExposed(site)) {
+            if (pendingCount == pending.length)
+                pending = Arrays.copyOf(pending, 2 * pending.length);
+
+            pending[pendingCount++] = site;
+        }
+    }
+
+    // Identifies sites with an edge into an unallocated tile.
+    private boolean isExposed(int site) {
+        for (int k = 0; k < DEGREE; ++k)
+            if (neighbors.target(site, k) == site)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Allocates the tiles that cover a square of sites centered on
+     * the origin.
+     *
+     * @param radius the distance from the origin to each side of the
+     * square, in sites.
+     *
+     * @param occupancy the occupancy index to extend, or {@code null}
+     * if the lattice is not yet attached to a reaction model.
+     */
+    void cover(int radius, OccupancyIndex occupancy) {
+        int minTile = Math.floorDiv(-radius, tileSize);
+        int maxTile = Math.floorDiv(radius, tileSize);
+
+        for (int ty = minTile; ty <= maxTile; ++ty)
+            for (int tx = minTile; tx <= maxTile; ++tx)
+                allocate(tx, ty, occupancy);
+    }
+
+    /**
+     * Allocates the tiles reached by agents since the last expansion.
+     *
+     * @param occupancy the occupancy index to extend, or {@code null}
+     * if the lattice is not yet attached to a reaction model.
+     *
+     * @return {@code true} iff any tile was allocated.
+     */
+    boolean expand(OccupancyIndex occupancy) {
+        int oldCount = tileCount;
+
+        while (pendingCount > 0) {
+            int site = pending[--pendingCount];
+
+            for (int k = 0; k < DEGREE; ++k)
+                if (neighbors.target(site, k) == site)
+                    allocate(Math.floorDiv(getX(site) + DX[k], tileSize),
+                             Math.floorDiv(getY(site) + DY[k], tileSize),
+                             occupancy);
+        }
+
+        return tileCount > oldCount;
+    }
+
+    private void allocate(int tx, int ty, OccupancyIndex occupancy) {
+        long key = tileKey(tx, ty);
+        int slot = findSlot(key);
+
+        if (tableTiles[slot] >= 0)
+            return;
+
+        int tile = tileCount++;
+
+        tableKeys[slot] = key;
+        tableTiles[slot] = tile;
+
+        if (2 * tileCount > tableKeys.length)
+            rehash();
+
+        if (tile == tileX.length) {
+            tileX = Arrays.copyOf(tileX, 2 * tile);
+            tileY = Arrays.copyOf(tileY, 2 * tile);
+        }
+
+        tileX[tile] = tx;
+        tileY[tile] = ty;
+
+        int base = tile * tileSites;
+        int siteCount = Math.addExact(base, tileSites);
+
+        population.grow(siteCount);
+        neighbors.appendNodes(tileSites, DEGREE);
+
+        if (occupancy != null)
+            occupancy.grow(siteCount);
+
+        // Link the sites within the tile, then the sites along each
+        // side to the adjacent tile (if it has been allocated).
+        for (int local = 0; local < tileSites; ++local) {
+            int lx = local % tileSize;
+            int ly = local / tileSize;
+
+            for (int k = 0; k < DEGREE; ++k) {
+                int nx = lx + DX[k];
+                int ny = ly + DY[k];
+
+                if (nx >= 0 && nx < tileSize && ny >= 0 && ny < tileSize)
+                    neighbors.setTarget(base + local, k, base + ny * tileSize + nx);
+            }
+        }
+
+        for (int k = 0; k < DEGREE; ++k) {
+            int adjacent = tileOf(tx + DX[k], ty + DY[k]);
+
+            if (adjacent >= 0)
+                linkSide(base, adjacent * tileSites, k, occupancy);
+        }
+    }
+
+    private void linkSide(int base, int adjacentBase, int k, OccupancyIndex occupancy) {
+        //
+        // Edge k leaves the tile through one side and edge (k ^ 1)
+        // returns through the opposite side of the adjacent tile.
+        //
+        for (int j = 0; j < tileSize; ++j) {
+            int lx = (DX[k] > 0) ? tileSize - 1 : (DX[k] < 0) ? 0 : j;
+            int ly = (DY[k] > 0) ? tileSize - 1 : (DY[k] < 0) ? 0 : j;
+
+            int site = base + ly * tileSize + lx;
+            int neighbor = adjacentBase + Math.floorMod(ly + DY[k], tileSize) * tileSize + Math.floorMod(lx + DX[k], tileSize);
+
+            neighbors.setTarget(site, k, neighbor);
+            neighbors.setTarget(neighbor, k ^ 1, site);
+
+            if (occupancy != null) {
+                occupancy.relinked(site, site, neighbor);
+                occupancy.relinked(neighbor, neighbor, site);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of sites along each side of a tile.
+     *
+     * @return the number of sites along each side of a tile.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Returns the number of allocated tiles.
+     *
+     * @return the number of allocated tiles.
+     */
+    public int countTiles() {
+        return tileCount;
+    }
+
+    /**
+     * Returns the number of allocated sites.
+     *
+     * @return the number of allocated sites.
+     */
+    public int countSites() {
+        return population.countSites();
+    }
+
+    /**
+     * Returns the dense index of the site at given coordinates.
+     *
+     * @param x the horizontal coordinate of the site.
+     *
+     * @param y the vertical coordinate of the site.
+     *
+     * @return the dense index of the site at the specified
+     * coordinates, or {@code -1} if its tile has not been allocated.
+     */
+    public int indexOf(int x, int y) {
+        int tile = tileOf(Math.floorDiv(x, tileSize), Math.floorDiv(y, tileSize));
+
+        if (tile < 0)
+            return -1;
+
+        return tile * tileSites + Math.floorMod(y, tileSize) * tileSize + Math.floorMod(x, tileSize);
+    }
+
+    /**
+     * Returns the horizontal coordinate of a site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return the horizontal coordinate of the specified site.
+     */
+    public int getX(int site) {
+        return tileX[site / tileSites] * tileSize + (site % tileSites) % tileSize;
+    }
+
+    /**
+     * Returns the vertical coordinate of a site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @return the vertical coordinate of the specified site.
+     */
+    public int getY(int site) {
+        return tileY[site / tileSites] * tileSize + (site % tileSites) / tileSize;
+    }
+
+    /**
+     * Returns the neighbor graph over the allocated sites, which grows
+     * with the lattice.
+     *
+     * @return the neighbor graph over the allocated sites.
+     */
+    public SiteGraph getNeighborGraph() {
+        return neighbors;
+    }
+
+    /**
+     * Returns the store holding the populations of the allocated
+     * sites, which grows with the lattice.
+     *
+     * @return the store holding the populations of the allocated
+     * sites.
+     */
+    public PopulationStore getPopulation() {
+        return population;
+    }
+
+    @Override public String toString() {
+        return String.format("SparseLattice(tileSize = %d, tiles = %d, sites = %d)", tileSize, tileCount, countSites());
+    }
+}
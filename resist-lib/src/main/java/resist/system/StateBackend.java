@@ -0,0 +1,38 @@
+
+package resist.system;
+
+/**
+ * Enumerates the storage backends for the per-site state of a
+ * simulation: the population counts and the channel propensities.
+ *
+ * <p>The off-heap backends remove the counts and propensities (about
+ * 40 bytes per site) from the Java heap, but not the structures that
+ * describe a fixed lattice, which stay on the heap whatever the
+ * backend: the {@code Site} objects of the space, the agent registry
+ * index, the neighbor graph and its reverse, and the occupancy index.
+ * Together these cost a few hundred bytes of heap per site, so heap
+ * use and collection time still grow with the lattice.  The neighbor
+ * graphs also index their edges with {@code int} offsets, which caps
+ * a lattice at {@code 2^31 - 1} edges: about 5.4e8 sites with four
+ * neighbors, or 3.6e8 with six.  Lattices near that ceiling need a
+ * heap sized for the lattice structures, whichever backend holds the
+ * counts.
+ */
+public enum StateBackend {
+    /**
+     * State is kept in primitive arrays on the Java heap.
+     */
+    HEAP,
+
+    /**
+     * State is kept in direct memory outside the Java heap.
+     */
+    DIRECT,
+
+    /**
+     * Population counts are kept in a memory-mapped file, and the
+     * propensities (which are recomputed from the counts on demand)
+     * in direct memory.
+     */
+    MAPPED;
+}
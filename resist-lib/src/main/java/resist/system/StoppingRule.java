@@ -0,0 +1,166 @@
+
+package resist.system;
+
+import java.time.Duration;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.agent.DrugType;
+
+/**
+ * Ends a simulation before its scheduled end time once a condition
+ * on the system has been met; see {@link
+ * ResistSystem#addStoppingRule(StoppingRule)}.
+ *
+ * <p>Rules are checked from the event loop, so they should answer in
+ * constant time; the built-in rules read only the running {@link
+ * PopulationAggregates}.  The built-in rules are also stateless, so a
+ * single instance may be shared by every replicate of an ensemble.
+ */
+@FunctionalInterface
+public interface StoppingRule {
+    /**
+     * Determines whether a simulation should stop.
+     *
+     * @param system the system to examine.
+     *
+     * @return {@code true} iff the simulation should stop.
+     */
+    public abstract boolean isSatisfied(ResistSystem system);
+
+    /**
+     * Describes the condition tested by this rule (for reporting why
+     * a simulation stopped).
+     *
+     * @return a short description of this rule.
+     */
+    public default String describe() {
+        return "custom rule";
+    }
+
+    /**
+     * Attaches a description to a stopping rule.
+     *
+     * @param description a short description of the rule.
+     *
+     * @param rule the rule to describe.
+     *
+     * @return a rule that tests the same condition as the specified
+     * rule and reports the specified description.
+     */
+    public static StoppingRule named(String description, StoppingRule rule) {
+        return new StoppingRule() {
+            @Override public boolean isSatisfied(ResistSystem system) {
+                return rule.isSatisfied(system);
+            }
+
+            @Override public String describe() {
+                return description;
+            }
+
+            @Override public String toString() {
+                return description;
+            }
+        };
+    }
+
+    /**
+     * Stops a simulation when the tumor has been eradicated.
+     *
+     * @return a rule that is satisfied when no cells remain.
+     */
+    public static StoppingRule extinction() {
+        return named("extinction", system -> system.getAggregates().countCells() == 0L);
+    }
+
+    /**
+     * Stops a simulation when the tumor reaches a given size (the
+     * detection threshold, for example).
+     *
+     * @param threshold the number of cells at which to stop.
+     *
+     * @return a rule that is satisfied when the total number of cells
+     * reaches the threshold.
+     */
+    public static StoppingRule cellCountAtLeast(long threshold) {
+        return named("cell count >= " + threshold, system -> system.getAggregates().countCells() >= threshold);
+    }
+
+    /**
+     * Stops a simulation when the number of agents of one type
+     * reaches a given size.
+     *
+     * @param type the agent type of interest.
+     *
+     * @param threshold the number of agents at which to stop.
+     *
+     * @return a rule that is satisfied when the total number of agents
+     * of the specified type reaches the threshold.
+     */
+    public static StoppingRule totalAtLeast(AgentType type, long threshold) {
+        return named(type + " count >= " + threshold, system -> system.getAggregates().getTotal(type) >= threshold);
+    }
+
+    /**
+     * Stops a simulation when one cell type comes to dominate the
+     * tumor.
+     *
+     * @param type the cell type of interest.
+     *
+     * @param threshold the fraction of cells at which to stop.
+     *
+     * @return a rule that is satisfied when cells of the specified
+     * type make up at least the threshold fraction of all cells (and
+     * at least one cell remains).
+     */
+    public static StoppingRule phenotypeFractionAtLeast(CellType type, double threshold) {
+        return named(type + " fraction >= " + threshold, system -> {
+                PopulationAggregates aggregates = system.getAggregates();
+                long cells = aggregates.countCells();
+
+                return cells > 0L && aggregates.getTotal(type) >= threshold * cells;
+            });
+    }
+
+    /**
+     * Stops a simulation when the cells resistant to one drug come to
+     * dominate the tumor.
+     *
+     * @param drug the drug of interest.
+     *
+     * @param threshold the fraction of cells at which to stop.
+     *
+     * @return a rule that is satisfied when cells resistant to the
+     * specified drug make up at least the threshold fraction of all
+     * cells (and at least one cell remains).
+     */
+    public static StoppingRule resistantFractionAtLeast(DrugType drug, double threshold) {
+        return named(drug + " resistant fraction >= " + threshold,
+                     system -> system.getAggregates().getResistantFraction(drug) >= threshold);
+    }
+
+    /**
+     * Stops a simulation once a given amount of wall-clock time has
+     * elapsed since the system was created.
+     *
+     * @param budget the wall-clock time allowed for each system.
+     *
+     * @return a rule that is satisfied when the budget is exhausted.
+     */
+    public static StoppingRule wallClock(Duration budget) {
+        long budgetNanos = budget.toNanos();
+        return named("wall clock >= " + budget, system -> System.nanoTime() - system.getCreationNanos() >= budgetNanos);
+    }
+
+    /**
+     * Stops a simulation once the thread running it has been
+     * interrupted (for example, by {@code ExecutorService.shutdownNow}),
+     * leaving the interrupt status set for the caller to observe.
+     *
+     * @return a rule that is satisfied when the current thread has
+     * been interrupted.
+     */
+    public static StoppingRule interrupted() {
+        return named("interrupted", system -> Thread.currentThread().isInterrupted());
+    }
+}
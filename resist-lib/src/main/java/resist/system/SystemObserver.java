@@ -0,0 +1,21 @@
+
+package resist.system;
+
+/**
+ * Samples the state of a {@link ResistSystem} at regular intervals of
+ * simulated time.
+ *
+ * <p>Observers are called synchronously, on the thread that runs the
+ * simulation, with the clock positioned exactly at the sampling time;
+ * they must not change the system themselves, and they should hand
+ * any expensive work (such as file output) to another thread.
+ */
+@FunctionalInterface
+public interface SystemObserver {
+    /**
+     * Samples the state of a system.
+     *
+     * @param system the system to sample.
+     */
+    public abstract void observe(ResistSystem system);
+}
@@ -0,0 +1,29 @@
+
+package resist.trajectory;
+
+/**
+ * Defines the layout of trajectory files.
+ *
+ * <p>A trajectory file begins with a header of four big-endian
+ * integers: the magic number, the format version, the number of
+ * sites, and the number of agent types.  A sequence of blocks
+ * follows, each consisting of a one-byte block kind, the raw and
+ * compressed payload lengths (big-endian integers), and the payload
+ * compressed with the DEFLATE algorithm.
+ *
+ * <p>Payloads are little-endian and columnar.  A sample block holds
+ * the number of samples {@code n}, then {@code n} sampling times,
+ * {@code n} event counts, and {@code n} totals for each agent type in
+ * turn.  A snapshot block holds the sampling time, the event count,
+ * and then the counts of each agent type at every site in turn, in
+ * order of dense site index.
+ */
+final class TrajectoryFormat {
+    private TrajectoryFormat() {}
+
+    static final int MAGIC = 0x5253544a; // "RSTJ"
+    static final int VERSION = 1;
+
+    static final byte SAMPLE_BLOCK = 1;
+    static final byte SNAPSHOT_BLOCK = 2;
+}
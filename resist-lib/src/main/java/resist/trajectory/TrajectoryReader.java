@@ -0,0 +1,249 @@
+
+package resist.trajectory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import resist.agent.AgentType;
+
+/**
+ * Reads the trajectory files written by {@link TrajectoryWriter}.
+ *
+ * <p>Samples and snapshots are read lazily, one block at a time, so
+ * files much larger than the available memory may be processed.  The
+ * streams hold an open file and should be closed after use (in a
+ * {@code try}-with-resources statement, for example).
+ */
+public final class TrajectoryReader {
+    private final Path file;
+    private final int siteCount;
+
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    private TrajectoryReader(Path file, int siteCount) {
+        this.file = file;
+        this.siteCount = siteCount;
+    }
+
+    /**
+     * Opens a trajectory file and validates its header.
+     *
+     * @param file the file to read.
+     *
+     * @return a reader for the specified file.
+     *
+     * @throws IllegalArgumentException unless the file is a valid
+     * trajectory file.
+     *
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public static TrajectoryReader open(Path file) {
+        try (DataInputStream stream = new DataInputStream(Files.newInputStream(file))) {
+            if (stream.readInt() != TrajectoryFormat.MAGIC)
+                throw new IllegalArgumentException("Not a trajectory file.");
+
+            if (stream.readInt() != TrajectoryFormat.VERSION)
+                throw new IllegalArgumentException("Unsupported trajectory version.");
+
+            int siteCount = stream.readInt();
+            int typeCount = stream.readInt();
+
+            if (siteCount < 0 || typeCount != AgentType.COUNT)
+                throw new IllegalArgumentException("Invalid trajectory header.");
+
+            return new TrajectoryReader(file, siteCount);
+        }
+        catch (EOFException ex) {
+            throw new IllegalArgumentException("Truncated trajectory file.");
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returns the number of sites in the recorded system.
+     *
+     * @return the number of sites in the recorded system.
+     */
+    public int countSites() {
+        return siteCount;
+    }
+
+    /**
+     * Reads the samples of the agent totals in time order.
+     *
+     * @return a lazy stream of the recorded samples, which must be
+     * closed after use.
+     *
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public Stream<TrajectorySample> readSamples() {
+        return stream(TrajectoryFormat.SAMPLE_BLOCK, this::decodeSamples);
+    }
+
+    /**
+     * Reads the snapshots of the site populations in time order.
+     *
+     * @return a lazy stream of the recorded snapshots, which must be
+     * closed after use.
+     *
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public Stream<TrajectorySnapshot> readSnapshots() {
+        return stream(TrajectoryFormat.SNAPSHOT_BLOCK, this::decodeSnapshot);
+    }
+
+    private interface BlockDecoder<T> {
+        void decode(ByteBuffer payload, Consumer<T> action);
+    }
+
+    private <T> Stream<T> stream(byte kind, BlockDecoder<T> decoder) {
+        BlockSpliterator<T> spliterator = new BlockSpliterator<T>(kind, decoder);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    private void decodeSamples(ByteBuffer payload, Consumer<TrajectorySample> action) {
+        int count = payload.getInt();
+
+        int timeOffset = payload.position();
+        int eventOffset = timeOffset + count * Double.BYTES;
+        int totalOffset = eventOffset + count * Long.BYTES;
+
+        for (int k = 0; k < count; ++k) {
+            long[] totals = new long[AgentType.COUNT];
+
+            for (int type = 0; type < AgentType.COUNT; ++type)
+                totals[type] = payload.getLong(totalOffset + (type * count + k) * Long.BYTES);
+
+            action.accept(new TrajectorySample(payload.getDouble(timeOffset + k * Double.BYTES),
+                                               payload.getLong(eventOffset + k * Long.BYTES),
+                                               totals));
+        }
+    }
+
+    private void decodeSnapshot(ByteBuffer payload, Consumer<TrajectorySnapshot> action) {
+        double time = payload.getDouble();
+        long eventCount = payload.getLong();
+
+        int[][] counts = new int[AgentType.COUNT][siteCount];
+
+        for (int type = 0; type < AgentType.COUNT; ++type) {
+            payload.asIntBuffer().get(counts[type]);
+            payload.position(payload.position() + siteCount * Integer.BYTES);
+        }
+
+        action.accept(new TrajectorySnapshot(time, eventCount, counts));
+    }
+
+    private final class BlockSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final byte kind;
+        private final BlockDecoder<T> decoder;
+        private final DataInputStream stream;
+        private final Inflater inflater = new Inflater();
+
+        // Elements decoded from the current block but not yet
+        // consumed.
+        private final ArrayDeque<T> pending = new ArrayDeque<T>();
+
+        private byte[] input = new byte[0];
+        private byte[] output = new byte[0];
+
+        BlockSpliterator(byte kind, BlockDecoder<T> decoder) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+
+            this.kind = kind;
+            this.decoder = decoder;
+
+            try {
+                this.stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+                this.stream.skipNBytes(HEADER_SIZE);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                while (pending.isEmpty()) {
+                    int blockKind = stream.read();
+
+                    if (blockKind < 0)
+                        return false;
+
+                    int rawLength = stream.readInt();
+                    int compressedLength = stream.readInt();
+
+                    if (rawLength < 0 || compressedLength < 0)
+                        throw new IllegalStateException("Corrupt trajectory block.");
+
+                    if (blockKind != kind) {
+                        stream.skipNBytes(compressedLength);
+                        continue;
+                    }
+
+                    decoder.decode(inflate(rawLength, compressedLength), pending::add);
+                }
+            }
+            catch (EOFException ex) {
+                throw new IllegalStateException("Truncated trajectory file.");
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            action.accept(pending.poll());
+            return true;
+        }
+
+        private ByteBuffer inflate(int rawLength, int compressedLength) throws IOException {
+            if (input.length < compressedLength)
+                input = new byte[compressedLength];
+
+            if (output.length < rawLength)
+                output = new byte[rawLength];
+
+            stream.readFully(input, 0, compressedLength);
+
+            inflater.reset();
+            inflater.setInput(input, 0, compressedLength);
+
+            try {
+                if (inflater.inflate(output, 0, rawLength) != rawLength || !inflater.finished())
+                    throw new IllegalStateException("Corrupt trajectory block.");
+            }
+            catch (DataFormatException ex) {
+                throw new IllegalStateException("Corrupt trajectory block.");
+            }
+
+            return ByteBuffer.wrap(output, 0, rawLength).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void close() {
+            inflater.end();
+
+            try {
+                stream.close();
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+
+package resist.trajectory;
+
+import resist.agent.AgentType;
+
+/**
+ * Records the total number of agents of each type at one sampling
+ * time.
+ */
+public final class TrajectorySample {
+    private final double time;
+    private final long eventCount;
+    private final long[] totals;
+
+    TrajectorySample(double time, long eventCount, long[] totals) {
+        this.time = time;
+        this.eventCount = eventCount;
+        this.totals = totals;
+    }
+
+    /**
+     * Returns the simulation time of this sample.
+     *
+     * @return the simulation time of this sample.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of events executed before this sample.
+     *
+     * @return the number of events executed before this sample.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the total number of agents of a given type.
+     *
+     * @param type the agent type of interest.
+     *
+     * @return the total number of agents of the specified type.
+     */
+    public long getTotal(AgentType type) {
+        return totals[type.index()];
+    }
+}
@@ -0,0 +1,61 @@
+
+package resist.trajectory;
+
+import resist.agent.AgentType;
+
+/**
+ * Records the number of agents of each type at every site at one
+ * sampling time.
+ */
+public final class TrajectorySnapshot {
+    private final double time;
+    private final long eventCount;
+    private final int[][] counts;
+
+    TrajectorySnapshot(double time, long eventCount, int[][] counts) {
+        this.time = time;
+        this.eventCount = eventCount;
+        this.counts = counts;
+    }
+
+    /**
+     * Returns the simulation time of this snapshot.
+     *
+     * @return the simulation time of this snapshot.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of events executed before this snapshot.
+     *
+     * @return the number of events executed before this snapshot.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the number of sites covered by this snapshot.
+     *
+     * @return the number of sites covered by this snapshot.
+     */
+    public int countSites() {
+        return counts[0].length;
+    }
+
+    /**
+     * Returns the number of agents of a given type at a given site.
+     *
+     * @param site the dense index of the site.
+     *
+     * @param type the agent type of interest.
+     *
+     * @return the number of agents of the specified type at the
+     * specified site.
+     */
+    public int getCount(int site, AgentType type) {
+        return counts[type.index()][site];
+    }
+}
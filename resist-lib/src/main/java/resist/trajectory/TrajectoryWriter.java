@@ -0,0 +1,427 @@
+
+package resist.trajectory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import resist.agent.AgentType;
+import resist.system.PopulationStore;
+import resist.system.ResistSystem;
+import resist.system.SystemObserver;
+
+/**
+ * Records the trajectory of a simulation (time series of the agent
+ * totals and periodic spatial snapshots of the site populations) in
+ * a compressed, columnar binary file; see {@link TrajectoryReader}.
+ *
+ * <p>The simulation thread only copies the sampled values into a
+ * frame buffer; a background thread compresses and writes the frames.
+ * Frame buffers circulate through a fixed pool (a bounded ring), so
+ * no more than {@code capacity} frames are ever pending.  When the
+ * pool is exhausted the simulation thread waits for the writer to
+ * release a buffer, applying backpressure, but never for longer than
+ * the configured timeout: a writer that stalls (or fails) causes the
+ * next sampling call to throw an exception instead.
+ *
+ * <p>Totals are batched into blocks of {@code BATCH_SIZE} samples
+ * before they are handed to the writer, so sampling the totals costs
+ * only a few array stores per agent type.  A snapshot block may not
+ * exceed two gigabytes (roughly {@code 8.9e7} sites).
+ *
+ * <p>Writers are not thread-safe; each should record one system.
+ */
+public final class TrajectoryWriter implements Closeable {
+    private final int siteCount;
+    private final int capacity;
+    private final long timeoutMillis;
+
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> full;
+    private final Thread thread;
+
+    private volatile IOException failure = null;
+    private boolean closed = false;
+
+    // The attached system and the observers registered with it.
+    private ResistSystem system = null;
+    private SystemObserver sampler = null;
+    private SystemObserver snapshotter = null;
+
+    // The columns of the current batch of samples.
+    private final double[] batchTimes = new double[BATCH_SIZE];
+    private final long[] batchEvents = new long[BATCH_SIZE];
+    private final long[][] batchTotals = new long[AgentType.COUNT][BATCH_SIZE];
+    private int batchCount = 0;
+
+    // Signals the writer thread to finish.
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * The number of samples in each block of totals.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * The default number of frame buffers.
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * The default time (in milliseconds) that the simulation thread
+     * waits for a free frame buffer.
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60000L;
+
+    private TrajectoryWriter(Path file, int siteCount, int capacity, long timeoutMillis) {
+        this.siteCount = siteCount;
+        this.capacity = capacity;
+        this.timeoutMillis = timeoutMillis;
+
+        this.free = new ArrayBlockingQueue<ByteBuffer>(capacity);
+        this.full = new ArrayBlockingQueue<ByteBuffer>(capacity + 1);
+
+        for (int index = 0; index < capacity; ++index)
+            free.add(ByteBuffer.allocate(0));
+
+        this.thread = new Thread(() -> drain(file), "resist-trajectory");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Opens a new trajectory file with the default capacity and
+     * timeout, replacing any existing file.
+     *
+     * @param file the file to write.
+     *
+     * @param siteCount the number of sites in the recorded system.
+     *
+     * @return a new writer for the specified file.
+     */
+    public static TrajectoryWriter open(Path file, int siteCount) {
+        return open(file, siteCount, DEFAULT_CAPACITY, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Opens a new trajectory file, replacing any existing file.
+     *
+     * @param file the file to write.
+     *
+     * @param siteCount the number of sites in the recorded system.
+     *
+     * @param capacity the number of frame buffers.
+     *
+     * @param timeoutMillis the longest time (in milliseconds) that
+     * the simulation thread waits for a free frame buffer.
+     *
+     * @return a new writer for the specified file.
+     *
+     * @throws IllegalArgumentException unless the site count is
+     * non-negative and the capacity and timeout are positive.
+     */
+    public static TrajectoryWriter open(Path file, int siteCount, int capacity, long timeoutMillis) {
+        if (siteCount < 0)
+            throw new IllegalArgumentException("Negative site count.");
+
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive.");
+
+        if (timeoutMillis < 1L)
+            throw new IllegalArgumentException("Timeout must be positive.");
+
+        return new TrajectoryWriter(file, siteCount, capacity, timeoutMillis);
+    }
+
+    /**
+     * Registers this writer to sample a system at regular intervals.
+     *
+     * @param system the system to record.
+     *
+     * @param sampleInterval the simulated time between samples of
+     * the agent totals.
+     *
+     * @param snapshotInterval the simulated time between snapshots of
+     * the site populations.
+     *
+     * @throws IllegalArgumentException unless the system has the site
+     * count of this writer and both intervals are positive.
+     *
+     * @throws IllegalStateException if the writer is closed or is
+     * already attached to a system.
+     */
+    public void attach(ResistSystem system, double sampleInterval, double snapshotInterval) {
+        if (closed)
+            throw new IllegalStateException("The trajectory writer is closed.");
+
+        if (this.system != null)
+            throw new IllegalStateException("The trajectory writer is already attached.");
+
+        if (system.countSites() != siteCount)
+            throw new IllegalArgumentException("Site count mismatch.");
+
+        if (sampleInterval <= 0.0 || snapshotInterval <= 0.0)
+            throw new IllegalArgumentException("Sampling interval must be positive.");
+
+        this.system = system;
+        this.sampler = this::recordSample;
+        this.snapshotter = this::recordSnapshot;
+
+        system.addObserver(sampleInterval, sampler);
+        system.addObserver(snapshotInterval, snapshotter);
+    }
+
+    /**
+     * Unregisters this writer from the system that it records, so that
+     * the system may continue to run without it; {@link #close()}
+     * detaches the writer automatically.
+     */
+    public void detach() {
+        if (system == null)
+            return;
+
+        system.removeObserver(sampler);
+        system.removeObserver(snapshotter);
+
+        system = null;
+        sampler = null;
+        snapshotter = null;
+    }
+
+    /**
+     * Records the current agent totals of a system.
+     *
+     * @param system the system to sample.
+     *
+     * @throws IllegalStateException if the writer has been closed or
+     * has stalled for longer than the timeout.
+     *
+     * @throws UncheckedIOException if the writer has failed.
+     */
+    public void recordSample(ResistSystem system) {
+        checkOpen();
+
+        PopulationStore population = system.getPopulation();
+
+        batchTimes[batchCount] = system.getTime();
+        batchEvents[batchCount] = system.getEventCount();
+
+        for (int type = 0; type < AgentType.COUNT; ++type)
+            batchTotals[type][batchCount] = population.getTotal(type);
+
+        if (++batchCount == BATCH_SIZE)
+            flushSamples();
+    }
+
+    /**
+     * Records the current site populations of a system.  Any pending
+     * samples of the totals are written first, so the blocks in the
+     * file remain in time order.
+     *
+     * @param system the system to sample.
+     *
+     * @throws IllegalArgumentException unless the system has the site
+     * count of this writer.
+     *
+     * @throws IllegalStateException if the writer has been closed or
+     * has stalled for longer than the timeout.
+     *
+     * @throws UncheckedIOException if the writer has failed.
+     */
+    public void recordSnapshot(ResistSystem system) {
+        checkOpen();
+
+        PopulationStore population = system.getPopulation();
+
+        if (population.countSites() != siteCount)
+            throw new IllegalArgumentException("Site count mismatch.");
+
+        flushSamples();
+
+        int typeBytes = Math.multiplyExact(Integer.BYTES, siteCount);
+        ByteBuffer frame = acquire(TrajectoryFormat.SNAPSHOT_BLOCK, 2 * Long.BYTES + Math.multiplyExact(AgentType.COUNT, typeBytes));
+
+        frame.putDouble(system.getTime());
+        frame.putLong(system.getEventCount());
+
+        for (int type = 0; type < AgentType.COUNT; ++type) {
+            population.exportCounts(type, frame.asIntBuffer());
+            frame.position(frame.position() + typeBytes);
+        }
+
+        release(frame);
+    }
+
+    private void flushSamples() {
+        if (batchCount == 0)
+            return;
+
+        int rowBytes = Double.BYTES + Long.BYTES + AgentType.COUNT * Long.BYTES;
+        ByteBuffer frame = acquire(TrajectoryFormat.SAMPLE_BLOCK, Integer.BYTES + batchCount * rowBytes);
+
+        frame.putInt(batchCount);
+
+        for (int k = 0; k < batchCount; ++k)
+            frame.putDouble(batchTimes[k]);
+
+        for (int k = 0; k < batchCount; ++k)
+            frame.putLong(batchEvents[k]);
+
+        for (int type = 0; type < AgentType.COUNT; ++type)
+            for (int k = 0; k < batchCount; ++k)
+                frame.putLong(batchTotals[type][k]);
+
+        batchCount = 0;
+        release(frame);
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("The trajectory writer is closed.");
+
+        checkFailure();
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new UncheckedIOException(failure);
+    }
+
+    private ByteBuffer acquire(byte kind, int payloadSize) {
+        ByteBuffer frame;
+
+        try {
+            frame = free.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the trajectory writer.");
+        }
+
+        checkFailure();
+
+        if (frame == null)
+            throw new IllegalStateException("The trajectory writer has stalled.");
+
+        int frameSize = Math.addExact(1, payloadSize);
+
+        if (frame.capacity() < frameSize)
+            frame = ByteBuffer.allocate(frameSize);
+
+        frame.clear();
+        frame.order(ByteOrder.LITTLE_ENDIAN);
+        frame.put(kind);
+
+        return frame;
+    }
+
+    private void release(ByteBuffer frame) {
+        frame.flip();
+
+        // The full queue has room for every frame buffer, so this
+        // never blocks.
+        full.add(frame);
+    }
+
+    private void drain(Path file) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] output = new byte[1 << 16];
+
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            stream.writeInt(TrajectoryFormat.MAGIC);
+            stream.writeInt(TrajectoryFormat.VERSION);
+            stream.writeInt(siteCount);
+            stream.writeInt(AgentType.COUNT);
+
+            for (ByteBuffer frame = full.take(); frame != END; frame = full.take()) {
+                int rawLength = frame.limit() - 1;
+
+                deflater.reset();
+                deflater.setInput(frame.array(), 1, rawLength);
+                deflater.finish();
+
+                int compressedLength = 0;
+
+                while (!deflater.finished()) {
+                    if (compressedLength == output.length)
+                        output = Arrays.copyOf(output, 2 * output.length);
+
+                    compressedLength += deflater.deflate(output, compressedLength, output.length - compressedLength);
+                }
+
+                stream.writeByte(frame.get(0));
+                stream.writeInt(rawLength);
+                stream.writeInt(compressedLength);
+                stream.write(output, 0, compressedLength);
+
+                free.add(frame);
+            }
+        }
+        catch (IOException ex) {
+            failure = ex;
+        }
+        catch (InterruptedException ex) {
+            failure = new InterruptedIOException("The trajectory writer was interrupted.");
+        }
+        finally {
+            deflater.end();
+
+            // Wakes a producer that is waiting for a frame buffer, so
+            // it observes the failure without waiting for the timeout.
+            if (failure != null)
+                free.offer(ByteBuffer.allocate(0));
+        }
+    }
+
+    /**
+     * Detaches the writer from its system, writes any pending
+     * samples, waits for the background writer to finish, and closes
+     * the file.
+     *
+     * @throws IOException if the writer has failed or does not finish
+     * within the timeout for each pending frame.
+     */
+    @Override public void close() throws IOException {
+        if (closed)
+            return;
+
+        detach();
+
+        try {
+            if (failure == null)
+                flushSamples();
+        }
+        finally {
+            closed = true;
+            full.add(END);
+        }
+
+        try {
+            thread.join(timeoutMillis * (capacity + 1));
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the trajectory writer.");
+        }
+
+        if (thread.isAlive()) {
+            thread.interrupt();
+            throw new IOException("The trajectory writer has stalled.");
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+}
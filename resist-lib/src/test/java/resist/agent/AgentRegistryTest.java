@@ -0,0 +1,100 @@
+
+package resist.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jam.bravais.UnitIndex;
+import jam.math.Point;
+import jam.space.Site;
+import jam.space.Space;
+
+import resist.system.ResistParam;
+import resist.system.ResistTestBase;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class AgentRegistryTest extends ResistTestBase {
+    private static final Space space = ResistParam.global().getSpace();
+
+    @Test public void testIndexes() {
+        AgentRegistry registry = AgentRegistry.instance(space);
+        assertEquals(space.viewSites().size(), registry.countSites());
+
+        for (int index = 0; index < registry.countSites(); ++index) {
+            Site site = registry.getSite(index);
+            assertEquals(index, registry.indexOf(site));
+
+            for (int typeIndex = 0; typeIndex < AgentType.COUNT; ++typeIndex) {
+                AgentType type = AgentType.valueOf(typeIndex);
+                SiteAgent agent = registry.instance(index, type);
+
+                assertEquals(site, agent.getSite());
+                assertEquals(type, agent.getType());
+                assertSame(agent, registry.instance(site, type));
+            }
+        }
+    }
+
+    @Test public void testConcurrentInterning() throws Exception {
+        AgentRegistry registry = AgentRegistry.instance(space);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<SiteAgent[]>> futures = new ArrayList<Future<SiteAgent[]>>();
+
+            for (int task = 0; task < 8; ++task)
+                futures.add(executor.submit(() -> {
+                            SiteAgent[] agents = new SiteAgent[registry.countSites()];
+
+                            for (int index = 0; index < agents.length; ++index)
+                                agents[index] = registry.instance(index, CellType.RESISTANT_AB);
+
+                            return agents;
+                        }));
+
+            SiteAgent[] expected = futures.get(0).get();
+
+            for (Future<SiteAgent[]> future : futures) {
+                SiteAgent[] actual = future.get();
+
+                for (int index = 0; index < expected.length; ++index)
+                    assertSame(expected[index], actual[index]);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void testRelease() {
+        AgentRegistry registry1 = AgentRegistry.instance(space);
+        AgentRegistry registry2 = AgentRegistry.instance(space);
+        assertSame(registry1, registry2);
+
+        assertTrue(AgentRegistry.release(space));
+        assertFalse(AgentRegistry.release(space));
+
+        AgentRegistry registry3 = AgentRegistry.instance(space);
+        assertNotSame(registry1, registry3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignSite() {
+        AgentRegistry.instance(space).indexOf(Site.create(UnitIndex.at(1000), Point.at(1000.0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutsideLattice() {
+        // The lattice is 3 x 3.
+        AgentRegistry.instance(space).indexOf(Site.create(UnitIndex.at(1, 3), Point.at(1.0, 3.0)));
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.agent.AgentRegistryTest");
+    }
+}
@@ -0,0 +1,82 @@
+
+package resist.engine;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class IndexedHeapTest {
+    @Test public void testOrdering() {
+        IndexedHeap heap = IndexedHeap.create(10);
+        assertTrue(heap.isEmpty());
+
+        heap.put(3, 3.0);
+        heap.put(7, 1.0);
+        heap.put(5, 2.0);
+
+        assertEquals(3, heap.size());
+        assertEquals(7, heap.peekItem());
+        assertEquals(1.0, heap.peekKey(), 0.0);
+
+        heap.put(7, 4.0);
+        assertEquals(5, heap.peekItem());
+
+        assertTrue(heap.remove(5));
+        assertFalse(heap.remove(5));
+        assertEquals(3, heap.peekItem());
+
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(3));
+    }
+
+    @Test public void testRandom() {
+        int capacity = 1000;
+        Random random = new Random(20201031);
+
+        double[] keys = new double[capacity];
+        IndexedHeap heap = IndexedHeap.create(capacity);
+
+        for (int trial = 0; trial < 100000; ++trial) {
+            int item = random.nextInt(capacity);
+
+            if (random.nextDouble() < 0.25) {
+                heap.remove(item);
+                keys[item] = Double.NaN;
+            }
+            else {
+                keys[item] = random.nextDouble();
+                heap.put(item, keys[item]);
+            }
+
+            if (trial % 1000 == 0)
+                assertMinimum(heap, keys);
+        }
+
+        while (!heap.isEmpty()) {
+            assertMinimum(heap, keys);
+
+            keys[heap.peekItem()] = Double.NaN;
+            heap.remove(heap.peekItem());
+        }
+    }
+
+    private static void assertMinimum(IndexedHeap heap, double[] keys) {
+        double min = Double.POSITIVE_INFINITY;
+
+        for (int item = 0; item < keys.length; ++item) {
+            if (!Double.isNaN(keys[item]) && heap.contains(item)) {
+                min = Math.min(min, keys[item]);
+                assertEquals(keys[item], heap.getKey(item), 0.0);
+            }
+        }
+
+        if (!heap.isEmpty())
+            assertEquals(min, heap.peekKey(), 0.0);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.engine.IndexedHeapTest");
+    }
+}
@@ -0,0 +1,75 @@
+
+package resist.engine;
+
+import resist.random.SplitMix64;
+import resist.system.OccupancyIndex;
+import resist.system.ProcType;
+import resist.system.ReactionModel;
+import resist.system.ResistParam;
+import resist.system.ResistSystem;
+import resist.system.ResistTestBase;
+import resist.system.SiteReaction;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class ResistEngineTest extends ResistTestBase {
+    // Checks that the propensities held by the engine match those
+    // computed afresh by the model, and returns the number of sites
+    // at which birth or migration was blocked for want of room.
+    private static int assertFresh(ResistSystem system) {
+        ResistEngine engine = system.getEngine();
+        ReactionModel model = system.getModel();
+        OccupancyIndex occupancy = system.getOccupancy();
+
+        int blocked = 0;
+
+        for (int site = 0; site < system.countSites(); ++site) {
+            assertEquals(model.sitePropensity(site), engine.getChannelPropensity(site), 0.0);
+
+            if (!occupancy.isFull(site) && occupancy.countFullNeighbors(site) == 0)
+                continue;
+
+            ++blocked;
+
+            // Birth is silenced at full sites and migration at sites
+            // whose neighbors are all full.
+            boolean boxedIn = occupancy.countFullNeighbors(site) == model.getNeighborGraph().degree(site);
+
+            for (SiteReaction reaction : SiteReaction.viewAll()) {
+                ProcType procType = reaction.getProcType();
+
+                if ((procType == ProcType.CELL_BIRTH && occupancy.isFull(site)) || (procType == ProcType.CELL_MIGRATION && boxedIn))
+                    assertEquals(0.0, model.propensity(site, reaction.getIndex()), 0.0);
+            }
+        }
+
+        return blocked;
+    }
+
+    private static void assertFresh(ResistParam param, EngineType engineType) {
+        ResistSystem system = ResistSystem.create(SplitMix64.create(71L), param, engineType);
+        int blocked = 0;
+
+        for (double time = 0.5; time <= 2.0; time += 0.5) {
+            system.run(time);
+            blocked += assertFresh(system);
+        }
+
+        assertTrue(blocked > 0);
+    }
+
+    @Test public void testFreshPropensities() {
+        // Crowds the lattice, so that birth and migration are blocked
+        // at some sites whatever the seed.
+        ResistParam param = ResistParam.global().toBuilder().setInitialCellCount(880).build();
+
+        assertFresh(param, EngineType.DIRECT);
+        assertFresh(param, EngineType.NEXT_REACTION);
+        assertFresh(param, EngineType.COMPOSITION_REJECTION);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.engine.ResistEngineTest");
+    }
+}
@@ -0,0 +1,96 @@
+
+package resist.ensemble;
+
+import resist.agent.CellType;
+import resist.system.ResistParam;
+import resist.system.ResistTestBase;
+import resist.system.StoppingRule;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class AdaptiveEstimatorTest extends ResistTestBase {
+    private static final double MAX_TIME = 0.5;
+
+    private static EnsembleRunner runner() {
+        return EnsembleRunner.create(ResistParam.global(), 20240801L, 2).withStoppingRules(StoppingRule.extinction());
+    }
+
+    @Test public void testConvergence() {
+        AdaptiveEstimator estimator = AdaptiveEstimator.create(runner(), MAX_TIME, 0.2).withTimeHalfWidth(0.5).withWaveSize(10);
+        AdaptiveEstimate estimate = estimator.estimate();
+
+        assertTrue(estimate.isConverged());
+        assertEquals(10L * estimate.countWaves(), estimate.countReplicates());
+
+        assertTrue(estimator.proportionHalfWidth(estimate.getExtinction()) <= 0.2);
+        assertTrue(estimator.proportionHalfWidth(estimate.getResistance()) <= 0.2);
+
+        double fractionSum = 0.0;
+
+        for (CellType type : CellType.values())
+            fractionSum += estimate.getComposition(type).mean();
+
+        assertEquals(1.0, fractionSum, 1.0E-12);
+
+        // The waves reproduce a single ensemble of the same size.
+        int replicateCount = (int) estimate.countReplicates();
+        AdaptiveEstimate.Outcome[] outcomes = new AdaptiveEstimate.Outcome[replicateCount];
+
+        runner().run(replicateCount, (index, system) -> {
+                system.run(MAX_TIME);
+                return new AdaptiveEstimate.Outcome(system);
+            }, (outcome, index) -> outcomes[index] = outcome);
+
+        AdaptiveEstimate single = new AdaptiveEstimate();
+        single.addWave(outcomes);
+
+        assertEquals(estimate.getEventCount(), single.getEventCount());
+        assertEquals(estimate.getExtinction().mean(), single.getExtinction().mean(), 0.0);
+        assertEquals(estimate.getComposition(CellType.NON_RESISTANT).mean(), single.getComposition(CellType.NON_RESISTANT).mean(), 0.0);
+
+        // The estimate is reproducible from the master seed.
+        AdaptiveEstimate repeated = estimator.estimate();
+
+        assertEquals(estimate.countReplicates(), repeated.countReplicates());
+        assertEquals(estimate.getEventCount(), repeated.getEventCount());
+        assertEquals(estimate.getResistanceTime().mean(), repeated.getResistanceTime().mean(), 0.0);
+    }
+
+    @Test public void testBudget() {
+        int[] waves = new int[1];
+
+        AdaptiveEstimate estimate =
+            AdaptiveEstimator.create(runner(), MAX_TIME, 1.0E-04).withWaveSize(8).withMaxReplicates(20).estimate(wave -> ++waves[0]);
+
+        assertFalse(estimate.isConverged());
+        assertEquals(AdaptiveEstimate.Termination.REPLICATE_BUDGET, estimate.getTermination());
+        assertEquals(20L, estimate.countReplicates());
+        assertEquals(3, estimate.countWaves());
+        assertEquals(3, waves[0]);
+
+        estimate = AdaptiveEstimator.create(runner(), MAX_TIME, 1.0E-04).withWaveSize(8).withMaxEvents(1L).estimate();
+
+        assertEquals(AdaptiveEstimate.Termination.EVENT_BUDGET, estimate.getTermination());
+        assertEquals(8L, estimate.countReplicates());
+    }
+
+    @Test public void testProportionHalfWidth() {
+        AdaptiveEstimator estimator = AdaptiveEstimator.create(runner(), MAX_TIME, 0.1);
+        RunningMean indicator = RunningMean.create();
+
+        // The interval is wide before any observations and does not
+        // collapse when every observation is the same.
+        assertEquals(0.5, estimator.proportionHalfWidth(indicator), 1.0E-12);
+
+        for (int k = 0; k < 100; ++k)
+            indicator.add(0.0);
+
+        assertEquals(0.0, indicator.standardError(), 0.0);
+        assertTrue(estimator.proportionHalfWidth(indicator) > 0.01);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.ensemble.AdaptiveEstimatorTest");
+    }
+}
@@ -0,0 +1,93 @@
+
+package resist.ensemble;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import resist.system.ResistParam;
+import resist.system.ResistSystem;
+import resist.system.ResistTestBase;
+import resist.system.StateBackend;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class EnsembleRunnerTest extends ResistTestBase {
+    private static final int REPLICATES = 8;
+
+    private static long[] cellCounts(EnsembleRunner runner) {
+        long[] counts = new long[REPLICATES];
+
+        runner.run(REPLICATES, (index, system) -> {
+                system.run(0.5);
+                return system.getAggregates().countCells();
+            }, (count, index) -> counts[index] = count);
+
+        return counts;
+    }
+
+    @Test public void testMappedReplicates() throws Exception {
+        Path file = Files.createTempFile("resist", ".counts");
+
+        try {
+            ResistParam mapped = ResistParam.global().toBuilder().setStateBackend(StateBackend.MAPPED).setStateFile(file).build();
+
+            // Concurrent replicates map distinct files, so they match
+            // the replicates kept on the heap.
+            long[] expected = cellCounts(EnsembleRunner.create(ResistParam.global(), 55L, 4));
+            long[] actual = cellCounts(EnsembleRunner.create(mapped, 55L, 4));
+
+            assertArrayEquals(expected, actual);
+
+            for (int index = 0; index < REPLICATES; ++index)
+                assertFalse(Files.exists(mapped.withStateFileIndex(index).getStateFile()));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test public void testThreadCount() {
+        // Each replicate depends only on the master seed and its index.
+        long[] expected = cellCounts(EnsembleRunner.create(ResistParam.global(), 66L, 1));
+
+        assertArrayEquals(expected, cellCounts(EnsembleRunner.create(ResistParam.global(), 66L, 2)));
+        assertArrayEquals(expected, cellCounts(EnsembleRunner.create(ResistParam.global(), 66L, 4)));
+        assertArrayEquals(expected, cellCounts(EnsembleRunner.create(ResistParam.global(), 66L, 8)));
+    }
+
+    @Test public void testCancellation() throws Exception {
+        EnsembleRunner runner = EnsembleRunner.create(ResistParam.global(), 77L, 2);
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        try {
+            runner.run(REPLICATES, (index, system) -> {
+                    if (index == 0)
+                        throw new IllegalStateException("Failed replicate.");
+
+                    // Runs until the failure of the first replicate shuts
+                    // the pool down.
+                    for (double time = 1.0; system.run(time); time += 1.0)
+                        ;
+
+                    if (system.getStoppingRule().describe().equals("interrupted"))
+                        stopped.countDown();
+
+                    return null;
+                }, (summary, index) -> fail());
+
+            fail();
+        }
+        catch (IllegalStateException ex) {
+            assertEquals("Failed replicate.", ex.getCause().getMessage());
+        }
+
+        assertTrue(stopped.await(10L, TimeUnit.SECONDS));
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.ensemble.EnsembleRunnerTest");
+    }
+}
@@ -0,0 +1,85 @@
+
+package resist.ensemble;
+
+import resist.agent.CellType;
+import resist.system.ResistParam;
+import resist.system.ResistSystem;
+import resist.system.ResistTestBase;
+import resist.system.StoppingRule;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class SplittingEstimatorTest extends ResistTestBase {
+    private static final double MAX_TIME = 2.0;
+    private static final int ROOT_COUNT = 200;
+
+    private static final StoppingRule TARGET = StoppingRule.totalAtLeast(CellType.RESISTANT_A, 8);
+
+    private static double importance(ResistSystem system) {
+        return system.getAggregates().getTotal(CellType.RESISTANT_A);
+    }
+
+    private static EnsembleRunner runner() {
+        return EnsembleRunner.create(ResistParam.global(), 20240701L, 2).withStoppingRules(StoppingRule.extinction());
+    }
+
+    private static RunningMean bruteForce(int count) {
+        double[] outcomes = new double[count];
+        RunningMean successes = RunningMean.create();
+
+        runner().withStoppingRules(TARGET).run(count, (index, system) -> {
+                system.run(MAX_TIME);
+                return system.getStoppingRule() == TARGET ? 1.0 : 0.0;
+            }, (success, index) -> outcomes[index] = success);
+
+        // Summed in index order, as the estimator sums its roots, so
+        // that the means agree to the last bit.
+        for (double success : outcomes)
+            successes.add(success);
+
+        return successes;
+    }
+
+    @Test public void testNoSplitting() {
+        // Without levels, each root is one brute-force replicate with
+        // the same random stream.
+        SplittingEstimate estimate =
+            SplittingEstimator.create(runner(), TARGET, SplittingEstimatorTest::importance, new double[0], 2, MAX_TIME).estimate(ROOT_COUNT);
+
+        RunningMean expected = bruteForce(ROOT_COUNT);
+
+        assertEquals(expected.mean(), estimate.getProbability(), 0.0);
+        assertEquals(ROOT_COUNT, estimate.countRoots());
+        assertEquals(ROOT_COUNT, estimate.countSegments());
+        assertEquals(0L, estimate.countCopies());
+    }
+
+    @Test public void testSplitting() {
+        SplittingEstimator estimator =
+            SplittingEstimator.create(runner(), TARGET, SplittingEstimatorTest::importance, new double[] { 2.0, 4.0, 6.0 }, 3, MAX_TIME);
+
+        SplittingEstimate estimate1 = estimator.estimate(ROOT_COUNT);
+        SplittingEstimate estimate2 = estimator.estimate(ROOT_COUNT);
+
+        // The estimate is reproducible from the master seed.
+        assertEquals(estimate1.getProbability(), estimate2.getProbability(), 0.0);
+        assertEquals(estimate1.getEventCount(), estimate2.getEventCount());
+
+        RunningMean expected = bruteForce(ROOT_COUNT);
+        double tolerance = 4.0 * Math.hypot(expected.standardError(), estimate1.getStandardError());
+
+        assertTrue(estimate1.countCopies() > 0);
+        assertTrue(estimate1.countSuccesses() > expected.mean() * ROOT_COUNT);
+        assertEquals(expected.mean(), estimate1.getProbability(), tolerance);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelOrder() {
+        SplittingEstimator.create(runner(), TARGET, SplittingEstimatorTest::importance, new double[] { 2.0, 2.0 }, 3, MAX_TIME);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.ensemble.SplittingEstimatorTest");
+    }
+}
@@ -0,0 +1,78 @@
+
+package resist.random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class CounterRandomTest {
+    private static void assertBlock(long key, int[] counter, int[] expected) {
+        CounterRandom.create(key).block(counter);
+        assertArrayEquals(expected, counter);
+    }
+
+    @Test public void testKnownAnswers() {
+        // Known-answer vectors for Philox-4x32-10 from Random123.
+        assertBlock(0L,
+                    new int[] { 0, 0, 0, 0 },
+                    new int[] { 0x6627e8d5, 0xe169c58d, 0xbc57ac4c, 0x9b00dbd8 });
+
+        assertBlock(0xffffffffffffffffL,
+                    new int[] { 0xffffffff, 0xffffffff, 0xffffffff, 0xffffffff },
+                    new int[] { 0x408f276d, 0x41c83b0e, 0xa20bc7c6, 0x6d5451fd });
+
+        assertBlock(0x299f31d0a4093822L,
+                    new int[] { 0x243f6a88, 0x85a308d3, 0x13198a2e, 0x03707344 },
+                    new int[] { 0xd16cfe09, 0x94fdcceb, 0x5001e420, 0x24126ea1 });
+    }
+
+    @Test public void testSeek() {
+        CounterRandom family = CounterRandom.create(123L, 4L);
+
+        CounterStream stream1 = family.stream();
+        CounterStream stream2 = family.stream();
+
+        stream1.seek(17, 99L);
+        double[] expected = new double[5];
+
+        for (int k = 0; k < expected.length; ++k)
+            expected[k] = stream1.nextDouble();
+
+        // Draws for other sites do not disturb the stream.
+        stream2.seek(18, 99L);
+        stream2.nextDouble();
+        stream2.seek(17, 99L);
+
+        for (int k = 0; k < expected.length; ++k)
+            assertEquals(expected[k], stream2.nextDouble(), 0.0);
+
+        stream2.seek(17, 100L);
+        assertTrue(expected[0] != stream2.nextDouble());
+    }
+
+    @Test public void testReplicates() {
+        CounterStream stream1 = CounterRandom.create(123L, 0L).global();
+        CounterStream stream2 = CounterRandom.create(123L, 1L).global();
+
+        assertTrue(stream1.nextLong() != stream2.nextLong());
+    }
+
+    @Test public void testUniformity() {
+        CounterStream stream = CounterRandom.create(5L).global();
+
+        int n = 100000;
+        double sum = 0.0;
+
+        for (int k = 0; k < n; ++k) {
+            double x = stream.nextDouble();
+
+            assertTrue(x >= 0.0 && x < 1.0);
+            sum += x;
+        }
+
+        assertEquals(0.5, sum / n, 0.005);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.random.CounterRandomTest");
+    }
+}
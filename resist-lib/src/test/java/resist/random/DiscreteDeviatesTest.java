@@ -0,0 +1,112 @@
+
+package resist.random;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class DiscreteDeviatesTest {
+    private static final int SAMPLES = 200000;
+
+    private static void assertMoments(long[] samples, double mean, double variance) {
+        double sum = 0.0;
+        double sumSq = 0.0;
+
+        for (long sample : samples) {
+            sum += sample;
+            sumSq += sample * (double) sample;
+        }
+
+        double sampleMean = sum / samples.length;
+        double sampleVar = sumSq / samples.length - sampleMean * sampleMean;
+
+        // Five standard errors for the mean; five percent relative
+        // error for the variance.
+        assertEquals(mean, sampleMean, 5.0 * Math.sqrt(variance / samples.length) + 1.0E-12);
+        assertEquals(variance, sampleVar, 0.05 * variance + 1.0E-12);
+    }
+
+    private static void assertPoisson(RandomSource random, double mean) {
+        long[] samples = new long[SAMPLES];
+
+        for (int k = 0; k < SAMPLES; ++k)
+            samples[k] = DiscreteDeviates.poisson(random, mean);
+
+        assertMoments(samples, mean, mean);
+    }
+
+    private static void assertBinomial(RandomSource random, long trials, double prob) {
+        long[] samples = new long[SAMPLES];
+
+        for (int k = 0; k < SAMPLES; ++k) {
+            samples[k] = DiscreteDeviates.binomial(random, trials, prob);
+            assertTrue(0 <= samples[k] && samples[k] <= trials);
+        }
+
+        assertMoments(samples, trials * prob, trials * prob * (1.0 - prob));
+    }
+
+    @Test public void testLogFactorial() {
+        double exact = 0.0;
+
+        for (int k = 1; k <= 1000; ++k) {
+            exact += Math.log(k);
+            assertEquals(exact, DiscreteDeviates.logFactorial(k), 1.0E-10 * exact);
+        }
+    }
+
+    @Test public void testPoisson() {
+        Random random = new Random(20201101);
+        RandomSource source = random::nextDouble;
+
+        assertEquals(0L, DiscreteDeviates.poisson(source, 0.0));
+
+        assertPoisson(source, 0.1);
+        assertPoisson(source, 3.0);
+        assertPoisson(source, 25.0);
+        assertPoisson(source, 12345.0);
+    }
+
+    @Test public void testBinomial() {
+        Random random = new Random(20201102);
+        RandomSource source = random::nextDouble;
+
+        assertEquals(0L,  DiscreteDeviates.binomial(source, 0, 0.5));
+        assertEquals(10L, DiscreteDeviates.binomial(source, 10, 1.0));
+
+        assertBinomial(source, 20, 0.1);
+        assertBinomial(source, 20, 0.9);
+        assertBinomial(source, 1000, 0.3);
+        assertBinomial(source, 1000000, 0.05);
+    }
+
+    @Test public void testHypergeometric() {
+        Random random = new Random(20201103);
+        RandomSource source = random::nextDouble;
+
+        assertEquals(5L, DiscreteDeviates.hypergeometric(source, 10, 5, 10));
+        assertEquals(0L, DiscreteDeviates.hypergeometric(source, 10, 0, 7));
+
+        assertHypergeometric(source, 20, 7, 5);
+        assertHypergeometric(source, 1000, 100, 900);
+        assertHypergeometric(source, 100000000L, 30000000L, 5000L);
+    }
+
+    private static void assertHypergeometric(RandomSource random, long total, long marked, long draws) {
+        long[] samples = new long[SAMPLES];
+
+        for (int k = 0; k < SAMPLES; ++k)
+            samples[k] = DiscreteDeviates.hypergeometric(random, total, marked, draws);
+
+        double p = (double) marked / total;
+        double mean = draws * p;
+        double var = draws * p * (1.0 - p) * (total - draws) / (total - 1.0);
+
+        assertMoments(samples, mean, var);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.random.DiscreteDeviatesTest");
+    }
+}
@@ -0,0 +1,33 @@
+
+package resist.random;
+
+import java.util.SplittableRandom;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class SplitMix64Test {
+    @Test public void testSplittableRandom() {
+        SplitMix64 source = SplitMix64.create(20201015L);
+        SplittableRandom random = new SplittableRandom(20201015L);
+
+        for (int k = 0; k < 1000; ++k)
+            assertEquals(random.nextDouble(), source.nextDouble(), 0.0);
+    }
+
+    @Test public void testState() {
+        SplitMix64 source = SplitMix64.create(123L);
+
+        for (int k = 0; k < 17; ++k)
+            source.nextDouble();
+
+        SplitMix64 resumed = SplitMix64.create(source.getState());
+
+        for (int k = 0; k < 1000; ++k)
+            assertEquals(source.nextLong(), resumed.nextLong());
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.random.SplitMix64Test");
+    }
+}
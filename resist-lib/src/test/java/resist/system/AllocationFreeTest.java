@@ -0,0 +1,106 @@
+
+package resist.system;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Consumer;
+
+import resist.engine.EngineType;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class AllocationFreeTest extends ResistTestBase {
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int EVENTS_PER_ROUND = 20000;
+
+    // The virtual machine itself may allocate a few bytes on the
+    // application thread now and then (when deoptimizing a method, for
+    // example); this slack is fixed, so any per-event allocation on
+    // any path taken in a round exceeds it.
+    private static final long SLACK_BYTES = 1024L;
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+
+        Assume.assumeTrue(sunBean.isThreadAllocatedMemorySupported());
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+
+        return sunBean;
+    }
+
+    private static long allocatedBytes(com.sun.management.ThreadMXBean bean) {
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void advance(ResistSystem system) {
+        for (int event = 0; event < EVENTS_PER_ROUND; ++event)
+            system.advance(Double.POSITIVE_INFINITY);
+    }
+
+    private static void run(ResistSystem system) {
+        for (int step = 0; step < 100; ++step)
+            system.run(system.getTime() + 0.1);
+    }
+
+    private static void assertAllocationFree(ResistSystem system, Consumer<ResistSystem> round) {
+        com.sun.management.ThreadMXBean bean = threadBean();
+
+        for (int index = 0; index < WARM_UP_ROUNDS; ++index)
+            round.accept(system);
+
+        for (int index = 0; index < MEASURED_ROUNDS; ++index) {
+            long startCount = system.getEventCount();
+            long startBytes = allocatedBytes(bean);
+
+            round.accept(system);
+
+            long bytes = allocatedBytes(bean) - startBytes;
+
+            assertTrue(system.getEventCount() > startCount);
+            assertTrue(String.format("%d bytes allocated in the event loop", bytes), bytes <= SLACK_BYTES);
+        }
+    }
+
+    private static ResistSystem createSystem(EngineType engineType) {
+        return ResistSystem.create(SplitMix64.create(51L), ResistParam.global(), engineType);
+    }
+
+    @Test public void testDirect() {
+        assertAllocationFree(createSystem(EngineType.DIRECT), AllocationFreeTest::advance);
+    }
+
+    @Test public void testNextReaction() {
+        assertAllocationFree(createSystem(EngineType.NEXT_REACTION), AllocationFreeTest::advance);
+    }
+
+    @Test public void testCompositionRejection() {
+        assertAllocationFree(createSystem(EngineType.COMPOSITION_REJECTION), AllocationFreeTest::advance);
+    }
+
+    @Test public void testTauLeap() {
+        assertAllocationFree(createSystem(EngineType.TAU_LEAP), AllocationFreeTest::advance);
+    }
+
+    @Test public void testRun() {
+        //
+        // The full run loop, with a stopping rule checked after every
+        // event and metrics enabled.
+        //
+        ResistSystem system = createSystem(EngineType.NEXT_REACTION);
+
+        system.addStoppingRule(StoppingRule.extinction());
+        system.enableMetrics();
+
+        assertAllocationFree(system, AllocationFreeTest::run);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.AllocationFreeTest");
+    }
+}
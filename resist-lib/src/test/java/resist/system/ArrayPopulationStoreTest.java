@@ -0,0 +1,64 @@
+
+package resist.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import resist.agent.CellType;
+import resist.agent.DrugType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class ArrayPopulationStoreTest {
+    @Test public void testCounts() {
+        PopulationStore store = ArrayPopulationStore.create(5);
+
+        assertEquals(5, store.countSites());
+        assertEquals(0, store.getCount(3, CellType.RESISTANT_A));
+
+        store.setCount(3, CellType.RESISTANT_A.index(), 10);
+        store.setCount(4, CellType.RESISTANT_A.index(), 20);
+        store.addCount(3, CellType.NON_RESISTANT.index(), 5);
+        store.addCount(3, DrugType.B.index(), 7);
+
+        assertEquals(10, store.getCount(3, CellType.RESISTANT_A));
+        assertEquals(20, store.getCount(4, CellType.RESISTANT_A));
+        assertEquals(5,  store.getCount(3, CellType.NON_RESISTANT));
+        assertEquals(7,  store.getCount(3, DrugType.B));
+
+        assertEquals(15, store.countCells(3));
+        assertEquals(20, store.countCells(4));
+
+        assertEquals(30, store.getTotal(CellType.RESISTANT_A));
+        assertEquals(7,  store.getTotal(DrugType.B));
+        assertEquals(0,  store.getTotal(DrugType.A));
+
+        assertEquals(8, store.addCount(4, CellType.RESISTANT_A.index(), -12));
+        assertEquals(18, store.getTotal(CellType.RESISTANT_A));
+    }
+
+    @Test public void testListener() {
+        PopulationStore store = ArrayPopulationStore.create(5);
+        List<String> changes = new ArrayList<>();
+
+        store.addListener((site, type, oldCount, newCount) -> changes.add(site + ":" + type + ":" + oldCount + ":" + newCount));
+
+        store.setCount(2, CellType.RESISTANT_B.index(), 4);
+        store.setCount(2, CellType.RESISTANT_B.index(), 4);
+        store.addCount(2, CellType.RESISTANT_B.index(), -1);
+        store.addCount(1, DrugType.A.index(), 0);
+
+        assertEquals(List.of("2:2:0:4", "2:2:4:3"), changes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegative() {
+        PopulationStore store = ArrayPopulationStore.create(5);
+        store.addCount(0, CellType.RESISTANT_B.index(), -1);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.ArrayPopulationStoreTest");
+    }
+}
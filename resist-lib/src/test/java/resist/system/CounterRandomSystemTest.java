@@ -0,0 +1,83 @@
+
+package resist.system;
+
+import resist.agent.AgentType;
+import resist.engine.EngineType;
+import resist.random.CounterRandom;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class CounterRandomSystemTest extends ResistTestBase {
+    private static final long SEED = 20240917L;
+
+    private static ResistSystem create(boolean parallel, long replicate) {
+        //
+        // A lattice large enough to span several blocks of leap draws.
+        //
+        ResistParam param =
+            ResistParam.global().toBuilder()
+            .setLattice("SQUARE; 1.0; 40, 40")
+            .setInitialCellCount(20000)
+            .setEngineType(EngineType.TAU_LEAP)
+            .setTauLeapParallel(parallel)
+            .build();
+
+        return ResistSystem.create(CounterRandom.create(SEED, replicate).global(), param);
+    }
+
+    private static void assertSameState(ResistSystem expected, ResistSystem actual) {
+        PopulationStore expectedPop = expected.getPopulation();
+        PopulationStore actualPop = actual.getPopulation();
+
+        assertEquals(expected.getTime(), actual.getTime(), 0.0);
+
+        for (int site = 0; site < expected.countSites(); ++site)
+            for (int type = 0; type < AgentType.COUNT; ++type)
+                assertEquals(expectedPop.getCount(site, type), actualPop.getCount(site, type));
+    }
+
+    @Test public void testSerialParallel() {
+        ResistSystem serial = create(false, 0L);
+        ResistSystem parallel = create(true, 0L);
+
+        assertSameState(serial, parallel);
+
+        for (double time = 0.25; time <= 1.0; time += 0.25) {
+            serial.run(time);
+            parallel.run(time);
+            assertSameState(serial, parallel);
+        }
+    }
+
+    @Test public void testReplicates() {
+        ResistSystem rep0 = create(false, 0L);
+        ResistSystem rep1 = create(false, 1L);
+
+        rep0.run(1.0);
+        rep1.run(1.0);
+
+        boolean differ = false;
+
+        for (int site = 0; site < rep0.countSites() && !differ; ++site)
+            for (int type = 0; type < AgentType.COUNT && !differ; ++type)
+                differ = rep0.getPopulation().getCount(site, type) != rep1.getPopulation().getCount(site, type);
+
+        assertTrue(differ);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelRequiresCounter() {
+        ResistParam param =
+            ResistParam.global().toBuilder()
+            .setEngineType(EngineType.TAU_LEAP)
+            .setTauLeapParallel(true)
+            .build();
+
+        ResistSystem.create(() -> 0.5, param);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.CounterRandomSystemTest");
+    }
+}
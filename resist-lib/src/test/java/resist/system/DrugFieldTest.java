@@ -0,0 +1,228 @@
+
+package resist.system;
+
+import java.util.Random;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.agent.DrugType;
+import resist.engine.EngineType;
+import resist.engine.HybridEngine;
+import resist.engine.ResistEngine;
+import resist.random.RandomSource;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class DrugFieldTest extends ResistTestBase {
+    private static final int REPLICATES = 200;
+    private static final double END_TIME = 1.0;
+
+    private static ResistParam param(DrugFieldMode mode, double decayRate, double uptakeRate) {
+        return ResistParam.global().toBuilder()
+            .setDrugFieldMode(mode)
+            .setDrugDecayRate(decayRate)
+            .setDrugUptakeRate(uptakeRate)
+            .setDrugDiffusionRate(1.0)
+            .build();
+    }
+
+    // A ring of ten sites with cells on every other site.
+    private static SiteGraph ring() {
+        int[][] adjacency = new int[10][];
+
+        for (int site = 0; site < 10; ++site)
+            adjacency[site] = new int[] { (site + 9) % 10, (site + 1) % 10 };
+
+        return SiteGraph.create(adjacency);
+    }
+
+    private static PopulationStore ringPopulation() {
+        PopulationStore population = ArrayPopulationStore.create(10);
+
+        for (int site = 0; site < 10; site += 2)
+            population.setCount(site, CellType.NON_RESISTANT.index(), 7);
+
+        population.setCount(0, DrugType.A.index(), 1000);
+        population.setCount(3, DrugType.B.index(), 77);
+
+        return population;
+    }
+
+    private static double total(DrugField field, DrugType drug, int siteCount) {
+        double total = 0.0;
+
+        for (int site = 0; site < siteCount; ++site)
+            total += field.getLevel(site, drug.ordinal());
+
+        return total;
+    }
+
+    @Test public void testConservation() {
+        PopulationStore population = ringPopulation();
+        DrugField field = DrugField.create(param(DrugFieldMode.CONTINUOUS, 0.0, 0.0), ring());
+
+        field.load(population);
+        field.advance(5.0, population);
+
+        // Diffusion alone conserves the drug and spreads it out.
+        assertEquals(1000.0, total(field, DrugType.A, 10), 1.0E-09);
+        assertEquals(77.0, total(field, DrugType.B, 10), 1.0E-09);
+        assertTrue(field.getLevel(5, DrugType.A.ordinal()) > 0.0);
+    }
+
+    @Test public void testDecay() {
+        PopulationStore population = ringPopulation();
+        DrugField field = DrugField.create(param(DrugFieldMode.CONTINUOUS, 0.5, 0.0), ring());
+
+        field.load(population);
+        field.advance(2.0, population);
+
+        assertEquals(1000.0 * Math.exp(-1.0), total(field, DrugType.A, 10), 1.0E-09);
+        assertEquals(77.0 * Math.exp(-1.0), total(field, DrugType.B, 10), 1.0E-09);
+
+        // Uptake removes drug only where there are cells.
+        DrugField uptake = DrugField.create(param(DrugFieldMode.CONTINUOUS, 0.0, 0.1), SiteGraph.create(new int[2][0]));
+        PopulationStore pair = ArrayPopulationStore.create(2);
+
+        pair.setCount(0, CellType.NON_RESISTANT.index(), 10);
+        pair.setCount(0, DrugType.A.index(), 100);
+        pair.setCount(1, DrugType.A.index(), 100);
+
+        uptake.load(pair);
+        uptake.advance(1.0, pair);
+
+        assertEquals(100.0 * Math.exp(-1.0), uptake.getLevel(0, DrugType.A.ordinal()), 1.0E-09);
+        assertEquals(100.0, uptake.getLevel(1, DrugType.A.ordinal()), 0.0);
+    }
+
+    // Returns the mean and variance of the amount of drug A at the
+    // center site and over the lattice.
+    private static double[] discreteMoments(long seed) {
+        Random random = new Random(seed);
+        RandomSource source = random::nextDouble;
+
+        double[] moments = new double[4];
+
+        for (int rep = 0; rep < REPLICATES; ++rep) {
+            ResistSystem system = create(source, DrugFieldMode.DISCRETE);
+            system.run(END_TIME);
+
+            double center = system.getPopulation().getCount(4, DrugType.A);
+            double total = system.getPopulation().getTotal(DrugType.A);
+
+            moments[0] += center;
+            moments[1] += center * center;
+            moments[2] += total;
+            moments[3] += total * total;
+        }
+
+        for (int k = 0; k < 4; ++k)
+            moments[k] /= REPLICATES;
+
+        moments[1] -= moments[0] * moments[0];
+        moments[3] -= moments[2] * moments[2];
+
+        return moments;
+    }
+
+    private static ResistSystem create(RandomSource source, DrugFieldMode mode) {
+        ResistSystem system = ResistSystem.create(source, param(mode, 0.5, 0.0), EngineType.DIRECT);
+        PopulationStore population = system.getPopulation();
+
+        for (int site = 0; site < system.countSites(); ++site)
+            for (int type = 0; type < AgentType.COUNT; ++type)
+                population.setCount(site, type, 0);
+
+        population.setCount(4, DrugType.A.index(), 200);
+        system.refresh();
+
+        return system;
+    }
+
+    @Test public void testDiscreteMeans() {
+        double[] moments = discreteMoments(4004L);
+
+        ResistSystem system = create(() -> 0.5, DrugFieldMode.CONTINUOUS);
+        system.run(END_TIME);
+
+        assertTrue(system.getEngine() instanceof HybridEngine);
+
+        DrugField field = system.getModel().getDrugField();
+
+        // The field follows the mean of the discrete process to
+        // within four standard errors.
+        double centerError = 4.0 * Math.sqrt(moments[1] / REPLICATES);
+        double totalError = 4.0 * Math.sqrt(moments[3] / REPLICATES);
+
+        assertEquals(200.0 * Math.exp(-0.5), total(field, DrugType.A, system.countSites()), 1.0E-09);
+        assertEquals(moments[0], field.getLevel(4, DrugType.A.ordinal()), centerError);
+        assertEquals(moments[2], total(field, DrugType.A, system.countSites()), totalError);
+    }
+
+    @Test public void testAdvance() {
+        ResistSystem system = ResistSystem.create(SplitMix64.create(606L), param(DrugFieldMode.CONTINUOUS, 0.5, 0.0), EngineType.DIRECT);
+        ResistEngine engine = system.getEngine();
+        long eventCount = engine.getEventCount();
+
+        // Every step reported as active executes at least one event.
+        while (engine.advance(0.5)) {
+            assertTrue(engine.getEventCount() > eventCount);
+            eventCount = engine.getEventCount();
+        }
+
+        assertEquals(0.5, engine.getTime(), 1.0E-12);
+
+        // Without cells, an unbounded run ends at once.
+        ResistSystem empty = create(() -> 0.5, DrugFieldMode.CONTINUOUS);
+
+        assertFalse(empty.getEngine().advance(Double.POSITIVE_INFINITY));
+        assertEquals(Double.POSITIVE_INFINITY, empty.getEngine().getTime(), 0.0);
+    }
+
+    @Test public void testPublish() {
+        ResistSystem system = create(() -> 0.5, DrugFieldMode.CONTINUOUS);
+        system.run(0.37);
+
+        DrugField field = system.getModel().getDrugField();
+        PopulationStore population = system.getPopulation();
+
+        // The store holds the field rounded to the nearest integer.
+        long published = 0L;
+
+        for (int site = 0; site < system.countSites(); ++site) {
+            for (DrugType drug : DrugType.values()) {
+                double level = field.getLevel(site, drug.ordinal());
+                int count = population.getCount(site, drug);
+
+                assertEquals(Math.round(level), count);
+                assertTrue(Math.abs(count - level) <= 0.5);
+            }
+
+            published += population.getCount(site, DrugType.A);
+        }
+
+        assertEquals(published, population.getTotal(DrugType.A));
+        assertEquals(total(field, DrugType.A, system.countSites()), published, 0.5 * system.countSites());
+
+        // Half-integer levels round up.
+        PopulationStore store = ArrayPopulationStore.create(2);
+        DrugField halves = DrugField.create(param(DrugFieldMode.CONTINUOUS, Math.log(2.0), 0.0), SiteGraph.create(new int[2][0]));
+
+        store.setCount(0, DrugType.A.index(), 5);
+        store.setCount(1, DrugType.B.index(), 1);
+
+        halves.load(store);
+        halves.advance(1.0, store);
+        halves.publish(store);
+
+        assertEquals(2.5, halves.getLevel(0, DrugType.A.ordinal()), 1.0E-12);
+        assertEquals(3, store.getCount(0, DrugType.A));
+        assertEquals(1, store.getCount(1, DrugType.B));
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.DrugFieldTest");
+    }
+}
@@ -0,0 +1,132 @@
+
+package resist.system;
+
+import java.util.Random;
+
+import resist.agent.CellType;
+import resist.agent.DrugType;
+import resist.engine.DomainEngine;
+import resist.engine.EngineType;
+import resist.engine.ResistEngine;
+import resist.random.RandomSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class EngineCrossCheckTest extends ResistTestBase {
+    private static final int REPLICATES = 200;
+    private static final double END_TIME = 1.0;
+
+    private static double meanCellCount(EngineType engineType, long seed) {
+        Random random = new Random(seed);
+        RandomSource source = random::nextDouble;
+
+        double total = 0.0;
+
+        for (int rep = 0; rep < REPLICATES; ++rep) {
+            ResistSystem system = ResistSystem.create(source, ResistParam.global(), engineType);
+            PopulationStore population = system.getPopulation();
+
+            for (int site = 0; site < system.countSites(); ++site)
+                for (int type = 0; type < CellType.COUNT + DrugType.COUNT; ++type)
+                    population.setCount(site, type, 0);
+
+            population.setCount(4, CellType.NON_RESISTANT.index(), 50);
+            population.setCount(4, DrugType.A.index(), 20);
+            system.refresh();
+            system.run(END_TIME);
+
+            assertEquals(END_TIME, system.getTime(), 0.0);
+
+            for (CellType cellType : CellType.values())
+                total += population.getTotal(cellType);
+        }
+
+        return total / REPLICATES;
+    }
+
+    @Test public void testCellGrowth() {
+        double direct = meanCellCount(EngineType.DIRECT, 1001);
+        double nextReaction = meanCellCount(EngineType.NEXT_REACTION, 2002);
+        double compositionRejection = meanCellCount(EngineType.COMPOSITION_REJECTION, 3003);
+
+        // Each replicate has a standard deviation of about 11 cells,
+        // so the difference in means has a standard error near 1.1.
+        assertEquals(direct, nextReaction, 6.0);
+        assertEquals(direct, compositionRejection, 6.0);
+    }
+
+    private static double meanDrugCount(EngineType engineType, long seed) {
+        Random random = new Random(seed);
+        RandomSource source = random::nextDouble;
+
+        double total = 0.0;
+
+        for (int rep = 0; rep < 50; ++rep) {
+            ResistSystem system = ResistSystem.create(source, ResistParam.global(), engineType);
+            PopulationStore population = system.getPopulation();
+
+            for (int site = 0; site < system.countSites(); ++site) {
+                population.setCount(site, CellType.RESISTANT_A.index(), 80);
+                population.setCount(site, DrugType.A.index(), 5000);
+            }
+
+            system.refresh();
+            system.run(END_TIME);
+
+            total += population.getTotal(DrugType.A);
+        }
+
+        return total / 50;
+    }
+
+    @Test public void testTauLeap() {
+        double exact = meanDrugCount(EngineType.NEXT_REACTION, 4004);
+        double leaped = meanDrugCount(EngineType.TAU_LEAP, 5005);
+
+        assertEquals(exact, leaped, 0.02 * exact);
+    }
+
+    private static double meanDomainCellCount(int domainCount, double window, long seed) {
+        Random random = new Random(seed);
+        RandomSource source = random::nextDouble;
+
+        double total = 0.0;
+
+        for (int rep = 0; rep < REPLICATES; ++rep) {
+            ResistSystem system = ResistSystem.create(source, ResistParam.global(), EngineType.NEXT_REACTION);
+            PopulationStore population = system.getPopulation();
+
+            for (int site = 0; site < system.countSites(); ++site)
+                for (int type = 0; type < CellType.COUNT + DrugType.COUNT; ++type)
+                    population.setCount(site, type, 0);
+
+            population.setCount(4, CellType.NON_RESISTANT.index(), 50);
+            population.setCount(4, DrugType.A.index(), 20);
+
+            ResistEngine engine =
+                DomainEngine.create(EngineType.NEXT_REACTION, system.getModel(), source, domainCount, window);
+
+            engine.run(END_TIME);
+            assertEquals(END_TIME, engine.getTime(), 0.0);
+
+            for (CellType cellType : CellType.values())
+                total += population.getTotal(cellType);
+        }
+
+        return total / REPLICATES;
+    }
+
+    @Test public void testDomainDecomposition() {
+        double serial = meanCellCount(EngineType.NEXT_REACTION, 6006);
+        double parallel = meanDomainCellCount(3, 0.05, 7007);
+
+        // The seeded site borders two other sub-domains, so the
+        // comparison exercises the ghost-layer exchange.
+        assertEquals(serial, parallel, 6.0);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.EngineCrossCheckTest");
+    }
+}
@@ -0,0 +1,125 @@
+
+package resist.system;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import resist.engine.EngineMetrics;
+import resist.engine.EnginePhase;
+import resist.engine.EngineType;
+import resist.engine.MetricsSnapshot;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class EngineMetricsTest extends ResistTestBase {
+    private static ResistSystem createSystem(EngineType engineType, long seed) {
+        return ResistSystem.create(SplitMix64.create(seed), ResistParam.global(), engineType);
+    }
+
+    private static long sumProcessEvents(MetricsSnapshot snapshot) {
+        long total = 0L;
+
+        for (ProcType procType : ProcType.values())
+            total += snapshot.getEventCount(procType);
+
+        return total;
+    }
+
+    @Test public void testExact() {
+        ResistSystem system = createSystem(EngineType.NEXT_REACTION, 41L);
+        EngineMetrics metrics = system.enableMetrics();
+
+        assertSame(metrics, system.enableMetrics());
+        assertSame(metrics, system.getMetrics());
+
+        system.run(1.0);
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        assertTrue(system.getEventCount() > 0L);
+        assertEquals(system.getEventCount(), snapshot.getEventCount());
+        assertEquals(snapshot.getEventCount(), sumProcessEvents(snapshot));
+
+        assertTrue(snapshot.getEventCount(ProcType.CELL_BIRTH) > 0L);
+        assertTrue(snapshot.getEventCount(ProcType.DRUG_DIFFUSION) > 0L);
+
+        // Each event updates the channel that fired and at most one
+        // neighbor.
+        assertTrue(snapshot.getMeanFanOut() >= 1.0);
+        assertTrue(snapshot.getMeanFanOut() <= 2.0);
+
+        assertTrue(snapshot.getEventRate() > 0.0);
+        assertTrue(snapshot.getPhaseNanos(EnginePhase.EXECUTION) > 0L);
+        assertTrue(snapshot.getPhaseNanos(EnginePhase.UPDATE) > 0L);
+        assertEquals(0L, snapshot.getPhaseNanos(EnginePhase.LEAP));
+    }
+
+    @Test public void testTauLeap() {
+        ResistSystem system = createSystem(EngineType.TAU_LEAP, 42L);
+        EngineMetrics metrics = system.enableMetrics();
+
+        system.run(2.0);
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        assertEquals(system.getEventCount(), snapshot.getEventCount());
+        assertEquals(snapshot.getEventCount(), sumProcessEvents(snapshot));
+    }
+
+    @Test public void testDisable() {
+        ResistSystem system = createSystem(EngineType.DIRECT, 43L);
+        EngineMetrics metrics = system.enableMetrics();
+
+        system.run(0.5);
+        system.disableMetrics();
+
+        assertNull(system.getMetrics());
+
+        long eventCount = metrics.snapshot().getEventCount();
+        system.run(1.0);
+
+        assertEquals(eventCount, metrics.snapshot().getEventCount());
+        assertTrue(system.getEventCount() > eventCount);
+    }
+
+    @Test public void testFlightRecorder() throws Exception {
+        ResistSystem system = createSystem(EngineType.DIRECT, 44L);
+        Path file = Files.createTempFile("resist-metrics", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("resist.SimulationRun");
+            recording.start();
+
+            system.run(0.5);
+            system.run(1.0);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        long total = 0L;
+        int runs = 0;
+
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("resist.SimulationRun")) {
+                total += event.getLong("events");
+                ++runs;
+            }
+        }
+
+        assertEquals(2, runs);
+        assertEquals(system.getEventCount(), total);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.EngineMetricsTest");
+    }
+}
@@ -0,0 +1,173 @@
+
+package resist.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import resist.agent.CellType;
+import resist.agent.DrugType;
+import resist.engine.EngineType;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class OccupancyIndexTest extends ResistTestBase {
+    // A path of four sites: 0 - 1 - 2 - 3.
+    private static final int[][] PATH = { { 1 }, { 0, 2 }, { 1, 3 }, { 2 } };
+
+    @Test public void testUpdates() {
+        PopulationStore store = ArrayPopulationStore.create(4);
+        store.setCount(1, CellType.NON_RESISTANT.index(), 10);
+
+        OccupancyIndex index = OccupancyIndex.attach(store, SiteGraph.create(PATH).reverse(), 10);
+
+        assertTrue(index.isFull(1));
+        assertEquals(1, index.countOccupiedSites());
+        assertEquals(1, index.countFullSites());
+        assertEquals(1, index.countFullNeighbors(0));
+        assertEquals(1, index.countFullNeighbors(2));
+        assertEquals(0, index.countFullNeighbors(1));
+
+        store.addCount(2, CellType.RESISTANT_A.index(), 4);
+        store.addCount(2, CellType.NON_RESISTANT.index(), 6);
+
+        assertTrue(index.isFull(2));
+        assertEquals(10, index.countCells(2));
+        assertEquals(1, index.countFullNeighbors(1));
+        assertEquals(1, index.countFullNeighbors(3));
+
+        // Drug units do not count toward occupancy.
+        store.addCount(3, DrugType.A.index(), 50);
+        assertFalse(index.isOccupied(3));
+
+        store.addCount(1, CellType.NON_RESISTANT.index(), -1);
+
+        assertFalse(index.isFull(1));
+        assertEquals(0, index.countFullNeighbors(0));
+        assertEquals(0, index.countFullNeighbors(2));
+        assertEquals(1, index.countFullNeighbors(1));
+        assertEquals(2, index.countOccupiedSites());
+        assertEquals(1, index.countFullSites());
+
+        assertEquals(1, index.nextOccupiedSite(0));
+        assertEquals(2, index.nextOccupiedSite(2));
+        assertEquals(-1, index.nextOccupiedSite(3));
+        assertEquals(2, index.nextFullSite(0));
+    }
+
+    @Test public void testPropensities() {
+        ResistParam param = ResistParam.global();
+        PopulationStore store = ArrayPopulationStore.create(4);
+        ReactionModel model = ReactionModel.create(param, store, SiteGraph.create(PATH));
+
+        int capacity = param.getSiteCapacity();
+        int birth = -1;
+        int migration = -1;
+
+        for (SiteReaction reaction : SiteReaction.viewAll()) {
+            if (reaction.getReactant() == CellType.NON_RESISTANT && reaction.getProcType() == ProcType.CELL_BIRTH)
+                birth = reaction.getIndex();
+
+            if (reaction.getReactant() == CellType.NON_RESISTANT && reaction.getProcType() == ProcType.CELL_MIGRATION)
+                migration = reaction.getIndex();
+        }
+
+        store.setCount(1, CellType.NON_RESISTANT.index(), capacity);
+        store.setCount(2, CellType.NON_RESISTANT.index(), 1);
+
+        double rate = param.getCellMigrationRate();
+
+        // Birth is silenced at the full site; migration from site 2
+        // may enter site 3 but not site 1.
+        assertEquals(0.0, model.propensity(1, birth), 0.0);
+        assertTrue(model.propensity(2, birth) > 0.0);
+        assertEquals(0.5 * rate, model.propensity(2, migration), 1.0E-12);
+
+        int[] touched = new int[model.getMaxTouched()];
+
+        for (int trial = 0; trial < 20; ++trial) {
+            SplitMix64 random = SplitMix64.create(trial);
+
+            assertEquals(2, model.fire(2, migration, random, touched));
+            assertEquals(1, store.getCount(3, CellType.NON_RESISTANT));
+
+            store.setCount(2, CellType.NON_RESISTANT.index(), 1);
+            store.setCount(3, CellType.NON_RESISTANT.index(), 0);
+        }
+
+        // A death at the full site frees room, which touches the
+        // sites next to it.
+        int death = birth + 1;
+        assertEquals(ProcType.CELL_DEATH, SiteReaction.valueOf(death).getProcType());
+
+        int touchedCount = model.fire(1, death, SplitMix64.create(1L), touched);
+        List<Integer> touchedSites = new ArrayList<Integer>();
+
+        for (int k = 0; k < touchedCount; ++k)
+            touchedSites.add(touched[k]);
+
+        assertEquals(3, touchedCount);
+        assertTrue(touchedSites.contains(0));
+        assertTrue(touchedSites.contains(1));
+        assertTrue(touchedSites.contains(2));
+        assertEquals(rate, model.propensity(2, migration), 1.0E-12);
+    }
+
+    private static void assertConsistent(ResistSystem system) {
+        OccupancyIndex index = system.getOccupancy();
+        PopulationStore store = system.getPopulation();
+        SiteGraph neighbors = system.getModel().getNeighborGraph();
+
+        int capacity = system.getParam().getSiteCapacity();
+        int occupied = 0;
+
+        for (int site = 0; site < system.countSites(); ++site) {
+            int cells = store.countCells(site);
+            int fullNeighbors = 0;
+
+            for (int k = 0; k < neighbors.degree(site); ++k)
+                if (store.countCells(neighbors.target(site, k)) >= capacity)
+                    ++fullNeighbors;
+
+            assertEquals(cells, index.countCells(site));
+            assertEquals(cells > 0, index.isOccupied(site));
+            assertEquals(cells >= capacity, index.isFull(site));
+            assertEquals(fullNeighbors, index.countFullNeighbors(site));
+
+            if (cells > 0)
+                ++occupied;
+        }
+
+        int visited = 0;
+
+        for (int site = index.nextOccupiedSite(0); site >= 0; site = index.nextOccupiedSite(site + 1))
+            ++visited;
+
+        assertEquals(occupied, index.countOccupiedSites());
+        assertEquals(occupied, visited);
+    }
+
+    private static void assertConsistent(ResistParam param, EngineType engineType) {
+        ResistSystem system = ResistSystem.create(SplitMix64.create(61L), param, engineType);
+
+        for (double time = 0.5; time <= 2.0; time += 0.5) {
+            system.run(time);
+            assertConsistent(system);
+        }
+    }
+
+    @Test public void testSimulation() {
+        ResistParam param = ResistParam.global();
+
+        assertConsistent(param, EngineType.DIRECT);
+        assertConsistent(param, EngineType.NEXT_REACTION);
+        assertConsistent(param, EngineType.COMPOSITION_REJECTION);
+        assertConsistent(param, EngineType.TAU_LEAP);
+        assertConsistent(param.toBuilder().setDomainCount(3).build(), EngineType.NEXT_REACTION);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.OccupancyIndexTest");
+    }
+}
@@ -0,0 +1,78 @@
+
+package resist.system;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import resist.agent.CellType;
+import resist.agent.DrugType;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class OffHeapPopulationStoreTest {
+    @Test public void testCounts() {
+        PopulationStore store = OffHeapPopulationStore.create(5);
+
+        assertEquals(5, store.countSites());
+        assertEquals(0, store.getCount(3, CellType.RESISTANT_A));
+
+        store.setCount(3, CellType.RESISTANT_A.index(), 10);
+        store.setCount(4, CellType.RESISTANT_A.index(), 20);
+        store.addCount(3, CellType.NON_RESISTANT.index(), 5);
+        store.addCount(3, DrugType.B.index(), 7);
+
+        assertEquals(10, store.getCount(3, CellType.RESISTANT_A));
+        assertEquals(20, store.getCount(4, CellType.RESISTANT_A));
+        assertEquals(5,  store.getCount(3, CellType.NON_RESISTANT));
+        assertEquals(7,  store.getCount(3, DrugType.B));
+
+        assertEquals(15, store.countCells(3));
+        assertEquals(30, store.getTotal(CellType.RESISTANT_A));
+        assertEquals(8, store.addCount(4, CellType.RESISTANT_A.index(), -12));
+    }
+
+    @Test public void testMapped() throws Exception {
+        Path file = Files.createTempFile("resist", ".counts");
+
+        try {
+            OffHeapPopulationStore store = OffHeapPopulationStore.create(file, 100);
+
+            store.setCount(99, DrugType.A.index(), 123);
+            store.setCount(0, CellType.RESISTANT_B.index(), 4);
+            store.force();
+
+            PopulationStore restored = OffHeapPopulationStore.map(file, 100);
+
+            assertEquals(123, restored.getCount(99, DrugType.A));
+            assertEquals(4, restored.getCount(0, CellType.RESISTANT_B));
+            assertEquals(123, restored.getTotal(DrugType.A));
+            assertEquals(4, restored.getTotal(CellType.RESISTANT_B));
+
+            assertEquals(0, OffHeapPopulationStore.create(file, 100).getTotal(DrugType.A));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSiteBounds() {
+        OffHeapPopulationStore.create(5).getCount(5, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testTypeBounds() {
+        OffHeapPopulationStore.create(5).getCount(0, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegative() {
+        PopulationStore store = OffHeapPopulationStore.create(5);
+        store.addCount(0, CellType.RESISTANT_B.index(), -1);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.OffHeapPopulationStoreTest");
+    }
+}
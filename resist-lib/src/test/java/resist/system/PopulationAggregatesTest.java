@@ -0,0 +1,96 @@
+
+package resist.system;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.agent.DrugType;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class PopulationAggregatesTest extends ResistTestBase {
+    private double time = 0.0;
+
+    @Test public void testUpdates() {
+        PopulationStore store = ArrayPopulationStore.create(3);
+        store.setCount(0, CellType.NON_RESISTANT.index(), 5);
+
+        PopulationAggregates aggregates = PopulationAggregates.attach(store, OccupancyIndex.attach(store, SiteGraph.create(new int[3][0]), 10), () -> time);
+
+        assertEquals(5L, aggregates.countCells());
+        assertEquals(1, aggregates.countOccupiedSites());
+        assertEquals(0, aggregates.countFullSites());
+        assertEquals(0.0, aggregates.getFirstHittingTime(CellType.NON_RESISTANT), 0.0);
+        assertFalse(aggregates.hasAppeared(CellType.RESISTANT_A));
+
+        time = 1.5;
+        store.addCount(0, CellType.RESISTANT_A.index(), 5);
+        store.addCount(1, CellType.RESISTANT_A.index(), 1);
+
+        assertEquals(11L, aggregates.countCells());
+        assertEquals(2, aggregates.countOccupiedSites());
+        assertEquals(1, aggregates.countFullSites());
+        assertEquals(1.5, aggregates.getFirstHittingTime(CellType.RESISTANT_A), 0.0);
+        assertEquals(6.0 / 11.0, aggregates.getResistantFraction(DrugType.A), 1.0E-12);
+        assertEquals(0.0, aggregates.getResistantFraction(DrugType.B), 0.0);
+
+        // Drug units do not count toward occupancy.
+        store.addCount(2, DrugType.A.index(), 7);
+        assertEquals(2, aggregates.countOccupiedSites());
+
+        time = 2.0;
+        store.setCount(0, CellType.RESISTANT_A.index(), 0);
+        store.setCount(1, CellType.RESISTANT_A.index(), 0);
+
+        assertEquals(5L, aggregates.countCells());
+        assertEquals(1, aggregates.countOccupiedSites());
+        assertEquals(0, aggregates.countFullSites());
+
+        // The first hitting time is not reset by extinction.
+        store.addCount(2, CellType.RESISTANT_A.index(), 1);
+        assertEquals(1.5, aggregates.getFirstHittingTime(CellType.RESISTANT_A), 0.0);
+    }
+
+    @Test public void testSimulation() {
+        ResistSystem system = ResistSystem.create(SplitMix64.create(9L), ResistParam.global());
+
+        system.addObserver(0.1, sys -> {
+                PopulationStore store = sys.getPopulation();
+                PopulationAggregates aggregates = sys.getAggregates();
+
+                long cells = 0L;
+                int occupied = 0;
+                int full = 0;
+
+                for (int site = 0; site < store.countSites(); ++site) {
+                    int count = store.countCells(site);
+
+                    cells += count;
+
+                    if (count > 0)
+                        ++occupied;
+
+                    if (count >= sys.getParam().getSiteCapacity())
+                        ++full;
+                }
+
+                assertEquals(cells, aggregates.countCells());
+                assertEquals(occupied, aggregates.countOccupiedSites());
+                assertEquals(full, aggregates.countFullSites());
+
+                for (int type = 0; type < CellType.COUNT; ++type) {
+                    CellType cellType = CellType.valueOf(type);
+
+                    if (store.getTotal(cellType) > 0)
+                        assertTrue(aggregates.getFirstHittingTime(cellType) <= sys.getTime());
+                }
+            });
+
+        system.run(2.0);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.PopulationAggregatesTest");
+    }
+}
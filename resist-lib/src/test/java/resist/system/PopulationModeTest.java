@@ -0,0 +1,102 @@
+
+package resist.system;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class PopulationModeTest extends ResistTestBase {
+    private static ResistParam param(PopulationMode mode) {
+        return ResistParam.global()
+            .toBuilder()
+            .setLattice("SQUARE; 1.0; 20, 20")
+            .setSiteCapacity(10)
+            .setInitialCellCount(50)
+            .setInitialDrugCount(2)
+            .setSeedLayoutType(SeedLayoutType.BALL)
+            .setPopulationMode(mode)
+            .build();
+    }
+
+    private static boolean isOccupied(ResistSystem system, int site) {
+        for (int type = 0; type < AgentType.COUNT; ++type)
+            if (system.getPopulation().getCount(site, type) > 0)
+                return true;
+
+        return false;
+    }
+
+    @Test public void testLazy() {
+        ResistSystem system = ResistSystem.create(SplitMix64.create(12L), param(PopulationMode.LAZY));
+
+        // Only the sites seeded with cells are mapped at first.
+        boolean[] mapped = new boolean[system.countSites()];
+
+        for (int site = 0; site < system.countSites(); ++site) {
+            assertEquals(isOccupied(system, site), system.isMapped(site));
+            mapped[site] = system.isMapped(site);
+        }
+
+        system.run(2.0);
+
+        int mappedCount = 0;
+        int newlyMapped = 0;
+
+        for (int site = 0; site < system.countSites(); ++site) {
+            // Occupied sites have been mapped, and mapped sites stay
+            // mapped after they empty.
+            if (isOccupied(system, site) || mapped[site])
+                assertTrue(system.isMapped(site));
+
+            if (system.isMapped(site)) {
+                ++mappedCount;
+
+                if (!mapped[site])
+                    ++newlyMapped;
+            }
+        }
+
+        assertTrue(newlyMapped > 0);
+        assertTrue(mappedCount < system.countSites());
+    }
+
+    @Test public void testEager() {
+        ResistSystem agent = ResistSystem.create(SplitMix64.create(13L), param(PopulationMode.AGENT));
+        ResistSystem array = ResistSystem.create(SplitMix64.create(13L), param(PopulationMode.ARRAY));
+
+        for (int site = 0; site < agent.countSites(); ++site) {
+            assertTrue(agent.isMapped(site));
+            assertFalse(array.isMapped(site));
+        }
+    }
+
+    @Test public void testViews() {
+        ResistSystem system = ResistSystem.create(SplitMix64.create(14L), param(PopulationMode.ARRAY));
+        int site = system.getOccupancy().nextOccupiedSite(0);
+
+        SiteAgentView view = system.viewAgent(site, CellType.NON_RESISTANT);
+
+        assertEquals(site, view.getSiteIndex());
+        assertSame(system.getSite(site), view.getSite());
+        assertEquals(system.getPopulation().getCount(site, CellType.NON_RESISTANT), view.getCount());
+
+        // Views are not interned, but they are equal and track the
+        // population store.
+        assertNotSame(view, system.viewAgent(site, CellType.NON_RESISTANT));
+        assertEquals(view, system.viewAgent(site, CellType.NON_RESISTANT));
+        assertNotEquals(view, system.viewAgent(site, CellType.RESISTANT_A));
+
+        system.run(1.0);
+
+        assertEquals(system.getPopulation().getCount(site, CellType.NON_RESISTANT), view.getCount());
+        assertEquals(view.getCount(), system.countAgents(view));
+        assertFalse(system.isMapped(site));
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.PopulationModeTest");
+    }
+}
@@ -0,0 +1,113 @@
+
+package resist.system;
+
+import java.util.Random;
+
+import resist.agent.CellType;
+import resist.agent.DrugType;
+import resist.engine.EngineType;
+import resist.random.RandomSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class PopulationSeederTest extends ResistTestBase {
+    private static RandomSource source(long seed) {
+        Random random = new Random(seed);
+        return random::nextDouble;
+    }
+
+    @Test public void testCapacity() {
+        PopulationStore store = ArrayPopulationStore.create(10000);
+        PopulationSeeder seeder = PopulationSeeder.create(store, 10);
+
+        seeder.seed(source(1L), SeedLayout.uniform(), CellType.NON_RESISTANT, 95000L);
+
+        assertEquals(95000L, store.getTotal(CellType.NON_RESISTANT));
+
+        for (int site = 0; site < store.countSites(); ++site)
+            assertTrue(store.countCells(site) <= 10);
+    }
+
+    @Test public void testDensity() {
+        PopulationStore store = ArrayPopulationStore.create(10000);
+        PopulationSeeder seeder = PopulationSeeder.create(store, 1000);
+
+        // Only the even sites may hold agents.
+        seeder.seed(source(2L), site -> (site % 2 == 0) ? 1.0 : 0.0, DrugType.A, 1000000L);
+
+        assertEquals(1000000L, store.getTotal(DrugType.A));
+
+        for (int site = 1; site < store.countSites(); site += 2)
+            assertEquals(0, store.getCount(site, DrugType.A));
+    }
+
+    @Test public void testReproducible() {
+        PopulationStore store1 = ArrayPopulationStore.create(10000);
+        PopulationStore store2 = ArrayPopulationStore.create(10000);
+
+        PopulationSeeder.create(store1, 5).seed(source(3L), SeedLayout.uniform(), CellType.NON_RESISTANT, 40000L);
+        PopulationSeeder.create(store2, 5).seed(source(3L), SeedLayout.uniform(), CellType.NON_RESISTANT, 40000L);
+
+        for (int site = 0; site < store1.countSites(); ++site)
+            assertEquals(store1.countCells(site), store2.countCells(site));
+    }
+
+    @Test public void testBall() {
+        ResistParam param = ResistParam.global().toBuilder()
+            .setLattice("SQUARE; 1.0; 20, 20")
+            .setSiteCapacity(10)
+            .setInitialCellCount(400)
+            .setInitialDrugCount(1001)
+            .setSeedLayoutType(SeedLayoutType.BALL)
+            .build();
+
+        ResistSystem system = ResistSystem.create(source(5L), param, EngineType.DIRECT);
+        PopulationStore population = system.getPopulation();
+
+        double sumX = 0.0;
+        double sumY = 0.0;
+
+        for (int site = 0; site < system.countSites(); ++site) {
+            sumX += population.countCells(site) * x(system, site);
+            sumY += population.countCells(site) * y(system, site);
+        }
+
+        // The ball is centered on the middle of the lattice, not on
+        // the middle of the dense enumeration (an edge site).
+        double centerX = sumX / 400.0;
+        double centerY = sumY / 400.0;
+
+        assertEquals(9.5, centerX, 1.0);
+        assertEquals(9.5, centerY, 1.0);
+
+        // The smallest ball that holds 400 cells has radius four
+        // (41 sites), so every cell lies within that distance of the
+        // center site.
+        for (int site = 0; site < system.countSites(); ++site)
+            if (population.countCells(site) > 0)
+                assertTrue(Math.abs(x(system, site) - centerX) + Math.abs(y(system, site) - centerY) <= 5.0);
+
+        // The drug count is shared by the drug types.
+        assertEquals(501L, population.getTotal(DrugType.A));
+        assertEquals(500L, population.getTotal(DrugType.B));
+    }
+
+    private static int x(ResistSystem system, int site) {
+        return system.getSite(site).getIndex().coord(0);
+    }
+
+    private static int y(ResistSystem system, int site) {
+        return system.getSite(site).getIndex().coord(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInsufficientCapacity() {
+        PopulationStore store = ArrayPopulationStore.create(100);
+        PopulationSeeder.create(store, 10).seed(source(4L), SeedLayout.uniform(), CellType.NON_RESISTANT, 1001L);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.PopulationSeederTest");
+    }
+}
@@ -0,0 +1,253 @@
+
+package resist.system;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.engine.EngineType;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class ResistCheckpointTest extends ResistTestBase {
+    private static void assertSameCounts(ResistSystem expected, ResistSystem actual) {
+        for (int site = 0; site < expected.countSites(); ++site)
+            for (int type = 0; type < AgentType.COUNT; ++type)
+                assertEquals(expected.getPopulation().getCount(site, type), actual.getPopulation().getCount(site, type));
+    }
+
+    private static long countCells(PopulationStore population) {
+        long total = 0L;
+
+        for (CellType type : CellType.values())
+            total += population.getTotal(type);
+
+        return total;
+    }
+
+    @Test public void testRestore() throws Exception {
+        Path file = Files.createTempFile("resist", ".ckpt");
+
+        try {
+            ResistParam param = ResistParam.global();
+            ResistSystem system = ResistSystem.create(SplitMix64.create(11L), param, EngineType.NEXT_REACTION);
+
+            system.run(0.5);
+            assertEquals(file, system.checkpoint(file).get());
+
+            ResistCheckpoint checkpoint = ResistCheckpoint.read(file);
+
+            assertTrue(checkpoint.hasRandomState());
+            assertEquals(system.getTime(), checkpoint.getTime(), 0.0);
+            assertEquals(system.getEventCount(), checkpoint.getEventCount());
+            assertEquals(system.countSites(), checkpoint.countSites());
+            assertEquals(param.toProperties(), checkpoint.getProperties());
+
+            ResistSystem restored1 = checkpoint.restore(param);
+            ResistSystem restored2 = checkpoint.restore(param);
+
+            assertEquals(system.getTime(), restored1.getTime(), 0.0);
+            assertEquals(system.getEventCount(), restored1.getEventCount());
+            assertSameCounts(system, restored1);
+
+            for (int type = 0; type < AgentType.COUNT; ++type)
+                assertEquals(system.getPopulation().getTotal(type), restored1.getPopulation().getTotal(type));
+
+            // Types that appeared before the checkpoint keep their
+            // original first-hitting times.
+            for (CellType type : CellType.values())
+                assertEquals(system.getAggregates().getFirstHittingTime(type),
+                             restored1.getAggregates().getFirstHittingTime(type), 0.0);
+
+            // Restoring is deterministic.
+            restored1.run(1.0);
+            restored2.run(1.0);
+
+            assertEquals(restored1.getEventCount(), restored2.getEventCount());
+            assertSameCounts(restored1, restored2);
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test public void testFork() throws Exception {
+        Path file = Files.createTempFile("resist", ".ckpt");
+
+        try {
+            ResistSystem system = ResistSystem.create(() -> 0.5 * Math.random(), ResistParam.global());
+
+            system.run(0.25);
+            system.checkpoint(file).join();
+
+            ResistCheckpoint checkpoint = ResistCheckpoint.read(file);
+            assertFalse(checkpoint.hasRandomState());
+
+            ResistSystem branch = checkpoint.restore(SplitMix64.create(22L), ResistParam.global());
+            assertSameCounts(system, branch);
+
+            branch.run(0.5);
+            assertEquals(0.5, branch.getTime(), 0.0);
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test public void testForkInMemory() {
+        ResistSystem system = ResistSystem.create(SplitMix64.create(44L), ResistParam.global(), EngineType.DIRECT);
+        system.run(0.5);
+
+        ResistSystem copy1 = system.fork(SplitMix64.create(55L));
+        ResistSystem copy2 = system.fork(SplitMix64.create(55L));
+
+        assertEquals(system.getTime(), copy1.getTime(), 0.0);
+        assertEquals(system.getEventCount(), copy1.getEventCount());
+        assertSameCounts(system, copy1);
+
+        for (CellType type : CellType.values())
+            assertEquals(system.getAggregates().getFirstHittingTime(type), copy1.getAggregates().getFirstHittingTime(type), 0.0);
+
+        // The copies are independent of the original and of each
+        // other, and deterministic given their random sources.
+        copy1.run(1.0);
+        copy2.run(1.0);
+
+        assertEquals(0.5, system.getTime(), 0.0);
+        assertEquals(copy1.getEventCount(), copy2.getEventCount());
+        assertSameCounts(copy1, copy2);
+    }
+
+    @Test public void testForkMapped() throws Exception {
+        Path file = Files.createTempFile("resist", ".counts");
+
+        try {
+            ResistParam param = ResistParam.global().toBuilder().setStateBackend(StateBackend.MAPPED).setStateFile(file).build();
+            ResistSystem system = ResistSystem.create(SplitMix64.create(66L), param, EngineType.DIRECT);
+
+            system.run(0.5);
+
+            long cellCount = system.getAggregates().countCells();
+            ResistSystem copy = system.fork(SplitMix64.create(77L));
+
+            // The copy keeps its counts in memory rather than
+            // truncating the state file of the original.
+            assertEquals(StateBackend.DIRECT, copy.getParam().getStateBackend());
+            assertTrue(cellCount > 0L);
+            assertEquals(cellCount, countCells(system.getPopulation()));
+            assertSameCounts(system, copy);
+
+            copy.run(1.0);
+            assertEquals(cellCount, countCells(system.getPopulation()));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test public void testPeriodic() throws Exception {
+        Path file = Files.createTempFile("resist", ".ckpt");
+
+        try {
+            ResistSystem system = ResistSystem.create(SplitMix64.create(33L), ResistParam.global());
+            system.run(1.0, 0.3, file);
+
+            ResistCheckpoint checkpoint = ResistCheckpoint.read(file);
+
+            assertEquals(1.0, checkpoint.getTime(), 0.0);
+            assertSameCounts(system, checkpoint.restore(ResistParam.global()));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test public void testRecordedParam() throws Exception {
+        Path file = Files.createTempFile("resist", ".ckpt");
+
+        try {
+            ResistParam param = ResistParam.global().toBuilder().setSiteCapacity(150).setEngineType(EngineType.NEXT_REACTION).build();
+            ResistSystem system = ResistSystem.create(SplitMix64.create(88L), param);
+
+            system.run(0.5);
+            system.checkpoint(file).join();
+
+            ResistCheckpoint checkpoint = ResistCheckpoint.read(file);
+            ResistSystem restored = checkpoint.restore();
+
+            assertEquals(param.toProperties(), checkpoint.getParam().toProperties());
+            assertEquals(150, restored.getParam().getSiteCapacity());
+            assertSameCounts(system, restored);
+
+            // Branches restored with the recorded parameters share one
+            // lattice space.
+            ResistSystem branch = checkpoint.restore(SplitMix64.create(5L));
+
+            assertSame(checkpoint.getParam(), branch.getParam());
+            assertSame(restored.getParam().getSpace(), branch.getParam().getSpace());
+
+            // The recorded parameters resume the same trajectory as
+            // the original ones.
+            ResistSystem explicit = checkpoint.restore(param);
+
+            explicit.run(1.0);
+            restored.run(1.0);
+
+            assertEquals(explicit.getEventCount(), restored.getEventCount());
+            assertSameCounts(explicit, restored);
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test public void testPeriodicFailure() throws Exception {
+        Path dir = Files.createTempDirectory("resist");
+        Path file = dir.resolve("checkpoint");
+        Path blocker = file.resolve("blocker");
+
+        try {
+            // A non-empty directory cannot be replaced by the flushed
+            // checkpoint, so the background move fails.
+            Files.createDirectory(file);
+            Files.createFile(blocker);
+
+            ResistSystem system = ResistSystem.create(SplitMix64.create(99L), ResistParam.global());
+
+            try {
+                system.run(1.0, 0.5, file);
+                fail();
+            }
+            catch (UncheckedIOException ex) {
+                // Expected: the failure is not wrapped.
+            }
+        }
+        finally {
+            Files.deleteIfExists(blocker);
+            Files.deleteIfExists(file.resolveSibling("checkpoint.tmp"));
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFile() throws Exception {
+        Path file = Files.createTempFile("resist", ".ckpt");
+
+        try {
+            Files.write(file, new byte[64]);
+            ResistCheckpoint.read(file);
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.ResistCheckpointTest");
+    }
+}
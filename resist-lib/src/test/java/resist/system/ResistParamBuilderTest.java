@@ -0,0 +1,114 @@
+
+package resist.system;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import resist.engine.EngineType;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class ResistParamBuilderTest extends ResistTestBase {
+    @Test public void testCopy() {
+        ResistParam global = ResistParam.global();
+        ResistParam copy = global.toBuilder().build();
+
+        assertNotSame(global, copy);
+        assertSame(global.getSpace(), copy.getSpace());
+        assertEquals(global.toProperties(), copy.toProperties());
+        assertEquals(global.toProperties(), ResistParam.create(global.toProperties()).toProperties());
+    }
+
+    @Test public void testWith() {
+        ResistParam global = ResistParam.global();
+        ResistParam modified = global.with(ResistParam.DRUG_UPTAKE_RATE_PROPERTY, "0.25");
+
+        assertEquals(0.25, modified.getDrugUptakeRate(), 0.0);
+        assertEquals(global.getDrugDecayRate(), modified.getDrugDecayRate(), 0.0);
+        assertEquals(0.01, global.getDrugUptakeRate(), 0.0);
+
+        ResistParam tauLeap = global.toBuilder().setEngineType(EngineType.TAU_LEAP).setTauLeapEpsilon(0.01).build();
+
+        assertEquals(EngineType.TAU_LEAP, tauLeap.getEngineType());
+        assertEquals(0.01, tauLeap.getTauLeapEpsilon(), 0.0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissing() {
+        ResistParamBuilder.create().setLattice("SQUARE; 1.0; 3, 3").setSiteCapacity(10).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() {
+        ResistParamBuilder.create().setResistantBirthRate(-1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknown() {
+        ResistParamBuilder.create().set("resist.drugUptake", "0.1");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSparseLattice() {
+        ResistParam.global().toBuilder().setLattice("LINEAR; 1.0; 9").setSparseTileSize(4).build();
+    }
+
+    @Test public void testSweep() throws Exception {
+        Properties properties = ResistParam.global().toProperties();
+
+        properties.setProperty(ResistParam.DRUG_UPTAKE_RATE_PROPERTY, "0.01 | 0.02 | 0.05");
+        properties.setProperty(ResistParam.RESISTANCE_MUTATION_RATE_PROPERTY, "1.0E-4|1.0E-3");
+
+        Path file = Files.createTempFile("resist", ".properties");
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                properties.store(writer, null);
+            }
+
+            List<ResistParam> points = ParamSweep.load(file);
+            assertEquals(6, points.size());
+
+            // The last axis (by name) varies fastest.
+            assertEquals(0.01, points.get(0).getDrugUptakeRate(), 0.0);
+            assertEquals(1.0E-4, points.get(0).getResistanceMutationRate(), 0.0);
+            assertEquals(0.01, points.get(1).getDrugUptakeRate(), 0.0);
+            assertEquals(1.0E-3, points.get(1).getResistanceMutationRate(), 0.0);
+            assertEquals(0.05, points.get(5).getDrugUptakeRate(), 0.0);
+            assertEquals(1.0E-3, points.get(5).getResistanceMutationRate(), 0.0);
+
+            for (ResistParam point : points)
+                assertSame(points.get(0).getSpace(), point.getSpace());
+
+            // Every point runs concurrently in this process.
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[points.size()];
+
+            for (int index = 0; index < points.size(); ++index) {
+                ResistParam point = points.get(index);
+                long seed = index;
+
+                futures[index] = CompletableFuture.runAsync(() -> {
+                        ResistSystem system = ResistSystem.create(SplitMix64.create(seed), point);
+                        system.run(0.1);
+
+                        assertSame(point, system.getParam());
+                    });
+            }
+
+            CompletableFuture.allOf(futures).join();
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.ResistParamBuilderTest");
+    }
+}
@@ -0,0 +1,74 @@
+
+package resist.system;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class SiteGraphTest {
+    // A periodic ring of five sites.
+    private static final int[][] RING = {
+        { 4, 1 }, { 0, 2 }, { 1, 3 }, { 2, 4 }, { 3, 0 }
+    };
+
+    @Test public void testAdjacency() {
+        SiteGraph graph = SiteGraph.create(RING);
+
+        assertEquals(5, graph.countNodes());
+        assertEquals(10, graph.countEdges());
+
+        for (int node = 0; node < RING.length; ++node) {
+            assertEquals(2, graph.degree(node));
+            assertEquals(2 * node, graph.offset(node));
+
+            for (int k = 0; k < RING[node].length; ++k) {
+                assertEquals(RING[node][k], graph.target(node, k));
+                assertEquals(RING[node][k], graph.target(graph.offset(node) + k));
+            }
+        }
+    }
+
+    @Test public void testReverse() {
+        // Ghost sites 3 and 4 have no neighbor lists of their own.
+        SiteGraph graph = SiteGraph.create(new int[][] { { 1, 4 }, { 0, 2 }, { 1, 3 }, { }, { } });
+        SiteGraph reverse = graph.reverse();
+
+        assertEquals(5, reverse.countNodes());
+        assertEquals(graph.countEdges(), reverse.countEdges());
+
+        assertEquals(1, reverse.degree(0));
+        assertEquals(1, reverse.target(0, 0));
+
+        assertEquals(2, reverse.degree(1));
+        assertEquals(0, reverse.target(1, 0));
+        assertEquals(2, reverse.target(1, 1));
+
+        assertEquals(1, reverse.degree(3));
+        assertEquals(2, reverse.target(3, 0));
+
+        assertEquals(1, reverse.degree(4));
+        assertEquals(0, reverse.target(4, 0));
+    }
+
+    @Test public void testDegreeStatistics() {
+        SiteGraph graph = SiteGraph.create(new int[][] { { 1, 2 }, { 0 }, { 0 }, { } });
+
+        assertEquals(0, graph.minDegree());
+        assertEquals(2, graph.maxDegree());
+        assertEquals(1.0, graph.meanDegree(), 1.0E-12);
+        assertArrayEquals(new long[] { 1, 2, 1 }, graph.degreeHistogram());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTarget() {
+        SiteGraph.create(new int[][] { { 1 }, { 2 } });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOffsets() {
+        SiteGraph.create(new int[] { 0, 2, 1 }, new int[] { 0 });
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.SiteGraphTest");
+    }
+}
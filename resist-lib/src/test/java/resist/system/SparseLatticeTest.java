@@ -0,0 +1,220 @@
+
+package resist.system;
+
+import resist.agent.AgentType;
+import resist.agent.CellType;
+import resist.agent.DrugType;
+import resist.engine.EngineType;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class SparseLatticeTest extends ResistTestBase {
+    private static ResistParam sparseParam() {
+        return ResistParam.global().toBuilder()
+            .setSparseTileSize(4)
+            .setPopulationMode(PopulationMode.ARRAY)
+            .setSiteCapacity(3)
+            .setInitialCellCount(60)
+            .setInitialDrugCount(40)
+            .setCellMigrationRate(1.0)
+            .setDrugDiffusionRate(1.0)
+            .build();
+    }
+
+    @Test public void testCoordinates() {
+        SparseLattice lattice = SparseLattice.create(4);
+        lattice.cover(1, null);
+
+        // Tiles [-1, 0] x [-1, 0] cover the square of radius one.
+        assertEquals(4, lattice.countTiles());
+        assertEquals(64, lattice.countSites());
+        assertEquals(64, lattice.getNeighborGraph().countNodes());
+
+        for (int y = -4; y < 4; ++y) {
+            for (int x = -4; x < 4; ++x) {
+                int site = lattice.indexOf(x, y);
+
+                assertEquals(x, lattice.getX(site));
+                assertEquals(y, lattice.getY(site));
+            }
+        }
+
+        assertEquals(-1, lattice.indexOf(4, 0));
+        assertEquals(-1, lattice.indexOf(0, -5));
+    }
+
+    @Test public void testManyTiles() {
+        SparseLattice lattice = SparseLattice.create(2);
+        lattice.cover(20, null);
+
+        // Tiles [-10, 10] x [-10, 10], well beyond the initial table.
+        assertEquals(441, lattice.countTiles());
+
+        for (int y = -20; y < 22; ++y) {
+            for (int x = -20; x < 22; ++x) {
+                int site = lattice.indexOf(x, y);
+
+                assertEquals(x, lattice.getX(site));
+                assertEquals(y, lattice.getY(site));
+            }
+        }
+
+        assertEquals(-1, lattice.indexOf(22, 0));
+        assertEquals(-1, lattice.indexOf(0, -21));
+    }
+
+    @Test public void testGrowth() {
+        SparseLattice lattice = SparseLattice.create(4);
+        lattice.cover(0, null);
+
+        SiteGraph neighbors = lattice.getNeighborGraph();
+        PopulationStore population = lattice.getPopulation();
+
+        int corner = lattice.indexOf(3, 3);
+        int interior = lattice.indexOf(1, 1);
+
+        // Edges out of the allocated region are loops.
+        assertEquals(lattice.indexOf(2, 3), neighbors.target(corner, 1));
+        assertEquals(corner, neighbors.target(corner, 0));
+        assertEquals(corner, neighbors.target(corner, 2));
+
+        // Interior sites do not trigger growth.
+        population.setCount(interior, CellType.NON_RESISTANT.index(), 1);
+        assertFalse(lattice.expand(null));
+
+        // The first agent at the corner allocates the two tiles beyond
+        // it (but not the diagonal tile).
+        population.setCount(corner, DrugType.A.index(), 1);
+        assertTrue(lattice.expand(null));
+
+        assertEquals(3, lattice.countTiles());
+        assertEquals(48, population.countSites());
+        assertEquals(-1, lattice.indexOf(4, 4));
+
+        assertEquals(lattice.indexOf(4, 3), neighbors.target(corner, 0));
+        assertEquals(lattice.indexOf(3, 4), neighbors.target(corner, 2));
+        assertEquals(corner, neighbors.target(lattice.indexOf(4, 3), 1));
+        assertEquals(corner, neighbors.target(lattice.indexOf(3, 4), 3));
+
+        // Further agents at the same site change nothing.
+        population.addCount(corner, DrugType.A.index(), 1);
+        assertFalse(lattice.expand(null));
+
+        assertSymmetric(lattice);
+    }
+
+    @Test public void testSystem() {
+        for (EngineType engineType : new EngineType[] { EngineType.DIRECT, EngineType.NEXT_REACTION, EngineType.COMPOSITION_REJECTION }) {
+            ResistSystem system = ResistSystem.create(SplitMix64.create(20240611L), sparseParam(), engineType);
+            SparseLattice lattice = system.getLattice();
+
+            assertNull(system.getSpace());
+            assertNotNull(lattice);
+            assertEquals(60L, system.getPopulation().getTotal(CellType.NON_RESISTANT));
+
+            int initialTiles = lattice.countTiles();
+            system.run(10.0);
+
+            assertTrue(lattice.countTiles() > initialTiles);
+            assertEquals(lattice.countSites(), system.countSites());
+            assertEquals(lattice.countSites(), system.getModel().countChannels());
+
+            assertSymmetric(lattice);
+            assertReached(lattice);
+            assertConsistent(system);
+        }
+    }
+
+    @Test public void testRequirements() {
+        ResistParam param = sparseParam();
+
+        try {
+            ResistSystem.create(SplitMix64.create(1L), param, EngineType.TAU_LEAP);
+            fail("Tau-leaping is not supported.");
+        }
+        catch (IllegalArgumentException ex) {
+        }
+
+        try {
+            ResistSystem.create(SplitMix64.create(1L), param.toBuilder().setPopulationMode(PopulationMode.LAZY).build());
+            fail("Agent mapping is not supported.");
+        }
+        catch (IllegalArgumentException ex) {
+        }
+
+        ResistSystem system = ResistSystem.create(SplitMix64.create(1L), param, EngineType.DIRECT);
+
+        try {
+            system.getSite(0);
+            fail("Sparse lattices have no site objects.");
+        }
+        catch (IllegalStateException ex) {
+        }
+    }
+
+    private static void assertSymmetric(SparseLattice lattice) {
+        SiteGraph neighbors = lattice.getNeighborGraph();
+
+        for (int site = 0; site < lattice.countSites(); ++site) {
+            assertEquals(SparseLattice.DEGREE, neighbors.degree(site));
+
+            for (int k = 0; k < SparseLattice.DEGREE; ++k) {
+                int neighbor = neighbors.target(site, k);
+
+                if (neighbor == site)
+                    continue;
+
+                assertEquals(site, neighbors.target(neighbor, k ^ 1));
+                assertEquals(1, Math.abs(lattice.getX(site) - lattice.getX(neighbor))
+                             + Math.abs(lattice.getY(site) - lattice.getY(neighbor)));
+            }
+        }
+    }
+
+    // Every site holding agents has its four true neighbors.
+    private static void assertReached(SparseLattice lattice) {
+        SiteGraph neighbors = lattice.getNeighborGraph();
+        PopulationStore population = lattice.getPopulation();
+
+        for (int site = 0; site < lattice.countSites(); ++site) {
+            int agents = 0;
+
+            for (int type = 0; type < AgentType.COUNT; ++type)
+                agents += population.getCount(site, type);
+
+            if (agents > 0)
+                for (int k = 0; k < SparseLattice.DEGREE; ++k)
+                    assertTrue(neighbors.target(site, k) != site);
+        }
+    }
+
+    private static void assertConsistent(ResistSystem system) {
+        OccupancyIndex occupancy = system.getOccupancy();
+        PopulationStore population = system.getPopulation();
+        SiteGraph neighbors = system.getModel().getNeighborGraph();
+
+        int capacity = system.getParam().getSiteCapacity();
+        long cells = 0L;
+
+        for (int site = 0; site < system.countSites(); ++site) {
+            int fullNeighbors = 0;
+
+            for (int k = 0; k < neighbors.degree(site); ++k)
+                if (population.countCells(neighbors.target(site, k)) >= capacity)
+                    ++fullNeighbors;
+
+            assertEquals(population.countCells(site), occupancy.countCells(site));
+            assertEquals(fullNeighbors, occupancy.countFullNeighbors(site));
+
+            cells += population.countCells(site);
+        }
+
+        assertEquals(system.getAggregates().countCells(), cells);
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.SparseLatticeTest");
+    }
+}
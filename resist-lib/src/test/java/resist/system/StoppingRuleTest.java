@@ -0,0 +1,75 @@
+
+package resist.system;
+
+import java.time.Duration;
+
+import resist.agent.CellType;
+import resist.random.SplitMix64;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class StoppingRuleTest extends ResistTestBase {
+    private static ResistSystem createSystem(long seed) {
+        return ResistSystem.create(SplitMix64.create(seed), ResistParam.global());
+    }
+
+    @Test public void testCellCount() {
+        ResistSystem system = createSystem(31L);
+        StoppingRule rule = StoppingRule.cellCountAtLeast(820L);
+
+        system.addStoppingRule(StoppingRule.extinction());
+        system.addStoppingRule(rule);
+
+        assertFalse(system.run(1000.0));
+        assertTrue(system.isStopped());
+        assertSame(rule, system.getStoppingRule());
+        assertEquals("cell count >= 820", rule.describe());
+
+        // Rules are checked after every event by default, and cell
+        // counts change by at most one per event.
+        assertEquals(820L, system.getAggregates().countCells());
+        assertTrue(system.getTime() < 1000.0);
+
+        // A stopped system executes no further events.
+        long eventCount = system.getEventCount();
+
+        assertFalse(system.run(2000.0));
+        assertEquals(eventCount, system.getEventCount());
+    }
+
+    @Test public void testCheckInterval() {
+        ResistSystem system = createSystem(32L);
+
+        system.setStoppingCheckInterval(1000);
+        system.addStoppingRule(StoppingRule.named("events", sys -> sys.getEventCount() >= 10));
+
+        assertFalse(system.run(1000.0));
+        assertEquals(1000L, system.getEventCount());
+        assertEquals("events", system.getStoppingRule().describe());
+    }
+
+    @Test public void testNotSatisfied() {
+        ResistSystem system = createSystem(33L);
+
+        system.addStoppingRule(StoppingRule.extinction());
+        system.addStoppingRule(StoppingRule.phenotypeFractionAtLeast(CellType.RESISTANT_AB, 0.5));
+
+        assertTrue(system.run(0.5));
+        assertFalse(system.isStopped());
+        assertNull(system.getStoppingRule());
+        assertEquals(0.5, system.getTime(), 0.0);
+    }
+
+    @Test public void testWallClock() {
+        ResistSystem system = createSystem(34L);
+        system.addStoppingRule(StoppingRule.wallClock(Duration.ZERO));
+
+        assertFalse(system.run(1.0));
+        assertEquals(0L, system.getEventCount());
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.system.StoppingRuleTest");
+    }
+}
@@ -0,0 +1,149 @@
+
+package resist.trajectory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import resist.agent.AgentType;
+import resist.random.SplitMix64;
+import resist.system.ResistParam;
+import resist.system.ResistSystem;
+import resist.system.ResistTestBase;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class TrajectoryWriterTest extends ResistTestBase {
+    @Test public void testRoundTrip() throws Exception {
+        Path file = Files.createTempFile("resist", ".traj");
+
+        try {
+            ResistSystem system = ResistSystem.create(SplitMix64.create(5L), ResistParam.global());
+
+            List<long[]> expectedTotals = new ArrayList<long[]>();
+            List<int[][]> expectedCounts = new ArrayList<int[][]>();
+
+            // A small capacity exercises the backpressure path.
+            try (TrajectoryWriter writer = TrajectoryWriter.open(file, system.countSites(), 1, 10000L)) {
+                writer.attach(system, 0.001, 0.25);
+
+                system.addObserver(0.001, sys -> {
+                        long[] totals = new long[AgentType.COUNT];
+
+                        for (int type = 0; type < AgentType.COUNT; ++type)
+                            totals[type] = sys.getPopulation().getTotal(type);
+
+                        expectedTotals.add(totals);
+                    });
+
+                system.addObserver(0.25, sys -> {
+                        int[][] counts = new int[AgentType.COUNT][sys.countSites()];
+
+                        for (int type = 0; type < AgentType.COUNT; ++type)
+                            for (int site = 0; site < sys.countSites(); ++site)
+                                counts[type][site] = sys.getPopulation().getCount(site, type);
+
+                        expectedCounts.add(counts);
+                    });
+
+                system.run(1.0);
+            }
+
+            TrajectoryReader reader = TrajectoryReader.open(file);
+            assertEquals(system.countSites(), reader.countSites());
+
+            List<TrajectorySample> samples;
+
+            try (Stream<TrajectorySample> stream = reader.readSamples()) {
+                samples = stream.collect(Collectors.toList());
+            }
+
+            // More samples than one batch, so several blocks.
+            assertTrue(expectedTotals.size() > TrajectoryWriter.BATCH_SIZE);
+            assertEquals(expectedTotals.size(), samples.size());
+
+            for (int k = 0; k < samples.size(); ++k) {
+                assertEquals(0.001 * k, samples.get(k).getTime(), 1.0E-12);
+
+                if (k > 0)
+                    assertTrue(samples.get(k).getEventCount() >= samples.get(k - 1).getEventCount());
+
+                for (int type = 0; type < AgentType.COUNT; ++type)
+                    assertEquals(expectedTotals.get(k)[type], samples.get(k).getTotal(AgentType.valueOf(type)));
+            }
+
+            List<TrajectorySnapshot> snapshots;
+
+            try (Stream<TrajectorySnapshot> stream = reader.readSnapshots()) {
+                snapshots = stream.collect(Collectors.toList());
+            }
+
+            assertEquals(5, snapshots.size());
+
+            for (int k = 0; k < snapshots.size(); ++k) {
+                assertEquals(0.25 * k, snapshots.get(k).getTime(), 1.0E-12);
+                assertEquals(system.countSites(), snapshots.get(k).countSites());
+
+                for (int type = 0; type < AgentType.COUNT; ++type)
+                    for (int site = 0; site < system.countSites(); ++site)
+                        assertEquals(expectedCounts.get(k)[type][site], snapshots.get(k).getCount(site, AgentType.valueOf(type)));
+            }
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws Exception {
+        Path file = Files.createTempFile("resist", ".traj");
+
+        try {
+            ResistSystem system = ResistSystem.create(SplitMix64.create(6L), ResistParam.global());
+            TrajectoryWriter writer = TrajectoryWriter.open(file, system.countSites());
+
+            writer.close();
+            writer.recordSample(system);
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test public void testRunAfterClose() throws Exception {
+        Path file = Files.createTempFile("resist", ".traj");
+
+        try {
+            ResistSystem system = ResistSystem.create(SplitMix64.create(7L), ResistParam.global());
+            List<Double> times = new ArrayList<Double>();
+
+            try (TrajectoryWriter writer = TrajectoryWriter.open(file, system.countSites())) {
+                writer.attach(system, 0.1, 0.5);
+                system.addObserver(0.5, sys -> times.add(sys.getTime()));
+                system.run(0.5);
+            }
+
+            // Closing the writer detaches it; the system keeps running
+            // with its remaining observers.
+            system.run(1.0);
+
+            assertEquals(1.0, system.getTime(), 0.0);
+            assertEquals(List.of(0.0, 0.5, 1.0), times);
+
+            try (Stream<TrajectorySample> stream = TrajectoryReader.open(file).readSamples()) {
+                assertEquals(6L, stream.count());
+            }
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void main(String[] args) {
+        org.junit.runner.JUnitCore.main("resist.trajectory.TrajectoryWriterTest");
+    }
+}